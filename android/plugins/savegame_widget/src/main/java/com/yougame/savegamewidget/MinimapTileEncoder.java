@@ -0,0 +1,122 @@
+package com.yougame.savegamewidget;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * MinimapTileEncoder - Encodes the explored-area minimap snapshot (widget_minimap.bin)
+ *
+ * The game passes a small grid of tiles around the player, one palette index
+ * per tile (see the TILE_* constants). Rows are run-length encoded, which
+ * suits minimaps well: unexplored areas and large terrain regions become a
+ * handful of runs. The file is read by the standalone widget app
+ * (com.yougame.widget.MinimapDecoder). All numbers are big-endian.
+ *
+ * Layout (version 1):
+ *   offset  size  field
+ *        0     4  magic "YGMM"
+ *        4     2  version
+ *        6     2  flags (reserved, 0)
+ *        8     8  generation (changes with every snapshot)
+ *       16     2  width in tiles (1 to MAX_TILES)
+ *       18     2  height in tiles (1 to MAX_TILES)
+ *       20     2  player tile column
+ *       22     2  player tile row
+ *       24     1  palette size p (1 to 16)
+ *       25     3  reserved
+ *       28    4p  palette, one ARGB color per tile index
+ *     28+4p    4  run bytes r
+ *     32+4p    r  runs: (tile index, run length 1-255) byte pairs, row-major;
+ *                 a run may continue onto the next row
+ *  32+4p+r     4  CRC32 of all preceding bytes
+ */
+public class MinimapTileEncoder {
+
+    public static final String FILE_NAME = "widget_minimap.bin";
+    public static final int MAGIC = 0x59474D4D; // "YGMM"
+    public static final short VERSION = 1;
+    public static final int MAX_TILES = 128;
+    public static final int MAX_RUN = 255;
+
+    // Tile indices; colors follow the in-game minimap (minimap_overlay.gd)
+    public static final int TILE_UNEXPLORED = 0;
+    public static final int TILE_WATER = 1;
+    public static final int TILE_PLAINS = 2;
+    public static final int TILE_FOREST = 3;
+    public static final int TILE_MOUNTAIN = 4;
+    public static final int TILE_PEAK = 5;
+
+    static final int[] PALETTE = {
+        0xFF1A1A26, // unexplored, the minimap panel background
+        0xFF3366CC, // water
+        0xFF4D994D, // plains
+        0xFF338033, // forest
+        0xFF80664D, // mountain
+        0xFF999999, // peak
+    };
+
+    private static final int HEADER_SIZE = 28;
+    private static final int MAX_SIZE = HEADER_SIZE + PALETTE.length * 4 + 4
+        + 2 * MAX_TILES * MAX_TILES + 4;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(MAX_SIZE);
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Encode one snapshot into the internal buffer
+     *
+     * @param tiles Tile indices, row-major, at least width * height
+     * @return buffer positioned at 0 with the encoded bytes remaining
+     * @throws IllegalArgumentException for sizes out of range or unknown tile indices
+     */
+    public ByteBuffer encode(long generation, byte[] tiles, int width, int height,
+                             int playerX, int playerY) {
+        if (width < 1 || height < 1 || width > MAX_TILES || height > MAX_TILES) {
+            throw new IllegalArgumentException("Minimap size out of range: " + width + "x" + height);
+        }
+        int tileCount = width * height;
+        if (tiles == null || tiles.length < tileCount) {
+            throw new IllegalArgumentException("Minimap needs " + tileCount + " tiles");
+        }
+
+        buffer.clear();
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putShort((short) 0);
+        buffer.putLong(generation);
+        buffer.putShort((short) width);
+        buffer.putShort((short) height);
+        buffer.putShort((short) Math.max(0, Math.min(width - 1, playerX)));
+        buffer.putShort((short) Math.max(0, Math.min(height - 1, playerY)));
+        buffer.put((byte) PALETTE.length);
+        buffer.put((byte) 0).put((byte) 0).put((byte) 0);
+        for (int color : PALETTE) {
+            buffer.putInt(color);
+        }
+
+        int runBytesOffset = buffer.position();
+        buffer.putInt(0);
+        int runStart = buffer.position();
+        int i = 0;
+        while (i < tileCount) {
+            int tile = tiles[i] & 0xFF;
+            if (tile >= PALETTE.length) {
+                throw new IllegalArgumentException("Unknown minimap tile " + tile + " at " + i);
+            }
+            int run = 1;
+            while (run < MAX_RUN && i + run < tileCount && tiles[i + run] == tiles[i]) {
+                run++;
+            }
+            buffer.put((byte) tile).put((byte) run);
+            i += run;
+        }
+        buffer.putInt(runBytesOffset, buffer.position() - runStart);
+
+        crc.reset();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,45 @@
+package com.yougame.savegamewidget;
+
+/**
+ * SaveDataContract - How the standalone widget app queries the game's save data
+ *
+ * The game serves its current widget snapshot through SaveDataProvider at
+ * CONTENT_URI: one row with the columns below, or no row if the game never
+ * saved. Reading it needs PERMISSION, a signature permission declared by the
+ * game, so only apps signed with the game's key (the widget app) get it.
+ * After each save the game notifies observers of CONTENT_URI.
+ *
+ * The widget app has a copy of this class; the two must stay the same.
+ */
+public final class SaveDataContract {
+
+    public static final String AUTHORITY = "com.yougame.savegamewidget.savedata";
+    public static final String PATH_SNAPSHOT = "snapshot";
+    public static final String CONTENT_URI = "content://" + AUTHORITY + "/" + PATH_SNAPSHOT;
+    public static final String PERMISSION = "com.yougame.savegamewidget.permission.READ_SAVE_DATA";
+    public static final String MIME_TYPE = "vnd.android.cursor.item/vnd.com.yougame.savedata";
+
+    // Columns; generation changes with every save
+    public static final String GENERATION = "generation";
+    public static final String TIMESTAMP = "timestamp";
+    public static final String DAY_COUNT = "day_count";
+    public static final String CURRENT_HEALTH = "current_health";
+    public static final String TORCH_COUNT = "torch_count";
+    public static final String POSITION_X = "position_x";
+    public static final String POSITION_Y = "position_y";
+    public static final String POSITION_Z = "position_z";
+    public static final String ERROR_COUNT = "error_count";
+    public static final String TOTAL_LOG_COUNT = "total_log_count";
+    public static final String LAST_ERROR = "last_error";
+
+    /**
+     * All columns, in the order of a query without projection
+     */
+    public static final String[] COLUMNS = {
+        GENERATION, TIMESTAMP, DAY_COUNT, CURRENT_HEALTH, TORCH_COUNT,
+        POSITION_X, POSITION_Y, POSITION_Z, ERROR_COUNT, TOTAL_LOG_COUNT, LAST_ERROR
+    };
+
+    private SaveDataContract() {
+    }
+}
@@ -0,0 +1,91 @@
+package com.yougame.savegamewidget;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+
+/**
+ * SaveDataProvider - Serves the current widget snapshot to the standalone widget app
+ *
+ * Read-only provider for SaveDataContract.CONTENT_URI, protected by the
+ * game's signature permission (see AndroidManifest.xml). Queries are
+ * answered from memory by SaveDataQuery; nothing touches external storage,
+ * so the widget app needs no storage permission and works under scoped
+ * storage.
+ *
+ * The store is opened on the first query rather than in onCreate, which
+ * runs on the main thread during every start of the game's process.
+ */
+public class SaveDataProvider extends ContentProvider {
+
+    private SaveDataQuery saveDataQuery = null;
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder) {
+        checkUri(uri);
+        String[] columns = SaveDataQuery.resolveProjection(projection);
+        MatrixCursor cursor = new MatrixCursor(columns, 1);
+        SaveDataQuery query = getSaveDataQuery();
+        if (query != null) {
+            Object[] row = query.query(columns);
+            if (row != null) {
+                cursor.addRow(row);
+            }
+        }
+        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        return cursor;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        checkUri(uri);
+        return SaveDataContract.MIME_TYPE;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Save data is read-only");
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Save data is read-only");
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Save data is read-only");
+    }
+
+    /**
+     * Tell observers of the snapshot (the widget app) that a new one was stored
+     */
+    static void notifyChanged(Context context) {
+        context.getContentResolver().notifyChange(Uri.parse(SaveDataContract.CONTENT_URI), null);
+    }
+
+    private synchronized SaveDataQuery getSaveDataQuery() {
+        if (saveDataQuery == null) {
+            WidgetDataStore store = WidgetDataStore.getInstance(getContext());
+            if (store != null) {
+                saveDataQuery = new SaveDataQuery(store);
+            }
+        }
+        return saveDataQuery;
+    }
+
+    private static void checkUri(Uri uri) {
+        if (!SaveDataContract.CONTENT_URI.equals(uri.toString())) {
+            throw new IllegalArgumentException("Unknown URI: " + uri);
+        }
+    }
+}
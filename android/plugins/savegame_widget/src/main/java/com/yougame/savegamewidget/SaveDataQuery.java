@@ -0,0 +1,100 @@
+package com.yougame.savegamewidget;
+
+/**
+ * SaveDataQuery - Answers save data queries from memory
+ *
+ * Keeps the newest snapshot of a WidgetDataStore in memory and reads the
+ * store again only when its generation changed, so repeated queries between
+ * saves cost two long reads of the mapped file. Rows are built in the
+ * column order of SaveDataContract or of the caller's projection.
+ *
+ * Kept free of Android classes so the query path can be tested locally;
+ * SaveDataProvider wraps the rows in a cursor.
+ */
+class SaveDataQuery {
+
+    private final WidgetDataStore store;
+    private final WidgetSnapshot snapshot = new WidgetSnapshot();
+    private long generation = 0;
+    private long storeReadCount = 0;
+
+    SaveDataQuery(WidgetDataStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Columns to return for a query's projection
+     *
+     * @param projection Requested columns, null for all
+     * @throws IllegalArgumentException for a column SaveDataContract doesn't define
+     */
+    static String[] resolveProjection(String[] projection) {
+        if (projection == null) {
+            return SaveDataContract.COLUMNS.clone();
+        }
+        for (String column : projection) {
+            if (indexOf(column) < 0) {
+                throw new IllegalArgumentException("Unknown column: " + column);
+            }
+        }
+        return projection;
+    }
+
+    /**
+     * The current snapshot as one row
+     *
+     * @param columns Columns from resolveProjection
+     * @return the row, or null if the store holds no snapshot
+     */
+    synchronized Object[] query(String[] columns) {
+        long current = store.getGeneration();
+        if (current != generation) {
+            // A write in between is caught by the next query's generation check
+            generation = store.read(snapshot);
+            storeReadCount++;
+        }
+        if (generation == 0) {
+            return null;
+        }
+
+        Object[] row = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            row[i] = value(indexOf(columns[i]));
+        }
+        return row;
+    }
+
+    /**
+     * Times the store was read; queries without a new save don't count
+     */
+    synchronized long getStoreReadCount() {
+        return storeReadCount;
+    }
+
+    // Value of column i of SaveDataContract.COLUMNS
+    private Object value(int column) {
+        switch (column) {
+            case 0: return generation;
+            case 1: return snapshot.timestamp;
+            case 2: return snapshot.dayCount;
+            case 3: return snapshot.currentHealth;
+            case 4: return snapshot.torchCount;
+            case 5: return snapshot.positionX;
+            case 6: return snapshot.positionY;
+            case 7: return snapshot.positionZ;
+            case 8: return snapshot.errorCount;
+            case 9: return snapshot.totalLogCount;
+            default: return snapshot.lastError;
+        }
+    }
+
+    private static int indexOf(String column) {
+        String[] columns = SaveDataContract.COLUMNS;
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].equals(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
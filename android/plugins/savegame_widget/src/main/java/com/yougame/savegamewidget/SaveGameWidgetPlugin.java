@@ -1,24 +1,39 @@
 package com.yougame.savegamewidget;
 
 import android.app.Activity;
-import android.content.Context;
-import android.content.SharedPreferences;
+import android.util.Log;
 
+import org.godotengine.godot.Dictionary;
 import org.godotengine.godot.Godot;
 import org.godotengine.godot.plugin.GodotPlugin;
 import org.godotengine.godot.plugin.SignalInfo;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Set;
 
 /**
  * SaveGameWidgetPlugin - Godot plugin for updating Android widget with save data
  * 
- * This plugin allows the Godot game to export save data to SharedPreferences
- * which the widget can then read and display.
+ * This plugin allows the Godot game to export save data to the widget data
+ * store (see WidgetDataStore) which the widget can then read and display.
+ * 
+ * Every export takes the save timestamp as Unix seconds (whole or, where the
+ * type allows, fractional); the plugin stores milliseconds.
  */
 public class SaveGameWidgetPlugin extends GodotPlugin {
     
-    private static final String PREFS_NAME = "YouGameSaveData";
+    private static final String TAG = "SaveGameWidget";
+    private static final String WIDGET_DATA_TEXT_FILE = "widget_data.txt";
+    
+    private final WidgetDataEncoder widgetDataEncoder = new WidgetDataEncoder();
+    private final WidgetDataPublisher widgetDataPublisher = new WidgetDataPublisher();
+    private final WidgetSnapshot snapshot = new WidgetSnapshot();
+    private int widgetDataSequence = 0;
+    private SaveHistoryWriter saveHistory = null;
+    private final MinimapTileEncoder minimapEncoder = new MinimapTileEncoder();
+    private long minimapGeneration = 0;
     
     public SaveGameWidgetPlugin(Godot godot) {
         super(godot);
@@ -30,9 +45,9 @@ public class SaveGameWidgetPlugin extends GodotPlugin {
     }
     
     /**
-     * Export save data to SharedPreferences for the widget to read
+     * Export save data to the widget data store for the widget to read
      * 
-     * @param timestamp Unix timestamp of the save
+     * @param timestamp Unix timestamp of the save in seconds
      * @param dayCount Current day count
      * @param currentHealth Player's current health (0-100)
      * @param torchCount Number of torches in inventory
@@ -47,23 +62,326 @@ public class SaveGameWidgetPlugin extends GodotPlugin {
             return;
         }
         
-        SharedPreferences prefs = activity.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-        
-        editor.putLong("timestamp", timestamp);
-        editor.putInt("day_count", dayCount);
-        editor.putFloat("current_health", currentHealth);
-        editor.putInt("torch_count", torchCount);
-        editor.putFloat("position_x", positionX);
-        editor.putFloat("position_y", positionY);
-        editor.putFloat("position_z", positionZ);
+        WidgetDataStore store = WidgetDataStore.getInstance(activity);
+        if (store == null) {
+            return;
+        }
         
-        editor.apply();
+        // Keep the error fields of the previous export; the store holds milliseconds
+        synchronized (this) {
+            store.read(snapshot);
+            snapshot.timestamp = timestamp * 1000;
+            snapshot.dayCount = dayCount;
+            snapshot.currentHealth = currentHealth;
+            snapshot.torchCount = torchCount;
+            snapshot.positionX = positionX;
+            snapshot.positionY = positionY;
+            snapshot.positionZ = positionZ;
+            store.write(snapshot);
+        }
+        appendHistory(activity, timestamp * 1000, dayCount, currentHealth, torchCount,
+            positionX, positionZ);
         
         // Trigger widget update
         SaveGameWidgetProvider.requestWidgetUpdate(activity);
     }
     
+    /**
+     * Export save data as the binary widget data file for the standalone widget app
+     * 
+     * Writes widget_data.bin (see WidgetDataEncoder) into the game's external files
+     * directory, next to the widget_data.txt written by the game script.
+     * 
+     * @param timestamp Unix timestamp of the save in seconds, like exportSaveData
+     * @param lastError Last game error message, shown on the widget
+     * @return true if the file was written
+     */
+    public synchronized boolean exportWidgetData(long timestamp, int dayCount, float currentHealth,
+                                                 int torchCount, float positionX, float positionZ,
+                                                 int errorCount, int totalLogCount, String lastError) {
+        Activity activity = getActivity();
+        if (activity == null) {
+            return false;
+        }
+        
+        File dir = activity.getExternalFilesDir(null);
+        if (dir == null) {
+            return false;
+        }
+        
+        // The file and the history hold milliseconds
+        long timestampMillis = timestamp * 1000;
+        appendHistory(activity, timestampMillis, dayCount, currentHealth, torchCount, positionX, positionZ);
+        try {
+            ByteBuffer encoded = widgetDataEncoder.encode(++widgetDataSequence,
+                timestampMillis, dayCount, currentHealth, torchCount, positionX, positionZ,
+                errorCount, totalLogCount, lastError);
+            widgetDataPublisher.publish(new File(dir, WidgetDataEncoder.FILE_NAME),
+                encoded.array(), 0, encoded.limit());
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write binary widget data", e);
+            return false;
+        }
+    }
+    
+    /**
+     * Publish the key=value widget_data.txt for the standalone widget app
+     * 
+     * The file is replaced atomically and gets sequence and checksum lines
+     * (see WidgetDataPublisher), so the widget never reads a half-written file.
+     * The snapshot is also written to the widget data store, which the plugin
+     * widget and SaveDataProvider serve, and appended to the history the
+     * widget draws trends from. Ends with one widget update request, which
+     * also notifies the provider's observers.
+     * 
+     * @param content The key=value lines, as the game would write them; the
+     *                timestamp is in Unix seconds
+     * @return true if the file was written
+     */
+    public synchronized boolean publishWidgetDataText(String content) {
+        Activity activity = getActivity();
+        if (activity == null || content == null) {
+            return false;
+        }
+        
+        File dir = activity.getExternalFilesDir(null);
+        if (dir == null) {
+            return false;
+        }
+        
+        WidgetDataStore store = WidgetDataStore.getInstance(activity);
+        snapshot.fromText(content);
+        if (store != null) {
+            store.write(snapshot);
+        }
+        appendHistory(activity, snapshot.timestamp, snapshot.dayCount, snapshot.currentHealth,
+            snapshot.torchCount, snapshot.positionX, snapshot.positionZ);
+        boolean written;
+        try {
+            widgetDataPublisher.publishText(new File(dir, WIDGET_DATA_TEXT_FILE), content);
+            written = true;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write widget data text", e);
+            written = false;
+        }
+        
+        SaveGameWidgetProvider.requestWidgetUpdate(activity);
+        return written;
+    }
+    
+    /**
+     * Export the explored-area minimap snapshot for the standalone widget app
+     * 
+     * Written to widget_minimap.bin (see MinimapTileEncoder). Call it before
+     * exporting the save data: the widget redraws when the data file changes
+     * and picks up the new minimap then.
+     * 
+     * @param tiles One MinimapTileEncoder.TILE_* index per tile, row-major
+     * @param width Tiles per row (at most 128)
+     * @param height Rows (at most 128)
+     * @param playerX Player tile column
+     * @param playerY Player tile row
+     * @return true if the file was written
+     */
+    public synchronized boolean exportMinimap(byte[] tiles, int width, int height,
+                                              int playerX, int playerY) {
+        Activity activity = getActivity();
+        if (activity == null) {
+            return false;
+        }
+        
+        File dir = activity.getExternalFilesDir(null);
+        if (dir == null) {
+            return false;
+        }
+        
+        try {
+            // Unique across game restarts, so the widget never mistakes a new snapshot for the old one
+            minimapGeneration = Math.max(minimapGeneration + 1, System.currentTimeMillis());
+            ByteBuffer encoded = minimapEncoder.encode(minimapGeneration, tiles, width, height,
+                playerX, playerY);
+            widgetDataPublisher.publish(new File(dir, MinimapTileEncoder.FILE_NAME),
+                encoded.array(), 0, encoded.limit());
+            return true;
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Invalid minimap snapshot: " + e.getMessage());
+            return false;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write minimap snapshot", e);
+            return false;
+        }
+    }
+    
+    /**
+     * Choose how widget data files are flushed to storage
+     * 
+     * @param policy 0 = never fsync, 1 = fsync every export,
+     *               2 = group commit: at most one fsync per interval
+     * @param groupCommitMillis Interval for policy 2
+     */
+    public void configureWidgetDataSync(int policy, int groupCommitMillis) {
+        try {
+            widgetDataPublisher.setSyncPolicy(policy, groupCommitMillis);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Invalid widget data sync settings: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Export a whole widget snapshot in one call
+     * 
+     * The payload is packed as described in WidgetSnapshot (a PackedByteArray
+     * built with StreamPeerBuffer). Fields are decoded straight from the bytes
+     * and stored in one widget data store write plus one widget_data.bin write,
+     * followed by a single widget update request.
+     * 
+     * @param payload Packed snapshot, with the timestamp in Unix seconds (a double)
+     * @return true if the snapshot was stored for both widgets
+     */
+    public synchronized boolean exportSnapshot(byte[] payload) {
+        try {
+            snapshot.decode(payload);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Invalid widget snapshot: " + e.getMessage());
+            return false;
+        }
+        return publishSnapshot(snapshot);
+    }
+    
+    /**
+     * Export a whole widget snapshot in one call, from a Dictionary with the
+     * widget_data.txt keys (timestamp, day_count, current_health, torch_count,
+     * position_x, position_y, position_z, error_count, total_log_count, last_error);
+     * the timestamp is in Unix seconds and may be fractional
+     * 
+     * @return true if the snapshot was stored for both widgets
+     */
+    public synchronized boolean exportSnapshotDictionary(Dictionary values) {
+        if (values == null) {
+            return false;
+        }
+        return publishSnapshot(snapshot.fromMap(values));
+    }
+    
+    /**
+     * Store a snapshot for both widgets and request one update
+     */
+    private boolean publishSnapshot(WidgetSnapshot data) {
+        Activity activity = getActivity();
+        if (activity == null) {
+            return false;
+        }
+        
+        // One write for all fields; only the changed ones touch the file
+        WidgetDataStore store = WidgetDataStore.getInstance(activity);
+        if (store != null) {
+            store.write(data);
+        }
+        
+        appendHistory(activity, data.timestamp, data.dayCount, data.currentHealth, data.torchCount,
+            data.positionX, data.positionZ);
+        
+        boolean written = store != null;
+        File dir = activity.getExternalFilesDir(null);
+        if (dir != null) {
+            try {
+                ByteBuffer encoded = widgetDataEncoder.encode(++widgetDataSequence,
+                    data.timestamp, data.dayCount, data.currentHealth, data.torchCount,
+                    data.positionX, data.positionZ, data.errorCount, data.totalLogCount, data.lastError);
+                widgetDataPublisher.publish(new File(dir, WidgetDataEncoder.FILE_NAME),
+                    encoded.array(), 0, encoded.limit());
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to write binary widget data", e);
+                written = false;
+            }
+        } else {
+            written = false;
+        }
+        
+        SaveGameWidgetProvider.requestWidgetUpdate(activity);
+        return written;
+    }
+    
+    /**
+     * Add a save to the history ring buffer (widget_history.bin) the
+     * standalone widget draws trends from. The file has a fixed size;
+     * failures only cost the trend, so they are logged and ignored.
+     */
+    private synchronized void appendHistory(Activity activity, long timestamp, int dayCount,
+                                            float currentHealth, int torchCount,
+                                            float positionX, float positionZ) {
+        if (timestamp <= 0) {
+            return;
+        }
+        try {
+            if (saveHistory == null) {
+                File dir = activity.getExternalFilesDir(null);
+                if (dir == null) {
+                    return;
+                }
+                saveHistory = new SaveHistoryWriter(new File(dir, SaveHistoryWriter.FILE_NAME));
+            }
+            saveHistory.append(timestamp, dayCount, currentHealth, torchCount, positionX, positionZ);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to append save history", e);
+        }
+    }
+    
+    /**
+     * Send any pending widget update right away instead of waiting for the
+     * coalescing window, e.g. before the game quits
+     */
+    public void flushWidgetUpdate() {
+        Activity activity = getActivity();
+        if (activity != null) {
+            SaveGameWidgetProvider.flushWidgetUpdate(activity);
+        }
+    }
+    
+    /**
+     * Tune widget update coalescing
+     * 
+     * @param windowMillis Requests within this window are merged into one update
+     * @param minIntervalMillis Minimum time between two widget redraws
+     */
+    public void configureWidgetUpdates(int windowMillis, int minIntervalMillis) {
+        Activity activity = getActivity();
+        if (activity != null) {
+            SaveGameWidgetProvider.configureUpdateCoalescing(activity, windowMillis, minIntervalMillis);
+        }
+    }
+    
+    /**
+     * Widget update statistics for tuning: coalescing (requests, delivered, merged),
+     * rendering (skipped and partial pushes, estimated IPC bytes saved) and
+     * data file publishing (files published, fsyncs)
+     */
+    public String getWidgetUpdateStats() {
+        Activity activity = getActivity();
+        if (activity == null) {
+            return "";
+        }
+        return SaveGameWidgetProvider.getUpdateCoalescingStats(activity)
+            + " " + SaveGameWidgetProvider.getRenderStats()
+            + " " + widgetDataPublisher.getStats();
+    }
+    
+    @Override
+    public void onMainPause() {
+        super.onMainPause();
+        // The game may not come back; don't leave the widget showing stale data
+        flushWidgetUpdate();
+        widgetDataPublisher.flush();
+    }
+    
+    @Override
+    public void onMainDestroy() {
+        flushWidgetUpdate();
+        widgetDataPublisher.flush();
+        super.onMainDestroy();
+    }
+    
     /**
      * Clear saved widget data
      */
@@ -73,8 +391,10 @@ public class SaveGameWidgetPlugin extends GodotPlugin {
             return;
         }
         
-        SharedPreferences prefs = activity.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        prefs.edit().clear().apply();
+        WidgetDataStore store = WidgetDataStore.getInstance(activity);
+        if (store != null) {
+            store.clear();
+        }
         
         // Trigger widget update to show "no data"
         SaveGameWidgetProvider.requestWidgetUpdate(activity);
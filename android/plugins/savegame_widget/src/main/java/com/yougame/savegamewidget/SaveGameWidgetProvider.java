@@ -6,12 +6,13 @@ import android.appwidget.AppWidgetProvider;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.widget.RemoteViews;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
+import java.util.Arrays;
 
 /**
  * SaveGameWidgetProvider - Android Widget displaying savegame metrics and metadata
@@ -23,20 +24,104 @@ import java.util.Locale;
  * - Torch inventory count
  * - Player position
  * 
- * The data is stored in SharedPreferences by the SaveGameMetadataExporter
- * singleton in the Godot game.
+ * The data is stored in the widget data store (WidgetDataStore) by the
+ * SaveGameMetadataExporter singleton in the Godot game.
  */
 public class SaveGameWidgetProvider extends AppWidgetProvider {
     
-    private static final String PREFS_NAME = "YouGameSaveData";
     private static final String ACTION_UPDATE = "com.yougame.savegamewidget.UPDATE_WIDGET";
     
-    @Override
-    public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
-        // Update all instances of the widget
-        for (int appWidgetId : appWidgetIds) {
-            updateAppWidget(context, appWidgetManager, appWidgetId);
+    // Text fields of the widget layout, in render state order
+    private static final int FIELD_SAVE_TIME = 0;
+    private static final int FIELD_DAY = 1;
+    private static final int FIELD_HEALTH = 2;
+    private static final int FIELD_TORCHES = 3;
+    private static final int FIELD_POSITION = 4;
+    private static final int[] FIELD_VIEW_IDS = {
+        R.id.widget_save_time, R.id.widget_day_value, R.id.widget_health_value,
+        R.id.widget_torches_value, R.id.widget_position_value
+    };
+    
+    // What was last pushed to each widget, to skip or shrink unchanged updates
+    private static final WidgetRenderState RENDER_STATE = new WidgetRenderState(FIELD_VIEW_IDS.length);
+    
+    // Layout and shown fields per size bucket; standard and expanded share the full layout
+    private static final WidgetSizeTemplates TEMPLATES = new WidgetSizeTemplates(WidgetSizeTemplates.STANDARD);
+    static {
+        TEMPLATES.setTemplate(WidgetSizeTemplates.COMPACT, R.layout.savegame_widget_layout_compact,
+            FIELD_DAY, FIELD_HEALTH, FIELD_TORCHES);
+        TEMPLATES.setTemplate(WidgetSizeTemplates.STANDARD, R.layout.savegame_widget_layout,
+            FIELD_SAVE_TIME, FIELD_DAY, FIELD_HEALTH, FIELD_TORCHES, FIELD_POSITION);
+        TEMPLATES.setTemplate(WidgetSizeTemplates.EXPANDED, R.layout.savegame_widget_layout,
+            FIELD_SAVE_TIME, FIELD_DAY, FIELD_HEALTH, FIELD_TORCHES, FIELD_POSITION);
+    }
+    
+    // Field text buffers, one set per rendering thread so renders allocate no text
+    private static final ThreadLocal<WidgetFieldFormatter> FORMATTER = new ThreadLocal<WidgetFieldFormatter>() {
+        @Override
+        protected WidgetFieldFormatter initialValue() {
+            return new WidgetFieldFormatter(FIELD_VIEW_IDS.length, "MMM dd, HH:mm");
         }
+    };
+    
+    // Update executor key for refreshes of every widget instance
+    private static final String UPDATE_ALL_KEY = "update:all";
+    
+    // Coalesce update requests from frequent exports into fewer redraws
+    private static final long UPDATE_WINDOW_MS = 1000;
+    private static final long UPDATE_MIN_INTERVAL_MS = 2000;
+    
+    private static UpdateCoalescer updateCoalescer = null;
+    
+    // Last snapshot read from the data store; re-read only when its generation changes
+    private static final WidgetSnapshot SAVE_DATA = new WidgetSnapshot();
+    private static long saveDataGeneration = -1;
+    
+    @Override
+    public void onUpdate(Context context, final AppWidgetManager appWidgetManager, final int[] appWidgetIds) {
+        // Preference reads and RemoteViews work run on the update thread;
+        // goAsync keeps the broadcast alive until they are done
+        final Context appContext = context.getApplicationContext();
+        final PendingResult result = goAsync();
+        WidgetUpdateExecutor.getInstance().execute(updateKey(appWidgetIds), new Runnable() {
+            @Override
+            public void run() {
+                // Update all instances of the widget
+                for (int appWidgetId : appWidgetIds) {
+                    updateAppWidget(appContext, appWidgetManager, appWidgetId);
+                }
+            }
+        }, finisher(result));
+    }
+    
+    @Override
+    public void onDeleted(Context context, int[] appWidgetIds) {
+        // A reused id must start with a full update
+        RENDER_STATE.forget(appWidgetIds);
+        TEMPLATES.forget(appWidgetIds);
+    }
+    
+    @Override
+    public void onAppWidgetOptionsChanged(Context context, final AppWidgetManager appWidgetManager,
+                                          final int appWidgetId, final Bundle newOptions) {
+        // Resized: redraw with another template if the size bucket changed
+        final Context appContext = context.getApplicationContext();
+        final PendingResult result = goAsync();
+        WidgetUpdateExecutor.getInstance().execute("options:" + appWidgetId, new Runnable() {
+            @Override
+            public void run() {
+                if (applySize(appWidgetId, newOptions)) {
+                    updateAppWidget(appContext, appWidgetManager, appWidgetId);
+                }
+            }
+        }, finisher(result));
+    }
+    
+    @Override
+    public void onEnabled(Context context) {
+        // First widget placed; nothing has been pushed to it yet
+        RENDER_STATE.clear();
+        TEMPLATES.clear();
     }
     
     @Override
@@ -44,78 +129,268 @@ public class SaveGameWidgetProvider extends AppWidgetProvider {
         super.onReceive(context, intent);
         
         if (ACTION_UPDATE.equals(intent.getAction())) {
-            // Manual update trigger from the game
-            AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
-            ComponentName thisWidget = new ComponentName(context, SaveGameWidgetProvider.class);
-            int[] appWidgetIds = appWidgetManager.getAppWidgetIds(thisWidget);
-            onUpdate(context, appWidgetManager, appWidgetIds);
+            // Manual update trigger from the game; looking up the widget ids
+            // is a binder call, so it runs on the update thread as well
+            final Context appContext = context.getApplicationContext();
+            final PendingResult result = goAsync();
+            WidgetUpdateExecutor.getInstance().execute(UPDATE_ALL_KEY, new Runnable() {
+                @Override
+                public void run() {
+                    AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(appContext);
+                    ComponentName thisWidget = new ComponentName(appContext, SaveGameWidgetProvider.class);
+                    int[] appWidgetIds = appWidgetManager.getAppWidgetIds(thisWidget);
+                    for (int appWidgetId : appWidgetIds) {
+                        updateAppWidget(appContext, appWidgetManager, appWidgetId);
+                    }
+                }
+            }, finisher(result));
+        }
+    }
+    
+    /**
+     * Key for an onUpdate batch, so repeated updates of the same widgets replace each other
+     */
+    private static String updateKey(int[] appWidgetIds) {
+        int[] sorted = appWidgetIds.clone();
+        Arrays.sort(sorted);
+        return "update:" + Arrays.toString(sorted);
+    }
+    
+    /**
+     * Callback that finishes an async broadcast; null-safe
+     */
+    private static Runnable finisher(final PendingResult result) {
+        if (result == null) {
+            return null;
         }
+        return new Runnable() {
+            @Override
+            public void run() {
+                result.finish();
+            }
+        };
     }
     
     private static void updateAppWidget(Context context, AppWidgetManager appWidgetManager,
                                        int appWidgetId) {
-        // Create RemoteViews object
-        RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.savegame_widget_layout);
+        WidgetSizeTemplates.Template template = templateFor(appWidgetManager, appWidgetId);
+        WidgetFieldFormatter formatter = FORMATTER.get();
         
-        // Read save data from SharedPreferences
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        // Read save data from the data store
+        WidgetSnapshot data = readSaveData(context);
         
         // Check if save data exists
-        long timestamp = prefs.getLong("timestamp", 0);
+        long timestamp = data != null ? data.timestamp : 0;
         
         if (timestamp > 0) {
-            // Format timestamp
-            Date saveDate = new Date(timestamp * 1000); // Convert from Unix timestamp
-            SimpleDateFormat sdf = new SimpleDateFormat("MMM dd, HH:mm", Locale.getDefault());
-            String formattedDate = sdf.format(saveDate);
-            views.setTextViewText(R.id.widget_save_time, "Last saved: " + formattedDate);
+            // Only the fields the widget's layout shows
+            if (template.shows(FIELD_SAVE_TIME)) {
+                // Format timestamp (reformatted at most once per minute)
+                StringBuilder saveTime = formatter.begin(FIELD_SAVE_TIME).append("Last saved: ");
+                formatter.appendTimestamp(saveTime, timestamp);
+            }
             
             // Day count
-            int dayCount = prefs.getInt("day_count", 1);
-            views.setTextViewText(R.id.widget_day_value, String.valueOf(dayCount));
+            if (template.shows(FIELD_DAY)) {
+                formatter.begin(FIELD_DAY).append(data.dayCount);
+            }
             
             // Health
-            float health = prefs.getFloat("current_health", 100.0f);
-            views.setTextViewText(R.id.widget_health_value, String.format(Locale.US, "%.0f%%", health));
+            if (template.shows(FIELD_HEALTH)) {
+                StringBuilder health = formatter.begin(FIELD_HEALTH);
+                WidgetFieldFormatter.appendRounded(health, data.currentHealth);
+                health.append('%');
+            }
             
             // Torches
-            int torches = prefs.getInt("torch_count", 0);
-            views.setTextViewText(R.id.widget_torches_value, String.valueOf(torches));
+            if (template.shows(FIELD_TORCHES)) {
+                formatter.begin(FIELD_TORCHES).append(data.torchCount);
+            }
             
             // Position
-            float posX = prefs.getFloat("position_x", 0.0f);
-            float posZ = prefs.getFloat("position_z", 0.0f);
-            String position = String.format(Locale.US, "%.0f, %.0f", posX, posZ);
-            views.setTextViewText(R.id.widget_position_value, position);
+            if (template.shows(FIELD_POSITION)) {
+                StringBuilder position = formatter.begin(FIELD_POSITION);
+                WidgetFieldFormatter.appendRounded(position, data.positionX);
+                position.append(", ");
+                WidgetFieldFormatter.appendRounded(position, data.positionZ);
+            }
             
         } else {
             // No save data available
-            views.setTextViewText(R.id.widget_save_time, context.getString(R.string.no_save_data));
-            views.setTextViewText(R.id.widget_day_value, "--");
-            views.setTextViewText(R.id.widget_health_value, "--");
-            views.setTextViewText(R.id.widget_torches_value, "--");
-            views.setTextViewText(R.id.widget_position_value, "--");
+            formatter.set(FIELD_SAVE_TIME, context.getString(R.string.no_save_data));
+            formatter.set(FIELD_DAY, "--");
+            formatter.set(FIELD_HEALTH, "--");
+            formatter.set(FIELD_TORCHES, "--");
+            formatter.set(FIELD_POSITION, "--");
         }
         
-        // Set up click handler to launch the game
-        Intent launchIntent = context.getPackageManager().getLaunchIntentForPackage(context.getPackageName());
-        if (launchIntent != null) {
-            PendingIntent pendingIntent = PendingIntent.getActivity(context, 0, launchIntent, 
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-            views.setOnClickPendingIntent(R.id.widget_title, pendingIntent);
+        // Fields this widget's layout doesn't show are neither compared nor sent
+        formatter.retain(template.fieldMask);
+        CharSequence[] fields = formatter.getFields();
+        int changed = RENDER_STATE.diff(appWidgetId, fields);
+        if (changed == 0) {
+            // Same content as on screen, skip the IPC and re-inflation
+            RENDER_STATE.record(appWidgetId, fields, changed);
+            return;
         }
         
-        // Update the widget
-        appWidgetManager.updateAppWidget(appWidgetId, views);
+        // Only the changed fields become Strings, for RemoteViews and the render state
+        fields = formatter.toPushed(changed);
+        
+        // Create RemoteViews object
+        RemoteViews views = new RemoteViews(context.getPackageName(), template.layoutId);
+        for (int i = 0; i < FIELD_VIEW_IDS.length; i++) {
+            if (template.shows(i) && WidgetRenderState.isChanged(changed, i)) {
+                views.setTextViewText(FIELD_VIEW_IDS[i], fields[i]);
+            }
+        }
+        
+        if (changed == WidgetRenderState.FULL_UPDATE) {
+            // Set up click handler to launch the game; partial updates keep it
+            Intent launchIntent = context.getPackageManager().getLaunchIntentForPackage(context.getPackageName());
+            if (launchIntent != null) {
+                PendingIntent pendingIntent = PendingIntent.getActivity(context, 0, launchIntent, 
+                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+                views.setOnClickPendingIntent(R.id.widget_title, pendingIntent);
+            }
+            
+            // Update the widget
+            appWidgetManager.updateAppWidget(appWidgetId, views);
+        } else {
+            // Send only the changed fields
+            appWidgetManager.partiallyUpdateAppWidget(appWidgetId, views);
+        }
+        RENDER_STATE.record(appWidgetId, fields, changed);
+    }
+    
+    /**
+     * The widget's template. Its size is looked up once; later changes come
+     * through onAppWidgetOptionsChanged.
+     */
+    private static WidgetSizeTemplates.Template templateFor(AppWidgetManager appWidgetManager, int appWidgetId) {
+        WidgetSizeTemplates.Template template = TEMPLATES.get(appWidgetId);
+        if (template == null) {
+            applySize(appWidgetId, appWidgetManager.getAppWidgetOptions(appWidgetId));
+            template = TEMPLATES.get(appWidgetId);
+        }
+        return template;
+    }
+    
+    /**
+     * Record a widget's size from its options (portrait: minimum width, maximum height)
+     * 
+     * @return true if its template changed; the next push is then a full update
+     */
+    private static boolean applySize(int appWidgetId, Bundle options) {
+        int widthDp = options != null ? options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH) : 0;
+        int heightDp = options != null ? options.getInt(AppWidgetManager.OPTION_APPWIDGET_MAX_HEIGHT) : 0;
+        if (!TEMPLATES.setSize(appWidgetId, widthDp, heightDp)) {
+            return false;
+        }
+        RENDER_STATE.forget(new int[] {appWidgetId});
+        return true;
+    }
+    
+    /**
+     * Current save data, or null if the store can't be opened. The store is
+     * only read when its generation changed since the last call.
+     */
+    private static WidgetSnapshot readSaveData(Context context) {
+        WidgetDataStore store = WidgetDataStore.getInstance(context);
+        if (store == null) {
+            return null;
+        }
+        synchronized (SAVE_DATA) {
+            long generation = store.getGeneration();
+            if (generation != saveDataGeneration) {
+                if (store.read(SAVE_DATA) == 0) {
+                    // Nothing stored yet (or no valid slot)
+                    SAVE_DATA.timestamp = 0;
+                }
+                saveDataGeneration = generation;
+            }
+            return SAVE_DATA;
+        }
+    }
+    
+    /**
+     * Render statistics: renders, pushes skipped, partial and full pushes, estimated IPC bytes saved,
+     * widgets per size bucket
+     */
+    public static String getRenderStats() {
+        return "renders=" + RENDER_STATE.getRenderCount()
+            + " skipped=" + RENDER_STATE.getSkippedCount()
+            + " partial=" + RENDER_STATE.getPartialCount()
+            + " full=" + RENDER_STATE.getFullCount()
+            + " bytesSaved=" + RENDER_STATE.getBytesSaved()
+            + " " + TEMPLATES.getBucketStats();
     }
     
     /**
      * Trigger an update of all widget instances
      * This can be called from the Godot plugin
+     * 
+     * Requests are coalesced: bursts within the update window become one
+     * broadcast, and broadcasts are at least the minimum interval apart.
+     * Observers of SaveDataProvider are notified along with each broadcast.
      */
     public static void requestWidgetUpdate(Context context) {
-        Intent intent = new Intent(context, SaveGameWidgetProvider.class);
-        intent.setAction(ACTION_UPDATE);
-        context.sendBroadcast(intent);
+        getUpdateCoalescer(context).request();
+    }
+    
+    /**
+     * Send a pending coalesced update immediately (game paused or closed)
+     */
+    public static void flushWidgetUpdate(Context context) {
+        getUpdateCoalescer(context).flushNow();
+    }
+    
+    /**
+     * Change the coalescing window and minimum interval between update broadcasts
+     */
+    public static void configureUpdateCoalescing(Context context, long windowMillis, long minIntervalMillis) {
+        getUpdateCoalescer(context).configure(windowMillis, minIntervalMillis);
+    }
+    
+    /**
+     * Coalescer statistics: requests, broadcasts sent and requests merged
+     */
+    public static String getUpdateCoalescingStats(Context context) {
+        UpdateCoalescer coalescer = getUpdateCoalescer(context);
+        return "requests=" + coalescer.getRequestCount()
+            + " delivered=" + coalescer.getDeliveredCount()
+            + " merged=" + coalescer.getMergedCount();
+    }
+    
+    private static synchronized UpdateCoalescer getUpdateCoalescer(Context context) {
+        if (updateCoalescer == null) {
+            final Context appContext = context.getApplicationContext();
+            final Handler handler = new Handler(Looper.getMainLooper());
+            updateCoalescer = new UpdateCoalescer(
+                new UpdateCoalescer.Clock() {
+                    @Override
+                    public long uptimeMillis() {
+                        return SystemClock.uptimeMillis();
+                    }
+                },
+                new UpdateCoalescer.Scheduler() {
+                    @Override
+                    public void schedule(Runnable task, long delayMillis) {
+                        handler.postDelayed(task, delayMillis);
+                    }
+                },
+                UPDATE_WINDOW_MS, UPDATE_MIN_INTERVAL_MS,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        Intent intent = new Intent(appContext, SaveGameWidgetProvider.class);
+                        intent.setAction(ACTION_UPDATE);
+                        appContext.sendBroadcast(intent);
+                        // The standalone widget app observes the snapshot
+                        SaveDataProvider.notifyChanged(appContext);
+                    }
+                });
+        }
+        return updateCoalescer;
     }
 }
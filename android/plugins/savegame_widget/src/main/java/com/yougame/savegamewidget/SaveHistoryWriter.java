@@ -0,0 +1,132 @@
+package com.yougame.savegamewidget;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * SaveHistoryWriter - Appends saves to the fixed-size history file (widget_history.bin)
+ *
+ * The file is a ring buffer of the last CAPACITY saves, read by the standalone
+ * widget app (com.yougame.widget.SaveHistoryReader) to draw trends. Its size
+ * never changes: once full, each append overwrites the oldest record. The
+ * file is memory-mapped and records are written in place. All numbers are
+ * big-endian.
+ *
+ * Layout (version 1):
+ *   offset  size  field
+ *        0     4  magic "YGWH"
+ *        4     2  version
+ *        6     2  record size (32)
+ *        8     4  capacity (number of record slots)
+ *       12     4  reserved
+ *       16     8  append count (records ever appended)
+ *       24     8  reserved
+ *       32        records; record i is in slot i % capacity
+ *
+ * Record:
+ *        0     8  timestamp (Unix time, milliseconds)
+ *        8     4  day_count
+ *       12     4  current_health (float)
+ *       16     4  torch_count
+ *       20     4  position_x (float)
+ *       24     4  position_z (float)
+ *       28     4  CRC32 of record bytes [0, 28)
+ *
+ * A record is written before the append count is raised, so readers never
+ * see a count that includes a half-written record; the CRC catches a reader
+ * racing the overwrite of the oldest slot.
+ *
+ * Not thread-safe; SaveGameWidgetPlugin serializes access.
+ */
+public class SaveHistoryWriter {
+
+    public static final String FILE_NAME = "widget_history.bin";
+    public static final int MAGIC = 0x59475748; // "YGWH"
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    public static final int RECORD_SIZE = 32;
+    public static final int CAPACITY = 64;
+
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_RECORD_SIZE = 6;
+    private static final int OFFSET_CAPACITY = 8;
+    private static final int OFFSET_APPEND_COUNT = 16;
+    private static final int RECORD_CHECKSUM = 28;
+
+    private final MappedByteBuffer map;
+    private final byte[] record = new byte[RECORD_SIZE];
+    private final ByteBuffer recordBuffer = ByteBuffer.wrap(record);
+    private final CRC32 crc = new CRC32();
+
+    public SaveHistoryWriter(File file) throws IOException {
+        int size = HEADER_SIZE + CAPACITY * RECORD_SIZE;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            boolean valid = raf.length() == size;
+            raf.setLength(size);
+            // The mapping stays valid after the channel is closed
+            map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            valid = valid
+                && map.getInt(0) == MAGIC
+                && map.getShort(OFFSET_VERSION) == VERSION
+                && map.getShort(OFFSET_RECORD_SIZE) == RECORD_SIZE
+                && map.getInt(OFFSET_CAPACITY) == CAPACITY;
+            if (!valid) {
+                // New file or another layout: start an empty history
+                for (int i = 0; i < size; i++) {
+                    map.put(i, (byte) 0);
+                }
+                map.putInt(0, MAGIC);
+                map.putShort(OFFSET_VERSION, VERSION);
+                map.putShort(OFFSET_RECORD_SIZE, (short) RECORD_SIZE);
+                map.putInt(OFFSET_CAPACITY, CAPACITY);
+            }
+        }
+    }
+
+    /**
+     * Append one save, unless it has the same timestamp as the last record
+     * (the same save exported again)
+     *
+     * @return true if a record was appended
+     */
+    public boolean append(long timestamp, int dayCount, float currentHealth, int torchCount,
+                          float positionX, float positionZ) {
+        long count = getAppendCount();
+        if (count > 0 && map.getLong(recordOffset(count - 1)) == timestamp) {
+            return false;
+        }
+
+        recordBuffer.putLong(0, timestamp);
+        recordBuffer.putInt(8, dayCount);
+        recordBuffer.putFloat(12, currentHealth);
+        recordBuffer.putInt(16, torchCount);
+        recordBuffer.putFloat(20, positionX);
+        recordBuffer.putFloat(24, positionZ);
+        crc.reset();
+        crc.update(record, 0, RECORD_CHECKSUM);
+        recordBuffer.putInt(RECORD_CHECKSUM, (int) crc.getValue());
+
+        int offset = recordOffset(count);
+        for (int i = 0; i < RECORD_SIZE; i++) {
+            map.put(offset + i, record[i]);
+        }
+        map.putLong(OFFSET_APPEND_COUNT, count + 1);
+        return true;
+    }
+
+    /**
+     * Number of records ever appended; the file holds the last min(count, CAPACITY)
+     */
+    public long getAppendCount() {
+        return map.getLong(OFFSET_APPEND_COUNT);
+    }
+
+    private static int recordOffset(long index) {
+        return HEADER_SIZE + (int) (index % CAPACITY) * RECORD_SIZE;
+    }
+}
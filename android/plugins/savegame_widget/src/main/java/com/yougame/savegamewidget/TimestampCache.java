@@ -0,0 +1,70 @@
+package com.yougame.savegamewidget;
+
+import java.text.FieldPosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * TimestampCache - Formats timestamps at most once per minute
+ *
+ * The pattern has minute resolution; the formatted text is reused until the
+ * minute changes, so formatting a timestamp usually just copies characters.
+ * Changes of the default locale are picked up immediately, changes of the
+ * default time zone when the minute changes.
+ *
+ * Not thread-safe; keep one instance per thread.
+ */
+final class TimestampCache {
+
+    private final String pattern;
+    private final Date date = new Date();
+    private final StringBuffer formatted = new StringBuffer(32);
+    private final FieldPosition fieldPosition = new FieldPosition(0);
+    private SimpleDateFormat format;
+    private Locale locale;
+    private String timeZoneId;
+    private long cachedMinute = Long.MIN_VALUE;
+
+    /**
+     * @param pattern SimpleDateFormat pattern without seconds or finer fields
+     */
+    TimestampCache(String pattern) {
+        this.pattern = pattern;
+    }
+
+    /**
+     * Append millis formatted with the pattern
+     */
+    void append(StringBuilder out, long millis) {
+        long minute = Math.floorDiv(millis, 60_000L);
+        if (minute != cachedMinute || Locale.getDefault() != locale) {
+            String zone = TimeZone.getDefault().getID();
+            if (format == null || Locale.getDefault() != locale || !zone.equals(timeZoneId)) {
+                locale = Locale.getDefault();
+                timeZoneId = zone;
+                format = new SimpleDateFormat(pattern, locale);
+            }
+            date.setTime(millis);
+            formatted.setLength(0);
+            format.format(date, formatted, fieldPosition);
+            cachedMinute = minute;
+        }
+        out.append(formatted);
+    }
+
+    /**
+     * Append millis formatted with the pattern followed by ":ss"
+     */
+    void appendWithSeconds(StringBuilder out, long millis) {
+        append(out, millis);
+        // Time zone offsets are whole minutes, so seconds don't depend on the zone
+        int seconds = (int) (Math.floorMod(millis, 60_000L) / 1000);
+        out.append(':');
+        if (seconds < 10) {
+            out.append('0');
+        }
+        out.append(seconds);
+    }
+}
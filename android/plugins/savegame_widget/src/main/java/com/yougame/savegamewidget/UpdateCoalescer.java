@@ -0,0 +1,148 @@
+package com.yougame.savegamewidget;
+
+/**
+ * UpdateCoalescer - Gathers widget update requests into fewer redraws
+ *
+ * Requests arriving within the coalescing window are merged into a single
+ * delivery at the end of the window. Since a delivery makes the widget read
+ * the current data, the merged delivery always shows the latest state.
+ * Deliveries are also kept at least minInterval apart.
+ *
+ * flushNow() delivers a pending request immediately, e.g. when the game is
+ * paused or closed.
+ */
+public class UpdateCoalescer {
+
+    /**
+     * Monotonic time source in milliseconds
+     */
+    public interface Clock {
+        long uptimeMillis();
+    }
+
+    /**
+     * Runs a task after a delay
+     */
+    public interface Scheduler {
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    private final Clock clock;
+    private final Scheduler scheduler;
+    private final Runnable deliver;
+    private final Runnable check = new Runnable() {
+        @Override
+        public void run() {
+            onCheck();
+        }
+    };
+
+    private volatile long windowMillis;
+    private volatile long minIntervalMillis;
+
+    private boolean pending = false;
+    private long firstRequestAt = 0;
+    private long lastDeliveryAt = Long.MIN_VALUE;
+    private long requestCount = 0;
+    private long deliveredCount = 0;
+    private long mergedCount = 0;
+
+    public UpdateCoalescer(Clock clock, Scheduler scheduler,
+                           long windowMillis, long minIntervalMillis, Runnable deliver) {
+        this.clock = clock;
+        this.scheduler = scheduler;
+        this.windowMillis = windowMillis;
+        this.minIntervalMillis = minIntervalMillis;
+        this.deliver = deliver;
+    }
+
+    /**
+     * Change the coalescing window and minimum interval between deliveries
+     */
+    public void configure(long windowMillis, long minIntervalMillis) {
+        this.windowMillis = Math.max(0, windowMillis);
+        this.minIntervalMillis = Math.max(0, minIntervalMillis);
+    }
+
+    /**
+     * Request an update; merged with any request already waiting
+     */
+    public void request() {
+        long delay;
+        synchronized (this) {
+            requestCount++;
+            if (pending) {
+                mergedCount++;
+                return;
+            }
+            pending = true;
+            firstRequestAt = clock.uptimeMillis();
+            delay = dueAt() - firstRequestAt;
+        }
+        scheduler.schedule(check, Math.max(0, delay));
+    }
+
+    /**
+     * Deliver a pending request right away, ignoring window and interval
+     *
+     * @return true if a request was pending and has been delivered
+     */
+    public boolean flushNow() {
+        synchronized (this) {
+            if (!pending) {
+                return false;
+            }
+            markDelivered();
+        }
+        deliver.run();
+        return true;
+    }
+
+    private void onCheck() {
+        long wait;
+        synchronized (this) {
+            if (!pending) {
+                // Already flushed
+                return;
+            }
+            wait = dueAt() - clock.uptimeMillis();
+            if (wait <= 0) {
+                markDelivered();
+            }
+        }
+        if (wait > 0) {
+            scheduler.schedule(check, wait);
+        } else {
+            deliver.run();
+        }
+    }
+
+    private long dueAt() {
+        long endOfWindow = firstRequestAt + windowMillis;
+        if (lastDeliveryAt == Long.MIN_VALUE) {
+            return endOfWindow;
+        }
+        return Math.max(endOfWindow, lastDeliveryAt + minIntervalMillis);
+    }
+
+    private void markDelivered() {
+        pending = false;
+        deliveredCount++;
+        lastDeliveryAt = clock.uptimeMillis();
+    }
+
+    public synchronized long getRequestCount() {
+        return requestCount;
+    }
+
+    public synchronized long getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    /**
+     * Requests folded into an already pending delivery
+     */
+    public synchronized long getMergedCount() {
+        return mergedCount;
+    }
+}
@@ -0,0 +1,102 @@
+package com.yougame.savegamewidget;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * WidgetDataEncoder - Writes the binary widget data file (widget_data.bin)
+ *
+ * Binary counterpart of the key=value widget_data.txt, read by the standalone
+ * widget app (com.yougame.widget.BinaryWidgetDataReader). All numbers are
+ * big-endian.
+ *
+ * Layout (version 1):
+ *   offset  size  field
+ *        0     4  magic "YGWD"
+ *        4     2  version
+ *        6     2  flags (reserved, 0)
+ *        8     4  sequence (incremented by the writer on every export)
+ *       12     8  timestamp (Unix time, milliseconds)
+ *       20     4  day_count
+ *       24     4  current_health (float)
+ *       28     4  torch_count
+ *       32     4  position_x (float)
+ *       36     4  position_z (float)
+ *       40     4  error_count
+ *       44     4  total_log_count
+ *       48     2  last_error length n (UTF-8 bytes)
+ *       50     n  last_error
+ *     50+n     4  CRC32 of bytes [0, 50+n)
+ */
+public class WidgetDataEncoder {
+
+    public static final String FILE_NAME = "widget_data.bin";
+    public static final int MAGIC = 0x59475744; // "YGWD"
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 50;
+    public static final int CHECKSUM_SIZE = 4;
+    public static final int MAX_LAST_ERROR_BYTES = 1024;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + MAX_LAST_ERROR_BYTES + CHECKSUM_SIZE);
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Encode one snapshot into the internal buffer
+     *
+     * @return buffer positioned at 0 with the encoded bytes remaining
+     */
+    public ByteBuffer encode(int sequence, long timestamp, int dayCount, float currentHealth,
+                             int torchCount, float positionX, float positionZ,
+                             int errorCount, int totalLogCount, String lastError) {
+        byte[] errorBytes = lastError != null
+            ? lastError.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        int errorLength = Math.min(errorBytes.length, MAX_LAST_ERROR_BYTES);
+        if (errorLength < errorBytes.length) {
+            // Don't cut a multi-byte UTF-8 character in half
+            while (errorLength > 0 && (errorBytes[errorLength] & 0xC0) == 0x80) {
+                errorLength--;
+            }
+        }
+
+        buffer.clear();
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putShort((short) 0);
+        buffer.putInt(sequence);
+        buffer.putLong(timestamp);
+        buffer.putInt(dayCount);
+        buffer.putFloat(currentHealth);
+        buffer.putInt(torchCount);
+        buffer.putFloat(positionX);
+        buffer.putFloat(positionZ);
+        buffer.putInt(errorCount);
+        buffer.putInt(totalLogCount);
+        buffer.putShort((short) errorLength);
+        buffer.put(errorBytes, 0, errorLength);
+
+        crc.reset();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Encode one snapshot and write it to the given file in place. Files that
+     * the widget may read concurrently should go through WidgetDataPublisher.
+     */
+    public void writeTo(File file, int sequence, long timestamp, int dayCount, float currentHealth,
+                        int torchCount, float positionX, float positionZ,
+                        int errorCount, int totalLogCount, String lastError) throws IOException {
+        ByteBuffer encoded = encode(sequence, timestamp, dayCount, currentHealth, torchCount,
+            positionX, positionZ, errorCount, totalLogCount, lastError);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(encoded.array(), 0, encoded.limit());
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.yougame.savegamewidget;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * WidgetDataPublisher - Publishes widget data files atomically
+ *
+ * Each file is written completely to "<name>.tmp" and then renamed over the
+ * target, so a reader sees either the previous or the new contents, never a
+ * half-written file.
+ *
+ * Text files (widget_data.txt) get two trailing lines appended:
+ *   sequence=<n>         incremented on every publish
+ *   checksum=<crc32>     8 hex digits, CRC32 of all bytes before this line
+ * The widget verifies the checksum, so even a file written in place by an
+ * older exporter is recognized as torn instead of being shown as zeros.
+ *
+ * Durability: the rename makes the data visible, not durable. How the data
+ * is flushed to storage is chosen with setSyncPolicy:
+ * - SYNC_NONE: never fsync; the OS writes the data back eventually
+ * - SYNC_ALWAYS: fsync every file before it is renamed
+ * - SYNC_GROUP: fsync at most once per group commit interval. A publish
+ *   within the interval of the last fsync is only renamed; one deferred
+ *   fsync at the end of the interval covers all files published meanwhile.
+ *
+ * Thread-safe.
+ */
+public class WidgetDataPublisher {
+
+    private static final String TAG = "SaveGameWidget";
+    private static final String THREAD_NAME = "WidgetDataSync";
+
+    public static final int SYNC_NONE = 0;
+    public static final int SYNC_ALWAYS = 1;
+    public static final int SYNC_GROUP = 2;
+
+    static final long DEFAULT_GROUP_COMMIT_MS = 2000;
+
+    private final CRC32 crc = new CRC32();
+
+    private int syncPolicy = SYNC_GROUP;
+    private long groupCommitMillis = DEFAULT_GROUP_COMMIT_MS;
+    private int textSequence = 0;
+
+    // Group commit state
+    private long lastSyncMillis = 0;
+    private final Set<File> pendingSync = new LinkedHashSet<>();
+    private ScheduledFuture<?> pendingSyncTask = null;
+    private ScheduledThreadPoolExecutor syncExecutor = null;
+
+    private long publishCount = 0;
+    private long syncCount = 0;
+
+    /**
+     * Choose when published files are flushed to storage
+     *
+     * @param policy SYNC_NONE, SYNC_ALWAYS or SYNC_GROUP
+     * @param groupCommitMillis Interval for SYNC_GROUP
+     */
+    public synchronized void setSyncPolicy(int policy, long groupCommitMillis) {
+        if (policy < SYNC_NONE || policy > SYNC_GROUP) {
+            throw new IllegalArgumentException("Unknown sync policy: " + policy);
+        }
+        if (groupCommitMillis < 0) {
+            throw new IllegalArgumentException("Invalid group commit interval: " + groupCommitMillis);
+        }
+        syncPolicy = policy;
+        this.groupCommitMillis = groupCommitMillis;
+        if (policy != SYNC_GROUP) {
+            syncPending();
+        }
+    }
+
+    /**
+     * Atomically replace target with data[offset, offset + length)
+     */
+    public void publish(File target, byte[] data, int offset, int length) throws IOException {
+        File temp = new File(target.getPath() + ".tmp");
+        boolean syncNow;
+        synchronized (this) {
+            syncNow = syncPolicy == SYNC_ALWAYS
+                || (syncPolicy == SYNC_GROUP
+                    && System.currentTimeMillis() - lastSyncMillis >= groupCommitMillis);
+        }
+
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(data, offset, length);
+            if (syncNow) {
+                out.getFD().sync();
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Failed to replace " + target);
+        }
+
+        synchronized (this) {
+            publishCount++;
+            if (syncNow) {
+                syncCount++;
+                lastSyncMillis = System.currentTimeMillis();
+                // Already durable, the deferred sync is not needed for this file
+                pendingSync.remove(target);
+            } else if (syncPolicy == SYNC_GROUP) {
+                scheduleSync(target);
+            }
+        }
+    }
+
+    /**
+     * Atomically replace target with the given key=value text, followed by
+     * the sequence and checksum lines
+     */
+    public void publishText(File target, String content) throws IOException {
+        byte[] framed;
+        synchronized (this) {
+            StringBuilder text = new StringBuilder(content.length() + 40).append(content);
+            if (text.length() > 0 && text.charAt(text.length() - 1) != '\n') {
+                text.append('\n');
+            }
+            text.append("sequence=").append(++textSequence).append('\n');
+            byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+
+            crc.reset();
+            crc.update(body, 0, body.length);
+            byte[] trailer = String.format(Locale.US, "checksum=%08x\n", crc.getValue())
+                .getBytes(StandardCharsets.US_ASCII);
+            framed = new byte[body.length + trailer.length];
+            System.arraycopy(body, 0, framed, 0, body.length);
+            System.arraycopy(trailer, 0, framed, body.length, trailer.length);
+        }
+        publish(target, framed, 0, framed.length);
+    }
+
+    /**
+     * Run a pending group commit fsync now, e.g. before the game is paused
+     */
+    public synchronized void flush() {
+        syncPending();
+    }
+
+    /**
+     * Files published, and fsyncs done, since creation
+     */
+    public synchronized String getStats() {
+        return "published=" + publishCount + " synced=" + syncCount;
+    }
+
+    private void scheduleSync(File target) {
+        pendingSync.add(target);
+        if (pendingSyncTask != null) {
+            return;
+        }
+        if (syncExecutor == null) {
+            syncExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, THREAD_NAME);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        long delay = Math.max(0, lastSyncMillis + groupCommitMillis - System.currentTimeMillis());
+        pendingSyncTask = syncExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (WidgetDataPublisher.this) {
+                    pendingSyncTask = null;
+                    syncPending();
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void syncPending() {
+        if (pendingSyncTask != null) {
+            pendingSyncTask.cancel(false);
+            pendingSyncTask = null;
+        }
+        if (pendingSync.isEmpty()) {
+            return;
+        }
+        // Syncs whatever file currently has each name, i.e. the latest publish
+        for (File file : pendingSync) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.getFD().sync();
+                syncCount++;
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to sync " + file, e);
+            }
+        }
+        pendingSync.clear();
+        lastSyncMillis = System.currentTimeMillis();
+    }
+}
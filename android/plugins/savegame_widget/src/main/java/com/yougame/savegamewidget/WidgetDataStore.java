@@ -0,0 +1,367 @@
+package com.yougame.savegamewidget;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * WidgetDataStore - Fixed-layout store for the widget snapshot
+ *
+ * Replaces the SharedPreferences XML file. The store is a small file
+ * (widget_snapshot.dat in the app's files directory) mapped into memory and
+ * updated in place. It holds two slots; each write goes to the slot holding
+ * the older generation, so the newest complete snapshot is never touched
+ * while the next one is written. Within that slot only fields whose bytes
+ * changed are written, then the slot's CRC and generation.
+ *
+ * A reader takes the valid slot (matching CRC) with the highest generation.
+ * A slot torn by a crash fails its CRC and the previous snapshot is used.
+ * getGeneration() only reads two longs, so readers can cheaply tell whether
+ * anything changed since their last read.
+ *
+ * File layout (big-endian):
+ *   offset  size  field
+ *        0     4  magic "YGWS"
+ *        4     2  version
+ *        6    10  reserved
+ *       16  1088  slot 0
+ *     1104  1088  slot 1
+ *
+ * Slot layout:
+ *        0     8  generation (0 = never written)
+ *        8     4  CRC32 of slot bytes [0, 8) and [12, 54 + n)
+ *       12     8  timestamp (Unix time, milliseconds)
+ *       20     4  day_count
+ *       24     4  current_health (float)
+ *       28     4  torch_count
+ *       32     4  position_x (float)
+ *       36     4  position_y (float)
+ *       40     4  position_z (float)
+ *       44     4  error_count
+ *       48     4  total_log_count
+ *       52     2  last_error length n (UTF-8 bytes, at most 1024)
+ *       54     n  last_error
+ *
+ * All access goes through one instance per process (getInstance) and is
+ * synchronized on it.
+ */
+public class WidgetDataStore {
+
+    private static final String TAG = "SaveGameWidget";
+
+    static final String FILE_NAME = "widget_snapshot.dat";
+    static final String LEGACY_PREFS_NAME = "YouGameSaveData";
+
+    static final int MAGIC = 0x59475753; // "YGWS"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int SLOT_SIZE = 1088;
+    static final int SLOT_COUNT = 2;
+    static final int FILE_SIZE = HEADER_SIZE + SLOT_COUNT * SLOT_SIZE;
+    static final int MAX_LAST_ERROR_BYTES = 1024;
+
+    private static final int OFFSET_VERSION = 4;
+
+    // Offsets within a slot
+    private static final int SLOT_GENERATION = 0;
+    private static final int SLOT_CRC = 8;
+    private static final int SLOT_TIMESTAMP = 12;
+    private static final int SLOT_DAY_COUNT = 20;
+    private static final int SLOT_HEALTH = 24;
+    private static final int SLOT_TORCH_COUNT = 28;
+    private static final int SLOT_POSITION_X = 32;
+    private static final int SLOT_POSITION_Y = 36;
+    private static final int SLOT_POSITION_Z = 40;
+    private static final int SLOT_ERROR_COUNT = 44;
+    private static final int SLOT_TOTAL_LOG_COUNT = 48;
+    private static final int SLOT_LAST_ERROR_LENGTH = 52;
+    private static final int SLOT_LAST_ERROR = 54;
+
+    // Field ranges compared and written individually: {offset, size}
+    private static final int[][] FIELDS = {
+        {SLOT_TIMESTAMP, 8}, {SLOT_DAY_COUNT, 4}, {SLOT_HEALTH, 4}, {SLOT_TORCH_COUNT, 4},
+        {SLOT_POSITION_X, 4}, {SLOT_POSITION_Y, 4}, {SLOT_POSITION_Z, 4},
+        {SLOT_ERROR_COUNT, 4}, {SLOT_TOTAL_LOG_COUNT, 4}, {SLOT_LAST_ERROR_LENGTH, 2}
+    };
+
+    private static WidgetDataStore instance = null;
+
+    private final File file;
+    private final MappedByteBuffer map;
+    private final byte[] image = new byte[SLOT_SIZE];
+    private final ByteBuffer imageBuffer = ByteBuffer.wrap(image);
+    private final byte[] slotBytes = new byte[SLOT_SIZE];
+    private final CRC32 crc = new CRC32();
+
+    private long bytesWritten = 0;
+    private long writeCount = 0;
+
+    WidgetDataStore(File file) throws IOException {
+        this.file = file;
+        boolean created = !file.exists() || file.length() != FILE_SIZE;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(FILE_SIZE);
+            // The mapping stays valid after the channel is closed
+            map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+        }
+        if (created || map.getInt(0) != MAGIC || (map.getShort(OFFSET_VERSION) & 0xFFFF) != VERSION) {
+            // New or unrecognized file: start empty
+            for (int i = 0; i < FILE_SIZE; i++) {
+                map.put(i, (byte) 0);
+            }
+            map.putInt(0, MAGIC);
+            map.putShort(OFFSET_VERSION, (short) VERSION);
+            map.force();
+        }
+    }
+
+    /**
+     * The store for this process, created and migrated from the old
+     * SharedPreferences on first use. Returns null if the file can't be mapped.
+     */
+    public static synchronized WidgetDataStore getInstance(Context context) {
+        if (instance == null) {
+            File file = new File(context.getFilesDir(), FILE_NAME);
+            try {
+                WidgetDataStore store = new WidgetDataStore(file);
+                store.migrateFrom(context.getSharedPreferences(LEGACY_PREFS_NAME, Context.MODE_PRIVATE));
+                instance = store;
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to open widget data store " + file, e);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Generation of the newest snapshot, 0 if none was written. Changes with
+     * every write; does not validate the slot.
+     */
+    public synchronized long getGeneration() {
+        return Math.max(map.getLong(HEADER_SIZE + SLOT_GENERATION),
+            map.getLong(HEADER_SIZE + SLOT_SIZE + SLOT_GENERATION));
+    }
+
+    /**
+     * Read the newest valid snapshot into out
+     *
+     * @return its generation, or 0 if the store holds no valid snapshot
+     *         (out is left unchanged)
+     */
+    public synchronized long read(WidgetSnapshot out) {
+        int slot = newestValidSlot();
+        if (slot < 0) {
+            return 0;
+        }
+        int base = slotBase(slot);
+        out.timestamp = map.getLong(base + SLOT_TIMESTAMP);
+        out.dayCount = map.getInt(base + SLOT_DAY_COUNT);
+        out.currentHealth = map.getFloat(base + SLOT_HEALTH);
+        out.torchCount = map.getInt(base + SLOT_TORCH_COUNT);
+        out.positionX = map.getFloat(base + SLOT_POSITION_X);
+        out.positionY = map.getFloat(base + SLOT_POSITION_Y);
+        out.positionZ = map.getFloat(base + SLOT_POSITION_Z);
+        out.errorCount = map.getInt(base + SLOT_ERROR_COUNT);
+        out.totalLogCount = map.getInt(base + SLOT_TOTAL_LOG_COUNT);
+
+        // newestValidSlot left the slot bytes in slotBytes
+        int errorLength = map.getShort(base + SLOT_LAST_ERROR_LENGTH) & 0xFFFF;
+        out.lastError = sameString(out.lastError, slotBytes, SLOT_LAST_ERROR, errorLength)
+            ? out.lastError
+            : new String(slotBytes, SLOT_LAST_ERROR, errorLength, StandardCharsets.UTF_8);
+        return map.getLong(base + SLOT_GENERATION);
+    }
+
+    /**
+     * Store a snapshot. Only fields that differ from the slot being reused
+     * are written.
+     *
+     * @return the new generation
+     */
+    public synchronized long write(WidgetSnapshot data) {
+        long generation = getGeneration() + 1;
+        int slot = olderSlot();
+        int base = slotBase(slot);
+
+        // Build the new slot contents in memory
+        byte[] errorBytes = data.lastError != null
+            ? data.lastError.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        int errorLength = Math.min(errorBytes.length, MAX_LAST_ERROR_BYTES);
+        if (errorLength < errorBytes.length) {
+            // Don't cut a multi-byte UTF-8 character in half
+            while (errorLength > 0 && (errorBytes[errorLength] & 0xC0) == 0x80) {
+                errorLength--;
+            }
+        }
+        imageBuffer.putLong(SLOT_GENERATION, generation);
+        imageBuffer.putLong(SLOT_TIMESTAMP, data.timestamp);
+        imageBuffer.putInt(SLOT_DAY_COUNT, data.dayCount);
+        imageBuffer.putFloat(SLOT_HEALTH, data.currentHealth);
+        imageBuffer.putInt(SLOT_TORCH_COUNT, data.torchCount);
+        imageBuffer.putFloat(SLOT_POSITION_X, data.positionX);
+        imageBuffer.putFloat(SLOT_POSITION_Y, data.positionY);
+        imageBuffer.putFloat(SLOT_POSITION_Z, data.positionZ);
+        imageBuffer.putInt(SLOT_ERROR_COUNT, data.errorCount);
+        imageBuffer.putInt(SLOT_TOTAL_LOG_COUNT, data.totalLogCount);
+        imageBuffer.putShort(SLOT_LAST_ERROR_LENGTH, (short) errorLength);
+        System.arraycopy(errorBytes, 0, image, SLOT_LAST_ERROR, errorLength);
+        int checksum = checksum(image, errorLength);
+        imageBuffer.putInt(SLOT_CRC, checksum);
+
+        // Invalidate the slot first, so a crash below leaves it failing its CRC
+        map.putLong(base + SLOT_GENERATION, 0);
+
+        // Write only changed fields
+        for (int[] field : FIELDS) {
+            writeIfChanged(base, field[0], field[1]);
+        }
+        writeIfChanged(base, SLOT_LAST_ERROR, errorLength);
+        map.putInt(base + SLOT_CRC, checksum);
+        map.putLong(base + SLOT_GENERATION, generation);
+        bytesWritten += 12;
+        writeCount++;
+
+        // Make this slot durable before the next write reuses the other one
+        map.force();
+        return generation;
+    }
+
+    /**
+     * Store an empty snapshot (no save data)
+     */
+    public long clear() {
+        return write(new WidgetSnapshot());
+    }
+
+    /**
+     * Bytes written into the mapped file since startup (changed fields,
+     * checksums and generations)
+     */
+    public synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public synchronized long getWriteCount() {
+        return writeCount;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Move data saved by older plugin versions out of SharedPreferences
+     */
+    void migrateFrom(SharedPreferences prefs) {
+        if (prefs == null || !prefs.contains("timestamp")) {
+            return;
+        }
+        if (getGeneration() == 0) {
+            WidgetSnapshot data = new WidgetSnapshot();
+            // The preferences stored Unix seconds
+            data.timestamp = prefs.getLong("timestamp", 0) * 1000;
+            data.dayCount = prefs.getInt("day_count", 1);
+            data.currentHealth = prefs.getFloat("current_health", 100.0f);
+            data.torchCount = prefs.getInt("torch_count", 0);
+            data.positionX = prefs.getFloat("position_x", 0.0f);
+            data.positionY = prefs.getFloat("position_y", 0.0f);
+            data.positionZ = prefs.getFloat("position_z", 0.0f);
+            data.errorCount = prefs.getInt("error_count", 0);
+            data.totalLogCount = prefs.getInt("total_log_count", 0);
+            data.lastError = prefs.getString("last_error", "");
+            write(data);
+            Log.i(TAG, "Migrated widget data from SharedPreferences");
+        }
+        prefs.edit().clear().commit();
+    }
+
+    private void writeIfChanged(int base, int offset, int size) {
+        boolean changed = false;
+        for (int i = 0; i < size; i++) {
+            if (map.get(base + offset + i) != image[offset + i]) {
+                changed = true;
+                break;
+            }
+        }
+        if (changed) {
+            for (int i = 0; i < size; i++) {
+                map.put(base + offset + i, image[offset + i]);
+            }
+            bytesWritten += size;
+        }
+    }
+
+    /**
+     * Find the valid slot with the highest generation and leave its bytes in slotBytes
+     */
+    private int newestValidSlot() {
+        int best = -1;
+        long bestGeneration = 0;
+        for (int slot = 0; slot < SLOT_COUNT; slot++) {
+            long generation = map.getLong(slotBase(slot) + SLOT_GENERATION);
+            if (generation > bestGeneration && isValid(slot)) {
+                best = slot;
+                bestGeneration = generation;
+            }
+        }
+        if (best >= 0 && best != SLOT_COUNT - 1) {
+            // Reload the winner; isValid of a later slot overwrote slotBytes
+            isValid(best);
+        }
+        return best;
+    }
+
+    private boolean isValid(int slot) {
+        int base = slotBase(slot);
+        for (int i = 0; i < SLOT_SIZE; i++) {
+            slotBytes[i] = map.get(base + i);
+        }
+        int errorLength = ((slotBytes[SLOT_LAST_ERROR_LENGTH] & 0xFF) << 8)
+            | (slotBytes[SLOT_LAST_ERROR_LENGTH + 1] & 0xFF);
+        if (errorLength > MAX_LAST_ERROR_BYTES) {
+            return false;
+        }
+        int stored = ((slotBytes[SLOT_CRC] & 0xFF) << 24) | ((slotBytes[SLOT_CRC + 1] & 0xFF) << 16)
+            | ((slotBytes[SLOT_CRC + 2] & 0xFF) << 8) | (slotBytes[SLOT_CRC + 3] & 0xFF);
+        return checksum(slotBytes, errorLength) == stored;
+    }
+
+    private int olderSlot() {
+        long first = map.getLong(slotBase(0) + SLOT_GENERATION);
+        long second = map.getLong(slotBase(1) + SLOT_GENERATION);
+        return first <= second ? 0 : 1;
+    }
+
+    private int checksum(byte[] slot, int errorLength) {
+        crc.reset();
+        crc.update(slot, SLOT_GENERATION, 8);
+        crc.update(slot, SLOT_TIMESTAMP, SLOT_LAST_ERROR - SLOT_TIMESTAMP + errorLength);
+        return (int) crc.getValue();
+    }
+
+    private static int slotBase(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static boolean sameString(String previous, byte[] bytes, int offset, int length) {
+        if (previous == null || previous.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            byte b = bytes[offset + i];
+            if (b < 0 || previous.charAt(i) != (char) b) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,200 @@
+package com.yougame.savegamewidget;
+
+import java.util.Arrays;
+
+/**
+ * WidgetSizeTemplates - Picks a layout template for each widget's size
+ *
+ * Widgets are sorted into three size buckets from the size the launcher
+ * reports in the widget options (portrait: minimum width and maximum
+ * height, in dp):
+ * - COMPACT: narrower than three cells or one cell high
+ * - EXPANDED: four or more cells high
+ * - STANDARD: everything in between
+ *
+ * Each bucket has a template, created once by the provider: the layout to
+ * inflate and the fields (in render state order) that layout shows. A
+ * render only formats and pushes the fields of its widget's template; the
+ * labels and static views come with the layout itself. Buckets may share
+ * a layout; moving between them needs no new full update.
+ *
+ * Widgets whose size isn't known yet (no options, older launchers) get the
+ * default bucket. Buckets are kept in small parallel arrays, like
+ * WidgetRenderState, so looking one up allocates nothing.
+ */
+public class WidgetSizeTemplates {
+
+    public static final int COMPACT = 0;
+    public static final int STANDARD = 1;
+    public static final int EXPANDED = 2;
+    private static final int BUCKET_COUNT = 3;
+
+    // Launcher cells are about 70 dp minus padding: 3 cells wide is ~180 dp,
+    // 2 cells high ~110 dp and 4 cells high ~250 dp
+    static final int COMPACT_BELOW_WIDTH_DP = 180;
+    static final int COMPACT_BELOW_HEIGHT_DP = 100;
+    static final int EXPANDED_FROM_HEIGHT_DP = 250;
+
+    /**
+     * The layout of one size bucket and the fields it shows
+     */
+    public static final class Template {
+        public final int bucket;
+        public final int layoutId;
+        /** Bit i set if the layout shows field i */
+        public final int fieldMask;
+
+        Template(int bucket, int layoutId, int fieldMask) {
+            this.bucket = bucket;
+            this.layoutId = layoutId;
+            this.fieldMask = fieldMask;
+        }
+
+        public boolean shows(int field) {
+            return (fieldMask & (1 << field)) != 0;
+        }
+    }
+
+    private final Template[] templates = new Template[BUCKET_COUNT];
+    private final int defaultBucket;
+    // Widget ids and their buckets, in the first widgetCount slots
+    private int[] widgetIds = new int[4];
+    private int[] buckets = new int[4];
+    private int widgetCount = 0;
+
+    /**
+     * @param defaultBucket Bucket for widgets of unknown size
+     */
+    public WidgetSizeTemplates(int defaultBucket) {
+        checkBucket(defaultBucket);
+        this.defaultBucket = defaultBucket;
+    }
+
+    /**
+     * Set the template of a size bucket
+     *
+     * @param fields The fields the layout shows
+     */
+    public synchronized void setTemplate(int bucket, int layoutId, int... fields) {
+        checkBucket(bucket);
+        int mask = 0;
+        for (int field : fields) {
+            if (field < 0 || field > 30) {
+                throw new IllegalArgumentException("Field out of range: " + field);
+            }
+            mask |= 1 << field;
+        }
+        templates[bucket] = new Template(bucket, layoutId, mask);
+    }
+
+    /**
+     * Size bucket for a widget size in dp; unknown sizes (0) give the default bucket
+     */
+    public int bucketFor(int widthDp, int heightDp) {
+        if (widthDp <= 0 || heightDp <= 0) {
+            return defaultBucket;
+        }
+        if (widthDp < COMPACT_BELOW_WIDTH_DP || heightDp < COMPACT_BELOW_HEIGHT_DP) {
+            return COMPACT;
+        }
+        if (heightDp >= EXPANDED_FROM_HEIGHT_DP) {
+            return EXPANDED;
+        }
+        return STANDARD;
+    }
+
+    /**
+     * Record a widget's size
+     *
+     * @return true if the widget's template changed (or it had none yet),
+     *         so its next push must be a full update with the new layout
+     */
+    public synchronized boolean setSize(int appWidgetId, int widthDp, int heightDp) {
+        int bucket = bucketFor(widthDp, heightDp);
+        int index = indexOf(appWidgetId);
+        if (index >= 0) {
+            Template before = templates[buckets[index]];
+            buckets[index] = bucket;
+            return !sameLayout(before, templates[bucket]);
+        }
+        if (widgetCount == widgetIds.length) {
+            widgetIds = Arrays.copyOf(widgetIds, widgetCount * 2);
+            buckets = Arrays.copyOf(buckets, widgetCount * 2);
+        }
+        widgetIds[widgetCount] = appWidgetId;
+        buckets[widgetCount] = bucket;
+        widgetCount++;
+        return true;
+    }
+
+    /**
+     * The widget's template, or null if its size was never recorded
+     */
+    public synchronized Template get(int appWidgetId) {
+        int index = indexOf(appWidgetId);
+        return index >= 0 ? templates[buckets[index]] : null;
+    }
+
+    /**
+     * Template of a bucket
+     */
+    public synchronized Template getTemplate(int bucket) {
+        checkBucket(bucket);
+        return templates[bucket];
+    }
+
+    /**
+     * Forget removed widgets
+     */
+    public synchronized void forget(int[] appWidgetIds) {
+        for (int appWidgetId : appWidgetIds) {
+            int index = indexOf(appWidgetId);
+            if (index >= 0) {
+                // Move the last widget into the freed slot
+                widgetCount--;
+                widgetIds[index] = widgetIds[widgetCount];
+                buckets[index] = buckets[widgetCount];
+            }
+        }
+    }
+
+    /**
+     * Forget all widgets; sizes are looked up again
+     */
+    public synchronized void clear() {
+        widgetCount = 0;
+    }
+
+    /**
+     * Number of known widgets per bucket, e.g. "compact=1 standard=2 expanded=0"
+     */
+    public synchronized String getBucketStats() {
+        int[] counts = new int[BUCKET_COUNT];
+        for (int i = 0; i < widgetCount; i++) {
+            counts[buckets[i]]++;
+        }
+        return "compact=" + counts[COMPACT] + " standard=" + counts[STANDARD] + " expanded=" + counts[EXPANDED];
+    }
+
+    private static boolean sameLayout(Template a, Template b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.layoutId == b.layoutId && a.fieldMask == b.fieldMask;
+    }
+
+    private int indexOf(int appWidgetId) {
+        for (int i = 0; i < widgetCount; i++) {
+            if (widgetIds[i] == appWidgetId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void checkBucket(int bucket) {
+        if (bucket < 0 || bucket >= BUCKET_COUNT) {
+            throw new IllegalArgumentException("Unknown size bucket: " + bucket);
+        }
+    }
+}
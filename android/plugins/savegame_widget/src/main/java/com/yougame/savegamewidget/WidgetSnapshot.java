@@ -0,0 +1,177 @@
+package com.yougame.savegamewidget;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * WidgetSnapshot - Everything the widgets show, exported by the game in one call
+ *
+ * Decoded from a packed payload (see decode), a Godot Dictionary (see
+ * fromMap) or widget_data.txt content (see fromText). Instances are meant
+ * to be reused between exports.
+ *
+ * Packed payload layout: the widget_data.bin layout of WidgetDataEncoder
+ * without the CRC32 trailer, so the game does not have to compute a checksum,
+ * and with the timestamp in seconds like every other export entry point:
+ *   offset  size  field
+ *        0     4  magic "YGWD"
+ *        4     2  version (1)
+ *        6     2  flags (reserved)
+ *        8     4  sequence (ignored; the plugin numbers snapshots itself)
+ *       12     8  timestamp (Unix time in seconds, double, as returned by
+ *                  Time.get_unix_time_from_system())
+ *       20     4  day_count
+ *       24     4  current_health (float)
+ *       28     4  torch_count
+ *       32     4  position_x (float)
+ *       36     4  position_z (float)
+ *       40     4  error_count
+ *       44     4  total_log_count
+ *       48     2  last_error length n (UTF-8 bytes)
+ *       50     n  last_error
+ *
+ * Both byte orders are accepted; the order is detected from the magic, so
+ * the payload can be built with StreamPeerBuffer in its default little-endian
+ * mode or with big_endian = true. The packed payload carries no position_y
+ * (the widgets don't show it); decode leaves positionY unchanged.
+ *
+ * The timestamp field holds milliseconds, like the store and widget_data.bin.
+ */
+public class WidgetSnapshot {
+
+    public long timestamp;
+    public int dayCount;
+    public float currentHealth;
+    public int torchCount;
+    public float positionX;
+    public float positionY;
+    public float positionZ;
+    public int errorCount;
+    public int totalLogCount;
+    public String lastError = "";
+
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_TIMESTAMP = 12;
+    private static final int OFFSET_DAY_COUNT = 20;
+    private static final int OFFSET_HEALTH = 24;
+    private static final int OFFSET_TORCH_COUNT = 28;
+    private static final int OFFSET_POSITION_X = 32;
+    private static final int OFFSET_POSITION_Z = 36;
+    private static final int OFFSET_ERROR_COUNT = 40;
+    private static final int OFFSET_TOTAL_LOG_COUNT = 44;
+    private static final int OFFSET_LAST_ERROR_LENGTH = 48;
+
+    /**
+     * Decode a packed payload into this snapshot
+     *
+     * @throws IllegalArgumentException if the payload is not a valid snapshot
+     */
+    public WidgetSnapshot decode(byte[] payload) {
+        if (payload == null || payload.length < WidgetDataEncoder.HEADER_SIZE) {
+            throw new IllegalArgumentException("Snapshot payload too short: "
+                + (payload == null ? 0 : payload.length) + " bytes");
+        }
+        ByteBuffer data = ByteBuffer.wrap(payload);
+        if (data.getInt(0) == Integer.reverseBytes(WidgetDataEncoder.MAGIC)) {
+            data.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (data.getInt(0) != WidgetDataEncoder.MAGIC) {
+            throw new IllegalArgumentException("Snapshot payload has wrong magic");
+        }
+        int version = data.getShort(OFFSET_VERSION) & 0xFFFF;
+        if (version != WidgetDataEncoder.VERSION) {
+            throw new IllegalArgumentException("Unsupported snapshot version: " + version);
+        }
+        int errorLength = data.getShort(OFFSET_LAST_ERROR_LENGTH) & 0xFFFF;
+        if (WidgetDataEncoder.HEADER_SIZE + errorLength > payload.length) {
+            throw new IllegalArgumentException("Snapshot payload truncated");
+        }
+
+        timestamp = (long) (data.getDouble(OFFSET_TIMESTAMP) * 1000);
+        dayCount = data.getInt(OFFSET_DAY_COUNT);
+        currentHealth = data.getFloat(OFFSET_HEALTH);
+        torchCount = data.getInt(OFFSET_TORCH_COUNT);
+        positionX = data.getFloat(OFFSET_POSITION_X);
+        positionZ = data.getFloat(OFFSET_POSITION_Z);
+        errorCount = data.getInt(OFFSET_ERROR_COUNT);
+        totalLogCount = data.getInt(OFFSET_TOTAL_LOG_COUNT);
+        lastError = decodeLastError(payload, WidgetDataEncoder.HEADER_SIZE, errorLength);
+        return this;
+    }
+
+    /**
+     * Fill this snapshot from a Godot Dictionary using the widget_data.txt
+     * key names. Missing keys keep their defaults; the timestamp may be
+     * fractional Unix seconds as returned by Time.get_unix_time_from_system().
+     */
+    public WidgetSnapshot fromMap(Map<String, Object> values) {
+        timestamp = (long) (number(values, "timestamp", 0) * 1000);
+        dayCount = (int) number(values, "day_count", 1);
+        currentHealth = (float) number(values, "current_health", 100);
+        torchCount = (int) number(values, "torch_count", 0);
+        positionX = (float) number(values, "position_x", 0);
+        positionY = (float) number(values, "position_y", 0);
+        positionZ = (float) number(values, "position_z", 0);
+        errorCount = (int) number(values, "error_count", 0);
+        totalLogCount = (int) number(values, "total_log_count", 0);
+        Object error = values.get("last_error");
+        lastError = error != null ? error.toString() : "";
+        return this;
+    }
+
+    /**
+     * Fill this snapshot from widget_data.txt content, the key=value lines
+     * the game script exports. Same keys and defaults as fromMap; lines
+     * without '=' and values that aren't numbers are skipped.
+     */
+    public WidgetSnapshot fromText(String content) {
+        Map<String, Object> values = new HashMap<>();
+        for (String line : content.split("\n")) {
+            int separator = line.indexOf('=');
+            if (separator <= 0) {
+                continue;
+            }
+            String key = line.substring(0, separator).trim();
+            String value = line.substring(separator + 1).trim();
+            if ("last_error".equals(key)) {
+                values.put(key, value);
+                continue;
+            }
+            try {
+                values.put(key, Double.parseDouble(value));
+            } catch (NumberFormatException e) {
+                // Keeps the default, like a missing key
+            }
+        }
+        return fromMap(values);
+    }
+
+    /**
+     * Reuse the previous String when the last error did not change, which is
+     * the common case between exports
+     */
+    private String decodeLastError(byte[] payload, int offset, int length) {
+        String previous = lastError;
+        if (previous != null && previous.length() == length) {
+            boolean same = true;
+            for (int i = 0; i < length; i++) {
+                byte b = payload[offset + i];
+                if (b < 0 || previous.charAt(i) != (char) b) {
+                    same = false;
+                    break;
+                }
+            }
+            if (same) {
+                return previous;
+            }
+        }
+        return new String(payload, offset, length, StandardCharsets.UTF_8);
+    }
+
+    private static double number(Map<String, Object> values, String key, double defaultValue) {
+        Object value = values.get(key);
+        return value instanceof Number ? ((Number) value).doubleValue() : defaultValue;
+    }
+}
@@ -0,0 +1,126 @@
+package com.yougame.savegamewidget;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Tests for SaveDataQuery, the query path of SaveDataProvider, against a
+ * store in a temporary file
+ */
+public class SaveDataQueryTest {
+
+    private File file;
+    private WidgetDataStore store;
+    private SaveDataQuery query;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("widget_snapshot", ".dat");
+        file.delete();
+        store = new WidgetDataStore(file);
+        query = new SaveDataQuery(store);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void emptyStoreHasNoRow() {
+        assertNull(query.query(SaveDataQuery.resolveProjection(null)));
+    }
+
+    @Test
+    public void allColumnsInContractOrder() {
+        store.write(snapshot(1_700_000_000_000L, 12, "Torch went out"));
+
+        String[] columns = SaveDataQuery.resolveProjection(null);
+        assertArrayEquals(SaveDataContract.COLUMNS, columns);
+        Object[] row = query.query(columns);
+        assertArrayEquals(new Object[] {
+            1L, 1_700_000_000_000L, 12, 75.5f, 3, 1.5f, 2.5f, -3.5f, 2, 40, "Torch went out"
+        }, row);
+    }
+
+    @Test
+    public void projectionPicksAndOrdersColumns() {
+        store.write(snapshot(1000, 5, ""));
+
+        Object[] row = query.query(SaveDataQuery.resolveProjection(new String[] {
+            SaveDataContract.TORCH_COUNT, SaveDataContract.DAY_COUNT
+        }));
+        assertArrayEquals(new Object[] {3, 5}, row);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownColumnIsRejected() {
+        SaveDataQuery.resolveProjection(new String[] {SaveDataContract.DAY_COUNT, "password"});
+    }
+
+    @Test
+    public void storeIsReadOnlyAfterASave() {
+        String[] columns = {SaveDataContract.GENERATION, SaveDataContract.DAY_COUNT};
+        store.write(snapshot(1000, 5, ""));
+        for (int i = 0; i < 10; i++) {
+            assertArrayEquals(new Object[] {1L, 5}, query.query(columns));
+        }
+        assertEquals(1, query.getStoreReadCount());
+
+        store.write(snapshot(2000, 6, ""));
+        assertArrayEquals(new Object[] {2L, 6}, query.query(columns));
+        assertEquals(2, query.getStoreReadCount());
+    }
+
+    @Test
+    public void gameTextExportIsServed() {
+        // What publishWidgetDataText stores for the key=value lines of
+        // save_game_widget_exporter.gd
+        String content = "timestamp=1737900000\n"
+            + "day_count=12\n"
+            + "current_health=75.5\n"
+            + "torch_count=3\n"
+            + "position_x=1.5\n"
+            + "position_z=-3.5\n"
+            + "error_count=2\n"
+            + "total_log_count=40\n"
+            + "last_error=Torch went out\n";
+        store.write(new WidgetSnapshot().fromText(content));
+
+        assertArrayEquals(new Object[] {
+            1L, 1_737_900_000_000L, 12, 75.5f, 3, 1.5f, 0f, -3.5f, 2, 40, "Torch went out"
+        }, query.query(SaveDataQuery.resolveProjection(null)));
+    }
+
+    @Test
+    public void clearedStoreStillAnswersWithEmptySnapshot() {
+        store.write(snapshot(1000, 5, "Error"));
+        store.clear();
+
+        Object[] row = query.query(new String[] {SaveDataContract.TIMESTAMP, SaveDataContract.LAST_ERROR});
+        assertArrayEquals(new Object[] {0L, ""}, row);
+    }
+
+    private static WidgetSnapshot snapshot(long timestamp, int dayCount, String lastError) {
+        WidgetSnapshot snapshot = new WidgetSnapshot();
+        snapshot.timestamp = timestamp;
+        snapshot.dayCount = dayCount;
+        snapshot.currentHealth = 75.5f;
+        snapshot.torchCount = 3;
+        snapshot.positionX = 1.5f;
+        snapshot.positionY = 2.5f;
+        snapshot.positionZ = -3.5f;
+        snapshot.errorCount = 2;
+        snapshot.totalLogCount = 40;
+        snapshot.lastError = lastError;
+        return snapshot;
+    }
+}
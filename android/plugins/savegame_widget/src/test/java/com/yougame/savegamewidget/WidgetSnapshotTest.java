@@ -0,0 +1,95 @@
+package com.yougame.savegamewidget;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests for WidgetSnapshot: the packed and Dictionary forms of an export
+ * decode to the same snapshot
+ */
+public class WidgetSnapshotTest {
+
+    private static final double SAVE_SECONDS = 1_737_900_000.25;
+
+    /**
+     * Build a payload the way the README's StreamPeerBuffer example does
+     */
+    private static byte[] packed(ByteOrder order, String lastError) {
+        byte[] error = lastError.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.allocate(WidgetDataEncoder.HEADER_SIZE + error.length).order(order);
+        buf.putInt(WidgetDataEncoder.MAGIC);
+        buf.putShort((short) WidgetDataEncoder.VERSION);
+        buf.putShort((short) 0);
+        buf.putInt(0);
+        buf.putDouble(SAVE_SECONDS);
+        buf.putInt(12);
+        buf.putFloat(75.5f);
+        buf.putInt(3);
+        buf.putFloat(1.5f);
+        buf.putFloat(-3.5f);
+        buf.putInt(2);
+        buf.putInt(40);
+        buf.putShort((short) error.length);
+        buf.put(error);
+        return buf.array();
+    }
+
+    @Test
+    public void packedAndDictionaryTimestampsAgree() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("timestamp", SAVE_SECONDS);
+        WidgetSnapshot fromMap = new WidgetSnapshot().fromMap(values);
+
+        WidgetSnapshot little = new WidgetSnapshot().decode(packed(ByteOrder.LITTLE_ENDIAN, ""));
+        WidgetSnapshot big = new WidgetSnapshot().decode(packed(ByteOrder.BIG_ENDIAN, ""));
+
+        assertEquals(1_737_900_000_250L, fromMap.timestamp);
+        assertEquals(fromMap.timestamp, little.timestamp);
+        assertEquals(fromMap.timestamp, big.timestamp);
+    }
+
+    @Test
+    public void parsesExportedText() {
+        // As save_game_widget_exporter.gd builds it
+        WidgetSnapshot snapshot = new WidgetSnapshot().fromText("timestamp=1737900000.25\n"
+            + "day_count=12\n"
+            + "current_health=75.5\n"
+            + "torch_count=3\n"
+            + "position_x=1.5\n"
+            + "position_z=-3.5\r\n"
+            + "error_count=2\n"
+            + "total_log_count=oops\n"
+            + "last_error=Torch went out: x=1\n");
+
+        assertEquals(1_737_900_000_250L, snapshot.timestamp);
+        assertEquals(12, snapshot.dayCount);
+        assertEquals(75.5f, snapshot.currentHealth, 0.0f);
+        assertEquals(3, snapshot.torchCount);
+        assertEquals(1.5f, snapshot.positionX, 0.0f);
+        assertEquals(-3.5f, snapshot.positionZ, 0.0f);
+        assertEquals(2, snapshot.errorCount);
+        assertEquals(0, snapshot.totalLogCount);
+        assertEquals("Torch went out: x=1", snapshot.lastError);
+    }
+
+    @Test
+    public void decodesEveryPackedField() {
+        WidgetSnapshot snapshot = new WidgetSnapshot().decode(packed(ByteOrder.LITTLE_ENDIAN, "Torch went out"));
+
+        assertEquals(12, snapshot.dayCount);
+        assertEquals(75.5f, snapshot.currentHealth, 0.0f);
+        assertEquals(3, snapshot.torchCount);
+        assertEquals(1.5f, snapshot.positionX, 0.0f);
+        assertEquals(-3.5f, snapshot.positionZ, 0.0f);
+        assertEquals(2, snapshot.errorCount);
+        assertEquals(40, snapshot.totalLogCount);
+        assertEquals("Torch went out", snapshot.lastError);
+    }
+}
@@ -338,3 +338,60 @@ func _draw_line(x0: int, y0: int, x1: int, y1: int, color: Color) -> void:
 		if e2 < dx:
 			err += dx
 			y += sy
+
+# Widget minimap tile indices (must match MinimapTileEncoder in the Android plugin)
+const WIDGET_TILE_UNEXPLORED: int = 0
+const WIDGET_TILE_WATER: int = 1
+const WIDGET_TILE_PLAINS: int = 2
+const WIDGET_TILE_FOREST: int = 3
+const WIDGET_TILE_MOUNTAIN: int = 4
+const WIDGET_TILE_PEAK: int = 5
+
+## Build a small explored-area snapshot for the home screen widget: one tile
+## per chunk around the player, unexplored chunks left dark. Only called when
+## the game is saved, so the terrain lookups stay off the per-frame path.
+func build_widget_tiles(tiles_per_side: int) -> Dictionary:
+	var tiles := PackedByteArray()
+	tiles.resize(tiles_per_side * tiles_per_side)
+	if not player or not world_manager:
+		return {}
+	
+	var player_pos = player.global_position
+	var center_x = int(floor(player_pos.x / world_manager.CHUNK_SIZE))
+	var center_z = int(floor(player_pos.z / world_manager.CHUNK_SIZE))
+	var half = tiles_per_side / 2
+	
+	for ty in range(tiles_per_side):
+		for tx in range(tiles_per_side):
+			var chunk_pos = Vector2i(center_x - half + tx, center_z - half + ty)
+			var tile = WIDGET_TILE_UNEXPLORED
+			if chunk_pos in visited_chunks:
+				# Classify the chunk by the terrain at its center
+				var world_pos = Vector3(
+					(chunk_pos.x + 0.5) * world_manager.CHUNK_SIZE,
+					0,
+					(chunk_pos.y + 0.5) * world_manager.CHUNK_SIZE
+				)
+				tile = _get_terrain_tile(world_pos)
+			tiles[ty * tiles_per_side + tx] = tile
+	
+	return {
+		"tiles": tiles,
+		"width": tiles_per_side,
+		"height": tiles_per_side,
+		"player_x": half,
+		"player_y": half,
+	}
+
+func _get_terrain_tile(world_pos: Vector3) -> int:
+	# Same classification as _get_terrain_color
+	if world_manager.get_water_depth_at_position(world_pos) > WATER_DEPTH_SHALLOW:
+		return WIDGET_TILE_WATER
+	var height = world_manager.get_height_at_position(world_pos)
+	if height < HEIGHT_THRESHOLD_LOW:
+		return WIDGET_TILE_PLAINS
+	elif height < HEIGHT_THRESHOLD_MEDIUM:
+		return WIDGET_TILE_FOREST
+	elif height < HEIGHT_THRESHOLD_HIGH:
+		return WIDGET_TILE_MOUNTAIN
+	return WIDGET_TILE_PEAK
@@ -6,6 +6,9 @@ extends Node
 # On Android, this will be in external files directory
 var widget_data_path: String = ""
 
+# Chunks per side of the widget minimap snapshot
+const MINIMAP_TILES_PER_SIDE: int = 32
+
 func _ready() -> void:
 	if OS.get_name() == "Android":
 		# Use external storage for cross-app access
@@ -59,28 +62,61 @@ func export_save_data(save_data: Dictionary) -> void:
 			else:
 				last_error = last_log.left(50)
 	
-	# Write data to shared file in simple key=value format
-	var file = FileAccess.open(widget_data_path, FileAccess.WRITE)
-	if file:
+	# Minimap first: the widget redraws when the data file below changes
+	_export_minimap()
+	
+	# Build the shared file in simple key=value format
+	var lines := PackedStringArray([
 		# Save game data
-		file.store_line("timestamp=" + str(timestamp))
-		file.store_line("day_count=" + str(day_count))
-		file.store_line("current_health=" + str(current_health))
-		file.store_line("torch_count=" + str(torch_count))
-		file.store_line("position_x=" + str(position.x))
-		file.store_line("position_z=" + str(position.z))
-		
+		"timestamp=" + str(timestamp),
+		"day_count=" + str(day_count),
+		"current_health=" + str(current_health),
+		"torch_count=" + str(torch_count),
+		"position_x=" + str(position.x),
+		"position_z=" + str(position.z),
 		# Log data
-		file.store_line("error_count=" + str(error_count))
-		file.store_line("total_log_count=" + str(total_log_count))
-		file.store_line("last_error=" + last_error)
-		
+		"error_count=" + str(error_count),
+		"total_log_count=" + str(total_log_count),
+		"last_error=" + last_error,
+	])
+	var content := "\n".join(lines) + "\n"
+	
+	# Prefer the plugin: it replaces the file atomically and adds a checksum
+	if Engine.has_singleton("SaveGameWidget"):
+		if Engine.get_singleton("SaveGameWidget").publishWidgetDataText(content):
+			print("SaveGameWidgetExporter: Exported save data and logs to file for widget: ", widget_data_path)
+		else:
+			push_error("SaveGameWidgetExporter: Failed to write widget data file: " + widget_data_path)
+		return
+	
+	# Without the plugin, write a temp file and rename it so the widget never reads a half-written file
+	var temp_path := widget_data_path + ".tmp"
+	var file = FileAccess.open(temp_path, FileAccess.WRITE)
+	if file:
+		file.store_string(content)
 		file.close()
 		
-		print("SaveGameWidgetExporter: Exported save data and logs to file for widget: ", widget_data_path)
+		if DirAccess.rename_absolute(temp_path, widget_data_path) == OK:
+			print("SaveGameWidgetExporter: Exported save data and logs to file for widget: ", widget_data_path)
+		else:
+			push_error("SaveGameWidgetExporter: Failed to replace widget data file: " + widget_data_path)
 	else:
 		push_error("SaveGameWidgetExporter: Failed to write widget data file: " + widget_data_path)
 
+# Export the explored-area minimap snapshot through the plugin (if present)
+func _export_minimap() -> void:
+	if not Engine.has_singleton("SaveGameWidget"):
+		return
+	var overlay = get_tree().get_first_node_in_group("MinimapOverlay")
+	if overlay == null or not overlay.has_method("build_widget_tiles"):
+		return
+	var snapshot: Dictionary = overlay.build_widget_tiles(MINIMAP_TILES_PER_SIDE)
+	if snapshot.is_empty():
+		return
+	Engine.get_singleton("SaveGameWidget").exportMinimap(
+		snapshot["tiles"], snapshot["width"], snapshot["height"],
+		snapshot["player_x"], snapshot["player_y"])
+
 # Clear widget data
 func clear_widget_data() -> void:
 	if OS.get_name() != "Android" or widget_data_path == "":
@@ -0,0 +1,418 @@
+package com.yougame.widget;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AsyncLogWriter - Background writer for the widget log file
+ *
+ * Log entries are placed on a bounded in-memory queue by the calling thread
+ * and drained by a single background thread. The writer keeps the log file
+ * channel open and groups all pending entries into one write per batch.
+ *
+ * A batch is written when either:
+ * - the oldest pending entry is older than the flush interval, or
+ * - the pending batch is larger than the flush size threshold, or
+ * - flush() is called (e.g. from onDisabled)
+ *
+ * When the queue is full the configured OverflowPolicy decides what happens
+ * to the new entry.
+ */
+public class AsyncLogWriter {
+
+    private static final String TAG = "YouGameWidget";
+    private static final String THREAD_NAME = "WidgetLogWriter";
+
+    /**
+     * What to do with a new entry when the queue is full
+     */
+    public enum OverflowPolicy {
+        /** Discard the entry being logged */
+        DROP_NEWEST,
+        /** Discard the oldest queued entry to make room */
+        DROP_OLDEST,
+        /** Wait up to the configured block timeout, then discard the entry */
+        BLOCK
+    }
+
+    /**
+     * Writer configuration
+     */
+    public static class Config {
+        public int queueCapacity = 256;
+        public long flushIntervalMs = 2000;
+        public int flushSizeBytes = 8 * 1024;
+        public OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+        public long blockTimeoutMs = 50;
+    }
+
+    /**
+     * A single queued log entry, formatted on the writer thread. Entries are
+     * recycled through a free list, so logging allocates nothing once the
+     * list has filled up; the queue hand-off orders the field writes.
+     */
+    static final class Entry {
+        long timeMillis;
+        String level;
+        String message;
+        Exception exception;
+        final CountDownLatch flushSignal;
+
+        Entry() {
+            this.flushSignal = null;
+        }
+
+        Entry(CountDownLatch flushSignal) {
+            this.flushSignal = flushSignal;
+        }
+    }
+
+    private final LogSegments segments;
+    private final LastErrorRecord errorRecord;
+    private final StructuredLog structuredLog;
+    private final Config config;
+    private final ArrayBlockingQueue<Entry> queue;
+    private final ArrayBlockingQueue<Entry> freeEntries;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    // Writer thread state only
+    private final StringBuilder batch = new StringBuilder(1024);
+    private final ArrayList<Entry> drained = new ArrayList<>();
+    private final ArrayList<CountDownLatch> flushSignals = new ArrayList<>();
+    private FileChannel channel;
+    private long reportedDropped = 0;
+
+    public AsyncLogWriter(LogSegments segments, LastErrorRecord errorRecord, Config config) {
+        this(segments, errorRecord, null, config);
+    }
+
+    /**
+     * @param structuredLog Also receives every entry, written with each batch; may be null
+     */
+    public AsyncLogWriter(LogSegments segments, LastErrorRecord errorRecord, StructuredLog structuredLog,
+                          Config config) {
+        this.segments = segments;
+        this.errorRecord = errorRecord;
+        this.structuredLog = structuredLog;
+        this.config = config;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, config.queueCapacity));
+        this.freeEntries = new ArrayBlockingQueue<>(Math.max(1, config.queueCapacity));
+        this.thread = new Thread(this::run, THREAD_NAME);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queue an entry for writing. Never blocks longer than the configured
+     * block timeout, and never touches the disk on the calling thread.
+     */
+    public void enqueue(long timeMillis, String level, String message, Exception exception) {
+        Entry entry = freeEntries.poll();
+        if (entry == null) {
+            entry = new Entry();
+        }
+        entry.timeMillis = timeMillis;
+        entry.level = level;
+        entry.message = message;
+        entry.exception = exception;
+        if (queue.offer(entry)) {
+            return;
+        }
+
+        switch (config.overflowPolicy) {
+            case DROP_OLDEST:
+                // Make room by discarding the oldest entries until the new one fits.
+                // Flush markers are kept: a flush() caller is waiting on each one.
+                while (!queue.offer(entry)) {
+                    Entry oldest = oldestLogEntry();
+                    if (oldest == null) {
+                        // Only flush markers queued
+                        droppedCount.incrementAndGet();
+                        recycle(entry);
+                        break;
+                    }
+                    if (queue.remove(oldest)) {
+                        droppedCount.incrementAndGet();
+                        recycle(oldest);
+                    }
+                }
+                break;
+            case BLOCK:
+                try {
+                    if (!queue.offer(entry, config.blockTimeoutMs, TimeUnit.MILLISECONDS)) {
+                        droppedCount.incrementAndGet();
+                        recycle(entry);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    droppedCount.incrementAndGet();
+                    recycle(entry);
+                }
+                break;
+            case DROP_NEWEST:
+            default:
+                droppedCount.incrementAndGet();
+                recycle(entry);
+                break;
+        }
+    }
+
+    /**
+     * Oldest queued entry that is not a flush marker, or null if there is none.
+     * Only used when the queue is full, so the iterator costs nothing normally.
+     */
+    private Entry oldestLogEntry() {
+        for (Entry queued : queue) {
+            if (queued.flushSignal == null) {
+                return queued;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return an entry to the free list; flush markers are never reused
+     */
+    private void recycle(Entry entry) {
+        if (entry.flushSignal != null) {
+            return;
+        }
+        entry.level = null;
+        entry.message = null;
+        entry.exception = null;
+        freeEntries.offer(entry);
+    }
+
+    /**
+     * Write all queued entries and force them to storage.
+     * Waits at most timeoutMs for the writer thread.
+     *
+     * @return true if everything queued before this call was written
+     */
+    public boolean flush(long timeoutMs) {
+        if (!thread.isAlive()) {
+            return false;
+        }
+        CountDownLatch signal = new CountDownLatch(1);
+        try {
+            if (!queue.offer(new Entry(signal), timeoutMs, TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+            return signal.await(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Flush pending entries and stop the writer thread
+     */
+    public void shutdown(long timeoutMs) {
+        flush(timeoutMs);
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Number of entries discarded because the queue was full
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    /**
+     * Number of entries currently waiting to be written
+     */
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    private void run() {
+        long firstPendingAt = 0;
+        try {
+            while (running || !queue.isEmpty()) {
+                long waitMs = config.flushIntervalMs;
+                if (batch.length() > 0) {
+                    waitMs = Math.max(0, firstPendingAt + config.flushIntervalMs - System.currentTimeMillis());
+                }
+
+                Entry first;
+                try {
+                    first = queue.poll(waitMs, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        // Drain whatever is left before exiting
+                        first = queue.poll();
+                        if (first == null) {
+                            break;
+                        }
+                    } else {
+                        continue;
+                    }
+                }
+
+                if (first != null) {
+                    drained.add(first);
+                    queue.drainTo(drained);
+                    for (int i = 0; i < drained.size(); i++) {
+                        Entry entry = drained.get(i);
+                        if (entry.flushSignal != null) {
+                            // Signalled below, once the whole batch is written and forced
+                            flushSignals.add(entry.flushSignal);
+                            continue;
+                        }
+                        if (batch.length() == 0) {
+                            firstPendingAt = System.currentTimeMillis();
+                        }
+                        WidgetErrorLogger.formatEntry(batch, entry.timeMillis, entry.level,
+                            entry.message, entry.exception);
+                        appendStructured(entry.timeMillis, entry.level, entry.message, entry.exception);
+                        recycle(entry);
+                    }
+                    drained.clear();
+                }
+
+                boolean flushRequested = !flushSignals.isEmpty();
+                boolean due = batch.length() > 0
+                    && (flushRequested
+                        || batch.length() >= config.flushSizeBytes
+                        || System.currentTimeMillis() - firstPendingAt >= config.flushIntervalMs);
+                if (due) {
+                    writeBatch(flushRequested);
+                } else if (flushRequested) {
+                    forceChannel();
+                }
+                for (int i = 0; i < flushSignals.size(); i++) {
+                    flushSignals.get(i).countDown();
+                }
+                flushSignals.clear();
+            }
+
+            if (batch.length() > 0) {
+                writeBatch(true);
+            }
+        } finally {
+            closeChannel();
+        }
+    }
+
+    /**
+     * Write the current batch with a single channel write
+     */
+    private void writeBatch(boolean force) {
+        long start = System.nanoTime();
+        long dropped = droppedCount.get();
+        if (dropped != reportedDropped) {
+            String message = (dropped - reportedDropped) + " log entries dropped (log queue full)";
+            long now = System.currentTimeMillis();
+            WidgetErrorLogger.formatEntry(batch, now, "WARN", message, null);
+            if (errorRecord != null) {
+                errorRecord.record("WARN", message, now);
+            }
+            appendStructured(now, "WARN", message, null);
+            reportedDropped = dropped;
+        }
+
+        ByteBuffer bytes = ByteBuffer.wrap(batch.toString().getBytes(StandardCharsets.UTF_8));
+        batch.setLength(0);
+
+        try {
+            FileChannel out = openChannel();
+            if (segments.needsRotation(out.size(), bytes.remaining())) {
+                // Rotation is a rename, so the channel must be reopened on the new segment
+                closeChannel();
+                segments.rotate();
+                out = openChannel();
+            }
+            while (bytes.hasRemaining()) {
+                out.write(bytes);
+            }
+            if (force) {
+                out.force(false);
+            }
+
+            if (structuredLog != null) {
+                structuredLog.flush();
+            }
+
+            // Persist the last-error record alongside the entries it describes
+            if (errorRecord != null && errorRecord.isDirty()) {
+                errorRecord.save();
+            }
+        } catch (IOException e) {
+            // Can't log to file, but the entries already went to logcat
+            Log.e(TAG, "Failed to write log batch", e);
+            closeChannel();
+        }
+        WidgetMetrics.LOG_BATCH_WRITE.recordSince(start);
+    }
+
+    private void appendStructured(long timeMillis, String level, String message, Exception exception) {
+        if (structuredLog == null) {
+            return;
+        }
+        try {
+            // Buffered in memory until the batch is written
+            structuredLog.append(timeMillis, level, message, exception);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to append structured log entry", e);
+        }
+    }
+
+    private FileChannel openChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            File logFile = segments.getActiveSegment();
+            File parentDir = logFile.getParentFile();
+            if (parentDir != null && !parentDir.exists()) {
+                parentDir.mkdirs();
+            }
+            // FileOutputStream in append mode rather than FileChannel.open (API 26+)
+            channel = new FileOutputStream(logFile, true).getChannel();
+        }
+        return channel;
+    }
+
+    private void forceChannel() {
+        if (channel != null && channel.isOpen()) {
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to flush log file", e);
+            }
+        }
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to close log file", e);
+            }
+            channel = null;
+        }
+    }
+}
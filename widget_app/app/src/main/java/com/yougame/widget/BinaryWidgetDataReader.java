@@ -0,0 +1,146 @@
+package com.yougame.widget;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * BinaryWidgetDataReader - Reads the binary widget data file (widget_data.bin)
+ *
+ * The file is written by the game plugin (com.yougame.savegamewidget.WidgetDataEncoder).
+ * Numeric fields sit at fixed offsets, followed by a length-prefixed last error
+ * string and a CRC32 trailer. All numbers are big-endian.
+ *
+ * Layout (version 1):
+ *   offset  size  field
+ *        0     4  magic "YGWD"
+ *        4     2  version
+ *        6     2  flags (reserved)
+ *        8     4  sequence
+ *       12     8  timestamp (Unix time, milliseconds)
+ *       20     4  day_count
+ *       24     4  current_health (float)
+ *       28     4  torch_count
+ *       32     4  position_x (float)
+ *       36     4  position_z (float)
+ *       40     4  error_count
+ *       44     4  total_log_count
+ *       48     2  last_error length n (UTF-8 bytes)
+ *       50     n  last_error
+ *     50+n     4  CRC32 of bytes [0, 50+n)
+ *
+ * A truncated or oversized file fails validation and is reported with a
+ * FormatException instead of being parsed into wrong values; an incomplete
+ * file or checksum mismatch (caught mid-write) with a TornReadException.
+ */
+class BinaryWidgetDataReader implements SaveDataCache.Loader {
+
+    static final String FILE_NAME = "widget_data.bin";
+    static final int MAGIC = 0x59475744; // "YGWD"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 50;
+    static final int CHECKSUM_SIZE = 4;
+    static final int MAX_LAST_ERROR_BYTES = 1024;
+    static final int MAX_FILE_SIZE = HEADER_SIZE + MAX_LAST_ERROR_BYTES + CHECKSUM_SIZE;
+
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_TIMESTAMP = 12;
+    private static final int OFFSET_DAY_COUNT = 20;
+    private static final int OFFSET_HEALTH = 24;
+    private static final int OFFSET_TORCH_COUNT = 28;
+    private static final int OFFSET_POSITION_X = 32;
+    private static final int OFFSET_POSITION_Z = 36;
+    private static final int OFFSET_ERROR_COUNT = 40;
+    private static final int OFFSET_TOTAL_LOG_COUNT = 44;
+    private static final int OFFSET_LAST_ERROR_LENGTH = 48;
+
+    /**
+     * The file is not a complete, valid widget data file
+     */
+    static class FormatException extends IOException {
+        FormatException(String message) {
+            super(message);
+        }
+    }
+
+    // Reused between reads; one byte larger than the maximum to detect oversized files
+    private final ByteBuffer buffer = ByteBuffer.allocate(MAX_FILE_SIZE + 1);
+    private final CRC32 crc = new CRC32();
+
+    @Override
+    public long readAndHash(File file) throws IOException {
+        buffer.clear();
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel channel = in.getChannel();
+            while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+                // Keep reading until EOF or the buffer is full
+            }
+        }
+        buffer.flip();
+        return validate(buffer);
+    }
+
+    @Override
+    public SaveData parse() throws IOException {
+        return decode(buffer, new SaveData());
+    }
+
+    /**
+     * Check the header, length and checksum of an encoded snapshot
+     *
+     * @return the stored checksum, usable as a content hash
+     */
+    long validate(ByteBuffer data) throws IOException {
+        int size = data.limit();
+        if (size < HEADER_SIZE + CHECKSUM_SIZE) {
+            throw new FormatException("Widget data file too short: " + size + " bytes");
+        }
+        if (size > MAX_FILE_SIZE) {
+            throw new FormatException("Widget data file too large: " + size + " bytes");
+        }
+        if (data.getInt(0) != MAGIC) {
+            throw new FormatException("Widget data file has wrong magic");
+        }
+        int version = data.getShort(OFFSET_VERSION) & 0xFFFF;
+        if (version != VERSION) {
+            throw new FormatException("Unsupported widget data version: " + version);
+        }
+        int errorLength = data.getShort(OFFSET_LAST_ERROR_LENGTH) & 0xFFFF;
+        int checksumOffset = HEADER_SIZE + errorLength;
+        if (errorLength > MAX_LAST_ERROR_BYTES || checksumOffset + CHECKSUM_SIZE != size) {
+            throw new SaveDataCache.TornReadException("Widget data file is incomplete (torn write?)");
+        }
+
+        crc.reset();
+        crc.update(data.array(), data.arrayOffset(), checksumOffset);
+        long stored = data.getInt(checksumOffset) & 0xFFFFFFFFL;
+        if (crc.getValue() != stored) {
+            throw new SaveDataCache.TornReadException("Widget data checksum mismatch (torn write?)");
+        }
+        return stored;
+    }
+
+    /**
+     * Decode a validated snapshot into the given SaveData
+     */
+    static SaveData decode(ByteBuffer data, SaveData out) {
+        out.timestamp = data.getLong(OFFSET_TIMESTAMP);
+        out.dayCount = data.getInt(OFFSET_DAY_COUNT);
+        out.currentHealth = data.getFloat(OFFSET_HEALTH);
+        out.torchCount = data.getInt(OFFSET_TORCH_COUNT);
+        out.positionX = data.getFloat(OFFSET_POSITION_X);
+        out.positionZ = data.getFloat(OFFSET_POSITION_Z);
+        out.errorCount = data.getInt(OFFSET_ERROR_COUNT);
+        out.totalLogCount = data.getInt(OFFSET_TOTAL_LOG_COUNT);
+
+        int errorLength = data.getShort(OFFSET_LAST_ERROR_LENGTH) & 0xFFFF;
+        out.lastError = errorLength > 0
+            ? new String(data.array(), data.arrayOffset() + HEADER_SIZE, errorLength, StandardCharsets.UTF_8)
+            : "";
+        return out;
+    }
+}
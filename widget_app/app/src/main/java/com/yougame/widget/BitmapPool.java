@@ -0,0 +1,61 @@
+package com.yougame.widget;
+
+import android.graphics.Bitmap;
+
+/**
+ * BitmapPool - A few reused ARGB bitmaps for rendering widget images
+ *
+ * Bitmaps are handed out round-robin, so the one pushed with the previous
+ * RemoteViews is not drawn over while the next image is rendered. A slot
+ * is reused as is when the size matches, reconfigured when its allocation
+ * is large enough, and only replaced by a new bitmap otherwise.
+ *
+ * Not thread-safe.
+ */
+class BitmapPool {
+
+    private final Bitmap[] slots;
+    private int next = 0;
+
+    private int createdCount = 0;
+    private int reusedCount = 0;
+
+    BitmapPool(int size) {
+        slots = new Bitmap[size];
+    }
+
+    /**
+     * A mutable ARGB_8888 bitmap of the given size. Its previous contents are
+     * undefined; callers overwrite every pixel.
+     */
+    Bitmap acquire(int width, int height) {
+        int index = next;
+        next = (next + 1) % slots.length;
+
+        Bitmap bitmap = slots[index];
+        if (bitmap != null && !bitmap.isRecycled() && bitmap.isMutable()) {
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                reusedCount++;
+                return bitmap;
+            }
+            if (bitmap.getAllocationByteCount() >= width * height * 4) {
+                bitmap.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+                reusedCount++;
+                return bitmap;
+            }
+        }
+        // Not recycled: the previous RemoteViews may still reference it
+        bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        slots[index] = bitmap;
+        createdCount++;
+        return bitmap;
+    }
+
+    int getCreatedCount() {
+        return createdCount;
+    }
+
+    int getReusedCount() {
+        return reusedCount;
+    }
+}
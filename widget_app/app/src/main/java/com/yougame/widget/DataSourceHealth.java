@@ -0,0 +1,153 @@
+package com.yougame.widget;
+
+/**
+ * DataSourceHealth - Backs off reads of a data source that keeps failing
+ *
+ * While the game's data is readable every refresh reads it. After a failed
+ * read the source is unhealthy: refreshes get the cached negative result
+ * (no file checks, no error log entry) until the next full probe is due.
+ * The delay between full probes doubles after every failure, up to a
+ * maximum.
+ *
+ * Between full probes a cheap probe is used: the caller passes a
+ * modification stamp of the source (e.g. the data directory's
+ * lastModified, one stat call). A stamp different from the one seen at the
+ * last failure means a file appeared or was replaced, and the source is
+ * read right away. onSourceChanged does the same for change events. The
+ * first successful read makes the source healthy again.
+ *
+ * Time is injected so tests can drive it with a fake clock.
+ */
+public class DataSourceHealth {
+
+    private final RefreshDebouncer.Clock clock;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    private boolean healthy = true;
+    private long backoffMillis = 0;
+    private long nextProbeAt = 0;
+    private long failedStamp = 0;
+    private long unhealthySince = 0;
+    private String lastFailure = null;
+
+    private long fullReads = 0;
+    private long readsSkipped = 0;
+    private long failures = 0;
+    private long recoveries = 0;
+
+    public DataSourceHealth(RefreshDebouncer.Clock clock, long initialBackoffMillis, long maxBackoffMillis) {
+        this.clock = clock;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = Math.max(initialBackoffMillis, maxBackoffMillis);
+    }
+
+    /**
+     * True while reads succeed; callers can skip the cheap probe then
+     */
+    public synchronized boolean isHealthy() {
+        return healthy;
+    }
+
+    /**
+     * Whether the source should be read now
+     *
+     * @param sourceStamp Modification stamp of the source, only used while unhealthy
+     * @return false if the cached negative result should be used instead
+     */
+    public synchronized boolean shouldRead(long sourceStamp) {
+        if (healthy || sourceStamp != failedStamp || clock.uptimeMillis() >= nextProbeAt) {
+            fullReads++;
+            return true;
+        }
+        readsSkipped++;
+        return false;
+    }
+
+    /**
+     * Record a successful read; a backed off source is healthy again at once
+     */
+    public synchronized void onReadSucceeded() {
+        if (!healthy) {
+            recoveries++;
+        }
+        healthy = true;
+        backoffMillis = 0;
+        nextProbeAt = 0;
+        lastFailure = null;
+    }
+
+    /**
+     * Record a failed read and schedule the next full probe
+     *
+     * @param sourceStamp Modification stamp of the source taken before the read
+     * @param reason What failed, for diagnostics
+     */
+    public synchronized void onReadFailed(long sourceStamp, String reason) {
+        long now = clock.uptimeMillis();
+        failures++;
+        if (healthy) {
+            healthy = false;
+            unhealthySince = now;
+            backoffMillis = initialBackoffMillis;
+        } else {
+            backoffMillis = Math.min(backoffMillis * 2, maxBackoffMillis);
+        }
+        nextProbeAt = now + backoffMillis;
+        failedStamp = sourceStamp;
+        lastFailure = reason;
+    }
+
+    /**
+     * The source reported a change (e.g. a file write event): read it on the next refresh
+     */
+    public synchronized void onSourceChanged() {
+        nextProbeAt = 0;
+    }
+
+    public synchronized long getFullReadCount() {
+        return fullReads;
+    }
+
+    /**
+     * Reads answered with the cached negative result instead of touching the source
+     */
+    public synchronized long getReadsSkippedCount() {
+        return readsSkipped;
+    }
+
+    public synchronized long getFailureCount() {
+        return failures;
+    }
+
+    public synchronized long getRecoveryCount() {
+        return recoveries;
+    }
+
+    /**
+     * Current delay between full probes, 0 while healthy
+     */
+    public synchronized long getBackoffMillis() {
+        return backoffMillis;
+    }
+
+    /**
+     * State and counters as key=value lines, for the diagnostics archive
+     */
+    public synchronized String describe() {
+        long now = clock.uptimeMillis();
+        StringBuilder out = new StringBuilder(256);
+        out.append("state=").append(healthy ? "healthy" : "backing_off").append('\n');
+        if (!healthy) {
+            out.append("unhealthy_for_ms=").append(now - unhealthySince).append('\n');
+            out.append("backoff_ms=").append(backoffMillis).append('\n');
+            out.append("next_probe_in_ms=").append(Math.max(0, nextProbeAt - now)).append('\n');
+            out.append("last_failure=").append(lastFailure != null ? lastFailure : "").append('\n');
+        }
+        out.append("full_reads=").append(fullReads).append('\n');
+        out.append("reads_skipped=").append(readsSkipped).append('\n');
+        out.append("failures=").append(failures).append('\n');
+        out.append("recoveries=").append(recoveries).append('\n');
+        return out.toString();
+    }
+}
@@ -0,0 +1,184 @@
+package com.yougame.widget;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * DiagnosticsExporter - Packs widget diagnostics into one ZIP archive
+ *
+ * Entries are added as files (log segments, raw data files) or short texts
+ * (parsed save data, metrics JSON) and written in the order they were added.
+ * Files are streamed through one fixed-size buffer, so exporting never loads
+ * a whole file into memory no matter how large the log has grown. A file
+ * still being appended to is copied up to the length it had when the export
+ * started, which keeps the progress total exact.
+ *
+ * The archive is written to a temp file and renamed into place, so a
+ * half-written archive is never left under the final name.
+ *
+ * Not thread-safe; background exports run one at a time on a single
+ * shared thread (runInBackground).
+ */
+public class DiagnosticsExporter {
+
+    private static final String THREAD_NAME = "WidgetDiagnostics";
+
+    static final String ARCHIVE_FILE = "widget_diagnostics.zip";
+    static final int BUFFER_SIZE = 8 * 1024;
+
+    private static ExecutorService backgroundExecutor = null;
+
+    /**
+     * Export progress, called on the exporting thread
+     */
+    public interface Listener {
+        /** Bytes of entry content written so far out of the total */
+        void onProgress(long bytesDone, long bytesTotal);
+
+        /** The archive is complete; archiveBytes is its compressed size */
+        void onComplete(File archive, long archiveBytes);
+
+        void onFailed(IOException error);
+    }
+
+    private static final class Entry {
+        final String name;
+        final File file;
+        final byte[] text;
+
+        Entry(String name, File file, byte[] text) {
+            this.name = name;
+            this.file = file;
+            this.text = text;
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * Add a file to the archive; skipped if it does not exist at export time
+     */
+    public DiagnosticsExporter addFile(String name, File file) {
+        entries.add(new Entry(name, file, null));
+        return this;
+    }
+
+    /**
+     * Add a short text (UTF-8) to the archive
+     */
+    public DiagnosticsExporter addText(String name, String text) {
+        entries.add(new Entry(name, null, text.getBytes(StandardCharsets.UTF_8)));
+        return this;
+    }
+
+    /**
+     * Write all entries into archive. Progress is reported at most once per
+     * percent; the listener gets onComplete or onFailed exactly once.
+     *
+     * @return the compressed archive size in bytes
+     */
+    public long write(File archive, Listener listener) throws IOException {
+        // Sizes are fixed up front; files growing during the export are cut there
+        long[] sizes = new long[entries.size()];
+        long total = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            sizes[i] = entry.file != null ? (entry.file.isFile() ? entry.file.length() : -1)
+                : entry.text.length;
+            total += Math.max(0, sizes[i]);
+        }
+
+        File parentDir = archive.getParentFile();
+        if (parentDir != null && !parentDir.exists()) {
+            parentDir.mkdirs();
+        }
+        File temp = new File(archive.getPath() + ".tmp");
+        try {
+            long done = 0;
+            int reportedPercent = -1;
+            try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(temp))) {
+                for (int i = 0; i < entries.size(); i++) {
+                    Entry entry = entries.get(i);
+                    if (sizes[i] < 0) {
+                        continue;
+                    }
+                    zip.putNextEntry(new ZipEntry(entry.name));
+                    if (entry.text != null) {
+                        zip.write(entry.text);
+                        done += entry.text.length;
+                    } else {
+                        try (InputStream in = new FileInputStream(entry.file)) {
+                            long remaining = sizes[i];
+                            while (remaining > 0) {
+                                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                                if (read < 0) {
+                                    // Truncated (e.g. rotated) while exporting; count it as done
+                                    done += remaining;
+                                    break;
+                                }
+                                zip.write(buffer, 0, read);
+                                remaining -= read;
+                                done += read;
+                                reportedPercent = reportProgress(listener, done, total, reportedPercent);
+                            }
+                        }
+                    }
+                    zip.closeEntry();
+                    reportedPercent = reportProgress(listener, done, total, reportedPercent);
+                }
+            }
+            if (!temp.renameTo(archive)) {
+                throw new IOException("Failed to replace " + archive);
+            }
+        } catch (IOException e) {
+            temp.delete();
+            if (listener != null) {
+                listener.onFailed(e);
+            }
+            throw e;
+        }
+
+        long archiveBytes = archive.length();
+        if (listener != null) {
+            listener.onComplete(archive, archiveBytes);
+        }
+        return archiveBytes;
+    }
+
+    private static int reportProgress(Listener listener, long done, long total, int reportedPercent) {
+        int percent = total > 0 ? (int) (done * 100 / total) : 100;
+        if (listener != null && percent != reportedPercent) {
+            listener.onProgress(done, total);
+        }
+        return percent;
+    }
+
+    /**
+     * Run an export on the shared diagnostics thread, one at a time
+     */
+    static synchronized void runInBackground(Runnable export) {
+        if (backgroundExecutor == null) {
+            backgroundExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, THREAD_NAME);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        backgroundExecutor.execute(export);
+    }
+}
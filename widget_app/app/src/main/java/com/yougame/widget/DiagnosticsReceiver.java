@@ -0,0 +1,58 @@
+package com.yougame.widget;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * DiagnosticsReceiver - Writes widget_diagnostics.zip on request
+ *
+ * Receives ACTION_EXPORT_DIAGNOSTICS. The manifest only lets senders holding
+ * android.permission.DUMP reach it: adb shell can, other apps can't, so no
+ * installed app can make the widget write out its logs and save state.
+ */
+public class DiagnosticsReceiver extends BroadcastReceiver {
+
+    /** Explicit broadcast that writes widget_diagnostics.zip next to the error log */
+    public static final String ACTION_EXPORT_DIAGNOSTICS = "com.yougame.widget.action.EXPORT_DIAGNOSTICS";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (!ACTION_EXPORT_DIAGNOSTICS.equals(intent.getAction())) {
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        final PendingResult result = goAsync();
+        final DiagnosticsExporter.Listener listener = new DiagnosticsExporter.Listener() {
+            @Override
+            public void onProgress(long bytesDone, long bytesTotal) {
+            }
+
+            @Override
+            public void onComplete(File archive, long archiveBytes) {
+                WidgetErrorLogger.logInfo(appContext, "Diagnostics exported to "
+                    + archive.getAbsolutePath() + " (" + archiveBytes + " bytes)");
+            }
+
+            @Override
+            public void onFailed(IOException error) {
+            }
+        };
+        DiagnosticsExporter.runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                // Release the broadcast however the export ends
+                try {
+                    SaveGameWidgetProvider.writeDiagnostics(appContext, listener);
+                } finally {
+                    if (result != null) {
+                        result.finish();
+                    }
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,78 @@
+package com.yougame.widget;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * FileDataSource - Reads save data from the files in the game's data directory
+ *
+ * Prefers the binary widget_data.bin written by newer game builds and falls
+ * back to the key=value widget_data.txt. The binary file is skipped if the
+ * text file is newer: a game build or path that only writes the text file
+ * leaves an old widget_data.bin behind. Goes through the process-wide
+ * SaveDataCache, so an unchanged file is not reparsed.
+ *
+ * This is how game builds without SaveDataProvider share their data. It
+ * needs the storage permission and does not work under scoped storage.
+ */
+class FileDataSource implements SaveDataSource {
+
+    static final String TEXT_FILE_NAME = "widget_data.txt";
+
+    private volatile File dir;
+
+    FileDataSource(File dir) {
+        this.dir = dir;
+    }
+
+    File getDir() {
+        return dir;
+    }
+
+    /**
+     * Read from another directory from the next read on
+     */
+    void setDir(File dir) {
+        this.dir = dir;
+    }
+
+    @Override
+    public SaveData read(Context context) throws IOException {
+        File dir = this.dir;
+        File binaryFile = new File(dir, BinaryWidgetDataReader.FILE_NAME);
+        File dataFile = new File(dir, TEXT_FILE_NAME);
+        // lastModified is 0 for a missing file
+        if (binaryFile.canRead() && binaryFile.lastModified() >= dataFile.lastModified()) {
+            try {
+                return SaveDataCache.getInstance().get(binaryFile, new BinaryWidgetDataReader());
+            } catch (BinaryWidgetDataReader.FormatException | SaveDataCache.TornReadException fe) {
+                WidgetErrorLogger.logError(context,
+                    "Invalid binary save data, falling back to text file: " + fe.getMessage(),
+                    null);
+            }
+        }
+
+        if (!dataFile.exists()) {
+            throw new FileNotFoundException(
+                "Save data file not found. Main game may not be installed or no save yet. Path: " + dataFile.getAbsolutePath());
+        }
+        if (!dataFile.canRead()) {
+            throw new UnreadableException(
+                "Cannot read save data file. Permission denied. Check storage permissions. Path: " + dataFile.getAbsolutePath());
+        }
+        try {
+            return SaveDataCache.getInstance().get(dataFile, TextWidgetDataLoader.getInstance(context));
+        } catch (FileNotFoundException fnfe) {
+            // Deleted since the check above
+            throw new FileNotFoundException("Save data file not found: " + fnfe.getMessage());
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "files";
+    }
+}
@@ -0,0 +1,65 @@
+package com.yougame.widget;
+
+import android.os.FileObserver;
+
+import java.io.File;
+
+/**
+ * FileObserverDataWatcher - Watches the game's data directory for finished writes
+ *
+ * Reports close-after-write and move-into-place events for the widget data
+ * files (widget_data.txt and widget_data.bin). Other files in the directory
+ * are ignored.
+ */
+public class FileObserverDataWatcher implements WidgetDataWatcher {
+
+    private static final int EVENTS = FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO;
+
+    private final File directory;
+    private final String[] fileNames;
+    private FileObserver observer = null;
+
+    public FileObserverDataWatcher(File directory, String... fileNames) {
+        this.directory = directory;
+        this.fileNames = fileNames;
+    }
+
+    @Override
+    public synchronized void start(final Listener listener) {
+        if (observer != null) {
+            return;
+        }
+        // The String constructor is deprecated but the File one needs API 29
+        observer = new FileObserver(directory.getPath(), EVENTS) {
+            @Override
+            public void onEvent(int event, String path) {
+                if (path != null && isWatchedFile(path)) {
+                    listener.onDataChanged();
+                }
+            }
+        };
+        observer.startWatching();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (observer != null) {
+            observer.stopWatching();
+            observer = null;
+        }
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return observer != null;
+    }
+
+    private boolean isWatchedFile(String path) {
+        for (String name : fileNames) {
+            if (name.equals(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,217 @@
+package com.yougame.widget;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+
+import java.io.IOException;
+
+/**
+ * GameProviderDataSource - Reads save data from the game's SaveDataProvider
+ *
+ * The game serves its current snapshot from memory (see SaveDataContract),
+ * so a read is one query instead of several file system calls, and it needs
+ * no storage permission. While observing, the last row is cached and the
+ * provider is queried again only after the game notified a change.
+ * Without an observer every read queries the provider.
+ *
+ * The source is unavailable if the query fails: the installed game build
+ * has no provider (older builds, or no game), or the read permission wasn't
+ * granted (the apps are signed with different keys, or the widget app was
+ * installed before the game). It is then not asked again for the recheck
+ * interval, unless the game notifies a change, and the caller falls back to
+ * the data files. A provider without a snapshot (the game never saved
+ * through the plugin's store) also counts as unavailable for that read.
+ */
+class GameProviderDataSource implements SaveDataSource {
+
+    private static final String[] PROJECTION = {
+        SaveDataContract.TIMESTAMP,
+        SaveDataContract.DAY_COUNT,
+        SaveDataContract.CURRENT_HEALTH,
+        SaveDataContract.TORCH_COUNT,
+        SaveDataContract.POSITION_X,
+        SaveDataContract.POSITION_Z,
+        SaveDataContract.ERROR_COUNT,
+        SaveDataContract.TOTAL_LOG_COUNT,
+        SaveDataContract.LAST_ERROR,
+    };
+
+    private final RefreshDebouncer.Clock clock;
+    private final long recheckMillis;
+    private Uri uri = null;
+
+    private ContentResolver observedResolver = null;
+    private ContentObserver observer = null;
+    // Set by the observer; the cached row is only used while observing
+    private volatile boolean stale = true;
+    private SaveData cached = null;
+
+    private boolean available = true;
+    private long recheckAt = 0;
+    private String unavailableReason = null;
+    private long queryCount = 0;
+    private long cacheHitCount = 0;
+    private long changeCount = 0;
+
+    /**
+     * @param recheckMillis How long an unavailable provider is not asked again
+     */
+    GameProviderDataSource(RefreshDebouncer.Clock clock, long recheckMillis) {
+        this.clock = clock;
+        this.recheckMillis = recheckMillis;
+    }
+
+    /**
+     * Cache the provider's row and invalidate it when the game notifies a change
+     *
+     * @param listener Also told about each change; may be called on any thread
+     */
+    synchronized void startObserving(ContentResolver resolver, final WidgetDataWatcher.Listener listener) {
+        if (observer != null) {
+            return;
+        }
+        observer = new ContentObserver(null) {
+            @Override
+            public void onChange(boolean selfChange) {
+                onSourceChanged();
+                if (listener != null) {
+                    listener.onDataChanged();
+                }
+            }
+        };
+        observedResolver = resolver;
+        stale = true;
+        resolver.registerContentObserver(getUri(), false, observer);
+    }
+
+    /**
+     * Stop observing; reads query the provider again
+     */
+    synchronized void stopObserving() {
+        if (observer != null) {
+            observedResolver.unregisterContentObserver(observer);
+            observer = null;
+            observedResolver = null;
+        }
+        stale = true;
+    }
+
+    @Override
+    public synchronized SaveData read(Context context) throws IOException {
+        if (observer != null && !stale) {
+            cacheHitCount++;
+            return cached;
+        }
+        if (!available && clock.uptimeMillis() < recheckAt) {
+            return null;
+        }
+
+        // A change notified from here on marks the new row stale again
+        stale = false;
+        queryCount++;
+        Cursor cursor;
+        try {
+            cursor = context.getContentResolver().query(getUri(), PROJECTION, null, null, null);
+        } catch (SecurityException e) {
+            return unavailable(context, "read permission not granted");
+        } catch (IllegalArgumentException e) {
+            return unavailable(context, "incompatible provider: " + e.getMessage());
+        }
+        if (cursor == null) {
+            return unavailable(context, "game provider not installed");
+        }
+        try {
+            if (!available) {
+                available = true;
+                WidgetErrorLogger.logInfo(context, "Reading save data from the game's provider");
+            }
+            cached = cursor.moveToFirst() ? toSaveData(cursor) : null;
+            return cached;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "game_provider";
+    }
+
+    /**
+     * The game notified a change: drop the cached row and ask the provider again
+     */
+    void onSourceChanged() {
+        synchronized (this) {
+            changeCount++;
+            recheckAt = 0;
+        }
+        stale = true;
+    }
+
+    /**
+     * Queries sent to the provider; cached reads don't count
+     */
+    synchronized long getQueryCount() {
+        return queryCount;
+    }
+
+    synchronized long getCacheHitCount() {
+        return cacheHitCount;
+    }
+
+    /**
+     * State and counters as key=value lines, for the diagnostics archive
+     */
+    synchronized String describe() {
+        StringBuilder out = new StringBuilder(256);
+        out.append("provider=").append(available ? "available" : "unavailable").append('\n');
+        if (!available) {
+            out.append("unavailable_reason=").append(unavailableReason).append('\n');
+            out.append("recheck_in_ms=").append(Math.max(0, recheckAt - clock.uptimeMillis())).append('\n');
+        }
+        out.append("observing=").append(observer != null).append('\n');
+        out.append("queries=").append(queryCount).append('\n');
+        out.append("cache_hits=").append(cacheHitCount).append('\n');
+        out.append("changes=").append(changeCount).append('\n');
+        return out.toString();
+    }
+
+    private SaveData unavailable(Context context, String reason) {
+        stale = true;
+        cached = null;
+        recheckAt = clock.uptimeMillis() + recheckMillis;
+        if (available) {
+            available = false;
+            WidgetErrorLogger.logInfo(context, "Game provider unavailable (" + reason
+                + "), reading save data files");
+        }
+        unavailableReason = reason;
+        return null;
+    }
+
+    private Uri getUri() {
+        if (uri == null) {
+            uri = Uri.parse(SaveDataContract.CONTENT_URI);
+        }
+        return uri;
+    }
+
+    private static SaveData toSaveData(Cursor cursor) {
+        // Columns in PROJECTION order
+        SaveData data = new SaveData();
+        data.timestamp = cursor.getLong(0);
+        data.dayCount = cursor.getInt(1);
+        data.currentHealth = cursor.getFloat(2);
+        data.torchCount = cursor.getInt(3);
+        data.positionX = cursor.getFloat(4);
+        data.positionZ = cursor.getFloat(5);
+        data.errorCount = cursor.getInt(6);
+        data.totalLogCount = cursor.getInt(7);
+        String lastError = cursor.getString(8);
+        data.lastError = lastError != null ? lastError : "";
+        return data;
+    }
+}
@@ -0,0 +1,202 @@
+package com.yougame.widget;
+
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * LastErrorRecord - Most recent error and per-level counts for the widget log
+ *
+ * Kept in memory and mirrored to a small sidecar file next to the log
+ * (widget_errors.state), so the widget can show the last error without
+ * scanning the log. The sidecar is rewritten via a temp file and rename,
+ * so a reader never sees a half-written record.
+ *
+ * The sidecar also remembers whether the logs written before it existed
+ * were scanned for a last error. Counters alone make it exist before any
+ * error is logged, so its presence doesn't mean the scan happened.
+ */
+public class LastErrorRecord {
+
+    private static final String TAG = "YouGameWidget";
+    private static final int MAGIC = 0x59474C45; // "YGLE"
+    private static final int VERSION = 1;
+
+    /** Levels with a dedicated counter, in sidecar order */
+    public static final String[] LEVELS = {"INFO", "WARN", "ERROR"};
+
+    private final File file;
+    private final long[] levelCounts = new long[LEVELS.length];
+    private String lastErrorMessage = null;
+    private long lastErrorTime = 0;
+    private boolean legacyScanned = false;
+    private boolean loaded = false;
+    private boolean dirty = false;
+
+    public LastErrorRecord(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Account for a log entry. Errors also become the new last error.
+     */
+    public synchronized void record(String level, String message, long timeMillis) {
+        ensureLoaded();
+        int index = levelIndex(level);
+        if (index >= 0) {
+            levelCounts[index]++;
+        }
+        if ("ERROR".equals(level)) {
+            lastErrorMessage = message;
+            lastErrorTime = timeMillis;
+        }
+        dirty = true;
+    }
+
+    /**
+     * Seed the record when no sidecar exists yet (e.g. after an upgrade)
+     */
+    public synchronized void seedLastError(String message, long timeMillis) {
+        ensureLoaded();
+        if (lastErrorMessage == null) {
+            lastErrorMessage = message;
+            lastErrorTime = timeMillis;
+            dirty = true;
+        }
+    }
+
+    public synchronized String getLastErrorMessage() {
+        ensureLoaded();
+        return lastErrorMessage;
+    }
+
+    public synchronized long getLastErrorTime() {
+        ensureLoaded();
+        return lastErrorTime;
+    }
+
+    /**
+     * Number of entries logged at the given level, 0 for unknown levels
+     */
+    public synchronized long getCount(String level) {
+        ensureLoaded();
+        int index = levelIndex(level);
+        return index >= 0 ? levelCounts[index] : 0;
+    }
+
+    /**
+     * Whether the sidecar file exists on disk
+     */
+    public boolean hasSidecar() {
+        return file.exists();
+    }
+
+    /**
+     * Whether the logs written before the record existed were already
+     * scanned for a last error (see markLegacyScanned)
+     */
+    public synchronized boolean isLegacyScanned() {
+        ensureLoaded();
+        return legacyScanned;
+    }
+
+    /**
+     * Remember that the legacy scan ran, whether or not it found an error
+     */
+    public synchronized void markLegacyScanned() {
+        ensureLoaded();
+        if (!legacyScanned) {
+            legacyScanned = true;
+            dirty = true;
+        }
+    }
+
+    public synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Write the record to the sidecar file if it changed since the last save
+     */
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        File parentDir = file.getParentFile();
+        if (parentDir != null && !parentDir.exists()) {
+            parentDir.mkdirs();
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(lastErrorTime);
+            out.writeBoolean(lastErrorMessage != null);
+            if (lastErrorMessage != null) {
+                out.writeUTF(truncate(lastErrorMessage));
+            }
+            out.writeInt(levelCounts.length);
+            for (long count : levelCounts) {
+                out.writeLong(count);
+            }
+            out.writeBoolean(legacyScanned);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write error state file", e);
+            return;
+        }
+
+        if (!tmp.renameTo(file)) {
+            Log.e(TAG, "Failed to replace error state file");
+            return;
+        }
+        dirty = false;
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!file.exists()) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Log.w(TAG, "Ignoring error state file with unknown format");
+                return;
+            }
+            lastErrorTime = in.readLong();
+            lastErrorMessage = in.readBoolean() ? in.readUTF() : null;
+            int count = in.readInt();
+            for (int i = 0; i < count && i < levelCounts.length; i++) {
+                levelCounts[i] = in.readLong();
+            }
+            legacyScanned = in.readBoolean();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read error state file", e);
+        }
+    }
+
+    private static int levelIndex(String level) {
+        for (int i = 0; i < LEVELS.length; i++) {
+            if (LEVELS[i].equals(level)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * writeUTF is limited to 64KB; the widget only shows a short line anyway
+     */
+    private static String truncate(String message) {
+        return message.length() > 1024 ? message.substring(0, 1024) : message;
+    }
+}
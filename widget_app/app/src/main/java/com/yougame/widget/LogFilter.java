@@ -0,0 +1,228 @@
+package com.yougame.widget;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LogFilter - Decides which log entries reach the log file
+ *
+ * - Minimum level: entries below it are dropped. ERROR always passes.
+ * - Deduplication: the first occurrence of a message is written; identical
+ *   messages (same level and text) within the window after it are only
+ *   counted. When the window has passed, a single summary entry with the
+ *   repeat count is written.
+ * - INFO sampling: of the INFO entries that pass deduplication, only the
+ *   configured fraction is written. ERROR and WARN are never sampled.
+ *
+ * Summaries are written lazily, on the next filtered entry or on flush().
+ */
+public class LogFilter {
+
+    /**
+     * Receives summary entries for repeated messages
+     */
+    public interface Sink {
+        void write(long timeMillis, String level, String message);
+    }
+
+    static final long DEFAULT_WINDOW_MS = 60_000;
+
+    // Bound on distinct messages tracked at once; more than this flushes all summaries
+    static final int MAX_TRACKED_MESSAGES = 64;
+
+    private static final class Repeat {
+        final String level;
+        final String message;
+        final long windowEnd;
+        int suppressed = 0;
+
+        Repeat(String level, String message, long windowEnd) {
+            this.level = level;
+            this.message = message;
+            this.windowEnd = windowEnd;
+        }
+    }
+
+    private final Map<String, Repeat> repeats = new HashMap<>();
+    private final List<Repeat> expired = new ArrayList<>();
+
+    private int minLevel = 0;
+    private long windowMillis = DEFAULT_WINDOW_MS;
+    private float infoSampleRate = 1.0f;
+    private float infoSampleCredit = 0;
+
+    private long suppressedCount = 0;
+    private long sampledOutCount = 0;
+
+    /**
+     * Set the minimum level written: "INFO", "WARN" or "ERROR"
+     */
+    public synchronized void setMinLevel(String level) {
+        int index = levelIndex(level);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unknown log level: " + level);
+        }
+        minLevel = index;
+    }
+
+    public synchronized String getMinLevel() {
+        return LastErrorRecord.LEVELS[minLevel];
+    }
+
+    /**
+     * Whether entries of this level pass the minimum level
+     */
+    public synchronized boolean isEnabled(String level) {
+        return levelIndex(level) >= minLevel || "ERROR".equals(level);
+    }
+
+    /**
+     * Set the deduplication window; 0 disables deduplication
+     */
+    public synchronized void setWindowMillis(long windowMillis) {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("Invalid deduplication window: " + windowMillis);
+        }
+        this.windowMillis = windowMillis;
+    }
+
+    public synchronized long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * Fraction of INFO entries to write, from 0 (none) to 1 (all)
+     */
+    public synchronized void setInfoSampleRate(float rate) {
+        if (!(rate >= 0f && rate <= 1f)) {
+            throw new IllegalArgumentException("Sample rate must be between 0 and 1: " + rate);
+        }
+        infoSampleRate = rate;
+        infoSampleCredit = 0;
+    }
+
+    public synchronized float getInfoSampleRate() {
+        return infoSampleRate;
+    }
+
+    /**
+     * Decide whether an entry should be written. Summaries of repeats whose
+     * window has passed are handed to the sink first.
+     *
+     * @return true if the entry should be written now
+     */
+    public boolean accept(String level, String message, long now, Sink sink) {
+        boolean accept;
+        synchronized (this) {
+            collectExpired(now);
+            accept = decide(level, message, now);
+        }
+        writeSummaries(now, sink);
+        return accept;
+    }
+
+    /**
+     * Hand all pending repeat summaries to the sink and forget them
+     */
+    public void flush(long now, Sink sink) {
+        synchronized (this) {
+            expired.addAll(repeats.values());
+            repeats.clear();
+        }
+        writeSummaries(now, sink);
+    }
+
+    /**
+     * Entries not written because they repeated an earlier one
+     */
+    public synchronized long getSuppressedCount() {
+        return suppressedCount;
+    }
+
+    /**
+     * INFO entries not written because of sampling
+     */
+    public synchronized long getSampledOutCount() {
+        return sampledOutCount;
+    }
+
+    private boolean decide(String level, String message, long now) {
+        if (!isEnabled(level)) {
+            return false;
+        }
+
+        if (windowMillis > 0 && message != null) {
+            Repeat repeat = repeats.get(message);
+            if (repeat != null && repeat.level.equals(level)) {
+                repeat.suppressed++;
+                suppressedCount++;
+                return false;
+            }
+            if (repeat != null) {
+                // Same text at another level; close the old window
+                expired.add(repeat);
+            }
+            if (repeats.size() >= MAX_TRACKED_MESSAGES) {
+                expired.addAll(repeats.values());
+                repeats.clear();
+            }
+            repeats.put(message, new Repeat(level, message, now + windowMillis));
+        }
+
+        if ("INFO".equals(level) && infoSampleRate < 1f) {
+            infoSampleCredit += infoSampleRate;
+            if (infoSampleCredit < 1f) {
+                sampledOutCount++;
+                return false;
+            }
+            infoSampleCredit -= 1f;
+        }
+        return true;
+    }
+
+    private void collectExpired(long now) {
+        if (repeats.isEmpty()) {
+            return;
+        }
+        Iterator<Repeat> it = repeats.values().iterator();
+        while (it.hasNext()) {
+            Repeat repeat = it.next();
+            if (now >= repeat.windowEnd) {
+                expired.add(repeat);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Write summaries outside the lock, the sink may do file I/O
+     */
+    private void writeSummaries(long now, Sink sink) {
+        List<Repeat> ready;
+        synchronized (this) {
+            if (expired.isEmpty()) {
+                return;
+            }
+            ready = new ArrayList<>(expired);
+            expired.clear();
+        }
+        for (Repeat repeat : ready) {
+            if (repeat.suppressed > 0 && sink != null) {
+                sink.write(now, repeat.level, repeat.message
+                    + " (repeated " + repeat.suppressed + " more times)");
+            }
+        }
+    }
+
+    private static int levelIndex(String level) {
+        for (int i = 0; i < LastErrorRecord.LEVELS.length; i++) {
+            if (LastErrorRecord.LEVELS[i].equals(level)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
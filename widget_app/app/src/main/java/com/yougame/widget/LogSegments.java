@@ -0,0 +1,122 @@
+package com.yougame.widget;
+
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * LogSegments - Fixed set of size-capped log segment files
+ *
+ * The active segment is the base log file (e.g. widget_errors.log). Older
+ * segments carry a numeric suffix, newest first:
+ *   widget_errors.log, widget_errors.log.1, ..., widget_errors.log.(N-1)
+ *
+ * Rotation only deletes the oldest segment and renames the others, so it
+ * costs the same no matter how large the log has grown. Total disk use is
+ * bounded by maxSegmentBytes * segmentCount.
+ */
+public class LogSegments {
+
+    private static final String TAG = "YouGameWidget";
+
+    private final File baseFile;
+    private final int maxSegmentBytes;
+    private final int segmentCount;
+
+    public LogSegments(File baseFile, int maxSegmentBytes, int segmentCount) {
+        if (maxSegmentBytes <= 0) {
+            throw new IllegalArgumentException("maxSegmentBytes must be positive");
+        }
+        if (segmentCount < 1) {
+            throw new IllegalArgumentException("segmentCount must be at least 1");
+        }
+        this.baseFile = baseFile;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.segmentCount = segmentCount;
+    }
+
+    /**
+     * The segment currently being appended to
+     */
+    public File getActiveSegment() {
+        return baseFile;
+    }
+
+    /**
+     * Segment by age, 0 being the active segment
+     */
+    public File getSegment(int index) {
+        if (index == 0) {
+            return baseFile;
+        }
+        return new File(baseFile.getParentFile(), baseFile.getName() + "." + index);
+    }
+
+    public int getMaxSegmentBytes() {
+        return maxSegmentBytes;
+    }
+
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * Whether appending pendingBytes to an active segment of the given size
+     * would exceed the segment cap. An empty segment always accepts a write.
+     */
+    public boolean needsRotation(long activeSize, long pendingBytes) {
+        return activeSize > 0 && activeSize + pendingBytes > maxSegmentBytes;
+    }
+
+    /**
+     * Start a new active segment: drop the oldest segment and shift the rest.
+     * Performs at most segmentCount renames and one delete.
+     */
+    public void rotate() {
+        if (segmentCount == 1) {
+            if (baseFile.exists() && !baseFile.delete()) {
+                Log.w(TAG, "Failed to delete log segment " + baseFile.getName());
+            }
+            return;
+        }
+
+        File oldest = getSegment(segmentCount - 1);
+        if (oldest.exists() && !oldest.delete()) {
+            Log.w(TAG, "Failed to delete oldest log segment " + oldest.getName());
+        }
+
+        for (int i = segmentCount - 2; i >= 0; i--) {
+            File from = getSegment(i);
+            if (from.exists() && !from.renameTo(getSegment(i + 1))) {
+                Log.w(TAG, "Failed to rotate log segment " + from.getName());
+            }
+        }
+    }
+
+    /**
+     * Existing segment files ordered from newest to oldest
+     */
+    public List<File> getSegmentsNewestFirst() {
+        List<File> result = new ArrayList<>(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            File segment = getSegment(i);
+            if (segment.exists()) {
+                result.add(segment);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Combined size of all existing segments in bytes
+     */
+    public long getTotalSize() {
+        long total = 0;
+        for (int i = 0; i < segmentCount; i++) {
+            total += getSegment(i).length();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,271 @@
+package com.yougame.widget;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * MinimapDecoder - Decodes the explored-area minimap snapshot (widget_minimap.bin) into pixels
+ *
+ * The file is written by the game plugin (com.yougame.savegamewidget.MinimapTileEncoder):
+ * a small grid of palette-indexed tiles, run-length encoded. All numbers are
+ * big-endian.
+ *
+ * Layout (version 1):
+ *   offset  size  field
+ *        0     4  magic "YGMM"
+ *        4     2  version
+ *        6     2  flags (reserved)
+ *        8     8  generation (changes with every snapshot)
+ *       16     2  width in tiles (1 to MAX_TILES)
+ *       18     2  height in tiles (1 to MAX_TILES)
+ *       20     2  player tile column
+ *       22     2  player tile row
+ *       24     1  palette size p (1 to 16)
+ *       25     3  reserved
+ *       28    4p  palette, one ARGB color per tile index
+ *     28+4p    4  run bytes r
+ *     32+4p    r  runs: (tile index, run length 1-255) byte pairs, row-major
+ *  32+4p+r     4  CRC32 of all preceding bytes
+ *
+ * Each read first reads only the 16-byte header. If the generation and
+ * target size are unchanged, the previous pixels are kept without decoding.
+ * Otherwise the runs are expanded into a reused pixel buffer, scaled up by a
+ * whole factor (nearest neighbor) to about the target size. With at most
+ * 128 x 128 tiles and MAX_IMAGE_PX pixels per side, a decode touches at most
+ * 64K pixels.
+ *
+ * Uses no Android classes; MinimapRenderer copies the pixels into a bitmap.
+ * Not thread-safe.
+ */
+class MinimapDecoder {
+
+    static final String FILE_NAME = "widget_minimap.bin";
+    static final int MAGIC = 0x59474D4D; // "YGMM"
+    static final int VERSION = 1;
+    static final int MAX_TILES = 128;
+    static final int MAX_PALETTE = 16;
+    static final int MAX_IMAGE_PX = 256;
+    static final int PLAYER_COLOR = 0xFFFFFF00;
+
+    private static final int HEADER_SIZE = 28;
+    private static final int MAX_FILE_SIZE = HEADER_SIZE + MAX_PALETTE * 4 + 4
+        + 2 * MAX_TILES * MAX_TILES + 4;
+
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_GENERATION = 8;
+    private static final int OFFSET_WIDTH = 16;
+    private static final int OFFSET_HEIGHT = 18;
+    private static final int OFFSET_PLAYER_X = 20;
+    private static final int OFFSET_PLAYER_Y = 22;
+    private static final int OFFSET_PALETTE_SIZE = 24;
+
+    /**
+     * The file is not a complete, valid minimap snapshot
+     */
+    static class FormatException extends IOException {
+        FormatException(String message) {
+            super(message);
+        }
+    }
+
+    private final CRC32 crc = new CRC32();
+    private final ByteBuffer header = ByteBuffer.allocate(16);
+    // One byte larger than the maximum to detect oversized files
+    private final ByteBuffer buffer = ByteBuffer.allocate(MAX_FILE_SIZE + 1);
+    private final int[] palette = new int[MAX_PALETTE];
+    private final int[] tileColors = new int[MAX_TILES * MAX_TILES];
+    private int[] pixels = new int[0];
+    private int pixelWidth = 0;
+    private int pixelHeight = 0;
+
+    private long generation = 0;
+    private int decodedTargetPx = -1;
+    private int decodeCount = 0;
+
+    /**
+     * Decode the minimap scaled to about targetPx on its longer side, unless
+     * the pixels already hold this snapshot at this size
+     *
+     * @param file An existing minimap file
+     * @return true if new pixels were decoded
+     * @throws IOException if the file can't be read or is invalid; the
+     *         previous pixels stay available
+     */
+    boolean read(File file, int targetPx) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel channel = in.getChannel();
+            header.clear();
+            while (header.hasRemaining() && channel.read(header) > 0) {
+                // Read the fixed part of the header
+            }
+            if (header.hasRemaining() || header.getInt(0) != MAGIC) {
+                throw new FormatException("Minimap file has no valid header");
+            }
+            long fileGeneration = header.getLong(OFFSET_GENERATION);
+            if (pixelWidth > 0 && fileGeneration == generation && targetPx == decodedTargetPx) {
+                return false;
+            }
+
+            buffer.clear();
+            header.flip();
+            buffer.put(header);
+            while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+                // Keep reading until EOF or the buffer is full
+            }
+        }
+        buffer.flip();
+
+        long start = System.nanoTime();
+        try {
+            decode(buffer, targetPx);
+        } finally {
+            WidgetMetrics.MINIMAP_RENDER.recordSince(start);
+        }
+        decodedTargetPx = targetPx;
+        return true;
+    }
+
+    /**
+     * Forget the decoded snapshot (the game removed its minimap)
+     */
+    void clear() {
+        generation = 0;
+        decodedTargetPx = -1;
+        pixelWidth = 0;
+        pixelHeight = 0;
+    }
+
+    /**
+     * Pixels of the last decoded snapshot, row by row; only the first
+     * getWidth() * getHeight() entries are valid
+     */
+    int[] getPixels() {
+        return pixels;
+    }
+
+    int getWidth() {
+        return pixelWidth;
+    }
+
+    int getHeight() {
+        return pixelHeight;
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    int getDecodeCount() {
+        return decodeCount;
+    }
+
+    private void decode(ByteBuffer data, int targetPx) throws FormatException {
+        int size = data.limit();
+        if (size > MAX_FILE_SIZE) {
+            throw new FormatException("Minimap file too large: " + size + " bytes");
+        }
+        int version = data.getShort(OFFSET_VERSION) & 0xFFFF;
+        if (version != VERSION) {
+            throw new FormatException("Unsupported minimap version: " + version);
+        }
+        if (size < HEADER_SIZE + 8) {
+            throw new FormatException("Minimap file too short: " + size + " bytes");
+        }
+        int width = data.getShort(OFFSET_WIDTH) & 0xFFFF;
+        int height = data.getShort(OFFSET_HEIGHT) & 0xFFFF;
+        int paletteSize = data.get(OFFSET_PALETTE_SIZE) & 0xFF;
+        if (width < 1 || height < 1 || width > MAX_TILES || height > MAX_TILES
+                || paletteSize < 1 || paletteSize > MAX_PALETTE) {
+            throw new FormatException("Minimap header out of range");
+        }
+        int runsOffset = HEADER_SIZE + paletteSize * 4 + 4;
+        if (runsOffset > size) {
+            throw new FormatException("Minimap file too short: " + size + " bytes");
+        }
+        int runBytes = data.getInt(runsOffset - 4);
+        int checksumOffset = runsOffset + runBytes;
+        if (runBytes < 0 || (runBytes & 1) != 0 || checksumOffset + 4 != size) {
+            throw new FormatException("Minimap file is incomplete (torn write?)");
+        }
+        crc.reset();
+        crc.update(data.array(), 0, checksumOffset);
+        if ((int) crc.getValue() != data.getInt(checksumOffset)) {
+            throw new FormatException("Minimap checksum mismatch (torn write?)");
+        }
+
+        for (int i = 0; i < paletteSize; i++) {
+            palette[i] = data.getInt(HEADER_SIZE + i * 4);
+        }
+
+        // Expand the runs into one color per tile
+        byte[] bytes = data.array();
+        int tileCount = width * height;
+        int tile = 0;
+        for (int p = runsOffset; p < checksumOffset; p += 2) {
+            int index = bytes[p] & 0xFF;
+            int run = bytes[p + 1] & 0xFF;
+            if (index >= paletteSize || run == 0 || tile + run > tileCount) {
+                throw new FormatException("Invalid minimap run at byte " + p);
+            }
+            int color = palette[index];
+            for (int end = tile + run; tile < end; tile++) {
+                tileColors[tile] = color;
+            }
+        }
+        if (tile != tileCount) {
+            throw new FormatException("Minimap runs cover " + tile + " of " + tileCount + " tiles");
+        }
+
+        int scale = Math.max(1, Math.min(targetPx, MAX_IMAGE_PX) / Math.max(width, height));
+        int outWidth = width * scale;
+        int outHeight = height * scale;
+        if (pixels.length < outWidth * outHeight) {
+            pixels = new int[outWidth * outHeight];
+        }
+
+        // Scale each tile row once, then copy it down for the remaining pixel rows
+        for (int y = 0; y < height; y++) {
+            int rowStart = y * scale * outWidth;
+            int out = rowStart;
+            for (int x = y * width, end = x + width; x < end; x++) {
+                int color = tileColors[x];
+                for (int s = 0; s < scale; s++) {
+                    pixels[out++] = color;
+                }
+            }
+            for (int r = 1; r < scale; r++) {
+                System.arraycopy(pixels, rowStart, pixels, rowStart + r * outWidth, outWidth);
+            }
+        }
+
+        drawPlayer(data.getShort(OFFSET_PLAYER_X) & 0xFFFF, data.getShort(OFFSET_PLAYER_Y) & 0xFFFF,
+            scale, outWidth, outHeight);
+
+        pixelWidth = outWidth;
+        pixelHeight = outHeight;
+        generation = data.getLong(OFFSET_GENERATION);
+        decodeCount++;
+    }
+
+    /**
+     * Mark the player's tile with a square at least 3 pixels wide
+     */
+    private void drawPlayer(int tileX, int tileY, int scale, int outWidth, int outHeight) {
+        int half = Math.max(1, scale / 2);
+        int centerX = tileX * scale + scale / 2;
+        int centerY = tileY * scale + scale / 2;
+        int left = Math.max(0, centerX - half);
+        int right = Math.min(outWidth - 1, centerX + half);
+        int top = Math.max(0, centerY - half);
+        int bottom = Math.min(outHeight - 1, centerY + half);
+        for (int y = top; y <= bottom; y++) {
+            for (int x = left; x <= right; x++) {
+                pixels[y * outWidth + x] = PLAYER_COLOR;
+            }
+        }
+    }
+}
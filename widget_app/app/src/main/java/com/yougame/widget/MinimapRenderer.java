@@ -0,0 +1,67 @@
+package com.yougame.widget;
+
+import android.graphics.Bitmap;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * MinimapRenderer - Draws the explored-area minimap snapshot (widget_minimap.bin)
+ *
+ * MinimapDecoder reads the file (format documented there) and decodes it into
+ * pixels only when the header's generation or the target size changed; the
+ * new pixels are then copied into a bitmap from the BitmapPool. Otherwise the
+ * previous bitmap is returned as it is.
+ *
+ * Not thread-safe.
+ */
+class MinimapRenderer {
+
+    static final String FILE_NAME = MinimapDecoder.FILE_NAME;
+
+    private final BitmapPool pool;
+    private final MinimapDecoder decoder = new MinimapDecoder();
+    private Bitmap bitmap = null;
+
+    MinimapRenderer(BitmapPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * The minimap scaled to about targetPx on its longer side
+     *
+     * @return the bitmap, or null if the game wrote no minimap
+     * @throws IOException if the file can't be read or is invalid; the
+     *         previous bitmap stays available through getBitmap()
+     */
+    Bitmap render(File file, int targetPx) throws IOException {
+        if (!file.exists()) {
+            decoder.clear();
+            bitmap = null;
+            return null;
+        }
+        if (decoder.read(file, targetPx) || bitmap == null) {
+            int width = decoder.getWidth();
+            int height = decoder.getHeight();
+            Bitmap target = pool.acquire(width, height);
+            target.setPixels(decoder.getPixels(), 0, width, 0, 0, width, height);
+            bitmap = target;
+        }
+        return bitmap;
+    }
+
+    /**
+     * The last successfully rendered minimap, or null
+     */
+    Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    long getGeneration() {
+        return decoder.getGeneration();
+    }
+
+    int getDecodeCount() {
+        return decoder.getDecodeCount();
+    }
+}
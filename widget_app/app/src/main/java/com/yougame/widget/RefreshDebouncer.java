@@ -0,0 +1,123 @@
+package com.yougame.widget;
+
+/**
+ * RefreshDebouncer - Merges bursts of change events into a single refresh
+ *
+ * A refresh runs once no new event has arrived for the quiet period, but
+ * never later than maxDelay after the first event of a burst, so a steady
+ * stream of writes still refreshes the widget.
+ *
+ * Time and scheduling are injected so tests can drive it with a fake clock.
+ */
+public class RefreshDebouncer implements WidgetDataWatcher.Listener {
+
+    /**
+     * Monotonic time source in milliseconds
+     */
+    public interface Clock {
+        long uptimeMillis();
+    }
+
+    /**
+     * Runs a task after a delay
+     */
+    public interface Scheduler {
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    private final Clock clock;
+    private final Scheduler scheduler;
+    private final long quietMillis;
+    private final long maxDelayMillis;
+    private final Runnable refresh;
+    private final Runnable check = new Runnable() {
+        @Override
+        public void run() {
+            onCheck();
+        }
+    };
+
+    private boolean pending = false;
+    private long firstEventAt = 0;
+    private long lastEventAt = 0;
+    private long eventCount = 0;
+    private long refreshCount = 0;
+
+    public RefreshDebouncer(Clock clock, Scheduler scheduler, long quietMillis, long maxDelayMillis,
+                            Runnable refresh) {
+        this.clock = clock;
+        this.scheduler = scheduler;
+        this.quietMillis = quietMillis;
+        this.maxDelayMillis = Math.max(quietMillis, maxDelayMillis);
+        this.refresh = refresh;
+    }
+
+    /**
+     * Record a change event; may be called from any thread
+     */
+    @Override
+    public void onDataChanged() {
+        synchronized (this) {
+            long now = clock.uptimeMillis();
+            eventCount++;
+            lastEventAt = now;
+            if (pending) {
+                // The scheduled check will see the newer event and wait longer
+                return;
+            }
+            pending = true;
+            firstEventAt = now;
+        }
+        scheduler.schedule(check, quietMillis);
+    }
+
+    private void onCheck() {
+        long wait;
+        synchronized (this) {
+            if (!pending) {
+                return;
+            }
+            long now = clock.uptimeMillis();
+            long quietUntil = lastEventAt + quietMillis;
+            long latest = firstEventAt + maxDelayMillis;
+            long due = Math.min(quietUntil, latest);
+            if (now < due) {
+                wait = due - now;
+            } else {
+                pending = false;
+                refreshCount++;
+                wait = -1;
+            }
+        }
+        if (wait >= 0) {
+            scheduler.schedule(check, wait);
+        } else {
+            refresh.run();
+        }
+    }
+
+    /**
+     * Drop a pending refresh, e.g. when the widget is disabled
+     */
+    public synchronized void cancel() {
+        pending = false;
+    }
+
+    public synchronized boolean isPending() {
+        return pending;
+    }
+
+    /**
+     * Number of change events received
+     */
+    public synchronized long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Number of refreshes run; events minus refreshes were merged
+     */
+    public synchronized long getRefreshCount() {
+        return refreshCount;
+    }
+}
@@ -0,0 +1,34 @@
+package com.yougame.widget;
+
+/**
+ * Save data container
+ * 
+ * Parsed contents of the widget data file written by the main game.
+ * Instances handed out by SaveDataCache are shared and must not be modified.
+ */
+class SaveData {
+    long timestamp = 0;
+    int dayCount = 0;
+    float currentHealth = 0.0f;
+    int torchCount = 0;
+    float positionX = 0.0f;
+    float positionZ = 0.0f;
+    int errorCount = 0;
+    int totalLogCount = 0;
+    String lastError = "No errors";
+    
+    /**
+     * Restore all fields to their defaults so the instance can be refilled
+     */
+    void reset() {
+        timestamp = 0;
+        dayCount = 0;
+        currentHealth = 0.0f;
+        torchCount = 0;
+        positionX = 0.0f;
+        positionZ = 0.0f;
+        errorCount = 0;
+        totalLogCount = 0;
+        lastError = "No errors";
+    }
+}
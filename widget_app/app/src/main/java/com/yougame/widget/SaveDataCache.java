@@ -0,0 +1,161 @@
+package com.yougame.widget;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SaveDataCache - Process-wide cache of the parsed widget data file
+ *
+ * The cache is keyed on the file's path, modification time and size, plus
+ * a hash of its contents:
+ * - Same modification time and size: cache hit, the file is not opened
+ * - Changed metadata but same content hash: cache hit, the file is read
+ *   once to hash it but not parsed again
+ * - Changed content: cache miss, the file is parsed
+ *
+ * A loader reports a file caught mid-write with TornReadException. The read
+ * is retried a few times; if the file is still torn, the last good data for
+ * the same path is returned and the file is read again on the next lookup.
+ */
+class SaveDataCache {
+
+    /**
+     * Reads one widget data file format
+     */
+    interface Loader {
+        /**
+         * Read the file and return a hash of its contents
+         *
+         * @throws TornReadException if the file was only partially written
+         */
+        long readAndHash(File file) throws IOException;
+
+        /**
+         * Parse the contents read by the last readAndHash call
+         */
+        SaveData parse() throws IOException;
+    }
+
+    /**
+     * The file was read while being written (incomplete or checksum mismatch)
+     */
+    static class TornReadException extends IOException {
+        TornReadException(String message) {
+            super(message);
+        }
+    }
+
+    static final int MAX_READ_ATTEMPTS = 3;
+    static final long RETRY_DELAY_MS = 20;
+
+    private static final SaveDataCache INSTANCE = new SaveDataCache();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private String cachedPath = null;
+    private long cachedModified = -1;
+    private long cachedLength = -1;
+    private long cachedHash = 0;
+    private SaveData cachedData = null;
+
+    static SaveDataCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the parsed contents of dataFile, reading and parsing only if it changed
+     *
+     * @return the shared SaveData instance; callers must not modify it
+     */
+    synchronized SaveData get(File dataFile, Loader loader) throws IOException {
+        String path = dataFile.getPath();
+        long modified = dataFile.lastModified();
+        long length = dataFile.length();
+        boolean samePath = path.equals(cachedPath);
+        if (cachedData != null && samePath && modified == cachedModified && length == cachedLength) {
+            hits.incrementAndGet();
+            WidgetMetrics.CACHE_HITS.increment();
+            return cachedData;
+        }
+
+        long hash;
+        try {
+            hash = readWithRetry(dataFile, loader);
+        } catch (TornReadException e) {
+            if (cachedData != null && samePath) {
+                // Keep showing the last good snapshot; metadata stays stale so we retry next time
+                WidgetMetrics.STALE_SERVED.increment();
+                return cachedData;
+            }
+            throw e;
+        }
+        if (cachedData == null || !samePath || hash != cachedHash) {
+            long parseStart = System.nanoTime();
+            cachedData = parseOrInvalidate(loader);
+            WidgetMetrics.PARSE.recordSince(parseStart);
+            cachedPath = path;
+            cachedHash = hash;
+            misses.incrementAndGet();
+            WidgetMetrics.CACHE_MISSES.increment();
+        } else {
+            // Rewritten with identical contents, keep the parsed copy
+            hits.incrementAndGet();
+            WidgetMetrics.CACHE_HITS.increment();
+        }
+        cachedModified = modified;
+        cachedLength = length;
+        return cachedData;
+    }
+
+    /**
+     * Drop the cached data so the next lookup reparses the file
+     */
+    synchronized void invalidate() {
+        cachedData = null;
+        cachedPath = null;
+        cachedModified = -1;
+        cachedLength = -1;
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+
+    private long readWithRetry(File dataFile, Loader loader) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            long readStart = System.nanoTime();
+            try {
+                return loader.readAndHash(dataFile);
+            } catch (TornReadException e) {
+                WidgetMetrics.TORN_READS.increment();
+                if (attempt >= MAX_READ_ATTEMPTS) {
+                    throw e;
+                }
+            } finally {
+                WidgetMetrics.FILE_READ.recordSince(readStart);
+            }
+            try {
+                // Give the writer time to finish
+                Thread.sleep(RETRY_DELAY_MS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new TornReadException("Interrupted while waiting for " + dataFile);
+            }
+        }
+    }
+
+    private SaveData parseOrInvalidate(Loader loader) throws IOException {
+        try {
+            return loader.parse();
+        } catch (IOException | RuntimeException e) {
+            invalidate();
+            throw e;
+        }
+    }
+}
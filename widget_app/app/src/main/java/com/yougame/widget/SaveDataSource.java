@@ -0,0 +1,45 @@
+package com.yougame.widget;
+
+import android.content.Context;
+
+import java.io.IOException;
+
+/**
+ * SaveDataSource - Where the widget reads the game's save data from
+ *
+ * Sources are tried in order until one is available:
+ * - GameProviderDataSource: the game's SaveDataProvider, for game builds
+ *   that have it
+ * - FileDataSource: the data files in the game's external files directory,
+ *   for older game builds
+ */
+interface SaveDataSource {
+
+    /**
+     * The source has save data but may not read it (e.g. permission denied);
+     * the message says why and is logged as it is
+     */
+    class UnreadableException extends IOException {
+        UnreadableException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Read the current save data
+     *
+     * @return the data, or null if this source isn't available (e.g. the
+     *         installed game build doesn't provide it); the caller tries the
+     *         next source. Returned instances are shared and must not be modified.
+     * @throws java.io.FileNotFoundException if the source is available but
+     *         has no save data yet; the message says where it looked
+     * @throws UnreadableException if the source has data this app may not read
+     * @throws IOException if reading failed
+     */
+    SaveData read(Context context) throws IOException;
+
+    /**
+     * Short name for logs and diagnostics, e.g. "files"
+     */
+    String getName();
+}
@@ -6,86 +6,353 @@ import android.appwidget.AppWidgetProvider;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.graphics.Bitmap;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.View;
 import android.widget.RemoteViews;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
+import java.util.Arrays;
 
 /**
  * SaveGameWidgetProvider - Android widget that displays YouGame save data
  * 
- * This widget reads save game data from a shared file written by the main game APK.
- * The data is stored in a world-readable location that both APKs can access.
+ * This widget reads save game data from the main game APK: through the game's
+ * SaveDataProvider if the installed game build has one, otherwise from the
+ * data files the game writes to its external files directory.
  */
 public class SaveGameWidgetProvider extends AppWidgetProvider {
     
     // Shared file path - accessible by both main game and widget
     // Using external storage directory which is accessible across apps with same signature
     private static final String WIDGET_DATA_DIR = "YouGame";
-    private static final String WIDGET_DATA_FILE = "widget_data.txt";
     
-    @Override
-    public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
-        // Update all active widgets
-        for (int appWidgetId : appWidgetIds) {
-            updateAppWidget(context, appWidgetManager, appWidgetId);
+    // The main game (com.yougame.godot4) writes to its external files directory
+    private static final String GAME_DATA_DIR = "/storage/emulated/0/Android/data/com.yougame.godot4/files";
+    
+    // Files read from the game's directory; only moved by setGameDataDir
+    private static volatile File gameDataDir = new File(GAME_DATA_DIR);
+    private static volatile File saveHistoryFile = new File(GAME_DATA_DIR, SaveHistoryReader.FILE_NAME);
+    private static volatile File minimapFile = new File(GAME_DATA_DIR, MinimapRenderer.FILE_NAME);
+    
+    // How long an unavailable game provider is not asked again
+    private static final long GAME_PROVIDER_RECHECK_MS = 5 * 60 * 1000;
+    
+    // Merge bursts of file writes into one refresh
+    private static final long REFRESH_QUIET_MS = 500;
+    private static final long REFRESH_MAX_DELAY_MS = 3000;
+    
+    // Coalesce requestWidgetUpdate calls into fewer redraws
+    private static final long UPDATE_WINDOW_MS = 1000;
+    private static final long UPDATE_MIN_INTERVAL_MS = 2000;
+    
+    // Backoff between reads while the game's data can't be read
+    private static final long DATA_SOURCE_BACKOFF_MS = 1000;
+    private static final long DATA_SOURCE_MAX_BACKOFF_MS = 5 * 60 * 1000;
+    
+    private static final RefreshDebouncer.Clock UPTIME_CLOCK = new RefreshDebouncer.Clock() {
+        @Override
+        public long uptimeMillis() {
+            return SystemClock.uptimeMillis();
+        }
+    };
+    
+    private static final DataSourceHealth DATA_SOURCE_HEALTH = new DataSourceHealth(UPTIME_CLOCK,
+        DATA_SOURCE_BACKOFF_MS, DATA_SOURCE_MAX_BACKOFF_MS);
+    
+    // Save data sources, in order of preference
+    private static final GameProviderDataSource GAME_PROVIDER = new GameProviderDataSource(UPTIME_CLOCK,
+        GAME_PROVIDER_RECHECK_MS);
+    private static final FileDataSource FILE_SOURCE = new FileDataSource(gameDataDir);
+    private static final SaveDataSource[] DATA_SOURCES = {GAME_PROVIDER, FILE_SOURCE};
+    
+    // Text fields of the widget layout, in render state order
+    private static final int FIELD_TIMESTAMP = 0;
+    private static final int FIELD_DAY = 1;
+    private static final int FIELD_HEALTH = 2;
+    private static final int FIELD_TORCHES = 3;
+    private static final int FIELD_POSITION = 4;
+    private static final int FIELD_ERROR_COUNT = 5;
+    private static final int FIELD_TOTAL_LOGS = 6;
+    private static final int FIELD_LAST_ERROR = 7;
+    private static final int FIELD_HEALTH_TREND = 8;
+    private static final int FIELD_DAY_TREND = 9;
+    // Not text: the minimap generation, so the bitmap is only pushed when it changed
+    private static final int FIELD_MINIMAP = 10;
+    private static final int[] FIELD_VIEW_IDS = {
+        R.id.widget_timestamp, R.id.widget_day, R.id.widget_health, R.id.widget_torches,
+        R.id.widget_position, R.id.widget_error_count, R.id.widget_total_logs, R.id.widget_last_error,
+        R.id.widget_health_trend, R.id.widget_day_trend, R.id.widget_minimap
+    };
+    
+    // Saves shown in the trend rows; the history file holds more
+    private static final int TREND_SAVES = 12;
+    private static final SaveHistoryReader SAVE_HISTORY = new SaveHistoryReader(TREND_SAVES);
+    // Trend rows of the history append count they were built from (guarded by SAVE_HISTORY)
+    private static long trendAppendCount = -1;
+    private static String healthTrend = null;
+    private static String dayTrend = null;
+    
+    // Minimap image; two pooled bitmaps, decoded only when the snapshot changes
+    private static final int MINIMAP_HEIGHT_DP = 64;
+    private static final MinimapRenderer MINIMAP = new MinimapRenderer(new BitmapPool(2));
+    
+    // Field text buffers, one set per rendering thread so renders allocate no text
+    private static final String TIMESTAMP_PATTERN = "MMM dd, HH:mm";
+    private static final ThreadLocal<WidgetFieldFormatter> FORMATTER = new ThreadLocal<WidgetFieldFormatter>() {
+        @Override
+        protected WidgetFieldFormatter initialValue() {
+            return newFieldFormatter();
         }
+    };
+    
+    // What was last pushed to each widget, to skip or shrink unchanged updates
+    private static final WidgetRenderState RENDER_STATE = new WidgetRenderState(FIELD_VIEW_IDS.length);
+    
+    // Layout and shown fields per size bucket; widgets of unknown size get the full layout
+    private static final WidgetSizeTemplates TEMPLATES = new WidgetSizeTemplates(WidgetSizeTemplates.EXPANDED);
+    static {
+        TEMPLATES.setTemplate(WidgetSizeTemplates.COMPACT, R.layout.widget_layout_compact,
+            FIELD_TIMESTAMP, FIELD_DAY, FIELD_HEALTH, FIELD_TORCHES);
+        TEMPLATES.setTemplate(WidgetSizeTemplates.STANDARD, R.layout.widget_layout_standard,
+            FIELD_TIMESTAMP, FIELD_DAY, FIELD_HEALTH, FIELD_TORCHES, FIELD_POSITION,
+            FIELD_ERROR_COUNT, FIELD_TOTAL_LOGS, FIELD_LAST_ERROR);
+        TEMPLATES.setTemplate(WidgetSizeTemplates.EXPANDED, R.layout.widget_layout,
+            FIELD_TIMESTAMP, FIELD_DAY, FIELD_HEALTH, FIELD_TORCHES, FIELD_POSITION,
+            FIELD_ERROR_COUNT, FIELD_TOTAL_LOGS, FIELD_LAST_ERROR,
+            FIELD_HEALTH_TREND, FIELD_DAY_TREND, FIELD_MINIMAP);
+    }
+    
+    // Update executor keys; a queued update is replaced by a newer one with the same key
+    private static final String REFRESH_KEY = "refresh";
+    
+    private static WidgetDataWatcher dataWatcher = null;
+    private static RefreshDebouncer refreshDebouncer = null;
+    private static UpdateCoalescer updateCoalescer = null;
+    
+    @Override
+    public void onUpdate(Context context, final AppWidgetManager appWidgetManager, final int[] appWidgetIds) {
+        // Only hand off on the main thread; file I/O, parsing, logging and
+        // RemoteViews work run on the update thread while goAsync keeps the
+        // broadcast alive
+        final Context appContext = context.getApplicationContext();
+        final PendingResult result = goAsync();
+        WidgetUpdateExecutor.getInstance().execute(updateKey(appWidgetIds), new Runnable() {
+            @Override
+            public void run() {
+                // Keep log file I/O off the update path
+                WidgetErrorLogger.enableAsyncWriter(appContext);
+                
+                // Restart the file watch if the process was recreated since onEnabled
+                startDataWatcher(appContext);
+                startMetricsSnapshots(appContext);
+                
+                // Read save data once and share it across all active widgets
+                SaveData data = readSaveData(appContext);
+                
+                // Update all active widgets
+                for (int appWidgetId : appWidgetIds) {
+                    updateAppWidget(appContext, appWidgetManager, appWidgetId, data);
+                }
+            }
+        }, finisher(result));
+    }
+    
+    @Override
+    public void onDeleted(Context context, int[] appWidgetIds) {
+        // A reused id must start with a full update
+        RENDER_STATE.forget(appWidgetIds);
+        TEMPLATES.forget(appWidgetIds);
+    }
+    
+    @Override
+    public void onAppWidgetOptionsChanged(Context context, final AppWidgetManager appWidgetManager,
+                                          final int appWidgetId, final Bundle newOptions) {
+        // Resized: redraw with another template if the size bucket changed
+        final Context appContext = context.getApplicationContext();
+        final PendingResult result = goAsync();
+        WidgetUpdateExecutor.getInstance().execute("options:" + appWidgetId, new Runnable() {
+            @Override
+            public void run() {
+                if (applySize(appWidgetId, newOptions)) {
+                    updateAppWidget(appContext, appWidgetManager, appWidgetId);
+                }
+            }
+        }, finisher(result));
     }
     
     @Override
     public void onEnabled(Context context) {
         // Called when the first widget is created
+        RENDER_STATE.clear();
+        TEMPLATES.clear();
+        WidgetErrorLogger.enableAsyncWriter(context);
         WidgetErrorLogger.logInfo(context, "Widget enabled - first instance created");
         WidgetErrorLogger.logInfo(context, "Error log location: " + 
             WidgetErrorLogger.getLogFilePath(context));
+        
+        // Refresh whenever the game finishes writing its data file
+        startDataWatcher(context);
+        startMetricsSnapshots(context);
     }
     
     @Override
     public void onDisabled(Context context) {
         // Called when the last widget is removed
         WidgetErrorLogger.logInfo(context, "Widget disabled - last instance removed");
+        
+        stopDataWatcher();
+        WidgetMetrics.stopSnapshots();
+        
+        // Write out anything still queued before the process may be reclaimed
+        WidgetErrorLogger.disableAsyncWriter();
+    }
+    
+    /**
+     * Start watching the game's data directory for finished writes and the
+     * game's provider for change notifications. Events are debounced and only
+     * trigger a redraw if the content changed.
+     */
+    static synchronized void startDataWatcher(Context context) {
+        if (dataWatcher != null && dataWatcher.isRunning()) {
+            return;
+        }
+        
+        final Context appContext = context.getApplicationContext();
+        refreshDebouncer = new RefreshDebouncer(UPTIME_CLOCK, mainThreadScheduler(),
+            REFRESH_QUIET_MS, REFRESH_MAX_DELAY_MS,
+            new Runnable() {
+                @Override
+                public void run() {
+                    // The game wrote a file; don't wait out a read backoff
+                    DATA_SOURCE_HEALTH.onSourceChanged();
+                    WidgetUpdateExecutor.getInstance().execute(REFRESH_KEY, new Runnable() {
+                        @Override
+                        public void run() {
+                            refreshIfChanged(appContext);
+                        }
+                    }, null);
+                }
+            });
+        
+        File dataDir = gameDataDir;
+        dataWatcher = new FileObserverDataWatcher(dataDir,
+            FileDataSource.TEXT_FILE_NAME, BinaryWidgetDataReader.FILE_NAME);
+        dataWatcher.start(refreshDebouncer);
+        // Until stopped, provider reads are cached between notifications
+        GAME_PROVIDER.startObserving(appContext.getContentResolver(), refreshDebouncer);
+        WidgetErrorLogger.logInfo(context, "Watching for save data changes in " + dataDir);
+    }
+    
+    /**
+     * Read the game's files from another directory instead of the game's
+     * external files directory, e.g. for the stress harness on a plain JVM.
+     * Takes effect for the next read; a running data watcher keeps its directory.
+     */
+    static void setGameDataDir(File dir) {
+        gameDataDir = dir;
+        FILE_SOURCE.setDir(dir);
+        saveHistoryFile = new File(dir, SaveHistoryReader.FILE_NAME);
+        minimapFile = new File(dir, MinimapRenderer.FILE_NAME);
+        DATA_SOURCE_HEALTH.onSourceChanged();
+    }
+    
+    /**
+     * Write metrics snapshots (widget_metrics.json) next to the error log
+     */
+    static void startMetricsSnapshots(Context context) {
+        File logDir = new File(WidgetErrorLogger.getLogFilePath(context)).getParentFile();
+        WidgetMetrics.startSnapshots(new File(logDir, WidgetMetrics.SNAPSHOT_FILE),
+            WidgetMetrics.DEFAULT_SNAPSHOT_PERIOD_MS);
+    }
+    
+    /**
+     * Stop watching the game's data directory
+     */
+    static synchronized void stopDataWatcher() {
+        if (dataWatcher != null) {
+            dataWatcher.stop();
+            dataWatcher = null;
+        }
+        GAME_PROVIDER.stopObserving();
+        if (refreshDebouncer != null) {
+            refreshDebouncer.cancel();
+            refreshDebouncer = null;
+        }
+    }
+    
+    /**
+     * Redraw all widgets, but only if the save data changed since the last read:
+     * a data file was parsed again or the game's provider was queried again
+     */
+    private static void refreshIfChanged(Context context) {
+        SaveDataCache cache = SaveDataCache.getInstance();
+        long missesBefore = cache.getMissCount();
+        long queriesBefore = GAME_PROVIDER.getQueryCount();
+        SaveData data = readSaveData(context);
+        if (data == null
+                || (cache.getMissCount() == missesBefore && GAME_PROVIDER.getQueryCount() == queriesBefore)) {
+            // Unchanged content (or still unreadable), nothing new to show
+            return;
+        }
+        
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+        int[] ids = appWidgetManager.getAppWidgetIds(
+            new ComponentName(context, SaveGameWidgetProvider.class));
+        for (int appWidgetId : ids) {
+            updateAppWidget(context, appWidgetManager, appWidgetId, data);
+        }
     }
     
     /**
      * Update a single widget instance
      */
     static void updateAppWidget(Context context, AppWidgetManager appWidgetManager, int appWidgetId) {
-        RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_layout);
-        
+        updateAppWidget(context, appWidgetManager, appWidgetId, readSaveData(context));
+    }
+    
+    /**
+     * Update a single widget instance with already loaded save data.
+     * Fields are compared with the last push to this widget: an unchanged
+     * render is not sent at all, and a render with a few changed fields is
+     * sent as a partial update.
+     */
+    static void updateAppWidget(Context context, AppWidgetManager appWidgetManager, int appWidgetId,
+                                SaveData data) {
+        long start = System.nanoTime();
+        try {
+            renderAppWidget(context, appWidgetManager, appWidgetId, data);
+        } finally {
+            WidgetMetrics.UPDATE_WIDGET.recordSince(start);
+        }
+    }
+    
+    private static void renderAppWidget(Context context, AppWidgetManager appWidgetManager, int appWidgetId,
+                                        SaveData data) {
         // Log widget update attempt
         WidgetErrorLogger.logInfo(context, "Widget update started");
         
-        // Read save data from shared file
-        SaveData data = readSaveData(context);
+        WidgetSizeTemplates.Template template = templateFor(appWidgetManager, appWidgetId);
+        WidgetFieldFormatter formatter = FORMATTER.get();
+        Bitmap minimap = null;
         
         if (data != null && data.timestamp > 0) {
-            // Format timestamp
-            SimpleDateFormat sdf = new SimpleDateFormat("MMM dd, HH:mm", Locale.getDefault());
-            String formattedTime = sdf.format(new Date(data.timestamp));
-            views.setTextViewText(R.id.widget_timestamp, 
-                context.getString(R.string.last_saved, formattedTime));
-            
-            // Update game stats
-            views.setTextViewText(R.id.widget_day, "Day: " + data.dayCount);
-            views.setTextViewText(R.id.widget_health, 
-                String.format(Locale.getDefault(), "Health: %.0f%%", data.currentHealth));
-            views.setTextViewText(R.id.widget_torches, "Torches: " + data.torchCount);
-            views.setTextViewText(R.id.widget_position, 
-                String.format(Locale.getDefault(), "Pos: %.0f, %.0f", data.positionX, data.positionZ));
+            formatSaveDataFields(formatter, data, template.fieldMask, context.getString(R.string.last_saved),
+                context.getString(R.string.no_errors));
             
-            // Update log stats
-            views.setTextViewText(R.id.widget_error_count, "Errors: " + data.errorCount);
-            views.setTextViewText(R.id.widget_total_logs, "Logs: " + data.totalLogCount);
-            
-            // Update last error message
-            if (data.errorCount > 0 && data.lastError != null && !data.lastError.isEmpty()) {
-                views.setTextViewText(R.id.widget_last_error, data.lastError);
-            } else {
-                views.setTextViewText(R.id.widget_last_error, context.getString(R.string.no_errors));
+            // Trends from the save history and the minimap, if the layout has room for them
+            if (template.shows(FIELD_HEALTH_TREND) || template.shows(FIELD_DAY_TREND)) {
+                fillTrendFields(context, formatter);
+            }
+            if (template.shows(FIELD_MINIMAP)) {
+                minimap = renderMinimap(context);
+                StringBuilder generation = formatter.begin(FIELD_MINIMAP);
+                if (minimap != null) {
+                    generation.append(MINIMAP.getGeneration());
+                }
             }
             
             // Clear any widget initialization errors on successful load
@@ -96,134 +363,395 @@ public class SaveGameWidgetProvider extends AppWidgetProvider {
             
             if (widgetError != null && !widgetError.isEmpty()) {
                 // Show widget initialization error
-                views.setTextViewText(R.id.widget_timestamp, context.getString(R.string.widget_error));
-                views.setTextViewText(R.id.widget_last_error, widgetError);
+                formatter.set(FIELD_TIMESTAMP, context.getString(R.string.widget_error));
+                formatter.set(FIELD_LAST_ERROR, widgetError);
             } else {
                 // No errors, just no data yet
-                views.setTextViewText(R.id.widget_timestamp, context.getString(R.string.no_save_data));
-                views.setTextViewText(R.id.widget_last_error, context.getString(R.string.no_errors));
+                formatter.set(FIELD_TIMESTAMP, context.getString(R.string.no_save_data));
+                formatter.set(FIELD_LAST_ERROR, context.getString(R.string.no_errors));
             }
             
-            views.setTextViewText(R.id.widget_day, context.getString(R.string.day_label));
-            views.setTextViewText(R.id.widget_health, context.getString(R.string.health_label));
-            views.setTextViewText(R.id.widget_torches, context.getString(R.string.torches_label));
-            views.setTextViewText(R.id.widget_position, context.getString(R.string.position_label));
-            views.setTextViewText(R.id.widget_error_count, context.getString(R.string.errors_label));
-            views.setTextViewText(R.id.widget_total_logs, context.getString(R.string.logs_label));
+            formatter.set(FIELD_DAY, context.getString(R.string.day_label));
+            formatter.set(FIELD_HEALTH, context.getString(R.string.health_label));
+            formatter.set(FIELD_TORCHES, context.getString(R.string.torches_label));
+            formatter.set(FIELD_POSITION, context.getString(R.string.position_label));
+            formatter.set(FIELD_ERROR_COUNT, context.getString(R.string.errors_label));
+            formatter.set(FIELD_TOTAL_LOGS, context.getString(R.string.logs_label));
+            formatter.set(FIELD_HEALTH_TREND, context.getString(R.string.health_trend_label));
+            formatter.set(FIELD_DAY_TREND, context.getString(R.string.day_trend_label));
+            formatter.set(FIELD_MINIMAP, "");
+        }
+        
+        // Fields this widget's layout doesn't show are neither compared nor sent
+        formatter.retain(template.fieldMask);
+        CharSequence[] fields = formatter.getFields();
+        int changed = RENDER_STATE.diff(appWidgetId, fields);
+        if (changed == 0) {
+            // Same content as on screen, skip the IPC and re-inflation
+            RENDER_STATE.record(appWidgetId, fields, changed);
+            WidgetMetrics.PUSH_SKIPPED.increment();
+            return;
+        }
+        
+        // Only the changed fields become Strings, for RemoteViews and the render state
+        fields = formatter.toPushed(changed);
+        
+        RemoteViews views = new RemoteViews(context.getPackageName(), template.layoutId);
+        for (int i = 0; i < FIELD_VIEW_IDS.length; i++) {
+            if (!template.shows(i) || !WidgetRenderState.isChanged(changed, i)) {
+                continue;
+            }
+            if (i == FIELD_MINIMAP) {
+                if (minimap != null) {
+                    views.setImageViewBitmap(R.id.widget_minimap, minimap);
+                }
+                views.setViewVisibility(R.id.widget_minimap, minimap != null ? View.VISIBLE : View.GONE);
+            } else {
+                views.setTextViewText(FIELD_VIEW_IDS[i], fields[i]);
+            }
         }
         
         // Update the widget
-        appWidgetManager.updateAppWidget(appWidgetId, views);
+        if (changed == WidgetRenderState.FULL_UPDATE) {
+            appWidgetManager.updateAppWidget(appWidgetId, views);
+            WidgetMetrics.PUSH_FULL.increment();
+        } else {
+            appWidgetManager.partiallyUpdateAppWidget(appWidgetId, views);
+            WidgetMetrics.PUSH_PARTIAL.increment();
+        }
+        RENDER_STATE.record(appWidgetId, fields, changed);
     }
     
     /**
-     * Read save data from shared file
+     * Text buffers for one rendering thread
      */
-    private static SaveData readSaveData(Context context) {
-        BufferedReader reader = null;
-        try {
-            // The main game (com.yougame.godot4) writes to its external files directory
-            // Path: /storage/emulated/0/Android/data/com.yougame.godot4/files/widget_data.txt
-            File gameDataDir = new File("/storage/emulated/0/Android/data/com.yougame.godot4/files");
-            File dataFile = new File(gameDataDir, WIDGET_DATA_FILE);
-            
-            if (!dataFile.exists()) {
+    static WidgetFieldFormatter newFieldFormatter() {
+        return new WidgetFieldFormatter(FIELD_VIEW_IDS.length, TIMESTAMP_PATTERN);
+    }
+    
+    /**
+     * Format the fields shown for valid save data, without allocating once
+     * the formatter's buffers have grown to size
+     * 
+     * @param lastSavedTemplate The last_saved string resource
+     * @param noErrors The no_errors string resource
+     */
+    static void formatSaveDataFields(WidgetFieldFormatter formatter, SaveData data,
+                                     String lastSavedTemplate, String noErrors) {
+        formatSaveDataFields(formatter, data, ~0, lastSavedTemplate, noErrors);
+    }
+    
+    /**
+     * Format only the save data fields in fieldMask (bit i for field i); the
+     * other fields keep whatever they held
+     */
+    static void formatSaveDataFields(WidgetFieldFormatter formatter, SaveData data, int fieldMask,
+                                     String lastSavedTemplate, String noErrors) {
+        if (shows(fieldMask, FIELD_TIMESTAMP)) {
+            formatter.appendTemplateTimestamp(formatter.begin(FIELD_TIMESTAMP), lastSavedTemplate, data.timestamp);
+        }
+        
+        // Game stats
+        if (shows(fieldMask, FIELD_DAY)) {
+            formatter.begin(FIELD_DAY).append("Day: ").append(data.dayCount);
+        }
+        if (shows(fieldMask, FIELD_HEALTH)) {
+            StringBuilder health = formatter.begin(FIELD_HEALTH).append("Health: ");
+            WidgetFieldFormatter.appendRounded(health, data.currentHealth);
+            health.append('%');
+        }
+        if (shows(fieldMask, FIELD_TORCHES)) {
+            formatter.begin(FIELD_TORCHES).append("Torches: ").append(data.torchCount);
+        }
+        if (shows(fieldMask, FIELD_POSITION)) {
+            StringBuilder position = formatter.begin(FIELD_POSITION).append("Pos: ");
+            WidgetFieldFormatter.appendRounded(position, data.positionX);
+            position.append(", ");
+            WidgetFieldFormatter.appendRounded(position, data.positionZ);
+        }
+        
+        // Log stats
+        if (shows(fieldMask, FIELD_ERROR_COUNT)) {
+            formatter.begin(FIELD_ERROR_COUNT).append("Errors: ").append(data.errorCount);
+        }
+        if (shows(fieldMask, FIELD_TOTAL_LOGS)) {
+            formatter.begin(FIELD_TOTAL_LOGS).append("Logs: ").append(data.totalLogCount);
+        }
+        
+        // Last error message
+        if (shows(fieldMask, FIELD_LAST_ERROR)) {
+            if (data.errorCount > 0 && data.lastError != null && !data.lastError.isEmpty()) {
+                formatter.set(FIELD_LAST_ERROR, data.lastError);
+            } else {
+                formatter.set(FIELD_LAST_ERROR, noErrors);
+            }
+        }
+    }
+    
+    private static boolean shows(int fieldMask, int field) {
+        return (fieldMask & (1 << field)) != 0;
+    }
+    
+    /**
+     * The widget's template. Its size is looked up once; later changes come
+     * through onAppWidgetOptionsChanged.
+     */
+    private static WidgetSizeTemplates.Template templateFor(AppWidgetManager appWidgetManager, int appWidgetId) {
+        WidgetSizeTemplates.Template template = TEMPLATES.get(appWidgetId);
+        if (template == null) {
+            applySize(appWidgetId, appWidgetManager.getAppWidgetOptions(appWidgetId));
+            template = TEMPLATES.get(appWidgetId);
+        }
+        return template;
+    }
+    
+    /**
+     * Record a widget's size from its options (portrait: minimum width, maximum height)
+     * 
+     * @return true if its template changed; the next push is then a full update
+     */
+    private static boolean applySize(int appWidgetId, Bundle options) {
+        int widthDp = options != null ? options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH) : 0;
+        int heightDp = options != null ? options.getInt(AppWidgetManager.OPTION_APPWIDGET_MAX_HEIGHT) : 0;
+        if (!TEMPLATES.setSize(appWidgetId, widthDp, heightDp)) {
+            return false;
+        }
+        RENDER_STATE.forget(new int[] {appWidgetId});
+        return true;
+    }
+    
+    /**
+     * Render statistics: renders, pushes skipped, partial and full pushes, estimated IPC bytes saved,
+     * widgets per size bucket
+     */
+    public static String getRenderStats() {
+        return "renders=" + RENDER_STATE.getRenderCount()
+            + " skipped=" + RENDER_STATE.getSkippedCount()
+            + " partial=" + RENDER_STATE.getPartialCount()
+            + " full=" + RENDER_STATE.getFullCount()
+            + " bytesSaved=" + RENDER_STATE.getBytesSaved()
+            + " " + TEMPLATES.getBucketStats();
+    }
+    
+    /**
+     * Fill the trend rows from the save history ring buffer. The history file
+     * is only re-read, and the rows rebuilt, when the game appended to it.
+     */
+    private static void fillTrendFields(Context context, WidgetFieldFormatter formatter) {
+        String health = null;
+        String days = null;
+        synchronized (SAVE_HISTORY) {
+            try {
+                SAVE_HISTORY.read(saveHistoryFile);
+                if (SAVE_HISTORY.getAppendCount() != trendAppendCount) {
+                    healthTrend = TrendFormatter.healthTrend(SAVE_HISTORY);
+                    dayTrend = TrendFormatter.dayTrend(SAVE_HISTORY);
+                    trendAppendCount = SAVE_HISTORY.getAppendCount();
+                }
+                health = healthTrend;
+                days = dayTrend;
+            } catch (java.io.IOException e) {
                 WidgetErrorLogger.logError(context, 
-                    "Save data file not found. Main game may not be installed or no save yet. Path: " + dataFile.getAbsolutePath(), 
-                    null);
-                return null;
+                    "Error reading save history: " + e.getMessage(), 
+                    e);
             }
-            
-            if (!dataFile.canRead()) {
+        }
+        formatter.set(FIELD_HEALTH_TREND, health != null
+            ? health : context.getString(R.string.health_trend_label));
+        formatter.set(FIELD_DAY_TREND, days != null
+            ? days : context.getString(R.string.day_trend_label));
+    }
+    
+    /**
+     * The minimap bitmap for the widget, or null if the game exported none.
+     * Decoded only when the snapshot's generation changed; if the file can't
+     * be decoded, the last good minimap is kept.
+     */
+    private static Bitmap renderMinimap(Context context) {
+        int targetPx = Math.round(MINIMAP_HEIGHT_DP * context.getResources().getDisplayMetrics().density);
+        synchronized (MINIMAP) {
+            try {
+                return MINIMAP.render(minimapFile, targetPx);
+            } catch (java.io.IOException e) {
                 WidgetErrorLogger.logError(context, 
-                    "Cannot read save data file. Permission denied. Check storage permissions. Path: " + dataFile.getAbsolutePath(), 
-                    null);
-                return null;
+                    "Error reading minimap: " + e.getMessage(), 
+                    e);
+                return MINIMAP.getBitmap();
             }
-            
-            reader = new BufferedReader(new FileReader(dataFile));
-            SaveData data = new SaveData();
-            
-            String line;
-            int lineCount = 0;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("=", 2);
-                if (parts.length == 2) {
-                    String key = parts[0].trim();
-                    String value = parts[1].trim();
-                    
-                    try {
-                        switch (key) {
-                            case "timestamp":
-                                data.timestamp = Long.parseLong(value);
-                                break;
-                            case "day_count":
-                                data.dayCount = Integer.parseInt(value);
-                                break;
-                            case "current_health":
-                                data.currentHealth = Float.parseFloat(value);
-                                break;
-                            case "position_x":
-                                data.positionX = Float.parseFloat(value);
-                                break;
-                            case "position_z":
-                                data.positionZ = Float.parseFloat(value);
-                                break;
-                            case "error_count":
-                                data.errorCount = Integer.parseInt(value);
-                                break;
-                            case "total_log_count":
-                                data.totalLogCount = Integer.parseInt(value);
-                                break;
-                            case "last_error":
-                                data.lastError = value;
-                                break;
-                        }
-                    } catch (NumberFormatException nfe) {
-                        WidgetErrorLogger.logError(context,
-                            "Invalid data format in save file. Line " + (lineCount + 1) + ": " + line,
-                            nfe);
-                    }
+        }
+    }
+    
+    /**
+     * Read save data from the first available source in DATA_SOURCES: the
+     * game's provider, then the data files in the game's directory.
+     * 
+     * After a failed read, refreshes get the cached failure without touching the
+     * sources until DATA_SOURCE_HEALTH schedules the next probe; a change to the data
+     * directory or a watcher event ends the backoff early.
+     */
+    private static SaveData readSaveData(Context context) {
+        // Path: /storage/emulated/0/Android/data/com.yougame.godot4/files/widget_data.txt
+        File gameDataDir = SaveGameWidgetProvider.gameDataDir;
+        
+        // While backing off, one stat of the directory replaces the reads below
+        long dirStamp = DATA_SOURCE_HEALTH.isHealthy() ? -1 : gameDataDir.lastModified();
+        if (!DATA_SOURCE_HEALTH.shouldRead(dirStamp)) {
+            WidgetMetrics.READS_SKIPPED.increment();
+            return null;
+        }
+        
+        SaveDataSource source = null;
+        try {
+            for (SaveDataSource candidate : DATA_SOURCES) {
+                source = candidate;
+                SaveData data = candidate.read(context);
+                if (data != null) {
+                    DATA_SOURCE_HEALTH.onReadSucceeded();
+                    return data;
                 }
-                lineCount++;
             }
-            
-            WidgetErrorLogger.logInfo(context, 
-                "Successfully read " + lineCount + " lines from save data file");
-            return data;
-        } catch (java.io.FileNotFoundException fnfe) {
-            WidgetErrorLogger.logError(context, 
-                "Save data file not found: " + fnfe.getMessage(), 
-                fnfe);
-            return null;
+            return readFailed(context, gameDataDir, dirStamp, "No save data source available", null);
+        } catch (java.io.FileNotFoundException | SaveDataSource.UnreadableException e) {
+            return readFailed(context, gameDataDir, dirStamp, e.getMessage(), null);
         } catch (java.io.IOException ioe) {
-            WidgetErrorLogger.logError(context, 
-                "Error reading save data file: " + ioe.getMessage(), 
+            String what = source == FILE_SOURCE ? "save data file" : "save data from " + source.getName();
+            return readFailed(context, gameDataDir, dirStamp,
+                "Error reading " + what + ": " + ioe.getMessage(), 
                 ioe);
-            return null;
         } catch (Exception e) {
-            WidgetErrorLogger.logError(context, 
+            return readFailed(context, gameDataDir, dirStamp,
                 "Unexpected error reading save data: " + e.getMessage(), 
                 e);
-            return null;
-        } finally {
-            // Ensure reader is closed even if exception occurs
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (Exception e) {
-                    WidgetErrorLogger.logError(context, 
-                        "Error closing file reader: " + e.getMessage(), 
-                        e);
-                }
+        }
+    }
+    
+    /**
+     * Log a failed read and back off further reads
+     * 
+     * @param dirStamp The data directory's lastModified taken before the read, -1 if not taken
+     * @return null, the result of the failed read
+     */
+    private static SaveData readFailed(Context context, File gameDataDir, long dirStamp,
+                                       String message, Exception error) {
+        WidgetErrorLogger.logError(context, message, error);
+        WidgetMetrics.READ_FAILURES.increment();
+        DATA_SOURCE_HEALTH.onReadFailed(dirStamp >= 0 ? dirStamp : gameDataDir.lastModified(), message);
+        return null;
+    }
+    
+    /**
+     * Export diagnostics in the background: all error log segments, the parsed
+     * save data, the read backoff and data source state, the raw data files and
+     * a metrics snapshot, streamed into widget_diagnostics.zip next to the error log.
+     * 
+     * @param listener Gets progress and the final archive size on the export thread; may be null
+     */
+    public static void exportDiagnostics(final Context context, final DiagnosticsExporter.Listener listener) {
+        DiagnosticsExporter.runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                writeDiagnostics(context, listener);
             }
+        });
+    }
+    
+    /**
+     * Export diagnostics on the calling thread; see exportDiagnostics
+     */
+    static void writeDiagnostics(Context context, DiagnosticsExporter.Listener listener) {
+        // Queued log entries belong in the archive
+        WidgetErrorLogger.flush();
+        
+        DiagnosticsExporter exporter = new DiagnosticsExporter();
+        for (File segment : WidgetErrorLogger.getLogSegmentFiles(context)) {
+            exporter.addFile("logs/" + segment.getName(), segment);
+        }
+        exporter.addText("save_data.txt", describeSaveData(readSaveData(context)));
+        exporter.addText("data_source.txt", DATA_SOURCE_HEALTH.describe() + GAME_PROVIDER.describe());
+        File gameDataDir = SaveGameWidgetProvider.gameDataDir;
+        exporter.addFile("data/" + FileDataSource.TEXT_FILE_NAME,
+            new File(gameDataDir, FileDataSource.TEXT_FILE_NAME));
+        exporter.addFile("data/" + BinaryWidgetDataReader.FILE_NAME,
+            new File(gameDataDir, BinaryWidgetDataReader.FILE_NAME));
+        StringBuilder metrics = new StringBuilder(2048);
+        WidgetMetrics.appendJson(metrics, System.currentTimeMillis());
+        exporter.addText(WidgetMetrics.SNAPSHOT_FILE, metrics.toString());
+        
+        File logDir = new File(WidgetErrorLogger.getLogFilePath(context)).getParentFile();
+        try {
+            exporter.write(new File(logDir, DiagnosticsExporter.ARCHIVE_FILE), listener);
+        } catch (java.io.IOException e) {
+            WidgetErrorLogger.logError(context, "Failed to export diagnostics: " + e.getMessage(), e);
         }
     }
     
+    /**
+     * Parsed save data as key=value lines, for the diagnostics archive
+     */
+    private static String describeSaveData(SaveData data) {
+        if (data == null) {
+            return "No save data could be read (see logs)\n";
+        }
+        return "timestamp=" + data.timestamp + "\n"
+            + "day_count=" + data.dayCount + "\n"
+            + "current_health=" + data.currentHealth + "\n"
+            + "torch_count=" + data.torchCount + "\n"
+            + "position_x=" + data.positionX + "\n"
+            + "position_z=" + data.positionZ + "\n"
+            + "error_count=" + data.errorCount + "\n"
+            + "total_log_count=" + data.totalLogCount + "\n"
+            + "last_error=" + data.lastError + "\n";
+    }
+    
     /**
      * Request widget update from external source (e.g., main game)
+     * Requests are coalesced: bursts within the update window become one
+     * broadcast, and broadcasts are at least the minimum interval apart.
      */
     public static void requestWidgetUpdate(Context context) {
+        getUpdateCoalescer(context).request();
+    }
+    
+    /**
+     * Send a pending coalesced update immediately, e.g. when the game is paused or closed
+     */
+    public static void flushWidgetUpdate(Context context) {
+        getUpdateCoalescer(context).flushNow();
+    }
+    
+    /**
+     * Change the coalescing window and minimum interval between update broadcasts
+     */
+    public static void configureUpdateCoalescing(Context context, long windowMillis, long minIntervalMillis) {
+        getUpdateCoalescer(context).configure(windowMillis, minIntervalMillis);
+    }
+    
+    /**
+     * Coalescer statistics: requests, broadcasts sent and requests merged
+     */
+    public static String getUpdateCoalescingStats(Context context) {
+        UpdateCoalescer coalescer = getUpdateCoalescer(context);
+        return "requests=" + coalescer.getRequestCount()
+            + " delivered=" + coalescer.getDeliveredCount()
+            + " merged=" + coalescer.getMergedCount();
+    }
+    
+    private static synchronized UpdateCoalescer getUpdateCoalescer(Context context) {
+        if (updateCoalescer == null) {
+            final Context appContext = context.getApplicationContext();
+            updateCoalescer = new UpdateCoalescer(UPTIME_CLOCK, mainThreadScheduler(),
+                UPDATE_WINDOW_MS, UPDATE_MIN_INTERVAL_MS,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        sendUpdateBroadcast(appContext);
+                    }
+                });
+        }
+        return updateCoalescer;
+    }
+    
+    private static void sendUpdateBroadcast(Context context) {
         Intent intent = new Intent(context, SaveGameWidgetProvider.class);
         intent.setAction(AppWidgetManager.ACTION_APPWIDGET_UPDATE);
         
@@ -236,17 +764,36 @@ public class SaveGameWidgetProvider extends AppWidgetProvider {
     }
     
     /**
-     * Save data container
+     * Key for an onUpdate batch, so repeated updates of the same widgets replace each other
+     */
+    private static String updateKey(int[] appWidgetIds) {
+        int[] sorted = appWidgetIds.clone();
+        Arrays.sort(sorted);
+        return "update:" + Arrays.toString(sorted);
+    }
+    
+    /**
+     * Callback that finishes an async broadcast; null-safe
      */
-    private static class SaveData {
-        long timestamp = 0;
-        int dayCount = 0;
-        float currentHealth = 0.0f;
-        int torchCount = 0;
-        float positionX = 0.0f;
-        float positionZ = 0.0f;
-        int errorCount = 0;
-        int totalLogCount = 0;
-        String lastError = "No errors";
+    private static Runnable finisher(final PendingResult result) {
+        if (result == null) {
+            return null;
+        }
+        return new Runnable() {
+            @Override
+            public void run() {
+                result.finish();
+            }
+        };
+    }
+    
+    private static RefreshDebouncer.Scheduler mainThreadScheduler() {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        return new RefreshDebouncer.Scheduler() {
+            @Override
+            public void schedule(Runnable task, long delayMillis) {
+                handler.postDelayed(task, delayMillis);
+            }
+        };
     }
 }
@@ -0,0 +1,204 @@
+package com.yougame.widget;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * SaveHistoryReader - Reads the save history ring buffer (widget_history.bin)
+ *
+ * The file is written by the game plugin (com.yougame.savegamewidget.SaveHistoryWriter):
+ * a fixed-size ring of the last saves with fixed-width records, so reading
+ * the newest n saves is n record reads from a mapped file, without parsing.
+ * All numbers are big-endian.
+ *
+ * Layout (version 1):
+ *   offset  size  field
+ *        0     4  magic "YGWH"
+ *        4     2  version
+ *        6     2  record size (32)
+ *        8     4  capacity (number of record slots)
+ *       12     4  reserved
+ *       16     8  append count (records ever appended)
+ *       24     8  reserved
+ *       32        records; record i is in slot i % capacity
+ *
+ * Record:
+ *        0     8  timestamp (Unix time, milliseconds)
+ *        8     4  day_count
+ *       12     4  current_health (float)
+ *       16     4  torch_count
+ *       20     4  position_x (float)
+ *       24     4  position_z (float)
+ *       28     4  CRC32 of record bytes [0, 28)
+ *
+ * Records failing their CRC (the writer was overwriting that slot) are
+ * skipped. Results go into reused arrays, oldest first.
+ *
+ * Not thread-safe.
+ */
+class SaveHistoryReader {
+
+    static final String FILE_NAME = "widget_history.bin";
+    static final int MAGIC = 0x59475748; // "YGWH"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 32;
+
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_RECORD_SIZE = 6;
+    private static final int OFFSET_CAPACITY = 8;
+    private static final int OFFSET_APPEND_COUNT = 16;
+    private static final int RECORD_CHECKSUM = 28;
+
+    private final int maxRecords;
+    private final long[] timestamps;
+    private final int[] dayCounts;
+    private final float[] health;
+    private final int[] torchCounts;
+    private final float[] positionX;
+    private final float[] positionZ;
+    private final byte[] record = new byte[RECORD_SIZE];
+    private final ByteBuffer recordBuffer = ByteBuffer.wrap(record);
+    private final CRC32 crc = new CRC32();
+
+    private int count = 0;
+    private long lastAppendCount = -1;
+    private String lastPath = null;
+
+    /**
+     * @param maxRecords Most recent saves to read
+     */
+    SaveHistoryReader(int maxRecords) {
+        this.maxRecords = maxRecords;
+        timestamps = new long[maxRecords];
+        dayCounts = new int[maxRecords];
+        health = new float[maxRecords];
+        torchCounts = new int[maxRecords];
+        positionX = new float[maxRecords];
+        positionZ = new float[maxRecords];
+    }
+
+    /**
+     * Read the newest saves from the history file. If the file's append count
+     * did not change since the last read, the previous results are kept and
+     * no records are read.
+     *
+     * @return number of saves read; 0 if the file is missing or not a history file
+     */
+    int read(File file) throws IOException {
+        if (!file.exists()) {
+            reset();
+            return 0;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long size = raf.length();
+            if (size < HEADER_SIZE) {
+                reset();
+                return 0;
+            }
+            MappedByteBuffer map = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (map.getInt(0) != MAGIC
+                    || (map.getShort(OFFSET_VERSION) & 0xFFFF) != VERSION
+                    || (map.getShort(OFFSET_RECORD_SIZE) & 0xFFFF) != RECORD_SIZE) {
+                reset();
+                return 0;
+            }
+            int capacity = map.getInt(OFFSET_CAPACITY);
+            if (capacity <= 0 || HEADER_SIZE + (long) capacity * RECORD_SIZE > size) {
+                reset();
+                return 0;
+            }
+
+            long appendCount = map.getLong(OFFSET_APPEND_COUNT);
+            String path = file.getPath();
+            if (appendCount == lastAppendCount && path.equals(lastPath)) {
+                return count;
+            }
+
+            int available = (int) Math.min(appendCount, Math.min(capacity, maxRecords));
+            count = 0;
+            for (long index = appendCount - available; index < appendCount; index++) {
+                int offset = HEADER_SIZE + (int) (index % capacity) * RECORD_SIZE;
+                if (readRecord(map, offset)) {
+                    count++;
+                }
+            }
+            lastAppendCount = appendCount;
+            lastPath = path;
+            return count;
+        }
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * Append count of the file at the last read, -1 if nothing was read.
+     * Unchanged as long as the read results are unchanged.
+     */
+    long getAppendCount() {
+        return lastAppendCount;
+    }
+
+    long getTimestamp(int i) {
+        return timestamps[i];
+    }
+
+    int getDayCount(int i) {
+        return dayCounts[i];
+    }
+
+    float getHealth(int i) {
+        return health[i];
+    }
+
+    int getTorchCount(int i) {
+        return torchCounts[i];
+    }
+
+    float getPositionX(int i) {
+        return positionX[i];
+    }
+
+    float getPositionZ(int i) {
+        return positionZ[i];
+    }
+
+    /**
+     * Health values of the saves read, oldest first; valid up to getCount()
+     */
+    float[] getHealthValues() {
+        return health;
+    }
+
+    private boolean readRecord(ByteBuffer map, int offset) {
+        for (int i = 0; i < RECORD_SIZE; i++) {
+            record[i] = map.get(offset + i);
+        }
+        // Decode from the copy, the checked bytes may change in the file meanwhile
+        crc.reset();
+        crc.update(record, 0, RECORD_CHECKSUM);
+        if ((int) crc.getValue() != recordBuffer.getInt(RECORD_CHECKSUM)) {
+            return false;
+        }
+        timestamps[count] = recordBuffer.getLong(0);
+        dayCounts[count] = recordBuffer.getInt(8);
+        health[count] = recordBuffer.getFloat(12);
+        torchCounts[count] = recordBuffer.getInt(16);
+        positionX[count] = recordBuffer.getFloat(20);
+        positionZ[count] = recordBuffer.getFloat(24);
+        return true;
+    }
+
+    private void reset() {
+        count = 0;
+        lastAppendCount = -1;
+        lastPath = null;
+    }
+}
@@ -0,0 +1,656 @@
+package com.yougame.widget;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * StructuredLog - Binary log records with a sparse time/level index
+ *
+ * Written next to the text log, so questions like "errors in the last hour"
+ * are answered by seeking to the few blocks that can match instead of
+ * scanning the text. All numbers are big-endian.
+ *
+ * Record file (widget_errors.rec, rotated like the text log):
+ *   header: magic "YGLS" (4), version (2), reserved (2)
+ *   records, each:
+ *     offset  size  field
+ *          0     2  record length including this header
+ *          2     1  level code (LEVEL_*)
+ *          3     1  flags (FLAG_TRUNCATED)
+ *          4     8  timestamp, epoch millis
+ *         12     4  message id (messageId(message))
+ *         16     n  payload, UTF-8: the message, then exception lines if any
+ *
+ * Index file (widget_errors.idx, rotated together with the record file):
+ * one 32-byte entry per block of up to BLOCK_RECORDS records:
+ *     offset  size  field
+ *          0     8  block start offset in the record file
+ *          8     8  oldest timestamp in the block
+ *         16     8  newest timestamp in the block
+ *         24     4  block length in bytes
+ *         28     4  record count per level code (1 byte each, codes 0-3)
+ *
+ * The newest, still open block is kept in memory and indexed when it fills
+ * up or the segment rotates. A query reads the index, skips every block
+ * whose time range or level counts cannot match, and reads only the
+ * remaining blocks. Counts over blocks that lie entirely within the time
+ * range come straight from the index.
+ *
+ * Thread-safe.
+ */
+public class StructuredLog {
+
+    private static final String TAG = "YouGameWidget";
+
+    static final int MAGIC = 0x59474C53; // "YGLS"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_HEADER_SIZE = 16;
+    static final int INDEX_ENTRY_SIZE = 32;
+    static final int BLOCK_RECORDS = 32;
+    static final int MAX_PAYLOAD_BYTES = 1024;
+
+    public static final int LEVEL_OTHER = 0;
+    public static final int LEVEL_INFO = 1;
+    public static final int LEVEL_WARN = 2;
+    public static final int LEVEL_ERROR = 3;
+    private static final String[] LEVEL_NAMES = {"OTHER", "INFO", "WARN", "ERROR"};
+
+    public static final int MASK_INFO = 1 << LEVEL_INFO;
+    public static final int MASK_WARN = 1 << LEVEL_WARN;
+    public static final int MASK_ERROR = 1 << LEVEL_ERROR;
+    public static final int MASK_ALL = 0xF;
+
+    /** Matches every message id in queries */
+    public static final int ANY_MESSAGE = 0;
+
+    static final int FLAG_TRUNCATED = 1;
+
+    private static final int PENDING_BYTES = 8 * 1024;
+
+    /**
+     * One decoded log record
+     */
+    public static final class Record {
+        public final long timeMillis;
+        public final int level;
+        public final int messageId;
+        public final String payload;
+        public final boolean truncated;
+
+        Record(long timeMillis, int level, int messageId, String payload, boolean truncated) {
+            this.timeMillis = timeMillis;
+            this.level = level;
+            this.messageId = messageId;
+            this.payload = payload;
+            this.truncated = truncated;
+        }
+
+        public String getLevelName() {
+            return LEVEL_NAMES[level];
+        }
+    }
+
+    /**
+     * Summary of a run of consecutive records in one segment
+     */
+    private static final class Block {
+        long offset;
+        int length;
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        final int[] counts = new int[LEVEL_NAMES.length];
+
+        Block(long offset) {
+            this.offset = offset;
+        }
+
+        int recordCount() {
+            return counts[0] + counts[1] + counts[2] + counts[3];
+        }
+
+        void add(long timeMillis, int level, int recordLength) {
+            minTime = Math.min(minTime, timeMillis);
+            maxTime = Math.max(maxTime, timeMillis);
+            counts[level]++;
+            length += recordLength;
+        }
+
+        boolean mayMatch(int levelMask, long fromMillis, long toMillis) {
+            if (recordCount() == 0 || maxTime < fromMillis || minTime > toMillis) {
+                return false;
+            }
+            for (int level = 0; level < counts.length; level++) {
+                if (counts[level] > 0 && (levelMask & (1 << level)) != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Receives matching records, newest first; return false to stop
+     */
+    private interface Visitor {
+        boolean visit(Record record);
+    }
+
+    private LogSegments recordSegments;
+    private LogSegments indexSegments;
+
+    // Active segment state, opened on first use
+    private RandomAccessFile recordFile;
+    private RandomAccessFile indexFile;
+    private final List<Block> activeBlocks = new ArrayList<>();
+    private Block openBlock;
+    private long recordFileSize;
+
+    private final ByteBuffer pendingRecords = ByteBuffer.allocate(PENDING_BYTES);
+    private final ByteBuffer pendingIndex = ByteBuffer.allocate(PENDING_BYTES);
+    private final StringBuilder payloadBuilder = new StringBuilder(256);
+    private ByteBuffer readBuffer = ByteBuffer.allocate(4 * 1024);
+    private long blocksRead = 0;
+
+    /**
+     * @param recordFile Active record segment, e.g. widget_errors.rec
+     * @param indexFile Active index segment, e.g. widget_errors.idx
+     */
+    public StructuredLog(File recordFile, File indexFile, int maxSegmentBytes, int segmentCount) {
+        this.recordSegments = new LogSegments(recordFile, maxSegmentBytes, segmentCount);
+        this.indexSegments = new LogSegments(indexFile, maxSegmentBytes, segmentCount);
+    }
+
+    /**
+     * Change the rotation settings; takes effect with the next append
+     */
+    public synchronized void configureRotation(int maxSegmentBytes, int segmentCount) {
+        recordSegments = new LogSegments(recordSegments.getActiveSegment(), maxSegmentBytes, segmentCount);
+        indexSegments = new LogSegments(indexSegments.getActiveSegment(), maxSegmentBytes, segmentCount);
+    }
+
+    /**
+     * Level code for a level name ("INFO", "WARN", "ERROR")
+     */
+    public static int levelCode(String level) {
+        for (int code = 1; code < LEVEL_NAMES.length; code++) {
+            if (LEVEL_NAMES[code].equals(level)) {
+                return code;
+            }
+        }
+        return LEVEL_OTHER;
+    }
+
+    /**
+     * Mask matching the given level and all more severe ones
+     */
+    public static int levelMaskAtLeast(String level) {
+        return MASK_ALL & ~((1 << levelCode(level)) - 1);
+    }
+
+    /**
+     * Stable id for a message. Messages that share their text before the
+     * first colon share an id, e.g. every "Error reading save data file: ..."
+     * entry, so a kind of failure can be counted regardless of its details.
+     * Never ANY_MESSAGE.
+     */
+    public static int messageId(String message) {
+        int end = message.indexOf(':');
+        if (end < 0) {
+            end = message.length();
+        }
+        // FNV-1a
+        int hash = 0x811C9DC5;
+        for (int i = 0; i < end; i++) {
+            hash = (hash ^ message.charAt(i)) * 0x01000193;
+        }
+        return hash == ANY_MESSAGE ? 1 : hash;
+    }
+
+    /**
+     * Queue one record. It is written with the next flush(), or earlier
+     * when the pending buffer fills up.
+     */
+    public synchronized void append(long timeMillis, String level, String message,
+                                    Exception exception) throws IOException {
+        ensureOpen();
+
+        payloadBuilder.setLength(0);
+        payloadBuilder.append(message);
+        if (exception != null) {
+            payloadBuilder.append('\n');
+            WidgetErrorLogger.formatException(payloadBuilder, exception);
+            payloadBuilder.setLength(payloadBuilder.length() - 1);
+        }
+        byte[] payload = payloadBuilder.toString().getBytes(StandardCharsets.UTF_8);
+        int payloadLength = payload.length;
+        int flags = 0;
+        if (payloadLength > MAX_PAYLOAD_BYTES) {
+            // Cut before a UTF-8 continuation byte so the text stays valid
+            payloadLength = MAX_PAYLOAD_BYTES;
+            while (payloadLength > 0 && (payload[payloadLength] & 0xC0) == 0x80) {
+                payloadLength--;
+            }
+            flags |= FLAG_TRUNCATED;
+        }
+        int recordLength = RECORD_HEADER_SIZE + payloadLength;
+
+        if (recordSegments.needsRotation(recordFileSize + pendingRecords.position(), recordLength)) {
+            rotate();
+        }
+        if (pendingRecords.remaining() < recordLength) {
+            writePending();
+        }
+
+        int code = levelCode(level);
+        long offset = recordFileSize + pendingRecords.position();
+        if (openBlock == null) {
+            openBlock = new Block(offset);
+        }
+        pendingRecords.putShort((short) recordLength);
+        pendingRecords.put((byte) code);
+        pendingRecords.put((byte) flags);
+        pendingRecords.putLong(timeMillis);
+        pendingRecords.putInt(messageId(message));
+        pendingRecords.put(payload, 0, payloadLength);
+        openBlock.add(timeMillis, code, recordLength);
+
+        if (openBlock.recordCount() >= BLOCK_RECORDS) {
+            closeBlock();
+        }
+    }
+
+    /**
+     * Write all queued records and index entries
+     */
+    public synchronized void flush() throws IOException {
+        if (recordFile != null) {
+            writePending();
+        }
+    }
+
+    /**
+     * Flush and close the files; the next call reopens them
+     */
+    public synchronized void close() {
+        try {
+            flush();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to flush structured log", e);
+        }
+        closeFiles();
+    }
+
+    /**
+     * Records matching the levels and time range, newest first
+     *
+     * @param levelMask MASK_* bits
+     * @param fromMillis Oldest timestamp to include
+     * @param toMillis Newest timestamp to include
+     * @param messageId Only records with this id, or ANY_MESSAGE
+     * @param maxResults Stop after this many records
+     */
+    public synchronized List<Record> query(int levelMask, long fromMillis, long toMillis,
+                                           int messageId, final int maxResults) throws IOException {
+        final List<Record> results = new ArrayList<>();
+        if (maxResults <= 0) {
+            return results;
+        }
+        visit(levelMask, fromMillis, toMillis, messageId, new Visitor() {
+            @Override
+            public boolean visit(Record record) {
+                results.add(record);
+                return results.size() < maxResults;
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Number of records matching the levels and time range. Blocks entirely
+     * within the range are counted from the index without being read.
+     */
+    public synchronized long count(int levelMask, long fromMillis, long toMillis,
+                                   int messageId) throws IOException {
+        flush();
+        long total = 0;
+        for (int segment = 0; segment < recordSegments.getSegmentCount(); segment++) {
+            List<Block> blocks = getBlocks(segment);
+            for (int i = blocks.size() - 1; i >= 0; i--) {
+                Block block = blocks.get(i);
+                if (!block.mayMatch(levelMask, fromMillis, toMillis)) {
+                    continue;
+                }
+                if (messageId == ANY_MESSAGE && block.minTime >= fromMillis && block.maxTime <= toMillis) {
+                    for (int level = 0; level < block.counts.length; level++) {
+                        if ((levelMask & (1 << level)) != 0) {
+                            total += block.counts[level];
+                        }
+                    }
+                    continue;
+                }
+                List<Record> records = readBlock(segment, block);
+                for (int r = 0; r < records.size(); r++) {
+                    if (matches(records.get(r), levelMask, fromMillis, toMillis, messageId)) {
+                        total++;
+                    }
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Convert all records, oldest first, back to the text log format
+     * ("[timestamp] [LEVEL] message" plus exception lines)
+     */
+    public synchronized void exportText(Appendable out) throws IOException {
+        flush();
+        StringBuilder line = new StringBuilder(256);
+        for (int segment = recordSegments.getSegmentCount() - 1; segment >= 0; segment--) {
+            for (Block block : getBlocks(segment)) {
+                for (Record record : readBlock(segment, block)) {
+                    line.setLength(0);
+                    appendText(line, record);
+                    out.append(line);
+                }
+            }
+        }
+    }
+
+    /**
+     * Append one record in the text log format
+     */
+    public static void appendText(StringBuilder out, Record record) {
+        WidgetErrorLogger.formatEntry(out, record.timeMillis, record.getLevelName(), record.payload, null);
+    }
+
+    /**
+     * Blocks read from disk by queries so far
+     */
+    synchronized long getBlocksRead() {
+        return blocksRead;
+    }
+
+    private void visit(int levelMask, long fromMillis, long toMillis, int messageId,
+                       Visitor visitor) throws IOException {
+        flush();
+        for (int segment = 0; segment < recordSegments.getSegmentCount(); segment++) {
+            List<Block> blocks = getBlocks(segment);
+            for (int i = blocks.size() - 1; i >= 0; i--) {
+                Block block = blocks.get(i);
+                if (!block.mayMatch(levelMask, fromMillis, toMillis)) {
+                    continue;
+                }
+                List<Record> records = readBlock(segment, block);
+                for (int r = records.size() - 1; r >= 0; r--) {
+                    Record record = records.get(r);
+                    if (matches(record, levelMask, fromMillis, toMillis, messageId)
+                            && !visitor.visit(record)) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean matches(Record record, int levelMask, long fromMillis, long toMillis,
+                                   int messageId) {
+        return (levelMask & (1 << record.level)) != 0
+            && record.timeMillis >= fromMillis && record.timeMillis <= toMillis
+            && (messageId == ANY_MESSAGE || record.messageId == messageId);
+    }
+
+    /**
+     * Blocks of a segment, oldest first. The active segment is served from
+     * memory; older segments are read from their index file.
+     */
+    private List<Block> getBlocks(int segment) throws IOException {
+        if (segment == 0) {
+            ensureOpen();
+            if (openBlock == null) {
+                return activeBlocks;
+            }
+            List<Block> blocks = new ArrayList<>(activeBlocks);
+            blocks.add(openBlock);
+            return blocks;
+        }
+        File records = recordSegments.getSegment(segment);
+        if (!records.exists()) {
+            return Collections.emptyList();
+        }
+        try (RandomAccessFile recordsIn = new RandomAccessFile(records, "r")) {
+            List<Block> blocks = readIndex(indexSegments.getSegment(segment), recordsIn.length());
+            // Records after the last indexed block (e.g. rotated after a crash)
+            Block tail = scanTail(recordsIn.getChannel(), blocks, recordsIn.length());
+            if (tail.recordCount() > 0) {
+                blocks.add(tail);
+            }
+            return blocks;
+        }
+    }
+
+    private List<Record> readBlock(int segment, Block block) throws IOException {
+        blocksRead++;
+        if (block.length > readBuffer.capacity()) {
+            readBuffer = ByteBuffer.allocate(block.length);
+        }
+        readBuffer.clear();
+        readBuffer.limit(block.length);
+        if (segment == 0) {
+            readFully(recordFile.getChannel(), readBuffer, block.offset);
+        } else {
+            try (RandomAccessFile in = new RandomAccessFile(recordSegments.getSegment(segment), "r")) {
+                readFully(in.getChannel(), readBuffer, block.offset);
+            }
+        }
+        readBuffer.flip();
+
+        List<Record> records = new ArrayList<>(block.recordCount());
+        byte[] bytes = readBuffer.array();
+        while (readBuffer.remaining() >= RECORD_HEADER_SIZE) {
+            int start = readBuffer.position();
+            int length = readBuffer.getShort(start) & 0xFFFF;
+            if (length < RECORD_HEADER_SIZE || length > readBuffer.remaining()) {
+                break;
+            }
+            int level = readBuffer.get(start + 2) & 0x3;
+            int flags = readBuffer.get(start + 3);
+            long time = readBuffer.getLong(start + 4);
+            int id = readBuffer.getInt(start + 12);
+            String payload = new String(bytes, start + RECORD_HEADER_SIZE, length - RECORD_HEADER_SIZE,
+                StandardCharsets.UTF_8);
+            records.add(new Record(time, level, id, payload, (flags & FLAG_TRUNCATED) != 0));
+            readBuffer.position(start + length);
+        }
+        return records;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Structured log ended inside a block");
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Index entries of a segment that point inside its record file
+     */
+    private static List<Block> readIndex(File index, long recordFileSize) throws IOException {
+        List<Block> blocks = new ArrayList<>();
+        if (!index.exists()) {
+            return blocks;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(index, "r")) {
+            int entries = (int) (in.length() / INDEX_ENTRY_SIZE);
+            ByteBuffer data = ByteBuffer.allocate(entries * INDEX_ENTRY_SIZE);
+            readFully(in.getChannel(), data, 0);
+            long expectedOffset = HEADER_SIZE;
+            for (int i = 0; i < entries; i++) {
+                int at = i * INDEX_ENTRY_SIZE;
+                Block block = new Block(data.getLong(at));
+                block.minTime = data.getLong(at + 8);
+                block.maxTime = data.getLong(at + 16);
+                block.length = data.getInt(at + 24);
+                for (int level = 0; level < block.counts.length; level++) {
+                    block.counts[level] = data.get(at + 28 + level) & 0xFF;
+                }
+                // Stop at entries for records that never reached the disk
+                if (block.offset != expectedOffset || block.length <= 0
+                        || block.offset + block.length > recordFileSize) {
+                    break;
+                }
+                blocks.add(block);
+                expectedOffset = block.offset + block.length;
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * Summarize the records after the last indexed block, stopping at the
+     * first incomplete record
+     */
+    private static Block scanTail(FileChannel channel, List<Block> blocks, long fileSize) throws IOException {
+        long offset = blocks.isEmpty() ? HEADER_SIZE
+            : blocks.get(blocks.size() - 1).offset + blocks.get(blocks.size() - 1).length;
+        Block tail = new Block(offset);
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        while (offset + RECORD_HEADER_SIZE <= fileSize) {
+            header.clear();
+            readFully(channel, header, offset);
+            int length = header.getShort(0) & 0xFFFF;
+            if (length < RECORD_HEADER_SIZE || offset + length > fileSize) {
+                break;
+            }
+            tail.add(header.getLong(4), header.get(2) & 0x3, length);
+            offset += length;
+        }
+        return tail;
+    }
+
+    /**
+     * Open the active segment and restore the in-memory block state
+     */
+    private void ensureOpen() throws IOException {
+        if (recordFile != null) {
+            return;
+        }
+        File records = recordSegments.getActiveSegment();
+        File parentDir = records.getParentFile();
+        if (parentDir != null && !parentDir.exists()) {
+            parentDir.mkdirs();
+        }
+        recordFile = new RandomAccessFile(records, "rw");
+        indexFile = new RandomAccessFile(indexSegments.getActiveSegment(), "rw");
+        activeBlocks.clear();
+        openBlock = null;
+        pendingRecords.clear();
+        pendingIndex.clear();
+
+        long size = recordFile.length();
+        if (size < HEADER_SIZE || recordFile.readInt() != MAGIC) {
+            // New or foreign file: start over
+            recordFile.setLength(0);
+            indexFile.setLength(0);
+            recordFile.writeInt(MAGIC);
+            recordFile.writeShort(VERSION);
+            recordFile.writeShort(0);
+            recordFileSize = HEADER_SIZE;
+            return;
+        }
+
+        activeBlocks.addAll(readIndex(indexSegments.getActiveSegment(), size));
+        indexFile.setLength((long) activeBlocks.size() * INDEX_ENTRY_SIZE);
+        Block tail = scanTail(recordFile.getChannel(), activeBlocks, size);
+        recordFileSize = tail.offset + tail.length;
+        if (recordFileSize < size) {
+            // Drop a torn record left by an interrupted write
+            recordFile.setLength(recordFileSize);
+        }
+        if (tail.recordCount() > 0) {
+            openBlock = tail;
+        }
+    }
+
+    /**
+     * Index the open block
+     */
+    private void closeBlock() throws IOException {
+        if (openBlock == null) {
+            return;
+        }
+        if (pendingIndex.remaining() < INDEX_ENTRY_SIZE) {
+            writePending();
+        }
+        pendingIndex.putLong(openBlock.offset);
+        pendingIndex.putLong(openBlock.minTime);
+        pendingIndex.putLong(openBlock.maxTime);
+        pendingIndex.putInt(openBlock.length);
+        for (int level = 0; level < openBlock.counts.length; level++) {
+            pendingIndex.put((byte) openBlock.counts[level]);
+        }
+        activeBlocks.add(openBlock);
+        openBlock = null;
+    }
+
+    /**
+     * Write pending records, then the index entries that describe them
+     */
+    private void writePending() throws IOException {
+        if (pendingRecords.position() > 0) {
+            pendingRecords.flip();
+            FileChannel channel = recordFile.getChannel();
+            while (pendingRecords.hasRemaining()) {
+                recordFileSize += channel.write(pendingRecords, recordFileSize);
+            }
+            pendingRecords.clear();
+        }
+        if (pendingIndex.position() > 0) {
+            pendingIndex.flip();
+            FileChannel channel = indexFile.getChannel();
+            long position = channel.size();
+            while (pendingIndex.hasRemaining()) {
+                position += channel.write(pendingIndex, position);
+            }
+            pendingIndex.clear();
+        }
+    }
+
+    private void rotate() throws IOException {
+        closeBlock();
+        writePending();
+        closeFiles();
+        recordSegments.rotate();
+        indexSegments.rotate();
+        ensureOpen();
+    }
+
+    private void closeFiles() {
+        for (RandomAccessFile file : new RandomAccessFile[] {recordFile, indexFile}) {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to close structured log", e);
+                }
+            }
+        }
+        recordFile = null;
+        indexFile = null;
+        activeBlocks.clear();
+        openBlock = null;
+    }
+}
@@ -0,0 +1,143 @@
+package com.yougame.widget;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+/**
+ * TextWidgetDataLoader - Loads the key=value widget_data.txt written by the game
+ *
+ * The file is read into a reused buffer and parsed in place by WidgetDataParser.
+ * Each parse fills a new SaveData: SaveDataCache hands the previous result
+ * out to readers on other threads, so it must never be overwritten.
+ *
+ * Files published by the game plugin end with a "checksum=" line holding the
+ * CRC32 of everything before it (see WidgetDataPublisher in the plugin). A
+ * mismatch means the file was read mid-write and is reported as a
+ * TornReadException. Files without it (written in place by the game
+ * script) are treated as torn if they are empty, don't end with a newline
+ * or changed size while being read.
+ *
+ * Used through SaveDataCache, which serializes access.
+ */
+class TextWidgetDataLoader implements SaveDataCache.Loader {
+
+    private static final byte[] CHECKSUM_PREFIX = {
+        'c', 'h', 'e', 'c', 'k', 's', 'u', 'm', '='
+    };
+    private static final int CHECKSUM_DIGITS = 8;
+
+    private static TextWidgetDataLoader instance = null;
+
+    private final Context context;
+    private final CRC32 crc = new CRC32();
+    private final WidgetDataParser parser = new WidgetDataParser();
+    private byte[] content = new byte[512];
+    private int contentLength = 0;
+
+    private TextWidgetDataLoader(Context context) {
+        this.context = context;
+    }
+
+    static synchronized TextWidgetDataLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new TextWidgetDataLoader(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    @Override
+    public long readAndHash(File file) throws IOException {
+        contentLength = 0;
+        long expected = file.length();
+        if (content.length < expected + 1) {
+            content = new byte[(int) Math.max(content.length * 2, expected + 1)];
+        }
+        try (FileInputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(content, contentLength, content.length - contentLength)) > 0) {
+                contentLength += read;
+                if (contentLength == content.length) {
+                    // File grew while reading
+                    byte[] larger = new byte[content.length * 2];
+                    System.arraycopy(content, 0, larger, 0, contentLength);
+                    content = larger;
+                }
+            }
+        }
+        if (contentLength != expected) {
+            throw new SaveDataCache.TornReadException("Save data file changed while reading");
+        }
+        if (contentLength == 0 || content[contentLength - 1] != '\n') {
+            throw new SaveDataCache.TornReadException("Save data file is incomplete");
+        }
+
+        crc.reset();
+        int checksumLine = findChecksumLine();
+        if (checksumLine >= 0) {
+            crc.update(content, 0, checksumLine);
+            long stored = parseHex(checksumLine + CHECKSUM_PREFIX.length);
+            if (stored != crc.getValue()) {
+                throw new SaveDataCache.TornReadException("Save data checksum mismatch");
+            }
+            crc.update(content, checksumLine, contentLength - checksumLine);
+        } else {
+            crc.update(content, 0, contentLength);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Start of the trailing "checksum=" line, or -1 if the last line is something else
+     */
+    private int findChecksumLine() {
+        int lineStart = contentLength - 1;
+        while (lineStart > 0 && content[lineStart - 1] != '\n') {
+            lineStart--;
+        }
+        if (contentLength - 1 - lineStart != CHECKSUM_PREFIX.length + CHECKSUM_DIGITS) {
+            return -1;
+        }
+        for (int i = 0; i < CHECKSUM_PREFIX.length; i++) {
+            if (content[lineStart + i] != CHECKSUM_PREFIX[i]) {
+                return -1;
+            }
+        }
+        return lineStart;
+    }
+
+    /**
+     * Parse the checksum digits; an invalid digit yields -1, which never matches
+     */
+    private long parseHex(int start) {
+        long value = 0;
+        for (int i = start; i < start + CHECKSUM_DIGITS; i++) {
+            int digit = Character.digit(content[i], 16);
+            if (digit < 0) {
+                return -1;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    @Override
+    public SaveData parse() {
+        SaveData data = new SaveData();
+        int lineCount = parser.parse(content, contentLength, data);
+        
+        if (parser.getMalformedCount() > 0) {
+            WidgetErrorLogger.logError(context,
+                "Invalid data format in save file. Line " + parser.getFirstMalformedLine() + ": "
+                    + parser.getFirstMalformedText(content)
+                    + " (" + parser.getMalformedCount() + " invalid line(s))",
+                null);
+        }
+        WidgetErrorLogger.logInfo(context, 
+            "Successfully read " + lineCount + " lines from save data file");
+        return data;
+    }
+}
@@ -0,0 +1,61 @@
+package com.yougame.widget;
+
+/**
+ * TrendFormatter - Text trend rows for the widget, drawn from the save history
+ *
+ * Trends are plain text so they go through RemoteViews.setTextViewText and
+ * the per-field change tracking like every other widget field. Values are
+ * drawn as a sparkline of Unicode block characters (U+2581 to U+2588).
+ */
+final class TrendFormatter {
+
+    // Lowest to highest bar
+    private static final char[] BARS = {
+        '\u2581', '\u2582', '\u2583', '\u2584', '\u2585', '\u2586', '\u2587', '\u2588'
+    };
+
+    private TrendFormatter() {
+    }
+
+    /**
+     * One bar per value, scaled between min and max; values outside are clamped
+     */
+    static String sparkline(float[] values, int count, float min, float max) {
+        char[] bars = new char[count];
+        float range = max - min;
+        for (int i = 0; i < count; i++) {
+            float scaled = range > 0 ? (values[i] - min) / range : 0.5f;
+            int bar = Math.round(scaled * (BARS.length - 1));
+            bars[i] = BARS[Math.max(0, Math.min(BARS.length - 1, bar))];
+        }
+        return new String(bars);
+    }
+
+    /**
+     * Health over the last saves as a sparkline plus the latest value
+     *
+     * @return null if there are fewer than two saves
+     */
+    static String healthTrend(SaveHistoryReader history) {
+        int count = history.getCount();
+        if (count < 2) {
+            return null;
+        }
+        return "Health " + sparkline(history.getHealthValues(), count, 0f, 100f)
+            + " " + Math.round(history.getHealth(count - 1)) + "%";
+    }
+
+    /**
+     * Day progress over the last saves, e.g. "Days 3 -> 12 in 10 saves"
+     *
+     * @return null if there are fewer than two saves
+     */
+    static String dayTrend(SaveHistoryReader history) {
+        int count = history.getCount();
+        if (count < 2) {
+            return null;
+        }
+        return "Days " + history.getDayCount(0) + " \u2192 " + history.getDayCount(count - 1)
+            + " in " + count + " saves";
+    }
+}
@@ -0,0 +1,397 @@
+package com.yougame.widget;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * WidgetDataParser - Streaming parser for the key=value widget_data.txt
+ *
+ * Works directly on the file bytes: keys are matched in place and numbers
+ * are parsed from the bytes, so no per-line strings, arrays or boxed values
+ * are created. Only a changed last_error value allocates a new String.
+ *
+ * Lines without '=' and unknown keys are skipped. A value that fails to
+ * parse leaves the field at its default and is counted as malformed.
+ *
+ * Not thread-safe; use one instance per thread.
+ */
+class WidgetDataParser {
+
+    private static final byte[] KEY_TIMESTAMP = ascii("timestamp");
+    private static final byte[] KEY_DAY_COUNT = ascii("day_count");
+    private static final byte[] KEY_CURRENT_HEALTH = ascii("current_health");
+    private static final byte[] KEY_TORCH_COUNT = ascii("torch_count");
+    private static final byte[] KEY_POSITION_X = ascii("position_x");
+    private static final byte[] KEY_POSITION_Z = ascii("position_z");
+    private static final byte[] KEY_ERROR_COUNT = ascii("error_count");
+    private static final byte[] KEY_TOTAL_LOG_COUNT = ascii("total_log_count");
+    private static final byte[] KEY_LAST_ERROR = ascii("last_error");
+
+    // Timestamps below this are Unix seconds (the game writes seconds), above are milliseconds
+    private static final long MAX_SECONDS_TIMESTAMP = 100_000_000_000L;
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+        1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+    };
+
+    private int lineCount;
+    private int malformedCount;
+    private int firstMalformedLine;
+    private int firstMalformedStart;
+    private int firstMalformedEnd;
+
+    // Result of the last number parse
+    private boolean numberValid;
+
+    // Last decoded last_error, reused while the bytes stay the same
+    private String lastErrorString = null;
+
+    /**
+     * Parse data[0, length) into out. Fields missing from the data are reset
+     * to their defaults.
+     *
+     * @return number of lines read
+     */
+    int parse(byte[] data, int length, SaveData out) {
+        out.reset();
+        lineCount = 0;
+        malformedCount = 0;
+        firstMalformedLine = 0;
+
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && data[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            lineCount++;
+            parseLine(data, lineStart, lineEnd, out);
+            lineStart = lineEnd + 1;
+        }
+        return lineCount;
+    }
+
+    int getLineCount() {
+        return lineCount;
+    }
+
+    int getMalformedCount() {
+        return malformedCount;
+    }
+
+    /**
+     * 1-based number of the first malformed line, 0 if none
+     */
+    int getFirstMalformedLine() {
+        return firstMalformedLine;
+    }
+
+    /**
+     * Text of the first malformed line, for error reporting (allocates)
+     */
+    String getFirstMalformedText(byte[] data) {
+        if (firstMalformedLine == 0) {
+            return null;
+        }
+        return new String(data, firstMalformedStart, firstMalformedEnd - firstMalformedStart,
+            StandardCharsets.UTF_8);
+    }
+
+    private void parseLine(byte[] data, int start, int end, SaveData out) {
+        int equals = start;
+        while (equals < end && data[equals] != '=') {
+            equals++;
+        }
+        if (equals == end) {
+            return;
+        }
+
+        int keyStart = skipSpace(data, start, equals);
+        int keyEnd = trimEnd(data, keyStart, equals);
+        int valueStart = skipSpace(data, equals + 1, end);
+        int valueEnd = trimEnd(data, valueStart, end);
+        int keyLength = keyEnd - keyStart;
+
+        // Dispatch on key length first so most keys compare at most once
+        switch (keyLength) {
+            case 9:
+                if (regionEquals(data, keyStart, KEY_TIMESTAMP)) {
+                    long value = parseTimestampMillis(data, valueStart, valueEnd);
+                    if (numberValid) {
+                        out.timestamp = value;
+                    }
+                } else if (regionEquals(data, keyStart, KEY_DAY_COUNT)) {
+                    int value = parseInt(data, valueStart, valueEnd);
+                    if (numberValid) {
+                        out.dayCount = value;
+                    }
+                } else {
+                    return;
+                }
+                break;
+            case 14:
+                if (regionEquals(data, keyStart, KEY_CURRENT_HEALTH)) {
+                    float value = parseFloat(data, valueStart, valueEnd);
+                    if (numberValid) {
+                        out.currentHealth = value;
+                    }
+                } else {
+                    return;
+                }
+                break;
+            case 11:
+                if (regionEquals(data, keyStart, KEY_TORCH_COUNT)) {
+                    int value = parseInt(data, valueStart, valueEnd);
+                    if (numberValid) {
+                        out.torchCount = value;
+                    }
+                } else if (regionEquals(data, keyStart, KEY_ERROR_COUNT)) {
+                    int value = parseInt(data, valueStart, valueEnd);
+                    if (numberValid) {
+                        out.errorCount = value;
+                    }
+                } else {
+                    return;
+                }
+                break;
+            case 10:
+                if (regionEquals(data, keyStart, KEY_POSITION_X)) {
+                    float value = parseFloat(data, valueStart, valueEnd);
+                    if (numberValid) {
+                        out.positionX = value;
+                    }
+                } else if (regionEquals(data, keyStart, KEY_POSITION_Z)) {
+                    float value = parseFloat(data, valueStart, valueEnd);
+                    if (numberValid) {
+                        out.positionZ = value;
+                    }
+                } else if (regionEquals(data, keyStart, KEY_LAST_ERROR)) {
+                    out.lastError = decodeLastError(data, valueStart, valueEnd);
+                    numberValid = true;
+                } else {
+                    return;
+                }
+                break;
+            case 15:
+                if (regionEquals(data, keyStart, KEY_TOTAL_LOG_COUNT)) {
+                    int value = parseInt(data, valueStart, valueEnd);
+                    if (numberValid) {
+                        out.totalLogCount = value;
+                    }
+                } else {
+                    return;
+                }
+                break;
+            default:
+                // Unknown key
+                return;
+        }
+
+        if (!numberValid) {
+            malformedCount++;
+            if (firstMalformedLine == 0) {
+                firstMalformedLine = lineCount;
+                firstMalformedStart = start;
+                firstMalformedEnd = trimEnd(data, start, end);
+            }
+        }
+    }
+
+    /**
+     * Reuse the previous String when the last_error bytes did not change
+     */
+    private String decodeLastError(byte[] data, int start, int end) {
+        String previous = lastErrorString;
+        if (previous != null && previous.length() == end - start) {
+            boolean same = true;
+            for (int i = start; i < end; i++) {
+                byte b = data[i];
+                if (b < 0 || previous.charAt(i - start) != (char) b) {
+                    same = false;
+                    break;
+                }
+            }
+            if (same) {
+                return previous;
+            }
+        }
+        lastErrorString = new String(data, start, end - start, StandardCharsets.UTF_8);
+        return lastErrorString;
+    }
+
+    /**
+     * Parse a signed decimal integer; sets numberValid
+     */
+    int parseInt(byte[] data, int start, int end) {
+        long value = parseLong(data, start, end);
+        if (numberValid && (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)) {
+            numberValid = false;
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parse a signed decimal integer; sets numberValid
+     */
+    long parseLong(byte[] data, int start, int end) {
+        numberValid = false;
+        int i = start;
+        boolean negative = false;
+        if (i < end && (data[i] == '-' || data[i] == '+')) {
+            negative = data[i] == '-';
+            i++;
+        }
+        if (i == end) {
+            return 0;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return 0;
+            }
+            if (value > (Long.MAX_VALUE - digit) / 10) {
+                // Overflow
+                return 0;
+            }
+            value = value * 10 + digit;
+        }
+        numberValid = true;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse a save timestamp as Unix milliseconds. Accepts whole or fractional
+     * seconds (as written by the game) as well as milliseconds. Sets numberValid.
+     */
+    long parseTimestampMillis(byte[] data, int start, int end) {
+        int dot = start;
+        while (dot < end && data[dot] != '.') {
+            dot++;
+        }
+        long whole = parseLong(data, start, dot);
+        if (!numberValid || whole < 0) {
+            numberValid = false;
+            return 0;
+        }
+
+        // Up to three fraction digits are kept as milliseconds
+        int fractionMillis = 0;
+        int digits = 0;
+        for (int i = dot + 1; i < end; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9) {
+                numberValid = false;
+                return 0;
+            }
+            if (digits < 3) {
+                fractionMillis = fractionMillis * 10 + digit;
+                digits++;
+            }
+        }
+        for (; digits < 3; digits++) {
+            fractionMillis *= 10;
+        }
+
+        if (whole < MAX_SECONDS_TIMESTAMP) {
+            return whole * 1000 + fractionMillis;
+        }
+        return whole;
+    }
+
+    /**
+     * Parse a decimal float with optional fraction and exponent; sets numberValid
+     */
+    float parseFloat(byte[] data, int start, int end) {
+        numberValid = false;
+        int i = start;
+        boolean negative = false;
+        if (i < end && (data[i] == '-' || data[i] == '+')) {
+            negative = data[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int exponent = 0;
+        int significantDigits = 0;
+        boolean anyDigits = false;
+
+        for (; i < end && data[i] >= '0' && data[i] <= '9'; i++) {
+            anyDigits = true;
+            if (significantDigits < 18) {
+                mantissa = mantissa * 10 + (data[i] - '0');
+                if (mantissa != 0) {
+                    significantDigits++;
+                }
+            } else {
+                exponent++;
+            }
+        }
+        if (i < end && data[i] == '.') {
+            i++;
+            for (; i < end && data[i] >= '0' && data[i] <= '9'; i++) {
+                anyDigits = true;
+                if (significantDigits < 18) {
+                    mantissa = mantissa * 10 + (data[i] - '0');
+                    exponent--;
+                    if (mantissa != 0) {
+                        significantDigits++;
+                    }
+                }
+            }
+        }
+        if (!anyDigits) {
+            return 0;
+        }
+        if (i < end && (data[i] == 'e' || data[i] == 'E')) {
+            long exp = parseLong(data, i + 1, end);
+            if (!numberValid || exp > 400 || exp < -400) {
+                numberValid = false;
+                return 0;
+            }
+            exponent += (int) exp;
+            i = end;
+        }
+        if (i != end) {
+            return 0;
+        }
+
+        double value = mantissa;
+        if (exponent > 0) {
+            value = exponent < POWERS_OF_TEN.length
+                ? value * POWERS_OF_TEN[exponent] : value * Math.pow(10, exponent);
+        } else if (exponent < 0) {
+            value = -exponent < POWERS_OF_TEN.length
+                ? value / POWERS_OF_TEN[-exponent] : value / Math.pow(10, -exponent);
+        }
+        numberValid = true;
+        return (float) (negative ? -value : value);
+    }
+
+    private static boolean regionEquals(byte[] data, int start, byte[] key) {
+        for (int i = 0; i < key.length; i++) {
+            if (data[start + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipSpace(byte[] data, int start, int end) {
+        while (start < end && (data[start] & 0xFF) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimEnd(byte[] data, int start, int end) {
+        while (end > start && (data[end - 1] & 0xFF) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    private static byte[] ascii(String key) {
+        return key.getBytes(StandardCharsets.US_ASCII);
+    }
+}
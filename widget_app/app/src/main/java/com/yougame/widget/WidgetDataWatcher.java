@@ -0,0 +1,30 @@
+package com.yougame.widget;
+
+/**
+ * WidgetDataWatcher - Source of change notifications for the game's widget data
+ *
+ * Implementations report when the widget data file may have changed. Events
+ * can arrive in bursts and on any thread; RefreshDebouncer merges them.
+ */
+public interface WidgetDataWatcher {
+
+    /**
+     * Receives change events from a watcher
+     */
+    interface Listener {
+        void onDataChanged();
+    }
+
+    /**
+     * Start delivering events to the listener. Calling start on a running
+     * watcher has no effect.
+     */
+    void start(Listener listener);
+
+    /**
+     * Stop delivering events
+     */
+    void stop();
+
+    boolean isRunning();
+}
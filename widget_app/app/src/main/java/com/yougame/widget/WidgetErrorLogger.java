@@ -8,9 +8,6 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.BufferedWriter;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
 
 /**
  * WidgetErrorLogger - Logs widget errors to both logcat and a persistent file
@@ -27,7 +24,246 @@ public class WidgetErrorLogger {
     private static final String TAG = "YouGameWidget";
     private static final String LOG_DIR = "YouGame";
     private static final String LOG_FILE = "widget_errors.log";
-    private static final int MAX_LOG_SIZE = 50000; // 50KB max log file size
+    private static final String STATE_FILE = "widget_errors.state";
+    private static final String RECORD_FILE = "widget_errors.rec";
+    private static final String INDEX_FILE = "widget_errors.idx";
+    private static final int DEFAULT_SEGMENT_SIZE = 16 * 1024; // 16KB per log segment
+    private static final int DEFAULT_SEGMENT_COUNT = 4;        // 64KB total log budget
+    private static final long FLUSH_TIMEOUT_MS = 1000;
+    
+    private static int segmentSize = DEFAULT_SEGMENT_SIZE;
+    private static int segmentCount = DEFAULT_SEGMENT_COUNT;
+    private static LogSegments segments = null;
+    private static LastErrorRecord errorRecord = null;
+    private static StructuredLog structuredLog = null;
+    private static boolean legacyScanDone = false;
+    
+    // Background writer, null while the logger runs in synchronous mode
+    private static volatile AsyncLogWriter asyncWriter = null;
+    
+    // Held for every entry written: serialises synchronous writes and rotation
+    // across threads, and keeps entries from being queued to a writer that is
+    // shutting down. Taken after the class lock, never before it.
+    private static final Object WRITE_LOCK = new Object();
+    
+    // Entries logged while a detached writer drains its queue, in order; null
+    // while no writer is draining. Guarded by WRITE_LOCK.
+    private static java.util.ArrayList<PendingEntry> drainBacklog = null;
+    
+    // Per-thread timestamp text for log entries, reformatted once per minute
+    private static final ThreadLocal<TimestampCache> LOG_TIMESTAMPS = new ThreadLocal<TimestampCache>() {
+        @Override
+        protected TimestampCache initialValue() {
+            return new TimestampCache("yyyy-MM-dd HH:mm");
+        }
+    };
+    
+    // Minimum level, deduplication of repeated messages and INFO sampling
+    private static final LogFilter logFilter = new LogFilter();
+    
+    // Writes repeat summaries like any other entry, to the current log segments
+    private static final LogFilter.Sink SUMMARY_SINK = new LogFilter.Sink() {
+        @Override
+        public void write(long timeMillis, String level, String message) {
+            LogSegments logSegments;
+            LastErrorRecord record;
+            StructuredLog structured;
+            synchronized (WidgetErrorLogger.class) {
+                logSegments = segments;
+                record = errorRecord;
+                structured = structuredLog;
+            }
+            if (logSegments != null && record != null) {
+                writeEntry(logSegments, record, structured, timeMillis, level, message, null);
+            }
+        }
+    };
+    
+    /**
+     * Switch to asynchronous logging with the default writer configuration.
+     * Safe to call repeatedly; only the first call starts the writer.
+     */
+    public static void enableAsyncWriter(Context context) {
+        enableAsyncWriter(context, new AsyncLogWriter.Config());
+    }
+    
+    /**
+     * Switch to asynchronous logging. File writes are queued and written
+     * in batches by a background thread instead of on the calling thread.
+     */
+    public static synchronized void enableAsyncWriter(Context context, AsyncLogWriter.Config config) {
+        synchronized (WRITE_LOCK) {
+            // A writer still draining from disableAsyncWriter finishes first
+            awaitDrain();
+            if (asyncWriter == null) {
+                asyncWriter = new AsyncLogWriter(getLogSegments(context), getErrorRecord(context),
+                    getStructuredLog(context), config);
+            }
+        }
+    }
+    
+    /**
+     * Flush queued entries, stop the background writer and return to
+     * synchronous logging
+     */
+    public static void disableAsyncWriter() {
+        AsyncLogWriter writer;
+        synchronized (WidgetErrorLogger.class) {
+            flushRepeatSummaries();
+            writer = detachAsyncWriter();
+        }
+        if (writer != null) {
+            finishDrain(writer, null);
+        }
+    }
+    
+    /**
+     * Configure log rotation. The log keeps at most segmentCount files of
+     * about maxSegmentBytes each; the oldest segment is dropped on rotation.
+     * Takes effect for the next write (restarts the async writer if running).
+     */
+    public static void configureRotation(int maxSegmentBytes, int segmentCount) {
+        if (maxSegmentBytes <= 0 || segmentCount < 1) {
+            throw new IllegalArgumentException("Invalid log rotation settings");
+        }
+        AsyncLogWriter writer;
+        AsyncLogWriter restarted = null;
+        synchronized (WidgetErrorLogger.class) {
+            WidgetErrorLogger.segmentSize = maxSegmentBytes;
+            WidgetErrorLogger.segmentCount = segmentCount;
+            
+            // Pending "repeated N times" summaries and queued entries go to the
+            // current segments before they are replaced
+            flushRepeatSummaries();
+            writer = detachAsyncWriter();
+            LogSegments current = segments;
+            segments = null;
+            if (writer != null) {
+                // Restart the writer on the new segment settings; it takes
+                // entries once the old one has written its queue
+                segments = new LogSegments(current.getActiveSegment(), maxSegmentBytes, segmentCount);
+                restarted = new AsyncLogWriter(segments, errorRecord, structuredLog, writer.getConfig());
+            }
+            if (structuredLog != null) {
+                structuredLog.configureRotation(maxSegmentBytes, segmentCount);
+            }
+        }
+        if (writer != null) {
+            finishDrain(writer, restarted);
+        }
+    }
+    
+    /**
+     * Take the async writer out of service. Until finishDrain, new entries
+     * are held back so they land after everything the writer still has queued.
+     * 
+     * @return the detached writer, or null if there was none
+     */
+    private static AsyncLogWriter detachAsyncWriter() {
+        synchronized (WRITE_LOCK) {
+            awaitDrain();
+            AsyncLogWriter writer = asyncWriter;
+            if (writer != null) {
+                asyncWriter = null;
+                drainBacklog = new java.util.ArrayList<>();
+            }
+            return writer;
+        }
+    }
+    
+    /**
+     * Drain and stop a detached writer, then hand over to replacement (null
+     * for synchronous logging) and write the entries held back meanwhile.
+     * Called without the locks held, so logging threads don't wait for the drain.
+     */
+    private static void finishDrain(AsyncLogWriter writer, AsyncLogWriter replacement) {
+        writer.shutdown(FLUSH_TIMEOUT_MS);
+        synchronized (WRITE_LOCK) {
+            java.util.ArrayList<PendingEntry> backlog = drainBacklog;
+            drainBacklog = null;
+            asyncWriter = replacement;
+            for (PendingEntry entry : backlog) {
+                writeEntry(entry.logSegments, entry.record, entry.structured,
+                    entry.timeMillis, entry.level, entry.message, entry.exception);
+            }
+            WRITE_LOCK.notifyAll();
+        }
+    }
+    
+    /**
+     * Wait until no detached writer is draining; WRITE_LOCK must be held
+     */
+    private static void awaitDrain() {
+        boolean interrupted = false;
+        while (drainBacklog != null) {
+            try {
+                WRITE_LOCK.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Log segment files, active segment first. Readers should walk this
+     * list in order to see entries from newest to oldest.
+     */
+    public static java.util.List<File> getLogSegmentFiles(Context context) {
+        return getLogSegments(context).getSegmentsNewestFirst();
+    }
+    
+    /**
+     * Write all queued log entries to the log file.
+     * Does nothing in synchronous mode.
+     */
+    public static void flush() {
+        flushRepeatSummaries();
+        AsyncLogWriter writer;
+        synchronized (WRITE_LOCK) {
+            // Includes entries held back while a previous writer drains
+            awaitDrain();
+            writer = asyncWriter;
+        }
+        if (writer != null) {
+            writer.flush(FLUSH_TIMEOUT_MS);
+        }
+    }
+    
+    /**
+     * Set the minimum level written to logcat and the log file: "INFO",
+     * "WARN" or "ERROR". Errors are always logged.
+     */
+    public static void setMinLevel(String level) {
+        logFilter.setMinLevel(level);
+    }
+    
+    /**
+     * Collapse identical messages logged within windowMillis of each other
+     * into the first entry plus one "(repeated N more times)" entry.
+     * 0 writes every entry.
+     */
+    public static void configureDeduplication(long windowMillis) {
+        logFilter.setWindowMillis(windowMillis);
+    }
+    
+    /**
+     * Write only this fraction (0 to 1) of INFO entries to the log file.
+     * Errors and warnings are never sampled.
+     */
+    public static void setInfoSampleRate(float rate) {
+        logFilter.setInfoSampleRate(rate);
+    }
+    
+    /**
+     * Filter statistics: repeats suppressed and INFO entries sampled out
+     */
+    public static String getFilterStats() {
+        return "suppressed=" + logFilter.getSuppressedCount()
+            + " sampledOut=" + logFilter.getSampledOutCount();
+    }
     
     /**
      * Log an error with detailed context
@@ -48,38 +284,145 @@ public class WidgetErrorLogger {
      * Log an informational message
      */
     public static void logInfo(Context context, String message) {
+        if (!logFilter.isEnabled("INFO")) {
+            return;
+        }
         Log.i(TAG, message);
         writeToLogFile(context, "INFO", message, null);
     }
     
     /**
-     * Get the last error message from the log file
-     * Returns null if no error log exists or can't be read
+     * Stop the async writer and drop all cached log state, so the next call
+     * starts over from the files on disk (e.g. with a different Context).
+     * Used by benchmarks; not needed in the app.
+     */
+    static void reset() {
+        disableAsyncWriter();
+        synchronized (WidgetErrorLogger.class) {
+            if (structuredLog != null) {
+                structuredLog.close();
+            }
+            segments = null;
+            errorRecord = null;
+            structuredLog = null;
+            legacyScanDone = false;
+            segmentSize = DEFAULT_SEGMENT_SIZE;
+            segmentCount = DEFAULT_SEGMENT_COUNT;
+            logFilter.setMinLevel("INFO");
+            logFilter.setWindowMillis(LogFilter.DEFAULT_WINDOW_MS);
+            logFilter.setInfoSampleRate(1.0f);
+        }
+    }
+    
+    /**
+     * Get the last error message
+     * Served from the in-memory error record (backed by a small sidecar file),
+     * so the cost does not depend on the log size.
+     * Returns null if no error has been logged
      */
     public static String getLastError(Context context) {
+        LastErrorRecord record = getErrorRecord(context);
+        String lastError = record.getLastErrorMessage();
+        if (lastError == null) {
+            lastError = scanLegacyLastError(context, record);
+        }
+        return lastError;
+    }
+    
+    /**
+     * Number of entries logged at the given level ("INFO", "WARN", "ERROR")
+     */
+    public static long getLogCount(Context context, String level) {
+        return getErrorRecord(context).getCount(level);
+    }
+    
+    /**
+     * Entries matching the levels and time range, newest first, read from
+     * the structured log through its time/level index. Includes entries
+     * still queued in the async writer.
+     * 
+     * @param levelMask StructuredLog.MASK_* bits, e.g. StructuredLog.levelMaskAtLeast("WARN")
+     * @param message Only entries of the same kind as this message (see
+     *        StructuredLog.messageId), or null for all
+     * @return matching entries; empty if the structured log can't be read
+     */
+    public static java.util.List<StructuredLog.Record> queryLog(Context context, int levelMask,
+            long fromMillis, long toMillis, String message, int maxResults) {
+        flush();
         try {
-            File logFile = getLogFile(context);
-            if (!logFile.exists() || !logFile.canRead()) {
-                return null;
-            }
-            
-            // Read the file and get the last error line
-            try (java.io.BufferedReader reader = new java.io.BufferedReader(
-                new java.io.FileReader(logFile))) {
-                String lastError = null;
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    if (line.contains("[ERROR]")) {
-                        lastError = line;
-                    }
+            return getStructuredLog(context).query(levelMask, fromMillis, toMillis,
+                messageFilter(message), maxResults);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to query structured log", e);
+            return java.util.Collections.emptyList();
+        }
+    }
+    
+    /**
+     * Number of entries matching the levels and time range, e.g. errors in
+     * the last hour. Counts come from the index where possible.
+     * 
+     * @return the count, or -1 if the structured log can't be read
+     */
+    public static long countLogEntries(Context context, int levelMask,
+            long fromMillis, long toMillis, String message) {
+        flush();
+        try {
+            return getStructuredLog(context).count(levelMask, fromMillis, toMillis, messageFilter(message));
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to count structured log entries", e);
+            return -1;
+        }
+    }
+    
+    /**
+     * Write the structured log, oldest first, in the text log format
+     */
+    public static void exportStructuredLogText(Context context, Appendable out) throws IOException {
+        flush();
+        getStructuredLog(context).exportText(out);
+    }
+    
+    private static int messageFilter(String message) {
+        return message == null ? StructuredLog.ANY_MESSAGE : StructuredLog.messageId(message);
+    }
+    
+    /**
+     * One-time scan for logs written before the error record existed.
+     * Walks segments newest to oldest; the first segment with an error wins.
+     * The record remembers that the scan ran, so it isn't repeated after a restart.
+     */
+    private static synchronized String scanLegacyLastError(Context context, LastErrorRecord record) {
+        if (legacyScanDone || record.isLegacyScanned()) {
+            return null;
+        }
+        legacyScanDone = true;
+        
+        try {
+            return findLegacyLastError(context, record);
+        } finally {
+            record.markLegacyScanned();
+            record.save();
+        }
+    }
+    
+    private static String findLegacyLastError(Context context, LastErrorRecord record) {
+        try {
+            for (File segment : getLogSegments(context).getSegmentsNewestFirst()) {
+                if (!segment.canRead()) {
+                    continue;
                 }
                 
+                String lastError = findLastErrorLine(segment);
                 if (lastError != null) {
                     // Extract just the message part (after timestamp and level)
                     int messageStart = lastError.indexOf("]", lastError.indexOf("]") + 1);
                     if (messageStart > 0 && messageStart < lastError.length() - 1) {
-                        return lastError.substring(messageStart + 2).trim();
+                        String message = lastError.substring(messageStart + 2).trim();
+                        record.seedLastError(message, segment.lastModified());
+                        return message;
                     }
+                    return null;
                 }
             }
             return null;
@@ -89,6 +432,23 @@ public class WidgetErrorLogger {
         }
     }
     
+    /**
+     * Read a log segment and return its last error line, or null
+     */
+    private static String findLastErrorLine(File segment) throws IOException {
+        try (java.io.BufferedReader reader = new java.io.BufferedReader(
+            new java.io.FileReader(segment))) {
+            String lastError = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.contains("[ERROR]")) {
+                    lastError = line;
+                }
+            }
+            return lastError;
+        }
+    }
+    
     /**
      * Get the log file path for display to users
      */
@@ -100,8 +460,56 @@ public class WidgetErrorLogger {
      * Write a log entry to the persistent log file
      */
     private static void writeToLogFile(Context context, String level, String message, Exception exception) {
+        long start = System.nanoTime();
         try {
-            File logFile = getLogFile(context);
+            appendToLogFile(context, level, message, exception);
+        } finally {
+            WidgetMetrics.LOG_WRITE.recordSince(start);
+        }
+    }
+    
+    private static void appendToLogFile(Context context, String level, String message, Exception exception) {
+        long now = System.currentTimeMillis();
+        LastErrorRecord record = getErrorRecord(context);
+        // Counts and the last error include entries the filter drops
+        record.record(level, message, now);
+        
+        LogSegments logSegments = getLogSegments(context);
+        StructuredLog structured = getStructuredLog(context);
+        if (logFilter.accept(level, message, now, SUMMARY_SINK)) {
+            writeEntry(logSegments, record, structured, now, level, message, exception);
+        }
+    }
+    
+    /**
+     * Write an entry that passed the filter, through the async writer if enabled
+     */
+    private static void writeEntry(LogSegments logSegments, LastErrorRecord record, StructuredLog structured,
+                                   long now, String level, String message, Exception exception) {
+        synchronized (WRITE_LOCK) {
+            AsyncLogWriter async = asyncWriter;
+            if (async != null) {
+                // Hand off to the background writer, no disk I/O on this thread;
+                // the writer also persists the error record after each batch
+                async.enqueue(now, level, message, exception);
+                return;
+            }
+            if (drainBacklog != null) {
+                // Written by finishDrain once the detached writer is done
+                drainBacklog.add(new PendingEntry(logSegments, record, structured, now, level, message, exception));
+                return;
+            }
+            writeEntrySync(logSegments, record, structured, now, level, message, exception);
+        }
+    }
+    
+    /**
+     * Append an entry to the log files on the calling thread; WRITE_LOCK must be held
+     */
+    private static void writeEntrySync(LogSegments logSegments, LastErrorRecord record, StructuredLog structured,
+                                       long now, String level, String message, Exception exception) {
+        try {
+            File logFile = logSegments.getActiveSegment();
             
             // Create parent directories if they don't exist
             File parentDir = logFile.getParentFile();
@@ -109,40 +517,97 @@ public class WidgetErrorLogger {
                 parentDir.mkdirs();
             }
             
-            // Check file size and truncate if necessary
-            if (logFile.exists() && logFile.length() > MAX_LOG_SIZE) {
-                truncateLogFile(logFile);
+            StringBuilder entry = new StringBuilder(128);
+            formatEntry(entry, now, level, message, exception);
+            
+            // Start a new segment if this entry would overflow the active one
+            if (logSegments.needsRotation(logFile.length(), entry.length())) {
+                logSegments.rotate();
             }
             
             // Append to log file using try-with-resources
             try (BufferedWriter writer = new BufferedWriter(new FileWriter(logFile, true))) {
-                // Format: [timestamp] [LEVEL] message
-                SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
-                String timestamp = sdf.format(new Date());
-                
-                writer.write(String.format("[%s] [%s] %s\n", timestamp, level, message));
-                
-                // Add exception stack trace if present
-                if (exception != null) {
-                    writer.write(String.format("  Exception: %s\n", exception.getClass().getName()));
-                    writer.write(String.format("  Message: %s\n", exception.getMessage()));
-                    
-                    // Write first few lines of stack trace
-                    StackTraceElement[] stackTrace = exception.getStackTrace();
-                    int linesToWrite = Math.min(5, stackTrace.length);
-                    for (int i = 0; i < linesToWrite; i++) {
-                        writer.write(String.format("    at %s\n", stackTrace[i].toString()));
-                    }
-                }
-                
+                writer.write(entry.toString());
                 writer.flush();
             }
+            
+            // Keep the sidecar current for every error
+            if ("ERROR".equals(level)) {
+                record.save();
+            }
+            
+            if (structured != null) {
+                structured.append(now, level, message, exception);
+                structured.flush();
+            }
         } catch (IOException e) {
             // Can't log to file, but we already logged to logcat
             Log.e(TAG, "Failed to write to log file", e);
         }
     }
     
+    /**
+     * An entry logged while a detached writer drains, with what writeEntry needs
+     */
+    private static final class PendingEntry {
+        final LogSegments logSegments;
+        final LastErrorRecord record;
+        final StructuredLog structured;
+        final long timeMillis;
+        final String level;
+        final String message;
+        final Exception exception;
+        
+        PendingEntry(LogSegments logSegments, LastErrorRecord record, StructuredLog structured,
+                     long timeMillis, String level, String message, Exception exception) {
+            this.logSegments = logSegments;
+            this.record = record;
+            this.structured = structured;
+            this.timeMillis = timeMillis;
+            this.level = level;
+            this.message = message;
+            this.exception = exception;
+        }
+    }
+    
+    /**
+     * Write summaries of repeated messages that are still pending
+     */
+    private static void flushRepeatSummaries() {
+        logFilter.flush(System.currentTimeMillis(), SUMMARY_SINK);
+    }
+    
+    /**
+     * Append one formatted log entry to the given buffer
+     * Format: [timestamp] [LEVEL] message, followed by exception details if present
+     */
+    static void formatEntry(StringBuilder out, long timeMillis, String level, String message, Exception exception) {
+        // Appended piece by piece; the timestamp text is reused within a minute
+        out.append('[');
+        LOG_TIMESTAMPS.get().appendWithSeconds(out, timeMillis);
+        out.append("] [").append(level).append("] ").append(message).append('\n');
+        
+        // Add exception stack trace if present
+        if (exception != null) {
+            formatException(out, exception);
+        }
+    }
+    
+    /**
+     * Append the exception lines of a log entry, each ending with a newline
+     */
+    static void formatException(StringBuilder out, Exception exception) {
+        out.append("  Exception: ").append(exception.getClass().getName()).append('\n');
+        out.append("  Message: ").append(exception.getMessage()).append('\n');
+        
+        // Write first few lines of stack trace
+        StackTraceElement[] stackTrace = exception.getStackTrace();
+        int linesToWrite = Math.min(5, stackTrace.length);
+        for (int i = 0; i < linesToWrite; i++) {
+            out.append("    at ").append(stackTrace[i]).append('\n');
+        }
+    }
+    
     /**
      * Get the log file location
      * Uses external storage so it's accessible via file manager
@@ -159,33 +624,36 @@ public class WidgetErrorLogger {
     }
     
     /**
-     * Truncate log file to keep only the most recent entries
+     * Get the segment set for the log file, created on first use
      */
-    private static void truncateLogFile(File logFile) {
-        try {
-            // Read all lines using try-with-resources
-            java.util.ArrayList<String> lines = new java.util.ArrayList<>();
-            try (java.io.BufferedReader reader = new java.io.BufferedReader(
-                new java.io.FileReader(logFile))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    lines.add(line);
-                }
-            }
-            
-            // Keep only the last 50% of lines
-            int keepFrom = lines.size() / 2;
-            
-            // Write back the kept lines using try-with-resources
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(logFile, false))) {
-                for (int i = keepFrom; i < lines.size(); i++) {
-                    writer.write(lines.get(i));
-                    writer.write("\n");
-                }
-            }
-        } catch (Exception e) {
-            // If truncation fails, delete the file
-            logFile.delete();
+    private static synchronized LogSegments getLogSegments(Context context) {
+        if (segments == null) {
+            segments = new LogSegments(getLogFile(context), segmentSize, segmentCount);
+        }
+        return segments;
+    }
+    
+    /**
+     * Get the structured log, stored next to the log file and rotated with
+     * the same settings
+     */
+    private static synchronized StructuredLog getStructuredLog(Context context) {
+        if (structuredLog == null) {
+            File logDir = getLogFile(context).getParentFile();
+            structuredLog = new StructuredLog(new File(logDir, RECORD_FILE), new File(logDir, INDEX_FILE),
+                segmentSize, segmentCount);
+        }
+        return structuredLog;
+    }
+    
+    /**
+     * Get the last-error record, stored next to the log file
+     */
+    private static synchronized LastErrorRecord getErrorRecord(Context context) {
+        if (errorRecord == null) {
+            File logFile = getLogFile(context);
+            errorRecord = new LastErrorRecord(new File(logFile.getParentFile(), STATE_FILE));
         }
+        return errorRecord;
     }
 }
@@ -0,0 +1,145 @@
+package com.yougame.widget;
+
+/**
+ * WidgetFieldFormatter - Reusable text buffers for rendering widget fields
+ *
+ * Each field is formatted into its own StringBuilder, which is kept between
+ * renders, and numbers are appended directly instead of going through
+ * String.format. Together with WidgetRenderState (which compares content,
+ * not references) an unchanged render allocates nothing; only the fields
+ * that changed are copied into Strings for RemoteViews.
+ *
+ * Timestamps are formatted at most once per minute (TimestampCache).
+ *
+ * Not thread-safe; keep one instance per thread (see SaveGameWidgetProvider).
+ */
+final class WidgetFieldFormatter {
+
+    private final StringBuilder[] builders;
+    private final CharSequence[] fields;
+    private final CharSequence[] pushed;
+    private final TimestampCache timestamps;
+    private final StringBuilder scratch = new StringBuilder(32);
+
+    // Last template seen by appendTemplate and where its argument goes
+    private String template = null;
+    private int argumentStart = -1;
+    private int argumentEnd = -1;
+
+    WidgetFieldFormatter(int fieldCount, String timestampPattern) {
+        builders = new StringBuilder[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            builders[i] = new StringBuilder(64);
+        }
+        fields = new CharSequence[fieldCount];
+        pushed = new CharSequence[fieldCount];
+        timestamps = new TimestampCache(timestampPattern);
+    }
+
+    /**
+     * The field's cleared builder, which becomes the field's text
+     */
+    StringBuilder begin(int field) {
+        StringBuilder builder = builders[field];
+        builder.setLength(0);
+        fields[field] = builder;
+        return builder;
+    }
+
+    /**
+     * Use a fixed text (e.g. a string resource) for the field
+     */
+    void set(int field, CharSequence text) {
+        fields[field] = text;
+    }
+
+    CharSequence get(int field) {
+        return fields[field];
+    }
+
+    /**
+     * Unset the fields not in fieldMask (bit i for field i), e.g. the ones
+     * the widget's layout doesn't show; WidgetRenderState skips unset fields
+     */
+    void retain(int fieldMask) {
+        for (int i = 0; i < fields.length; i++) {
+            if ((fieldMask & (1 << i)) == 0) {
+                fields[i] = null;
+            }
+        }
+    }
+
+    /**
+     * The current field texts, for WidgetRenderState.diff()
+     */
+    CharSequence[] getFields() {
+        return fields;
+    }
+
+    /**
+     * Field texts to send and record for a push: Strings for the changed
+     * fields, the current texts for the rest
+     *
+     * @param changed The value WidgetRenderState.diff() returned
+     */
+    CharSequence[] toPushed(int changed) {
+        for (int i = 0; i < fields.length; i++) {
+            CharSequence text = fields[i];
+            pushed[i] = text != null && WidgetRenderState.isChanged(changed, i) ? text.toString() : text;
+        }
+        return pushed;
+    }
+
+    void appendTimestamp(StringBuilder out, long millis) {
+        timestamps.append(out, millis);
+    }
+
+    /**
+     * Append a string resource whose one argument is a formatted timestamp,
+     * e.g. "Last saved: %1$s"
+     */
+    void appendTemplateTimestamp(StringBuilder out, String template, long millis) {
+        scratch.setLength(0);
+        timestamps.append(scratch, millis);
+        appendTemplate(out, template, scratch);
+    }
+
+    /**
+     * Append a string resource with one "%1$s" or "%s" argument without
+     * String.format. The argument position is remembered per template.
+     */
+    void appendTemplate(StringBuilder out, String template, CharSequence argument) {
+        if (!template.equals(this.template)) {
+            this.template = template;
+            argumentStart = template.indexOf("%1$s");
+            argumentEnd = argumentStart + 4;
+            if (argumentStart < 0) {
+                argumentStart = template.indexOf("%s");
+                argumentEnd = argumentStart + 2;
+            }
+        }
+        if (argumentStart < 0) {
+            out.append(template);
+            return;
+        }
+        out.append(template, 0, argumentStart)
+            .append(argument)
+            .append(template, argumentEnd, template.length());
+    }
+
+    /**
+     * Append a value rounded to a whole number, like String.format("%.0f")
+     */
+    static void appendRounded(StringBuilder out, float value) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            out.append(value);
+            return;
+        }
+        double magnitude = Math.abs((double) value);
+        if (value < 0 || (value == 0 && 1 / value < 0)) {
+            out.append('-');
+        }
+        // Half up, away from zero
+        out.append((long) (magnitude + 0.5));
+    }
+}
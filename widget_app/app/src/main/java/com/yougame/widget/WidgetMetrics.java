@@ -0,0 +1,307 @@
+package com.yougame.widget;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * WidgetMetrics - Counters and latency histograms for the widget
+ *
+ * All metrics are fixed and created up front. Recording is lock-free
+ * (atomic increments only) and allocates nothing, so instrumentation can
+ * stay on in release builds.
+ *
+ * A snapshot of all metrics can be written periodically as JSON, next to
+ * widget_errors.log (widget_metrics.json). The file is replaced atomically
+ * and only rewritten when something was recorded since the last snapshot.
+ */
+public final class WidgetMetrics {
+
+    private static final String TAG = "YouGameWidget";
+    private static final String THREAD_NAME = "WidgetMetrics";
+
+    static final String SNAPSHOT_FILE = "widget_metrics.json";
+    static final long DEFAULT_SNAPSHOT_PERIOD_MS = 60_000;
+
+    // Upper bucket bounds in microseconds; the last bucket takes everything above
+    static final long[] LATENCY_BOUNDS_US = {
+        50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000,
+        100_000, 250_000, 500_000, 1_000_000, 2_500_000
+    };
+
+    private static final List<Counter> COUNTERS = new ArrayList<>();
+    private static final List<Histogram> HISTOGRAMS = new ArrayList<>();
+
+    // Incremented on every recording; lets the snapshot writer skip idle periods
+    private static final AtomicLong VERSION = new AtomicLong();
+
+    /** Full updateAppWidget time, from reading data to pushing RemoteViews */
+    public static final Histogram UPDATE_WIDGET = histogram("update_widget");
+    /** Reading and hashing the data file (SaveDataCache miss path) */
+    public static final Histogram FILE_READ = histogram("file_read");
+    /** Parsing the data file after a content change */
+    public static final Histogram PARSE = histogram("parse");
+    /** Caller-side cost of a WidgetErrorLogger call (file write or enqueue) */
+    public static final Histogram LOG_WRITE = histogram("log_write");
+    /** Background writer: one batch written to the log file */
+    public static final Histogram LOG_BATCH_WRITE = histogram("log_batch_write");
+    /** Decoding and scaling a changed minimap snapshot into its bitmap */
+    public static final Histogram MINIMAP_RENDER = histogram("minimap_render");
+
+    public static final Counter CACHE_HITS = counter("cache_hits");
+    public static final Counter CACHE_MISSES = counter("cache_misses");
+    /** readSaveData calls that returned no data because of an error */
+    public static final Counter READ_FAILURES = counter("read_failures");
+    /** readSaveData calls answered with the cached failure while backing off */
+    public static final Counter READS_SKIPPED = counter("reads_skipped");
+    /** Data file reads that saw a partially written file */
+    public static final Counter TORN_READS = counter("torn_reads");
+    /** Lookups answered with the last good data because the file stayed torn */
+    public static final Counter STALE_SERVED = counter("stale_served");
+    public static final Counter PUSH_FULL = counter("push_full");
+    public static final Counter PUSH_PARTIAL = counter("push_partial");
+    public static final Counter PUSH_SKIPPED = counter("push_skipped");
+
+    private static ScheduledThreadPoolExecutor snapshotExecutor = null;
+    private static ScheduledFuture<?> snapshotTask = null;
+    private static File snapshotFile = null;
+    private static long lastSnapshotVersion = -1;
+
+    private WidgetMetrics() {
+    }
+
+    /**
+     * A monotonically increasing count
+     */
+    public static final class Counter {
+
+        private final String name;
+        private final AtomicLong value = new AtomicLong();
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        public void increment() {
+            value.incrementAndGet();
+            VERSION.incrementAndGet();
+        }
+
+        public long get() {
+            return value.get();
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * Latency histogram with fixed buckets (LATENCY_BOUNDS_US)
+     */
+    public static final class Histogram {
+
+        private final String name;
+        private final AtomicLongArray buckets = new AtomicLongArray(LATENCY_BOUNDS_US.length + 1);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sumMicros = new AtomicLong();
+        private final AtomicLong maxMicros = new AtomicLong();
+
+        private Histogram(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Record the time since startNanos (a System.nanoTime() value)
+         */
+        public void recordSince(long startNanos) {
+            recordNanos(System.nanoTime() - startNanos);
+        }
+
+        public void recordNanos(long nanos) {
+            long micros = Math.max(0, nanos / 1000);
+            int bucket = 0;
+            while (bucket < LATENCY_BOUNDS_US.length && micros > LATENCY_BOUNDS_US[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+            count.incrementAndGet();
+            sumMicros.addAndGet(micros);
+
+            long max = maxMicros.get();
+            while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+                max = maxMicros.get();
+            }
+            VERSION.incrementAndGet();
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getBucketCount(int bucket) {
+            return buckets.get(bucket);
+        }
+
+        public long getSumMicros() {
+            return sumMicros.get();
+        }
+
+        public long getMaxMicros() {
+            return maxMicros.get();
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    private static Counter counter(String name) {
+        Counter counter = new Counter(name);
+        COUNTERS.add(counter);
+        return counter;
+    }
+
+    private static Histogram histogram(String name) {
+        Histogram histogram = new Histogram(name);
+        HISTOGRAMS.add(histogram);
+        return histogram;
+    }
+
+    static List<Counter> getCounters() {
+        return Collections.unmodifiableList(COUNTERS);
+    }
+
+    static List<Histogram> getHistograms() {
+        return Collections.unmodifiableList(HISTOGRAMS);
+    }
+
+    /**
+     * Start writing snapshots to the given file every periodMillis.
+     * Does nothing if snapshots already go to that file.
+     */
+    public static synchronized void startSnapshots(File file, long periodMillis) {
+        if (snapshotTask != null && file.equals(snapshotFile)) {
+            return;
+        }
+        stopSnapshots();
+        if (snapshotExecutor == null) {
+            snapshotExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, THREAD_NAME);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        snapshotFile = file;
+        snapshotTask = snapshotExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                writeSnapshotIfChanged();
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Whether periodic snapshots are being written
+     */
+    public static synchronized boolean isSnapshotting() {
+        return snapshotTask != null;
+    }
+
+    /**
+     * Stop periodic snapshots, writing a last one if anything changed
+     */
+    public static synchronized void stopSnapshots() {
+        if (snapshotTask != null) {
+            snapshotTask.cancel(false);
+            snapshotTask = null;
+            writeSnapshotIfChanged();
+        }
+    }
+
+    private static synchronized void writeSnapshotIfChanged() {
+        long version = VERSION.get();
+        if (snapshotFile == null || version == lastSnapshotVersion) {
+            return;
+        }
+        try {
+            writeSnapshot(snapshotFile);
+            lastSnapshotVersion = version;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write metrics snapshot", e);
+        }
+    }
+
+    /**
+     * Write a JSON snapshot of all metrics; replaces the file atomically
+     */
+    public static void writeSnapshot(File file) throws IOException {
+        StringBuilder json = new StringBuilder(2048);
+        appendJson(json, System.currentTimeMillis());
+
+        File parentDir = file.getParentFile();
+        if (parentDir != null && !parentDir.exists()) {
+            parentDir.mkdirs();
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(json.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Failed to replace " + file);
+        }
+    }
+
+    /**
+     * Append all metrics as one JSON object. Histograms list their bucket
+     * upper bounds (microseconds) and one more count for the overflow bucket.
+     */
+    static void appendJson(StringBuilder out, long timeMillis) {
+        out.append("{\n  \"timestamp\": ").append(timeMillis).append(",\n");
+
+        out.append("  \"counters\": {");
+        for (int i = 0; i < COUNTERS.size(); i++) {
+            Counter counter = COUNTERS.get(i);
+            out.append(i == 0 ? "\n" : ",\n");
+            out.append("    \"").append(counter.name).append("\": ").append(counter.get());
+        }
+        out.append("\n  },\n");
+
+        out.append("  \"histograms\": {");
+        for (int i = 0; i < HISTOGRAMS.size(); i++) {
+            Histogram histogram = HISTOGRAMS.get(i);
+            out.append(i == 0 ? "\n" : ",\n");
+            out.append("    \"").append(histogram.name).append("\": {")
+                .append("\"unit\": \"us\", ")
+                .append("\"count\": ").append(histogram.getCount()).append(", ")
+                .append("\"sum\": ").append(histogram.getSumMicros()).append(", ")
+                .append("\"max\": ").append(histogram.getMaxMicros()).append(", ")
+                .append("\"bounds\": [");
+            for (int b = 0; b < LATENCY_BOUNDS_US.length; b++) {
+                out.append(b == 0 ? "" : ", ").append(LATENCY_BOUNDS_US[b]);
+            }
+            out.append("], \"buckets\": [");
+            for (int b = 0; b <= LATENCY_BOUNDS_US.length; b++) {
+                out.append(b == 0 ? "" : ", ").append(histogram.getBucketCount(b));
+            }
+            out.append("]}");
+        }
+        out.append("\n  }\n}\n");
+    }
+}
@@ -0,0 +1,221 @@
+package com.yougame.widget;
+
+import java.util.Arrays;
+
+/**
+ * WidgetRenderState - Remembers what was last pushed to each widget instance
+ *
+ * A render is described by an array of field texts (one per text view, in a
+ * fixed order chosen by the provider). Comparing it with the last push for the
+ * same widget id tells the provider what to send:
+ * - nothing, if no field changed
+ * - a partial update with only the changed fields
+ * - a full update, if nothing was pushed to this widget yet
+ *
+ * Fields may be unset (null) when the widget's layout doesn't show them;
+ * they compare equal to each other and are never counted as sent.
+ *
+ * Pushed bytes are estimated from the text lengths (RemoteViews parcels text
+ * as UTF-16) plus a fixed cost per action, so the saved IPC bytes reported
+ * here are an approximation, not a measured parcel size.
+ *
+ * Widgets are looked up in small parallel arrays rather than a map keyed by
+ * Integer, so comparing a render allocates nothing.
+ */
+public class WidgetRenderState {
+
+    /**
+     * Returned by diff() when the widget needs a full update
+     */
+    public static final int FULL_UPDATE = -1;
+
+    // Rough parcel cost of one text action besides the text itself
+    static final int ACTION_OVERHEAD_BYTES = 32;
+    // Rough parcel cost of the package name and layout of a full RemoteViews
+    static final int VIEWS_OVERHEAD_BYTES = 96;
+
+    private final int fieldCount;
+    // Widget ids and what was last pushed to each, in the first widgetCount slots
+    private int[] widgetIds = new int[4];
+    private CharSequence[][] pushed = new CharSequence[4][];
+    private int widgetCount = 0;
+
+    private long renderCount = 0;
+    private long skippedCount = 0;
+    private long partialCount = 0;
+    private long fullCount = 0;
+    private long bytesSaved = 0;
+
+    public WidgetRenderState(int fieldCount) {
+        if (fieldCount < 1 || fieldCount > 31) {
+            throw new IllegalArgumentException("fieldCount must be between 1 and 31: " + fieldCount);
+        }
+        this.fieldCount = fieldCount;
+    }
+
+    /**
+     * Compare a render with the last push for this widget
+     *
+     * @return bit mask of changed fields (bit i for fields[i]), 0 if nothing
+     *         changed, or FULL_UPDATE if nothing was pushed to this widget yet
+     */
+    public synchronized int diff(int appWidgetId, CharSequence[] fields) {
+        checkLength(fields);
+        CharSequence[] last = find(appWidgetId);
+        if (last == null) {
+            return FULL_UPDATE;
+        }
+        int changed = 0;
+        for (int i = 0; i < fieldCount; i++) {
+            if (!contentEquals(last[i], fields[i])) {
+                changed |= 1 << i;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Record the outcome of a render
+     *
+     * @param changed The value diff() returned; 0 records a skipped push
+     */
+    public synchronized void record(int appWidgetId, CharSequence[] fields, int changed) {
+        checkLength(fields);
+        renderCount++;
+        if (changed == 0) {
+            skippedCount++;
+            bytesSaved += VIEWS_OVERHEAD_BYTES + estimateBytes(fields, FULL_UPDATE);
+            return;
+        }
+
+        CharSequence[] last = find(appWidgetId);
+        if (last == null) {
+            last = add(appWidgetId);
+        }
+        // Keep immutable copies; callers may reuse builders between renders
+        for (int i = 0; i < fieldCount; i++) {
+            if (changed == FULL_UPDATE || (changed & (1 << i)) != 0) {
+                last[i] = fields[i] == null ? null : fields[i].toString();
+            }
+        }
+
+        if (changed == FULL_UPDATE) {
+            fullCount++;
+        } else {
+            partialCount++;
+            bytesSaved += estimateBytes(fields, ~changed);
+        }
+    }
+
+    /**
+     * Whether bit i of a diff() result asks for field i to be sent
+     */
+    public static boolean isChanged(int changed, int field) {
+        return changed == FULL_UPDATE || (changed & (1 << field)) != 0;
+    }
+
+    /**
+     * Forget removed widgets, so a reused id starts with a full update
+     */
+    public synchronized void forget(int[] appWidgetIds) {
+        for (int appWidgetId : appWidgetIds) {
+            for (int i = 0; i < widgetCount; i++) {
+                if (widgetIds[i] == appWidgetId) {
+                    // Move the last widget into the freed slot
+                    widgetCount--;
+                    widgetIds[i] = widgetIds[widgetCount];
+                    pushed[i] = pushed[widgetCount];
+                    pushed[widgetCount] = null;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget all widgets; the next render of each one is a full update
+     */
+    public synchronized void clear() {
+        Arrays.fill(pushed, null);
+        widgetCount = 0;
+    }
+
+    public synchronized long getRenderCount() {
+        return renderCount;
+    }
+
+    /**
+     * Renders that sent nothing because no field changed
+     */
+    public synchronized long getSkippedCount() {
+        return skippedCount;
+    }
+
+    public synchronized long getPartialCount() {
+        return partialCount;
+    }
+
+    public synchronized long getFullCount() {
+        return fullCount;
+    }
+
+    /**
+     * Estimated IPC bytes not sent thanks to skipped and partial pushes
+     */
+    public synchronized long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    private CharSequence[] find(int appWidgetId) {
+        for (int i = 0; i < widgetCount; i++) {
+            if (widgetIds[i] == appWidgetId) {
+                return pushed[i];
+            }
+        }
+        return null;
+    }
+
+    private CharSequence[] add(int appWidgetId) {
+        if (widgetCount == widgetIds.length) {
+            widgetIds = Arrays.copyOf(widgetIds, widgetCount * 2);
+            pushed = Arrays.copyOf(pushed, widgetCount * 2);
+        }
+        CharSequence[] fields = new CharSequence[fieldCount];
+        widgetIds[widgetCount] = appWidgetId;
+        pushed[widgetCount] = fields;
+        widgetCount++;
+        return fields;
+    }
+
+    private int estimateBytes(CharSequence[] fields, int mask) {
+        int bytes = 0;
+        for (int i = 0; i < fieldCount; i++) {
+            // Unset fields are not shown by the layout and never sent
+            if ((mask & (1 << i)) != 0 && fields[i] != null) {
+                bytes += ACTION_OVERHEAD_BYTES + 2 * fields[i].length();
+            }
+        }
+        return bytes;
+    }
+
+    private void checkLength(CharSequence[] fields) {
+        if (fields.length != fieldCount) {
+            throw new IllegalArgumentException("Expected " + fieldCount + " fields, got " + fields.length);
+        }
+    }
+
+    private static boolean contentEquals(CharSequence a, CharSequence b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null || a.length() != b.length()) {
+            return false;
+        }
+        for (int i = 0; i < a.length(); i++) {
+            if (a.charAt(i) != b.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
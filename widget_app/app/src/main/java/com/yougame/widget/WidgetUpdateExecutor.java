@@ -0,0 +1,151 @@
+package com.yougame.widget;
+
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * WidgetUpdateExecutor - Runs widget updates off the main thread
+ *
+ * Providers hand their file I/O, parsing and RemoteViews work to a single
+ * shared background thread and keep the broadcast alive with goAsync().
+ * The finish callback (PendingResult.finish) is always called exactly once:
+ * - when the work completes, or
+ * - when the work is replaced by a newer update with the same key before it
+ *   started, or
+ * - when the timeout guard fires, so the receiver stays within the
+ *   broadcast deadline even if storage is very slow
+ */
+public class WidgetUpdateExecutor {
+
+    private static final String TAG = "YouGameWidget";
+    private static final String THREAD_NAME = "WidgetUpdate";
+    private static final String GUARD_THREAD_NAME = "WidgetUpdateGuard";
+
+    // Broadcast receivers must finish within 10s; leave some headroom
+    static final long DEFAULT_TIMEOUT_MS = 8000;
+
+    private static WidgetUpdateExecutor instance = null;
+
+    private final ExecutorService executor;
+    private final ScheduledThreadPoolExecutor guards;
+    private final long timeoutMillis;
+    private final Map<String, Long> latestGeneration = new HashMap<>();
+    private long nextGeneration = 0;
+    private long replacedCount = 0;
+    private long timedOutCount = 0;
+
+    public WidgetUpdateExecutor(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        this.executor = Executors.newSingleThreadExecutor(daemonThreads(THREAD_NAME));
+        // Guards need their own thread, the update thread may be the one that is stuck
+        this.guards = new ScheduledThreadPoolExecutor(1, daemonThreads(GUARD_THREAD_NAME));
+        this.guards.setRemoveOnCancelPolicy(true);
+    }
+
+    public static synchronized WidgetUpdateExecutor getInstance() {
+        if (instance == null) {
+            instance = new WidgetUpdateExecutor(DEFAULT_TIMEOUT_MS);
+        }
+        return instance;
+    }
+
+    /**
+     * Run work on the update thread
+     *
+     * @param key Updates with the same key replace each other while still queued
+     * @param work The update to run
+     * @param finish Called exactly once when the update is done, replaced or timed out; may be null
+     */
+    public void execute(final String key, final Runnable work, final Runnable finish) {
+        final long generation;
+        synchronized (this) {
+            generation = ++nextGeneration;
+            latestGeneration.put(key, generation);
+        }
+
+        final AtomicBoolean finished = new AtomicBoolean(false);
+        final Runnable finishOnce = new Runnable() {
+            @Override
+            public void run() {
+                if (finished.compareAndSet(false, true) && finish != null) {
+                    finish.run();
+                }
+            }
+        };
+
+        // Timeout guard: release the broadcast even if the work is still running
+        final ScheduledFuture<?> guard = guards.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (!finished.get()) {
+                    synchronized (WidgetUpdateExecutor.this) {
+                        timedOutCount++;
+                    }
+                    Log.w(TAG, "Widget update exceeded " + timeoutMillis + "ms, releasing broadcast");
+                    finishOnce.run();
+                }
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (isSuperseded(key, generation)) {
+                        return;
+                    }
+                    work.run();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Widget update failed", e);
+                } finally {
+                    guard.cancel(false);
+                    finishOnce.run();
+                }
+            }
+        });
+    }
+
+    private synchronized boolean isSuperseded(String key, long generation) {
+        Long latest = latestGeneration.get(key);
+        if (latest != null && latest != generation) {
+            replacedCount++;
+            return true;
+        }
+        latestGeneration.remove(key);
+        return false;
+    }
+
+    private static ThreadFactory daemonThreads(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Number of queued updates skipped because a newer one replaced them
+     */
+    public synchronized long getReplacedCount() {
+        return replacedCount;
+    }
+
+    /**
+     * Number of updates that hit the timeout guard
+     */
+    public synchronized long getTimedOutCount() {
+        return timedOutCount;
+    }
+}
@@ -0,0 +1,110 @@
+package com.yougame.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for DataSourceHealth, driven by a fake clock
+ */
+public class DataSourceHealthTest {
+
+    private static final long BACKOFF = 1000;
+    private static final long MAX_BACKOFF = 8000;
+    private static final long STAMP = 42;
+
+    private long now = 0;
+    private DataSourceHealth health;
+
+    @Before
+    public void setUp() {
+        health = new DataSourceHealth(() -> now, BACKOFF, MAX_BACKOFF);
+    }
+
+    @Test
+    public void healthySourceIsAlwaysRead() {
+        for (int i = 0; i < 5; i++) {
+            assertTrue(health.shouldRead(-1));
+            health.onReadSucceeded();
+        }
+        assertTrue(health.isHealthy());
+        assertEquals(5, health.getFullReadCount());
+        assertEquals(0, health.getReadsSkippedCount());
+    }
+
+    @Test
+    public void failureSkipsReadsUntilBackoffExpires() {
+        health.onReadFailed(STAMP, "missing");
+        assertFalse(health.isHealthy());
+
+        now = BACKOFF - 1;
+        assertFalse(health.shouldRead(STAMP));
+        now = BACKOFF;
+        assertTrue(health.shouldRead(STAMP));
+        assertEquals(1, health.getReadsSkippedCount());
+    }
+
+    @Test
+    public void backoffDoublesUpToMaximum() {
+        long[] expected = {1000, 2000, 4000, 8000, 8000};
+        for (long backoff : expected) {
+            health.onReadFailed(STAMP, "missing");
+            assertEquals(backoff, health.getBackoffMillis());
+            now += backoff - 1;
+            assertFalse(health.shouldRead(STAMP));
+            now += 1;
+            assertTrue(health.shouldRead(STAMP));
+        }
+        assertEquals(5, health.getFailureCount());
+    }
+
+    @Test
+    public void changedStampEndsBackoff() {
+        health.onReadFailed(STAMP, "missing");
+        assertFalse(health.shouldRead(STAMP));
+        assertTrue(health.shouldRead(STAMP + 1));
+    }
+
+    @Test
+    public void sourceChangeEventEndsBackoff() {
+        health.onReadFailed(STAMP, "missing");
+        health.onSourceChanged();
+        assertTrue(health.shouldRead(STAMP));
+    }
+
+    @Test
+    public void successRecoversAtOnce() {
+        health.onReadFailed(STAMP, "missing");
+        health.onReadFailed(STAMP, "missing");
+        health.onReadSucceeded();
+
+        assertTrue(health.isHealthy());
+        assertEquals(0, health.getBackoffMillis());
+        assertEquals(1, health.getRecoveryCount());
+
+        // The next failure starts over at the initial backoff
+        health.onReadFailed(STAMP, "missing");
+        assertEquals(BACKOFF, health.getBackoffMillis());
+    }
+
+    @Test
+    public void describeShowsStateAndSavings() {
+        health.onReadFailed(STAMP, "Save data file not found");
+        now = 250;
+        health.shouldRead(STAMP);
+        health.shouldRead(STAMP);
+
+        String description = health.describe();
+        assertTrue(description.contains("state=backing_off\n"));
+        assertTrue(description.contains("backoff_ms=1000\n"));
+        assertTrue(description.contains("next_probe_in_ms=750\n"));
+        assertTrue(description.contains("last_failure=Save data file not found\n"));
+        assertTrue(description.contains("reads_skipped=2\n"));
+
+        health.onReadSucceeded();
+        assertTrue(health.describe().startsWith("state=healthy\n"));
+    }
+}
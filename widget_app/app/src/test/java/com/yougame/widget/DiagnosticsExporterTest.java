@@ -0,0 +1,123 @@
+package com.yougame.widget;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Tests for DiagnosticsExporter
+ */
+public class DiagnosticsExporterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static class RecordingListener implements DiagnosticsExporter.Listener {
+        final List<long[]> progress = new ArrayList<>();
+        long archiveBytes = -1;
+        IOException error = null;
+
+        @Override
+        public void onProgress(long bytesDone, long bytesTotal) {
+            progress.add(new long[] {bytesDone, bytesTotal});
+        }
+
+        @Override
+        public void onComplete(File archive, long archiveBytes) {
+            this.archiveBytes = archiveBytes;
+        }
+
+        @Override
+        public void onFailed(IOException error) {
+            this.error = error;
+        }
+    }
+
+    private static Map<String, byte[]> readArchive(File archive) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new FileInputStream(archive))) {
+            ZipEntry entry;
+            byte[] buffer = new byte[4096];
+            while ((entry = zip.getNextEntry()) != null) {
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                int read;
+                while ((read = zip.read(buffer)) > 0) {
+                    content.write(buffer, 0, read);
+                }
+                entries.put(entry.getName(), content.toByteArray());
+            }
+        }
+        return entries;
+    }
+
+    @Test
+    public void streamsFilesAndTextsInOrder() throws IOException {
+        // Many times the buffer size
+        byte[] log = new byte[40 * DiagnosticsExporter.BUFFER_SIZE + 123];
+        for (int i = 0; i < log.length; i++) {
+            log[i] = (byte) ('a' + i % 26);
+        }
+        File logFile = folder.newFile("widget_errors.log");
+        Files.write(logFile.toPath(), log);
+        File archive = new File(folder.getRoot(), DiagnosticsExporter.ARCHIVE_FILE);
+
+        RecordingListener listener = new RecordingListener();
+        long size = new DiagnosticsExporter()
+            .addFile("logs/widget_errors.log", logFile)
+            .addText("save_data.txt", "day_count=3\n")
+            .write(archive, listener);
+
+        assertEquals(archive.length(), size);
+        assertEquals(size, listener.archiveBytes);
+        assertNull(listener.error);
+        assertFalse(new File(archive.getPath() + ".tmp").exists());
+
+        Map<String, byte[]> entries = readArchive(archive);
+        assertEquals(2, entries.size());
+        assertArrayEquals(log, entries.get("logs/widget_errors.log"));
+        assertEquals("day_count=3\n", new String(entries.get("save_data.txt"), StandardCharsets.UTF_8));
+
+        // At most one report per percent, increasing, ending at the total
+        long total = log.length + 12;
+        assertTrue(listener.progress.size() <= 101);
+        long previous = -1;
+        for (long[] report : listener.progress) {
+            assertEquals(total, report[1]);
+            assertTrue(report[0] > previous);
+            previous = report[0];
+        }
+        assertEquals(total, previous);
+    }
+
+    @Test
+    public void skipsMissingFiles() throws IOException {
+        File archive = new File(folder.getRoot(), DiagnosticsExporter.ARCHIVE_FILE);
+        new DiagnosticsExporter()
+            .addFile("data/widget_data.txt", new File(folder.getRoot(), "missing.txt"))
+            .addText("metrics.json", "{}")
+            .write(archive, null);
+
+        Map<String, byte[]> entries = readArchive(archive);
+        assertEquals(1, entries.size());
+        assertTrue(entries.containsKey("metrics.json"));
+    }
+}
@@ -0,0 +1,60 @@
+package com.yougame.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+/**
+ * Tests for LastErrorRecord and its sidecar file
+ */
+public class LastErrorRecordTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File sidecar() {
+        return new File(folder.getRoot(), "widget_errors.state");
+    }
+
+    @Test
+    public void roundTripsThroughSidecar() {
+        LastErrorRecord record = new LastErrorRecord(sidecar());
+        record.record("INFO", "Started", 1000);
+        record.record("ERROR", "Save data missing", 2000);
+        record.save();
+
+        LastErrorRecord reloaded = new LastErrorRecord(sidecar());
+        assertEquals("Save data missing", reloaded.getLastErrorMessage());
+        assertEquals(2000, reloaded.getLastErrorTime());
+        assertEquals(1, reloaded.getCount("INFO"));
+        assertEquals(1, reloaded.getCount("ERROR"));
+    }
+
+    @Test
+    public void sidecarWithoutErrorsIsNotScanned() {
+        // The async writer saves the counters after an INFO entry
+        LastErrorRecord record = new LastErrorRecord(sidecar());
+        record.record("INFO", "Started", 1000);
+        record.save();
+        assertTrue(record.hasSidecar());
+
+        LastErrorRecord reloaded = new LastErrorRecord(sidecar());
+        assertNull(reloaded.getLastErrorMessage());
+        assertFalse(reloaded.isLegacyScanned());
+
+        reloaded.seedLastError("Old error", 500);
+        reloaded.markLegacyScanned();
+        reloaded.save();
+
+        LastErrorRecord seeded = new LastErrorRecord(sidecar());
+        assertTrue(seeded.isLegacyScanned());
+        assertEquals("Old error", seeded.getLastErrorMessage());
+    }
+}
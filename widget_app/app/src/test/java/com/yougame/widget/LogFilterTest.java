@@ -0,0 +1,102 @@
+package com.yougame.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for LogFilter
+ */
+public class LogFilterTest {
+
+    private static final long WINDOW = 60_000;
+
+    private final LogFilter filter = new LogFilter();
+    private final List<String> summaries = new ArrayList<>();
+    private final LogFilter.Sink sink = (time, level, message) -> summaries.add(level + " " + message);
+
+    @Test
+    public void repeatsWithinWindowAreCollapsed() {
+        filter.setWindowMillis(WINDOW);
+        assertTrue(filter.accept("ERROR", "Save data file not found", 0, sink));
+        for (int i = 1; i <= 5; i++) {
+            assertFalse(filter.accept("ERROR", "Save data file not found", i * 1000, sink));
+        }
+        assertTrue(summaries.isEmpty());
+
+        // Next occurrence after the window: summary first, then a new first entry
+        assertTrue(filter.accept("ERROR", "Save data file not found", WINDOW + 1, sink));
+        assertEquals(1, summaries.size());
+        assertEquals("ERROR Save data file not found (repeated 5 more times)", summaries.get(0));
+        assertEquals(5, filter.getSuppressedCount());
+    }
+
+    @Test
+    public void differentMessagesAreNotCollapsed() {
+        assertTrue(filter.accept("INFO", "Widget update started", 0, sink));
+        assertTrue(filter.accept("INFO", "Successfully read 9 lines from save data file", 0, sink));
+        assertTrue(filter.accept("ERROR", "Widget update started", 0, sink));
+    }
+
+    @Test
+    public void flushWritesPendingSummaries() {
+        filter.accept("INFO", "Widget update started", 0, sink);
+        filter.accept("INFO", "Widget update started", 10, sink);
+        filter.accept("INFO", "Widget data loaded successfully", 20, sink);
+
+        filter.flush(30, sink);
+        assertEquals(1, summaries.size());
+        assertTrue(filter.accept("INFO", "Widget update started", 40, sink));
+    }
+
+    @Test
+    public void zeroWindowDisablesDeduplication() {
+        filter.setWindowMillis(0);
+        assertTrue(filter.accept("ERROR", "same", 0, sink));
+        assertTrue(filter.accept("ERROR", "same", 1, sink));
+    }
+
+    @Test
+    public void infoIsSampledButErrorsAreKept() {
+        filter.setWindowMillis(0);
+        filter.setInfoSampleRate(0.25f);
+
+        int infoWritten = 0;
+        int errorsWritten = 0;
+        for (int i = 0; i < 100; i++) {
+            if (filter.accept("INFO", "info " + i, i, sink)) {
+                infoWritten++;
+            }
+            if (filter.accept("ERROR", "error " + i, i, sink)) {
+                errorsWritten++;
+            }
+        }
+        assertEquals(25, infoWritten);
+        assertEquals(100, errorsWritten);
+        assertEquals(75, filter.getSampledOutCount());
+    }
+
+    @Test
+    public void minLevelDropsLowerLevelsButNeverErrors() {
+        filter.setMinLevel("WARN");
+        assertFalse(filter.isEnabled("INFO"));
+        assertTrue(filter.isEnabled("WARN"));
+        assertFalse(filter.accept("INFO", "info", 0, sink));
+
+        filter.setMinLevel("ERROR");
+        assertTrue(filter.accept("ERROR", "error", 0, sink));
+
+        filter.setMinLevel("INFO");
+        assertTrue(filter.accept("INFO", "info", 0, sink));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownMinLevelIsRejected() {
+        filter.setMinLevel("DEBUG");
+    }
+}
@@ -0,0 +1,150 @@
+package com.yougame.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Tests for MinimapDecoder; the pixels are checked directly, so no bitmap is needed
+ */
+public class MinimapDecoderTest {
+
+    private static final int UNEXPLORED = 0xFF1A1A26;
+    private static final int WATER = 0xFF3366CC;
+    private static final int PLAINS = 0xFF4D994D;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Build a minimap file the way the game plugin's MinimapTileEncoder does:
+     * a width x height grid of water with one plains tile in the top left corner
+     */
+    private File writeMinimap(long generation, int width, int height, int playerX, int playerY)
+            throws IOException {
+        byte[] tiles = new byte[width * height];
+        Arrays.fill(tiles, (byte) 1);
+        tiles[0] = 2;
+
+        ByteBuffer data = ByteBuffer.allocate(28 + 3 * 4 + 4 + 2 * tiles.length + 4);
+        data.putInt(MinimapDecoder.MAGIC);
+        data.putShort((short) MinimapDecoder.VERSION);
+        data.putShort((short) 0);
+        data.putLong(generation);
+        data.putShort((short) width);
+        data.putShort((short) height);
+        data.putShort((short) playerX);
+        data.putShort((short) playerY);
+        data.put((byte) 3);
+        data.put(new byte[3]);
+        data.putInt(UNEXPLORED);
+        data.putInt(WATER);
+        data.putInt(PLAINS);
+        int runBytesOffset = data.position();
+        data.putInt(0);
+        int runStart = data.position();
+        for (int i = 0; i < tiles.length; ) {
+            int run = 1;
+            while (run < 255 && i + run < tiles.length && tiles[i + run] == tiles[i]) {
+                run++;
+            }
+            data.put(tiles[i]).put((byte) run);
+            i += run;
+        }
+        data.putInt(runBytesOffset, data.position() - runStart);
+        CRC32 crc = new CRC32();
+        crc.update(data.array(), 0, data.position());
+        data.putInt((int) crc.getValue());
+
+        File file = new File(folder.getRoot(), MinimapDecoder.FILE_NAME);
+        Files.write(file.toPath(), Arrays.copyOf(data.array(), data.position()));
+        return file;
+    }
+
+    private static int pixel(MinimapDecoder decoder, int x, int y) {
+        return decoder.getPixels()[y * decoder.getWidth() + x];
+    }
+
+    @Test
+    public void decodesScaledTilesAndPlayerMarker() throws IOException {
+        MinimapDecoder decoder = new MinimapDecoder();
+        assertTrue(decoder.read(writeMinimap(7, 4, 2, 3, 1), 16));
+
+        // 4 x 2 tiles at 4 pixels per tile
+        assertEquals(16, decoder.getWidth());
+        assertEquals(8, decoder.getHeight());
+        assertEquals(PLAINS, pixel(decoder, 0, 0));
+        assertEquals(PLAINS, pixel(decoder, 3, 3));
+        assertEquals(WATER, pixel(decoder, 4, 0));
+        assertEquals(WATER, pixel(decoder, 0, 4));
+        // Player tile (3, 1) is centered at pixel (14, 6)
+        assertEquals(MinimapDecoder.PLAYER_COLOR, pixel(decoder, 14, 6));
+        assertEquals(MinimapDecoder.PLAYER_COLOR, pixel(decoder, 12, 4));
+        assertEquals(WATER, pixel(decoder, 11, 4));
+    }
+
+    @Test
+    public void decodesOnlyWhenGenerationOrSizeChanges() throws IOException {
+        MinimapDecoder decoder = new MinimapDecoder();
+        File file = writeMinimap(7, 32, 32, 0, 0);
+
+        assertTrue(decoder.read(file, 128));
+        assertEquals(7, decoder.getGeneration());
+        assertFalse(decoder.read(file, 128));
+        assertEquals(1, decoder.getDecodeCount());
+
+        writeMinimap(8, 32, 32, 0, 0);
+        assertTrue(decoder.read(file, 128));
+        assertEquals(8, decoder.getGeneration());
+        assertEquals(2, decoder.getDecodeCount());
+
+        // A new target size redraws the same snapshot
+        assertTrue(decoder.read(file, 64));
+        assertEquals(64, decoder.getWidth());
+        assertEquals(3, decoder.getDecodeCount());
+    }
+
+    @Test
+    public void tornFileKeepsPreviousPixels() throws IOException {
+        MinimapDecoder decoder = new MinimapDecoder();
+        File file = writeMinimap(1, 16, 16, 8, 8);
+        decoder.read(file, 64);
+        int[] good = Arrays.copyOf(decoder.getPixels(), decoder.getWidth() * decoder.getHeight());
+
+        writeMinimap(2, 16, 16, 0, 0);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 6));
+        try {
+            decoder.read(file, 64);
+            fail("Expected FormatException");
+        } catch (MinimapDecoder.FormatException expected) {
+            // Torn write detected
+        }
+        assertEquals(1, decoder.getGeneration());
+        assertTrue(Arrays.equals(good, Arrays.copyOf(decoder.getPixels(), good.length)));
+    }
+
+    @Test
+    public void clearedDecoderDecodesAgain() throws IOException {
+        MinimapDecoder decoder = new MinimapDecoder();
+        File file = writeMinimap(1, 8, 8, 0, 0);
+        decoder.read(file, 64);
+
+        decoder.clear();
+        assertEquals(0, decoder.getGeneration());
+        assertEquals(0, decoder.getWidth());
+        assertTrue(decoder.read(file, 64));
+    }
+}
@@ -0,0 +1,101 @@
+package com.yougame.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for RefreshDebouncer, driven by a fake clock and scheduler
+ */
+public class RefreshDebouncerTest {
+
+    private static final long QUIET = 500;
+    private static final long MAX_DELAY = 3000;
+
+    private long now = 0;
+    private final List<long[]> dueTimes = new ArrayList<>();
+    private final List<Runnable> tasks = new ArrayList<>();
+    private int refreshes = 0;
+    private RefreshDebouncer debouncer;
+
+    @Before
+    public void setUp() {
+        debouncer = new RefreshDebouncer(
+            () -> now,
+            (task, delay) -> {
+                tasks.add(task);
+                dueTimes.add(new long[] {now + delay});
+            },
+            QUIET, MAX_DELAY,
+            () -> refreshes++);
+    }
+
+    /**
+     * Advance the fake clock, running scheduled tasks as they come due
+     */
+    private void advanceTo(long time) {
+        while (true) {
+            int next = -1;
+            for (int i = 0; i < tasks.size(); i++) {
+                if (dueTimes.get(i)[0] <= time && (next < 0 || dueTimes.get(i)[0] < dueTimes.get(next)[0])) {
+                    next = i;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            now = dueTimes.remove(next)[0];
+            tasks.remove(next).run();
+        }
+        now = time;
+    }
+
+    @Test
+    public void singleEventRefreshesAfterQuietPeriod() {
+        debouncer.onDataChanged();
+        advanceTo(QUIET - 1);
+        assertEquals(0, refreshes);
+        advanceTo(QUIET);
+        assertEquals(1, refreshes);
+        assertFalse(debouncer.isPending());
+    }
+
+    @Test
+    public void burstIsMergedIntoOneRefresh() {
+        for (int i = 0; i < 10; i++) {
+            debouncer.onDataChanged();
+            advanceTo(now + 100);
+        }
+        advanceTo(now + QUIET);
+
+        assertEquals(1, refreshes);
+        assertEquals(10, debouncer.getEventCount());
+        assertEquals(1, debouncer.getRefreshCount());
+    }
+
+    @Test
+    public void steadyStreamStillRefreshesWithinMaxDelay() {
+        for (int i = 0; i < 40; i++) {
+            debouncer.onDataChanged();
+            advanceTo(now + 200);
+        }
+
+        // 8 seconds of events every 200ms: refreshed at least every MAX_DELAY
+        assertTrue(refreshes >= 2);
+        assertTrue(refreshes <= 8000 / MAX_DELAY + 1);
+    }
+
+    @Test
+    public void cancelDropsPendingRefresh() {
+        debouncer.onDataChanged();
+        debouncer.cancel();
+        advanceTo(MAX_DELAY);
+        assertEquals(0, refreshes);
+    }
+}
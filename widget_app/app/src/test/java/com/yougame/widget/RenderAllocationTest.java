@@ -0,0 +1,185 @@
+package com.yougame.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Allocation tests for the render and logging hot paths. Allocations are
+ * measured for the calling thread only.
+ */
+public class RenderAllocationTest {
+
+    private static final long SAVE_TIME = 1_700_000_000_000L;
+    private static final int WIDGET_ID = 4242;
+    private static final String LAST_SAVED = "Last saved: %1$s";
+    private static final String NO_ERRORS = "No errors";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private com.sun.management.ThreadMXBean threads;
+
+    @Before
+    public void setUp() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    private long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static SaveData saveData() {
+        SaveData data = new SaveData();
+        data.timestamp = SAVE_TIME;
+        data.dayCount = 12;
+        data.currentHealth = 87.5f;
+        data.torchCount = 3;
+        data.positionX = -10.4f;
+        data.positionZ = 220.6f;
+        data.errorCount = 1;
+        data.totalLogCount = 40;
+        data.lastError = "Save data file not found";
+        return data;
+    }
+
+    /**
+     * What the provider does for each widget: format, diff, then send only
+     * changed fields
+     */
+    private static int render(WidgetFieldFormatter formatter, WidgetRenderState state, SaveData data) {
+        SaveGameWidgetProvider.formatSaveDataFields(formatter, data, LAST_SAVED, NO_ERRORS);
+        int changed = state.diff(WIDGET_ID, formatter.getFields());
+        state.record(WIDGET_ID, changed == 0 ? formatter.getFields() : formatter.toPushed(changed), changed);
+        return changed;
+    }
+
+    @Test
+    public void formatsLikeStringFormat() {
+        WidgetFieldFormatter formatter = SaveGameWidgetProvider.newFieldFormatter();
+        SaveGameWidgetProvider.formatSaveDataFields(formatter, saveData(), LAST_SAVED, NO_ERRORS);
+        CharSequence[] fields = formatter.getFields();
+
+        assertEquals("Day: 12", fields[1].toString());
+        assertEquals(String.format("Health: %.0f%%", 87.5f), fields[2].toString());
+        assertEquals(String.format("Pos: %.0f, %.0f", -10.4f, 220.6f), fields[4].toString());
+        assertTrue(fields[0].toString().startsWith("Last saved: "));
+
+        StringBuilder out = new StringBuilder();
+        for (float value : new float[] {0f, 0.5f, 1.49f, -0.4f, -2.5f, 99.5f}) {
+            out.setLength(0);
+            WidgetFieldFormatter.appendRounded(out, value);
+            assertEquals(String.format("%.0f", value), out.toString());
+        }
+    }
+
+    @Test
+    public void steadyStateRenderAllocatesNothing() {
+        WidgetFieldFormatter formatter = SaveGameWidgetProvider.newFieldFormatter();
+        WidgetRenderState state = new WidgetRenderState(formatter.getFields().length);
+        SaveData data = saveData();
+        for (int i = 0; i < 20000; i++) {
+            render(formatter, state, data);
+        }
+
+        long before = allocatedBytes();
+        for (int i = 0; i < 1000; i++) {
+            render(formatter, state, data);
+        }
+        long allocated = allocatedBytes() - before;
+
+        assertEquals(0, allocated);
+        assertEquals(0, render(formatter, state, data));
+    }
+
+    @Test
+    public void changedFieldAllocatesOnlyItsText() {
+        WidgetFieldFormatter formatter = SaveGameWidgetProvider.newFieldFormatter();
+        WidgetRenderState state = new WidgetRenderState(formatter.getFields().length);
+        SaveData data = saveData();
+        for (int i = 0; i < 20000; i++) {
+            data.torchCount = i % 2;
+            render(formatter, state, data);
+        }
+
+        data.torchCount = 7;
+        long before = allocatedBytes();
+        int changed = render(formatter, state, data);
+        long allocated = allocatedBytes() - before;
+
+        assertEquals(1 << 3, changed);
+        // One String ("Torches: 7") for RemoteViews and the render state
+        assertTrue("allocated " + allocated + " bytes", allocated <= 96);
+    }
+
+    @Test
+    public void logWriteAllocatesNothing() throws Exception {
+        // The caller-side steps of WidgetErrorLogger.logInfo with the async writer enabled
+        File logFile = new File(folder.getRoot(), "widget_errors.log");
+        LogSegments segments = new LogSegments(logFile, 64 * 1024, 2);
+        LastErrorRecord record = new LastErrorRecord(new File(folder.getRoot(), "widget_errors.state"));
+        LogFilter filter = new LogFilter();
+        filter.setWindowMillis(0);
+        AsyncLogWriter writer = new AsyncLogWriter(segments, record, new AsyncLogWriter.Config());
+        try {
+            String message = "Widget update started";
+            for (int round = 0; round < 100; round++) {
+                for (int i = 0; i < 200; i++) {
+                    logInfo(record, filter, writer, message);
+                }
+                writer.flush(1000);
+            }
+
+            long before = allocatedBytes();
+            for (int i = 0; i < 100; i++) {
+                logInfo(record, filter, writer, message);
+            }
+            long allocated = allocatedBytes() - before;
+
+            assertEquals(0, allocated);
+        } finally {
+            writer.shutdown(1000);
+        }
+    }
+
+    private static void logInfo(LastErrorRecord record, LogFilter filter, AsyncLogWriter writer,
+                                String message) {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        record.record("INFO", message, now);
+        if (filter.accept("INFO", message, now, null)) {
+            writer.enqueue(now, "INFO", message, null);
+        }
+        WidgetMetrics.LOG_WRITE.recordSince(start);
+    }
+
+    @Test
+    public void formattingLogEntriesAllocatesNothing() {
+        StringBuilder out = new StringBuilder(256);
+        for (int i = 0; i < 20000; i++) {
+            out.setLength(0);
+            WidgetErrorLogger.formatEntry(out, SAVE_TIME + i % 50_000, "INFO", "Widget update started", null);
+        }
+
+        long before = allocatedBytes();
+        for (int i = 0; i < 1000; i++) {
+            out.setLength(0);
+            WidgetErrorLogger.formatEntry(out, SAVE_TIME + i * 10, "INFO", "Widget update started", null);
+        }
+        long allocated = allocatedBytes() - before;
+
+        assertEquals(0, allocated);
+    }
+}
@@ -0,0 +1,101 @@
+package com.yougame.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Tests for torn read handling in SaveDataCache
+ */
+public class SaveDataCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Reports the file as torn for a number of reads, then returns day_count
+     * from the file's length so each version parses differently
+     */
+    private static class FakeLoader implements SaveDataCache.Loader {
+        int tornReads = 0;
+        int reads = 0;
+        private long length;
+
+        @Override
+        public long readAndHash(File file) throws IOException {
+            reads++;
+            if (tornReads > 0) {
+                tornReads--;
+                throw new SaveDataCache.TornReadException("torn");
+            }
+            length = file.length();
+            return length;
+        }
+
+        @Override
+        public SaveData parse() {
+            SaveData data = new SaveData();
+            data.dayCount = (int) length;
+            return data;
+        }
+    }
+
+    private File write(String content) throws IOException {
+        File file = new File(folder.getRoot(), "widget_data.txt");
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    public void retriesTornRead() throws IOException {
+        SaveDataCache cache = new SaveDataCache();
+        FakeLoader loader = new FakeLoader();
+        loader.tornReads = SaveDataCache.MAX_READ_ATTEMPTS - 1;
+        long tornBefore = WidgetMetrics.TORN_READS.get();
+
+        SaveData data = cache.get(write("1234"), loader);
+
+        assertEquals(4, data.dayCount);
+        assertEquals(SaveDataCache.MAX_READ_ATTEMPTS, loader.reads);
+        assertEquals(tornBefore + SaveDataCache.MAX_READ_ATTEMPTS - 1, WidgetMetrics.TORN_READS.get());
+    }
+
+    @Test
+    public void keepsLastGoodDataWhileTorn() throws IOException {
+        SaveDataCache cache = new SaveDataCache();
+        FakeLoader loader = new FakeLoader();
+        SaveData good = cache.get(write("12"), loader);
+        long staleBefore = WidgetMetrics.STALE_SERVED.get();
+
+        File file = write("123456");
+        loader.tornReads = SaveDataCache.MAX_READ_ATTEMPTS;
+        assertSame(good, cache.get(file, loader));
+        assertEquals(staleBefore + 1, WidgetMetrics.STALE_SERVED.get());
+
+        // The writer finished; the file is read again even though it did not change since
+        assertEquals(6, cache.get(file, loader).dayCount);
+    }
+
+    @Test
+    public void tornReadWithoutGoodDataFails() throws IOException {
+        SaveDataCache cache = new SaveDataCache();
+        FakeLoader loader = new FakeLoader();
+        loader.tornReads = SaveDataCache.MAX_READ_ATTEMPTS;
+
+        try {
+            cache.get(write("12"), loader);
+            fail("Expected TornReadException");
+        } catch (SaveDataCache.TornReadException expected) {
+            assertEquals(SaveDataCache.MAX_READ_ATTEMPTS, loader.reads);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.yougame.widget;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+
+/**
+ * Tests for SaveHistoryReader and the trend rows drawn from it
+ */
+public class SaveHistoryReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Build a history file the way the game plugin's SaveHistoryWriter does,
+     * with record i holding day i and health i * 10
+     */
+    private File writeHistory(int capacity, int appended) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(
+            SaveHistoryReader.HEADER_SIZE + capacity * SaveHistoryReader.RECORD_SIZE);
+        data.putInt(0, SaveHistoryReader.MAGIC);
+        data.putShort(4, (short) SaveHistoryReader.VERSION);
+        data.putShort(6, (short) SaveHistoryReader.RECORD_SIZE);
+        data.putInt(8, capacity);
+        data.putLong(16, appended);
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < appended; i++) {
+            int offset = SaveHistoryReader.HEADER_SIZE + (i % capacity) * SaveHistoryReader.RECORD_SIZE;
+            data.putLong(offset, 1_000_000L + i);
+            data.putInt(offset + 8, i);
+            data.putFloat(offset + 12, i * 10f);
+            crc.reset();
+            crc.update(data.array(), offset, 28);
+            data.putInt(offset + 28, (int) crc.getValue());
+        }
+        File file = new File(folder.getRoot(), SaveHistoryReader.FILE_NAME);
+        Files.write(file.toPath(), data.array());
+        return file;
+    }
+
+    @Test
+    public void readsNewestRecordsOldestFirst() throws IOException {
+        File file = writeHistory(4, 6);
+        SaveHistoryReader reader = new SaveHistoryReader(3);
+
+        assertEquals(3, reader.read(file));
+        assertEquals(3, reader.getDayCount(0));
+        assertEquals(5, reader.getDayCount(2));
+        assertEquals(50f, reader.getHealth(2), 0f);
+        assertEquals(1_000_005L, reader.getTimestamp(2));
+    }
+
+    @Test
+    public void skipsCorruptRecord() throws IOException {
+        File file = writeHistory(4, 3);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        bytes[SaveHistoryReader.HEADER_SIZE + SaveHistoryReader.RECORD_SIZE + 8] ^= 1;
+        Files.write(file.toPath(), bytes);
+
+        SaveHistoryReader reader = new SaveHistoryReader(4);
+        assertEquals(2, reader.read(file));
+        assertEquals(0, reader.getDayCount(0));
+        assertEquals(2, reader.getDayCount(1));
+    }
+
+    @Test
+    public void missingOrForeignFileReadsNothing() throws IOException {
+        SaveHistoryReader reader = new SaveHistoryReader(4);
+        assertEquals(0, reader.read(new File(folder.getRoot(), "missing.bin")));
+
+        File other = folder.newFile("other.bin");
+        Files.write(other.toPath(), new byte[64]);
+        assertEquals(0, reader.read(other));
+    }
+
+    @Test
+    public void trendRows() throws IOException {
+        SaveHistoryReader reader = new SaveHistoryReader(12);
+        reader.read(writeHistory(16, 11));
+
+        assertEquals("Health \u2581\u2582\u2582\u2583\u2584\u2585\u2585\u2586\u2587\u2587\u2588 100%",
+            TrendFormatter.healthTrend(reader));
+        assertEquals("Days 0 \u2192 10 in 11 saves", TrendFormatter.dayTrend(reader));
+    }
+}
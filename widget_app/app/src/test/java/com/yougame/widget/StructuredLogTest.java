@@ -0,0 +1,134 @@
+package com.yougame.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+/**
+ * Tests for StructuredLog
+ */
+public class StructuredLogTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+    private static final long MINUTE = 60_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StructuredLog newLog(int maxSegmentBytes, int segmentCount) {
+        return new StructuredLog(new File(folder.getRoot(), "widget_errors.rec"),
+            new File(folder.getRoot(), "widget_errors.idx"), maxSegmentBytes, segmentCount);
+    }
+
+    /**
+     * One entry per minute; every tenth is an error
+     */
+    private static void appendMinutes(StructuredLog log, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            if (i % 10 == 0) {
+                log.append(T0 + i * MINUTE, "ERROR", "Error reading save data file: entry " + i, null);
+            } else {
+                log.append(T0 + i * MINUTE, "INFO", "Widget update " + i, null);
+            }
+        }
+        log.flush();
+    }
+
+    @Test
+    public void queriesSeekToMatchingBlocks() throws IOException {
+        StructuredLog log = newLog(1024 * 1024, 1);
+        appendMinutes(log, 1000);
+
+        // The last hour only touches the newest blocks
+        long now = T0 + 999 * MINUTE;
+        List<StructuredLog.Record> errors = log.query(StructuredLog.MASK_ERROR,
+            now - 60 * MINUTE, now, StructuredLog.ANY_MESSAGE, 100);
+        assertEquals(6, errors.size());
+        assertEquals(T0 + 990 * MINUTE, errors.get(0).timeMillis);
+        assertEquals("Error reading save data file: entry 940", errors.get(5).payload);
+        assertTrue(log.getBlocksRead() <= 3);
+
+        assertEquals(3, log.query(StructuredLog.MASK_ALL, T0, now, StructuredLog.ANY_MESSAGE, 3).size());
+    }
+
+    @Test
+    public void countsFromIndexAndByMessage() throws IOException {
+        StructuredLog log = newLog(1024 * 1024, 1);
+        appendMinutes(log, 1000);
+
+        long blocksBefore = log.getBlocksRead();
+        assertEquals(100, log.count(StructuredLog.MASK_ERROR, 0, Long.MAX_VALUE, StructuredLog.ANY_MESSAGE));
+        assertEquals(1000, log.count(StructuredLog.MASK_ALL, 0, Long.MAX_VALUE, StructuredLog.ANY_MESSAGE));
+        assertEquals(blocksBefore, log.getBlocksRead());
+
+        int parseFailures = StructuredLog.messageId("Error reading save data file: other details");
+        assertEquals(100, log.count(StructuredLog.MASK_ALL, 0, Long.MAX_VALUE, parseFailures));
+        assertEquals(50, log.count(StructuredLog.levelMaskAtLeast("WARN"), T0, T0 + 499 * MINUTE,
+            StructuredLog.ANY_MESSAGE));
+    }
+
+    @Test
+    public void convertsBackToTextLogFormat() throws IOException {
+        StructuredLog log = newLog(1024 * 1024, 1);
+        IOException exception = new IOException("disk full");
+        log.append(T0, "INFO", "Widget enabled", null);
+        log.append(T0 + 1000, "ERROR", "Failed to write", exception);
+
+        StringBuilder expected = new StringBuilder();
+        WidgetErrorLogger.formatEntry(expected, T0, "INFO", "Widget enabled", null);
+        WidgetErrorLogger.formatEntry(expected, T0 + 1000, "ERROR", "Failed to write", exception);
+        StringBuilder text = new StringBuilder();
+        log.exportText(text);
+        assertEquals(expected.toString(), text.toString());
+    }
+
+    @Test
+    public void reopensAndDropsTornRecord() throws IOException {
+        StructuredLog log = newLog(1024 * 1024, 1);
+        appendMinutes(log, 40);
+        log.close();
+
+        // Simulate a write interrupted in the middle of a record
+        File records = new File(folder.getRoot(), "widget_errors.rec");
+        try (RandomAccessFile file = new RandomAccessFile(records, "rw")) {
+            file.setLength(file.length() - 5);
+        }
+
+        StructuredLog reopened = newLog(1024 * 1024, 1);
+        assertEquals(39, reopened.count(StructuredLog.MASK_ALL, 0, Long.MAX_VALUE, StructuredLog.ANY_MESSAGE));
+        reopened.append(T0 + 100 * MINUTE, "WARN", "Slow update", null);
+        List<StructuredLog.Record> newest = reopened.query(StructuredLog.MASK_ALL, 0, Long.MAX_VALUE,
+            StructuredLog.ANY_MESSAGE, 2);
+        assertEquals("Slow update", newest.get(0).payload);
+        assertEquals("Widget update 38", newest.get(1).payload);
+    }
+
+    @Test
+    public void rotationKeepsSizeBoundedAndQueriesOlderSegments() throws IOException {
+        StructuredLog log = newLog(2048, 3);
+        appendMinutes(log, 500);
+
+        long total = 0;
+        for (int i = 0; i < 3; i++) {
+            File segment = new File(folder.getRoot(), "widget_errors.rec" + (i == 0 ? "" : "." + i));
+            assertTrue(segment.exists());
+            total += segment.length();
+        }
+        assertTrue(total <= 3 * 2048);
+
+        long kept = log.count(StructuredLog.MASK_ALL, 0, Long.MAX_VALUE, StructuredLog.ANY_MESSAGE);
+        List<StructuredLog.Record> all = log.query(StructuredLog.MASK_ALL, 0, Long.MAX_VALUE,
+            StructuredLog.ANY_MESSAGE, 1000);
+        assertEquals(kept, all.size());
+        assertEquals(T0 + 499 * MINUTE, all.get(0).timeMillis);
+        assertEquals(T0 + (500 - kept) * MINUTE, all.get(all.size() - 1).timeMillis);
+    }
+}
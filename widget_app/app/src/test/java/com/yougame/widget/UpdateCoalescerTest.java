@@ -0,0 +1,93 @@
+package com.yougame.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for UpdateCoalescer, driven by a fake clock and scheduler
+ */
+public class UpdateCoalescerTest {
+
+    private static final long WINDOW = 1000;
+    private static final long MIN_INTERVAL = 2000;
+
+    private long now = 0;
+    private final List<Long> dueTimes = new ArrayList<>();
+    private final List<Runnable> tasks = new ArrayList<>();
+    private final List<Long> deliveries = new ArrayList<>();
+    private UpdateCoalescer coalescer;
+
+    @Before
+    public void setUp() {
+        coalescer = new UpdateCoalescer(
+            () -> now,
+            (task, delay) -> {
+                tasks.add(task);
+                dueTimes.add(now + delay);
+            },
+            WINDOW, MIN_INTERVAL,
+            () -> deliveries.add(now));
+    }
+
+    private void advanceTo(long time) {
+        while (true) {
+            int next = -1;
+            for (int i = 0; i < tasks.size(); i++) {
+                if (dueTimes.get(i) <= time && (next < 0 || dueTimes.get(i) < dueTimes.get(next))) {
+                    next = i;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            now = dueTimes.remove(next);
+            tasks.remove(next).run();
+        }
+        now = time;
+    }
+
+    @Test
+    public void requestsWithinWindowAreMerged() {
+        for (int i = 0; i < 5; i++) {
+            coalescer.request();
+            advanceTo(now + 100);
+        }
+        advanceTo(WINDOW);
+
+        assertEquals(1, deliveries.size());
+        assertEquals(Long.valueOf(WINDOW), deliveries.get(0));
+        assertEquals(5, coalescer.getRequestCount());
+        assertEquals(4, coalescer.getMergedCount());
+    }
+
+    @Test
+    public void deliveriesRespectMinimumInterval() {
+        coalescer.request();
+        advanceTo(WINDOW);
+        coalescer.request();
+        advanceTo(WINDOW + MIN_INTERVAL - 1);
+        assertEquals(1, deliveries.size());
+
+        advanceTo(WINDOW + MIN_INTERVAL);
+        assertEquals(2, deliveries.size());
+    }
+
+    @Test
+    public void flushNowDeliversPendingRequestImmediately() {
+        coalescer.request();
+        assertTrue(coalescer.flushNow());
+        assertEquals(1, deliveries.size());
+
+        // The scheduled check must not deliver a second time
+        advanceTo(10 * WINDOW);
+        assertEquals(1, deliveries.size());
+        assertFalse(coalescer.flushNow());
+    }
+}
@@ -0,0 +1,195 @@
+package com.yougame.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tests for WidgetDataParser, the streaming parser for widget_data.txt
+ */
+public class WidgetDataParserTest {
+
+    // Same layout as save_game_widget_exporter.gd writes
+    private static final String FULL_FILE =
+        "timestamp=1737900000\n"
+        + "day_count=12\n"
+        + "current_health=87.5\n"
+        + "torch_count=4\n"
+        + "position_x=-120.25\n"
+        + "position_z=64\n"
+        + "error_count=3\n"
+        + "total_log_count=42\n"
+        + "last_error=Sun lighting issue detected\n";
+
+    private final WidgetDataParser parser = new WidgetDataParser();
+
+    private SaveData parse(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        SaveData data = new SaveData();
+        parser.parse(bytes, bytes.length, data);
+        return data;
+    }
+
+    @Test
+    public void parsesEveryKey() {
+        SaveData data = parse(FULL_FILE);
+
+        assertEquals(1737900000000L, data.timestamp);
+        assertEquals(12, data.dayCount);
+        assertEquals(87.5f, data.currentHealth, 0.0f);
+        assertEquals(4, data.torchCount);
+        assertEquals(-120.25f, data.positionX, 0.0f);
+        assertEquals(64f, data.positionZ, 0.0f);
+        assertEquals(3, data.errorCount);
+        assertEquals(42, data.totalLogCount);
+        assertEquals("Sun lighting issue detected", data.lastError);
+        assertEquals(9, parser.getLineCount());
+        assertEquals(0, parser.getMalformedCount());
+    }
+
+    @Test
+    public void parsesTorchCount() {
+        SaveData data = parse("torch_count=17\n");
+        assertEquals(17, data.torchCount);
+    }
+
+    @Test
+    public void timestampAcceptsFractionalSecondsAndMillis() {
+        assertEquals(1737900000123L, parse("timestamp=1737900000.123456\n").timestamp);
+        assertEquals(1737900000500L, parse("timestamp=1737900000.5\n").timestamp);
+        assertEquals(1737900000123L, parse("timestamp=1737900000123\n").timestamp);
+    }
+
+    @Test
+    public void floatsAcceptExponentAndSign() {
+        assertEquals(1.5e3f, parse("position_x=1.5e3\n").positionX, 0.0f);
+        assertEquals(-0.05f, parse("position_z=-0.05\n").positionZ, 1e-7f);
+        assertEquals(100f, parse("current_health=+100\n").currentHealth, 0.0f);
+    }
+
+    @Test
+    public void trimsWhitespaceAndCarriageReturns() {
+        SaveData data = parse("  day_count = 5 \r\nlast_error=  spaced out  \r\n");
+        assertEquals(5, data.dayCount);
+        assertEquals("spaced out", data.lastError);
+    }
+
+    @Test
+    public void lastErrorMayContainEquals() {
+        assertEquals("a=b", parse("last_error=a=b\n").lastError);
+    }
+
+    @Test
+    public void handlesMissingTrailingNewline() {
+        assertEquals(9, parse("day_count=9").dayCount);
+    }
+
+    @Test
+    public void skipsUnknownKeysAndLinesWithoutEquals() {
+        SaveData data = parse("# comment\nposition_y=3\nunknown_key_of_some_length=1\n\nday_count=2\n");
+        assertEquals(2, data.dayCount);
+        assertEquals(0, parser.getMalformedCount());
+    }
+
+    @Test
+    public void malformedValuesKeepDefaultsAndAreReported() {
+        String text = "day_count=abc\n"
+            + "current_health=12x\n"
+            + "torch_count=\n"
+            + "error_count=99999999999\n"
+            + "timestamp=-5\n"
+            + "total_log_count=7\n";
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        SaveData data = new SaveData();
+        parser.parse(bytes, bytes.length, data);
+
+        assertEquals(0, data.dayCount);
+        assertEquals(0f, data.currentHealth, 0.0f);
+        assertEquals(0, data.torchCount);
+        assertEquals(0, data.errorCount);
+        assertEquals(0, data.timestamp);
+        assertEquals(7, data.totalLogCount);
+        assertEquals(5, parser.getMalformedCount());
+        assertEquals(1, parser.getFirstMalformedLine());
+        assertEquals("day_count=abc", parser.getFirstMalformedText(bytes));
+    }
+
+    @Test
+    public void longValuesRejectOverflowNotLength() {
+        assertEquals(0, parse("timestamp=99999999999999999999\n").timestamp);
+        assertEquals(1, parser.getMalformedCount());
+
+        // Leading zeros make the text long but the value fits
+        assertEquals(1737900000000L, parse("timestamp=000000000000000000001737900000\n").timestamp);
+        assertEquals(0, parser.getMalformedCount());
+    }
+
+    @Test
+    public void resetsFieldsMissingFromFile() {
+        SaveData data = parse(FULL_FILE);
+        byte[] bytes = "day_count=1\n".getBytes(StandardCharsets.UTF_8);
+        parser.parse(bytes, bytes.length, data);
+
+        assertEquals(1, data.dayCount);
+        assertEquals(0, data.torchCount);
+        assertEquals("No errors", data.lastError);
+        assertNull(parser.getFirstMalformedText(bytes));
+    }
+
+    @Test
+    public void reusesLastErrorStringWhenUnchanged() {
+        byte[] bytes = FULL_FILE.getBytes(StandardCharsets.UTF_8);
+        SaveData first = new SaveData();
+        SaveData second = new SaveData();
+        parser.parse(bytes, bytes.length, first);
+        parser.parse(bytes, bytes.length, second);
+        assertSame(first.lastError, second.lastError);
+    }
+
+    @Test
+    public void parsesLargeFiles() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            text.append("padding_").append(i).append("=some value that is ignored\n");
+        }
+        text.append(FULL_FILE);
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+
+        SaveData data = new SaveData();
+        int lines = parser.parse(bytes, bytes.length, data);
+
+        assertEquals(20009, lines);
+        assertEquals(4, data.torchCount);
+        assertEquals(42, data.totalLogCount);
+    }
+
+    @Test
+    public void steadyStateParseDoesNotAllocate() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        byte[] bytes = FULL_FILE.getBytes(StandardCharsets.UTF_8);
+        SaveData data = new SaveData();
+        for (int i = 0; i < 20000; i++) {
+            parser.parse(bytes, bytes.length, data);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1000; i++) {
+            parser.parse(bytes, bytes.length, data);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(0, allocated);
+    }
+}
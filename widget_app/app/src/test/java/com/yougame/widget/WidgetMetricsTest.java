@@ -0,0 +1,81 @@
+package com.yougame.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Tests for WidgetMetrics. Metrics are process-wide, so tests compare deltas.
+ */
+public class WidgetMetricsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void samplesLandInMatchingBucket() {
+        WidgetMetrics.Histogram histogram = WidgetMetrics.PARSE;
+        long inFirst = histogram.getBucketCount(0);
+        long inSecond = histogram.getBucketCount(1);
+        long inOverflow = histogram.getBucketCount(WidgetMetrics.LATENCY_BOUNDS_US.length);
+
+        histogram.recordNanos(50_000);       // 50us, upper bound of the first bucket
+        histogram.recordNanos(51_000);       // 51us
+        histogram.recordNanos(10_000_000_000L); // 10s
+
+        assertEquals(inFirst + 1, histogram.getBucketCount(0));
+        assertEquals(inSecond + 1, histogram.getBucketCount(1));
+        assertEquals(inOverflow + 1, histogram.getBucketCount(WidgetMetrics.LATENCY_BOUNDS_US.length));
+        assertTrue(histogram.getMaxMicros() >= 10_000_000L);
+    }
+
+    @Test
+    public void snapshotIsJsonWithAllMetrics() throws Exception {
+        WidgetMetrics.CACHE_HITS.increment();
+        File file = new File(folder.getRoot(), WidgetMetrics.SNAPSHOT_FILE);
+        WidgetMetrics.writeSnapshot(file);
+
+        String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        assertTrue(json.startsWith("{"));
+        assertTrue(json.trim().endsWith("}"));
+        assertTrue(json.contains("\"cache_hits\": " + WidgetMetrics.CACHE_HITS.get()));
+        for (WidgetMetrics.Histogram histogram : WidgetMetrics.getHistograms()) {
+            assertTrue(json.contains("\"" + histogram.getName() + "\": {"));
+        }
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void recordingDoesNotAllocate() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        for (int i = 0; i < 20000; i++) {
+            WidgetMetrics.LOG_WRITE.recordSince(System.nanoTime());
+            WidgetMetrics.PUSH_SKIPPED.increment();
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1000; i++) {
+            WidgetMetrics.LOG_WRITE.recordSince(System.nanoTime());
+            WidgetMetrics.PUSH_SKIPPED.increment();
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(0, allocated);
+    }
+}
@@ -0,0 +1,64 @@
+package com.yougame.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for WidgetRenderState
+ */
+public class WidgetRenderStateTest {
+
+    private final WidgetRenderState state = new WidgetRenderState(3);
+
+    private int render(int appWidgetId, String... fields) {
+        int changed = state.diff(appWidgetId, fields);
+        state.record(appWidgetId, fields, changed);
+        return changed;
+    }
+
+    @Test
+    public void firstRenderIsFullUpdate() {
+        assertEquals(WidgetRenderState.FULL_UPDATE, render(1, "a", "b", "c"));
+        assertEquals(1, state.getFullCount());
+        assertEquals(0, state.getBytesSaved());
+    }
+
+    @Test
+    public void unchangedRenderIsSkipped() {
+        render(1, "a", "b", "c");
+        assertEquals(0, render(1, "a", "b", new StringBuilder("c").toString()));
+        assertEquals(1, state.getSkippedCount());
+        assertTrue(state.getBytesSaved() > 0);
+    }
+
+    @Test
+    public void onlyChangedFieldsAreMarked() {
+        render(1, "a", "b", "c");
+        int changed = render(1, "a", "B", "c");
+
+        assertFalse(WidgetRenderState.isChanged(changed, 0));
+        assertTrue(WidgetRenderState.isChanged(changed, 1));
+        assertFalse(WidgetRenderState.isChanged(changed, 2));
+        assertEquals(1, state.getPartialCount());
+        assertEquals(2 * (WidgetRenderState.ACTION_OVERHEAD_BYTES + 2), state.getBytesSaved());
+
+        // The partial push becomes the new baseline
+        assertEquals(0, render(1, "a", "B", "c"));
+    }
+
+    @Test
+    public void widgetsAreTrackedSeparately() {
+        render(1, "a", "b", "c");
+        assertEquals(WidgetRenderState.FULL_UPDATE, render(2, "a", "b", "c"));
+    }
+
+    @Test
+    public void forgottenWidgetGetsFullUpdate() {
+        render(1, "a", "b", "c");
+        state.forget(new int[] {1});
+        assertEquals(WidgetRenderState.FULL_UPDATE, render(1, "a", "b", "c"));
+    }
+}
@@ -0,0 +1,92 @@
+package com.yougame.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for WidgetSizeTemplates and rendering with a template's fields only
+ */
+public class WidgetSizeTemplatesTest {
+
+    private static final int COMPACT_LAYOUT = 1;
+    private static final int FULL_LAYOUT = 2;
+
+    private WidgetSizeTemplates templates;
+
+    @Before
+    public void setUp() {
+        templates = new WidgetSizeTemplates(WidgetSizeTemplates.EXPANDED);
+        templates.setTemplate(WidgetSizeTemplates.COMPACT, COMPACT_LAYOUT, 0, 1);
+        templates.setTemplate(WidgetSizeTemplates.STANDARD, FULL_LAYOUT, 0, 1, 2, 3);
+        templates.setTemplate(WidgetSizeTemplates.EXPANDED, FULL_LAYOUT, 0, 1, 2, 3);
+    }
+
+    @Test
+    public void sizesMapToBuckets() {
+        assertEquals(WidgetSizeTemplates.COMPACT, templates.bucketFor(110, 180));
+        assertEquals(WidgetSizeTemplates.COMPACT, templates.bucketFor(250, 40));
+        assertEquals(WidgetSizeTemplates.STANDARD, templates.bucketFor(250, 110));
+        assertEquals(WidgetSizeTemplates.EXPANDED, templates.bucketFor(250, 250));
+        // Not reported by the launcher
+        assertEquals(WidgetSizeTemplates.EXPANDED, templates.bucketFor(0, 0));
+    }
+
+    @Test
+    public void templateChangeIsReported() {
+        assertNull(templates.get(7));
+        assertTrue(templates.setSize(7, 110, 110));
+        assertEquals(COMPACT_LAYOUT, templates.get(7).layoutId);
+
+        assertFalse(templates.setSize(7, 120, 110));
+        assertTrue(templates.setSize(7, 250, 110));
+        assertEquals(FULL_LAYOUT, templates.get(7).layoutId);
+
+        // Standard and expanded share a layout
+        assertFalse(templates.setSize(7, 250, 300));
+        assertSame(templates.getTemplate(WidgetSizeTemplates.EXPANDED), templates.get(7));
+    }
+
+    @Test
+    public void forgottenWidgetsAreLookedUpAgain() {
+        templates.setSize(1, 110, 110);
+        templates.setSize(2, 250, 110);
+        templates.setSize(3, 250, 300);
+        assertEquals("compact=1 standard=1 expanded=1", templates.getBucketStats());
+
+        templates.forget(new int[] {1});
+        assertNull(templates.get(1));
+        assertEquals(FULL_LAYOUT, templates.get(3).layoutId);
+        assertEquals("compact=0 standard=1 expanded=1", templates.getBucketStats());
+
+        templates.clear();
+        assertNull(templates.get(2));
+    }
+
+    @Test
+    public void hiddenFieldsAreNeitherComparedNorSent() {
+        WidgetSizeTemplates.Template compact = templates.getTemplate(WidgetSizeTemplates.COMPACT);
+        WidgetFieldFormatter formatter = new WidgetFieldFormatter(4, "MMM dd, HH:mm");
+        WidgetRenderState state = new WidgetRenderState(4);
+
+        formatter.begin(0).append("Day: 1");
+        formatter.begin(1).append("Health: 50%");
+        formatter.begin(2).append("Left over from a larger widget");
+        formatter.begin(3).append("Also hidden");
+        formatter.retain(compact.fieldMask);
+        assertNull(formatter.get(2));
+        int changed = state.diff(1, formatter.getFields());
+        assertEquals(WidgetRenderState.FULL_UPDATE, changed);
+        state.record(1, formatter.toPushed(changed), changed);
+
+        // Another widget's render on this thread changed the hidden builders
+        formatter.begin(2).append("Something else");
+        formatter.retain(compact.fieldMask);
+        assertEquals(0, state.diff(1, formatter.getFields()));
+    }
+}
@@ -0,0 +1,71 @@
+package com.yougame.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for WidgetUpdateExecutor
+ */
+public class WidgetUpdateExecutorTest {
+
+    private static final long WAIT_SECONDS = 5;
+
+    @Test
+    public void newerUpdateReplacesQueuedOne() throws InterruptedException {
+        WidgetUpdateExecutor executor = new WidgetUpdateExecutor(WidgetUpdateExecutor.DEFAULT_TIMEOUT_MS);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(3);
+        final AtomicInteger runs = new AtomicInteger();
+
+        // Hold the update thread so the next two updates queue up
+        executor.execute("busy", () -> awaitQuietly(blocker), finished::countDown);
+        executor.execute("update:[1]", runs::incrementAndGet, finished::countDown);
+        executor.execute("update:[1]", runs::incrementAndGet, finished::countDown);
+        blocker.countDown();
+
+        assertTrue(finished.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+        assertEquals(1, executor.getReplacedCount());
+    }
+
+    @Test
+    public void timeoutReleasesBroadcastOnce() throws InterruptedException {
+        WidgetUpdateExecutor executor = new WidgetUpdateExecutor(50);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicInteger finishes = new AtomicInteger();
+
+        executor.execute("slow", () -> {
+            awaitQuietly(blocker);
+            done.countDown();
+        }, finishes::incrementAndGet);
+
+        // The guard fires while the work is still blocked
+        long deadline = System.currentTimeMillis() + WAIT_SECONDS * 1000;
+        while (finishes.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, finishes.get());
+        assertEquals(1, executor.getTimedOutCount());
+
+        // Completing the work afterwards must not finish a second time
+        blocker.countDown();
+        assertTrue(done.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(1, finishes.get());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
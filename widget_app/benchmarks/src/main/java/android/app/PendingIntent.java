@@ -0,0 +1,27 @@
+package android.app;
+
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Benchmark stand-in for android.app.PendingIntent
+ */
+public final class PendingIntent {
+
+    public static final int FLAG_UPDATE_CURRENT = 1 << 27;
+    public static final int FLAG_IMMUTABLE = 1 << 26;
+
+    private final Intent intent;
+
+    private PendingIntent(Intent intent) {
+        this.intent = intent;
+    }
+
+    public static PendingIntent getActivity(Context context, int requestCode, Intent intent, int flags) {
+        return new PendingIntent(intent);
+    }
+
+    public static PendingIntent getBroadcast(Context context, int requestCode, Intent intent, int flags) {
+        return new PendingIntent(intent);
+    }
+}
@@ -0,0 +1,187 @@
+package android.appwidget;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Bundle;
+import android.widget.RemoteViews;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Benchmark stand-in for android.appwidget.AppWidgetManager
+ *
+ * Keeps the text each widget shows: a full update replaces it, a partial
+ * update changes only the views it sets and, like on a device, is ignored
+ * for a widget that never got a full update. Widget ids are expected to be
+ * small (they index an array), as the ones the system hands out are.
+ */
+public class AppWidgetManager {
+
+    public static final String ACTION_APPWIDGET_UPDATE = "android.appwidget.action.APPWIDGET_UPDATE";
+    public static final String ACTION_APPWIDGET_DELETED = "android.appwidget.action.APPWIDGET_DELETED";
+    public static final String ACTION_APPWIDGET_ENABLED = "android.appwidget.action.APPWIDGET_ENABLED";
+    public static final String ACTION_APPWIDGET_DISABLED = "android.appwidget.action.APPWIDGET_DISABLED";
+    public static final String ACTION_APPWIDGET_OPTIONS_CHANGED = "android.appwidget.action.APPWIDGET_UPDATE_OPTIONS";
+    public static final String EXTRA_APPWIDGET_IDS = "appWidgetIds";
+    public static final String EXTRA_APPWIDGET_ID = "appWidgetId";
+    public static final String EXTRA_APPWIDGET_OPTIONS = "appWidgetOptions";
+    public static final String OPTION_APPWIDGET_MIN_WIDTH = "appWidgetMinWidth";
+    public static final String OPTION_APPWIDGET_MIN_HEIGHT = "appWidgetMinHeight";
+    public static final String OPTION_APPWIDGET_MAX_WIDTH = "appWidgetMaxWidth";
+    public static final String OPTION_APPWIDGET_MAX_HEIGHT = "appWidgetMaxHeight";
+
+    /**
+     * Called after an update was applied, on the thread that sent it
+     */
+    public interface UpdateListener {
+        void onWidgetUpdated(AppWidgetManager manager, int appWidgetId, RemoteViews views, boolean partial);
+    }
+
+    /**
+     * What one widget shows
+     */
+    private static final class Screen {
+        int[] viewIds = new int[16];
+        CharSequence[] texts = new CharSequence[16];
+        int count = 0;
+
+        void set(int viewId, CharSequence text) {
+            for (int i = 0; i < count; i++) {
+                if (viewIds[i] == viewId) {
+                    texts[i] = text;
+                    return;
+                }
+            }
+            if (count == viewIds.length) {
+                viewIds = Arrays.copyOf(viewIds, count * 2);
+                texts = Arrays.copyOf(texts, count * 2);
+            }
+            viewIds[count] = viewId;
+            texts[count] = text;
+            count++;
+        }
+
+        CharSequence get(int viewId) {
+            for (int i = 0; i < count; i++) {
+                if (viewIds[i] == viewId) {
+                    return texts[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final AppWidgetManager INSTANCE = new AppWidgetManager();
+
+    private final Map<String, int[]> boundIds = new HashMap<>();
+    private final Map<Integer, Bundle> options = new HashMap<>();
+    private Screen[] screens = new Screen[64];
+    private volatile UpdateListener listener = null;
+
+    private long fullUpdates = 0;
+    private long partialUpdates = 0;
+    private long ignoredUpdates = 0;
+    private long updateBytes = 0;
+
+    public static AppWidgetManager getInstance(Context context) {
+        return INSTANCE;
+    }
+
+    /**
+     * Place widgets of the given provider class
+     */
+    public synchronized void setAppWidgetIds(Class<?> provider, int[] appWidgetIds) {
+        boundIds.put(provider.getName(), appWidgetIds.clone());
+    }
+
+    public synchronized int[] getAppWidgetIds(ComponentName provider) {
+        int[] ids = boundIds.get(provider.getClassName());
+        return ids != null ? ids.clone() : new int[0];
+    }
+
+    /**
+     * Set a widget's options, e.g. its size; sends no broadcast
+     */
+    public synchronized void setAppWidgetOptions(int appWidgetId, Bundle widgetOptions) {
+        options.put(appWidgetId, widgetOptions);
+    }
+
+    /**
+     * The widget's options; empty (size unknown) unless set
+     */
+    public synchronized Bundle getAppWidgetOptions(int appWidgetId) {
+        Bundle widgetOptions = options.get(appWidgetId);
+        return widgetOptions != null ? widgetOptions : new Bundle();
+    }
+
+    public void setUpdateListener(UpdateListener listener) {
+        this.listener = listener;
+    }
+
+    public void updateAppWidget(int appWidgetId, RemoteViews views) {
+        apply(appWidgetId, views, false);
+    }
+
+    public void partiallyUpdateAppWidget(int appWidgetId, RemoteViews views) {
+        apply(appWidgetId, views, true);
+    }
+
+    /**
+     * Text the widget currently shows in the given view, or null
+     */
+    public synchronized CharSequence getText(int appWidgetId, int viewId) {
+        Screen screen = appWidgetId < screens.length ? screens[appWidgetId] : null;
+        return screen != null ? screen.get(viewId) : null;
+    }
+
+    public synchronized long getFullUpdateCount() {
+        return fullUpdates;
+    }
+
+    public synchronized long getPartialUpdateCount() {
+        return partialUpdates;
+    }
+
+    /**
+     * Partial updates dropped because the widget never got a full update
+     */
+    public synchronized long getIgnoredUpdateCount() {
+        return ignoredUpdates;
+    }
+
+    /**
+     * Estimated bytes sent with all updates
+     */
+    public synchronized long getUpdateBytes() {
+        return updateBytes;
+    }
+
+    private synchronized void apply(int appWidgetId, RemoteViews views, boolean partial) {
+        if (appWidgetId >= screens.length) {
+            screens = Arrays.copyOf(screens, Math.max(appWidgetId + 1, screens.length * 2));
+        }
+        Screen screen = screens[appWidgetId];
+        if (partial && screen == null) {
+            ignoredUpdates++;
+            return;
+        }
+        if (!partial) {
+            screen = new Screen();
+            screens[appWidgetId] = screen;
+            fullUpdates++;
+        } else {
+            partialUpdates++;
+        }
+        for (int i = 0; i < views.getTextCount(); i++) {
+            screen.set(views.getTextViewId(i), views.getText(i));
+        }
+        updateBytes += views.getEstimatedBytes();
+
+        UpdateListener current = listener;
+        if (current != null) {
+            current.onWidgetUpdated(this, appWidgetId, views, partial);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package android.appwidget;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+
+/**
+ * Benchmark stand-in for android.appwidget.AppWidgetProvider: dispatches
+ * the widget broadcasts to the callbacks
+ */
+public class AppWidgetProvider extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String action = intent.getAction();
+        if (AppWidgetManager.ACTION_APPWIDGET_UPDATE.equals(action)) {
+            int[] appWidgetIds = intent.getIntArrayExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS);
+            if (appWidgetIds != null && appWidgetIds.length > 0) {
+                onUpdate(context, AppWidgetManager.getInstance(context), appWidgetIds);
+            }
+        } else if (AppWidgetManager.ACTION_APPWIDGET_DELETED.equals(action)) {
+            int appWidgetId = intent.getIntExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, 0);
+            if (appWidgetId != 0) {
+                onDeleted(context, new int[] {appWidgetId});
+            }
+        } else if (AppWidgetManager.ACTION_APPWIDGET_OPTIONS_CHANGED.equals(action)) {
+            int appWidgetId = intent.getIntExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, 0);
+            Bundle options = intent.getBundleExtra(AppWidgetManager.EXTRA_APPWIDGET_OPTIONS);
+            if (appWidgetId != 0 && options != null) {
+                onAppWidgetOptionsChanged(context, AppWidgetManager.getInstance(context), appWidgetId, options);
+            }
+        } else if (AppWidgetManager.ACTION_APPWIDGET_ENABLED.equals(action)) {
+            onEnabled(context);
+        } else if (AppWidgetManager.ACTION_APPWIDGET_DISABLED.equals(action)) {
+            onDisabled(context);
+        }
+    }
+
+    public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+    }
+
+    public void onDeleted(Context context, int[] appWidgetIds) {
+    }
+
+    public void onAppWidgetOptionsChanged(Context context, AppWidgetManager appWidgetManager, int appWidgetId,
+                                          Bundle newOptions) {
+    }
+
+    public void onEnabled(Context context) {
+    }
+
+    public void onDisabled(Context context) {
+    }
+}
@@ -0,0 +1,49 @@
+package android.content;
+
+/**
+ * Benchmark stand-in for android.content.BroadcastReceiver
+ *
+ * Context.sendBroadcast sets the pending result before calling onReceive;
+ * goAsync hands it to the receiver, which must finish it exactly once.
+ */
+public abstract class BroadcastReceiver {
+
+    /**
+     * Keeps a broadcast alive after onReceive returned
+     */
+    public static class PendingResult {
+
+        private final Runnable onFinish;
+        private boolean finished = false;
+
+        public PendingResult(Runnable onFinish) {
+            this.onFinish = onFinish;
+        }
+
+        public final void finish() {
+            synchronized (this) {
+                if (finished) {
+                    throw new IllegalStateException("Broadcast already finished");
+                }
+                finished = true;
+            }
+            if (onFinish != null) {
+                onFinish.run();
+            }
+        }
+    }
+
+    private PendingResult pendingResult = null;
+
+    public abstract void onReceive(Context context, Intent intent);
+
+    public final PendingResult goAsync() {
+        PendingResult result = pendingResult;
+        pendingResult = null;
+        return result;
+    }
+
+    public final void setPendingResult(PendingResult result) {
+        pendingResult = result;
+    }
+}
@@ -0,0 +1,41 @@
+package android.content;
+
+/**
+ * Benchmark stand-in for android.content.ComponentName
+ */
+public final class ComponentName {
+
+    private final String packageName;
+    private final String className;
+
+    public ComponentName(String packageName, String className) {
+        this.packageName = packageName;
+        this.className = className;
+    }
+
+    public ComponentName(Context context, Class<?> cls) {
+        this(context.getPackageName(), cls.getName());
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof ComponentName)) {
+            return false;
+        }
+        ComponentName name = (ComponentName) other;
+        return packageName.equals(name.packageName) && className.equals(name.className);
+    }
+
+    @Override
+    public int hashCode() {
+        return packageName.hashCode() * 31 + className.hashCode();
+    }
+}
@@ -0,0 +1,29 @@
+package android.content;
+
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+
+/**
+ * Benchmark stand-in for android.content.ContentResolver
+ *
+ * No content providers are installed: queries return null, like for an
+ * unknown authority, so the widget app reads the game's data files.
+ * Observers are accepted and never notified.
+ */
+public class ContentResolver {
+
+    public final Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                              String sortOrder) {
+        return null;
+    }
+
+    public void notifyChange(Uri uri, ContentObserver observer) {
+    }
+
+    public final void registerContentObserver(Uri uri, boolean notifyForDescendants, ContentObserver observer) {
+    }
+
+    public final void unregisterContentObserver(ContentObserver observer) {
+    }
+}
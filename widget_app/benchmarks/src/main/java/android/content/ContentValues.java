@@ -0,0 +1,7 @@
+package android.content;
+
+/**
+ * Benchmark stand-in for android.content.ContentValues; never filled
+ */
+public final class ContentValues {
+}
@@ -0,0 +1,143 @@
+package android.content;
+
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Benchmark stand-in for android.content.Context
+ *
+ * Only the methods used by the widget classes under test. Both the external
+ * and the internal files directory point to the given directory.
+ *
+ * String resources return what was registered with putString ("" if
+ * nothing was). The content resolver has no providers. Explicit broadcasts
+ * (Intent with a component) go to the receiver registered for that class
+ * with addReceiver and are delivered on the main looper, like the system
+ * would; a receiver that doesn't call goAsync finishes when onReceive returns.
+ */
+public class Context {
+
+    public static final int MODE_PRIVATE = 0;
+
+    /**
+     * Gets every delivered broadcast once it finished
+     */
+    public interface BroadcastListener {
+        /**
+         * @param sentNanos System.nanoTime() when sendBroadcast was called
+         */
+        void onBroadcastFinished(Intent intent, long sentNanos);
+    }
+
+    private final File filesDir;
+    private final Resources resources = new Resources();
+    private final PackageManager packageManager = new PackageManager();
+    private final ContentResolver contentResolver = new ContentResolver();
+    private final Map<Integer, String> strings = new HashMap<>();
+    private final Map<String, BroadcastReceiver> receivers = new HashMap<>();
+    private volatile BroadcastListener broadcastListener = null;
+
+    public Context(File filesDir) {
+        this.filesDir = filesDir;
+    }
+
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    public File getExternalFilesDir(String type) {
+        return filesDir;
+    }
+
+    public File getFilesDir() {
+        return filesDir;
+    }
+
+    public String getPackageName() {
+        return "com.yougame.widget";
+    }
+
+    public Resources getResources() {
+        return resources;
+    }
+
+    public PackageManager getPackageManager() {
+        return packageManager;
+    }
+
+    public ContentResolver getContentResolver() {
+        return contentResolver;
+    }
+
+    /**
+     * No preferences are stored; null means there is nothing to migrate
+     */
+    public SharedPreferences getSharedPreferences(String name, int mode) {
+        return null;
+    }
+
+    public synchronized String getString(int resId) {
+        String value = strings.get(resId);
+        return value != null ? value : "";
+    }
+
+    /**
+     * Register the text of a string resource
+     */
+    public synchronized void putString(int resId, String value) {
+        strings.put(resId, value);
+    }
+
+    /**
+     * Receive explicit broadcasts for the given component class
+     */
+    public synchronized void addReceiver(Class<?> component, BroadcastReceiver receiver) {
+        receivers.put(component.getName(), receiver);
+    }
+
+    public void setBroadcastListener(BroadcastListener listener) {
+        broadcastListener = listener;
+    }
+
+    public void sendBroadcast(final Intent intent) {
+        final BroadcastReceiver receiver;
+        synchronized (this) {
+            ComponentName component = intent.getComponent();
+            receiver = component != null ? receivers.get(component.getClassName()) : null;
+        }
+        if (receiver == null) {
+            return;
+        }
+        final long sentNanos = System.nanoTime();
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                deliver(receiver, intent, sentNanos);
+            }
+        });
+    }
+
+    private void deliver(BroadcastReceiver receiver, final Intent intent, final long sentNanos) {
+        receiver.setPendingResult(new BroadcastReceiver.PendingResult(new Runnable() {
+            @Override
+            public void run() {
+                BroadcastListener listener = broadcastListener;
+                if (listener != null) {
+                    listener.onBroadcastFinished(intent, sentNanos);
+                }
+            }
+        }));
+        receiver.onReceive(this, intent);
+        BroadcastReceiver.PendingResult result = receiver.goAsync();
+        if (result != null) {
+            // Not kept alive with goAsync: done when onReceive returns
+            result.finish();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package android.content;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Benchmark stand-in for android.content.Intent (action, component and extras)
+ */
+public class Intent {
+
+    private String action = null;
+    private ComponentName component = null;
+    private final Map<String, Object> extras = new HashMap<>();
+
+    public Intent() {
+    }
+
+    public Intent(String action) {
+        this.action = action;
+    }
+
+    public Intent(Context context, Class<?> cls) {
+        this.component = new ComponentName(context, cls);
+    }
+
+    public Intent setAction(String action) {
+        this.action = action;
+        return this;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public Intent setComponent(ComponentName component) {
+        this.component = component;
+        return this;
+    }
+
+    public ComponentName getComponent() {
+        return component;
+    }
+
+    public Intent putExtra(String name, int value) {
+        extras.put(name, value);
+        return this;
+    }
+
+    public Intent putExtra(String name, int[] value) {
+        extras.put(name, value);
+        return this;
+    }
+
+    public Intent putExtra(String name, android.os.Bundle value) {
+        extras.put(name, value);
+        return this;
+    }
+
+    public android.os.Bundle getBundleExtra(String name) {
+        Object value = extras.get(name);
+        return value instanceof android.os.Bundle ? (android.os.Bundle) value : null;
+    }
+
+    public int getIntExtra(String name, int defaultValue) {
+        Object value = extras.get(name);
+        return value instanceof Integer ? (Integer) value : defaultValue;
+    }
+
+    public int[] getIntArrayExtra(String name) {
+        Object value = extras.get(name);
+        return value instanceof int[] ? (int[]) value : null;
+    }
+}
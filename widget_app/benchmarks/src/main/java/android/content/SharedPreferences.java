@@ -0,0 +1,26 @@
+package android.content;
+
+/**
+ * Benchmark stand-in for android.content.SharedPreferences (the methods
+ * used to migrate old widget data)
+ */
+public interface SharedPreferences {
+
+    interface Editor {
+        Editor clear();
+
+        boolean commit();
+    }
+
+    boolean contains(String key);
+
+    long getLong(String key, long defValue);
+
+    int getInt(String key, int defValue);
+
+    float getFloat(String key, float defValue);
+
+    String getString(String key, String defValue);
+
+    Editor edit();
+}
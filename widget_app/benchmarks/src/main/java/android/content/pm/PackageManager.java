@@ -0,0 +1,14 @@
+package android.content.pm;
+
+import android.content.Intent;
+
+/**
+ * Benchmark stand-in for android.content.pm.PackageManager; every package
+ * has a launch intent
+ */
+public class PackageManager {
+
+    public Intent getLaunchIntentForPackage(String packageName) {
+        return new Intent("android.intent.action.MAIN");
+    }
+}
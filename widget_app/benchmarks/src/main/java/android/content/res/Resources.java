@@ -0,0 +1,15 @@
+package android.content.res;
+
+import android.util.DisplayMetrics;
+
+/**
+ * Benchmark stand-in for android.content.res.Resources
+ */
+public class Resources {
+
+    private final DisplayMetrics displayMetrics = new DisplayMetrics();
+
+    public DisplayMetrics getDisplayMetrics() {
+        return displayMetrics;
+    }
+}
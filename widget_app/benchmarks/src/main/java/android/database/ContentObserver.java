@@ -0,0 +1,15 @@
+package android.database;
+
+import android.os.Handler;
+
+/**
+ * Benchmark stand-in for android.database.ContentObserver
+ */
+public abstract class ContentObserver {
+
+    public ContentObserver(Handler handler) {
+    }
+
+    public void onChange(boolean selfChange) {
+    }
+}
@@ -0,0 +1,25 @@
+package android.database;
+
+import java.io.Closeable;
+
+/**
+ * Benchmark stand-in for android.database.Cursor; only the getters the
+ * widget classes use
+ */
+public interface Cursor extends Closeable {
+
+    int getCount();
+
+    boolean moveToFirst();
+
+    long getLong(int column);
+
+    int getInt(int column);
+
+    float getFloat(int column);
+
+    String getString(int column);
+
+    @Override
+    void close();
+}
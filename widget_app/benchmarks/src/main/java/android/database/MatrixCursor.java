@@ -0,0 +1,68 @@
+package android.database;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmark stand-in for android.database.MatrixCursor: rows of boxed
+ * values, read from the first row only
+ */
+public class MatrixCursor implements Cursor {
+
+    private final String[] columns;
+    private final List<Object[]> rows;
+
+    public MatrixCursor(String[] columnNames, int initialCapacity) {
+        this.columns = columnNames;
+        this.rows = new ArrayList<>(initialCapacity);
+    }
+
+    public void addRow(Object[] columnValues) {
+        if (columnValues.length != columns.length) {
+            throw new IllegalArgumentException("Expected " + columns.length + " values, got "
+                + columnValues.length);
+        }
+        rows.add(columnValues.clone());
+    }
+
+    public void setNotificationUri(ContentResolver resolver, Uri uri) {
+    }
+
+    @Override
+    public int getCount() {
+        return rows.size();
+    }
+
+    @Override
+    public boolean moveToFirst() {
+        return !rows.isEmpty();
+    }
+
+    @Override
+    public long getLong(int column) {
+        return ((Number) rows.get(0)[column]).longValue();
+    }
+
+    @Override
+    public int getInt(int column) {
+        return ((Number) rows.get(0)[column]).intValue();
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return ((Number) rows.get(0)[column]).floatValue();
+    }
+
+    @Override
+    public String getString(int column) {
+        Object value = rows.get(0)[column];
+        return value != null ? value.toString() : null;
+    }
+
+    @Override
+    public void close() {
+    }
+}
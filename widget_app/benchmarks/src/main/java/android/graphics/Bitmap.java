@@ -0,0 +1,83 @@
+package android.graphics;
+
+/**
+ * Benchmark stand-in for android.graphics.Bitmap, backed by an int array
+ */
+public final class Bitmap {
+
+    public enum Config {
+        ALPHA_8, RGB_565, ARGB_8888
+    }
+
+    private int width;
+    private int height;
+    private Config config;
+    private int[] pixels;
+    private boolean recycled = false;
+
+    private Bitmap(int width, int height, Config config) {
+        this.width = width;
+        this.height = height;
+        this.config = config;
+        this.pixels = new int[width * height];
+    }
+
+    public static Bitmap createBitmap(int width, int height, Config config) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("width and height must be > 0");
+        }
+        return new Bitmap(width, height, config);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    public boolean isMutable() {
+        return true;
+    }
+
+    public boolean isRecycled() {
+        return recycled;
+    }
+
+    public void recycle() {
+        recycled = true;
+        pixels = new int[0];
+    }
+
+    public int getAllocationByteCount() {
+        return pixels.length * 4;
+    }
+
+    public void reconfigure(int width, int height, Config config) {
+        if (width * height > pixels.length) {
+            throw new IllegalArgumentException("Bitmap not large enough to reconfigure");
+        }
+        this.width = width;
+        this.height = height;
+        this.config = config;
+    }
+
+    public void eraseColor(int color) {
+        java.util.Arrays.fill(pixels, 0, width * height, color);
+    }
+
+    public int getPixel(int x, int y) {
+        return pixels[y * width + x];
+    }
+
+    public void setPixels(int[] colors, int offset, int stride, int x, int y, int width, int height) {
+        for (int row = 0; row < height; row++) {
+            System.arraycopy(colors, offset + row * stride, pixels, (y + row) * this.width + x, width);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package android.net;
+
+/**
+ * Benchmark stand-in for android.net.Uri: just the string
+ */
+public final class Uri {
+
+    private final String uri;
+
+    private Uri(String uri) {
+        this.uri = uri;
+    }
+
+    public static Uri parse(String uriString) {
+        return new Uri(uriString);
+    }
+
+    @Override
+    public String toString() {
+        return uri;
+    }
+}
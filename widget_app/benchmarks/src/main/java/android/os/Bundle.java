@@ -0,0 +1,25 @@
+package android.os;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Benchmark stand-in for android.os.Bundle (int values only)
+ */
+public class Bundle {
+
+    private final Map<String, Integer> ints = new HashMap<>();
+
+    public void putInt(String key, int value) {
+        ints.put(key, value);
+    }
+
+    public int getInt(String key) {
+        return getInt(key, 0);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        Integer value = ints.get(key);
+        return value != null ? value : defaultValue;
+    }
+}
@@ -0,0 +1,7 @@
+package android.os;
+
+/**
+ * Benchmark stand-in for android.os.Environment (imported, not used, by the logger)
+ */
+public class Environment {
+}
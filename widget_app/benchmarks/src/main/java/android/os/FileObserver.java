@@ -0,0 +1,94 @@
+package android.os;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Benchmark stand-in for android.os.FileObserver
+ *
+ * Polls the directory instead of using inotify: a file whose modification
+ * time or size changed is reported as CLOSE_WRITE (and as MOVED_TO, if
+ * watched, when it appeared). The polling thread is named "StandInFileObserver"
+ * so its own stat calls can be told apart from the app's.
+ */
+public abstract class FileObserver {
+
+    public static final int CLOSE_WRITE = 0x00000008;
+    public static final int MOVED_TO = 0x00000080;
+    public static final int ALL_EVENTS = 0x00000FFF;
+
+    static final long POLL_INTERVAL_MS = 10;
+
+    private final File directory;
+    private final int mask;
+    private Thread thread = null;
+
+    public FileObserver(String path, int mask) {
+        this.directory = new File(path);
+        this.mask = mask;
+    }
+
+    public abstract void onEvent(int event, String path);
+
+    public synchronized void startWatching() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                poll();
+            }
+        }, "StandInFileObserver");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stopWatching() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    private void poll() {
+        Map<String, long[]> known = new HashMap<>();
+        scan(known, false);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(POLL_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            scan(known, true);
+        }
+    }
+
+    private void scan(Map<String, long[]> known, boolean report) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            long modified = file.lastModified();
+            long length = file.length();
+            long[] previous = known.get(file.getName());
+            if (previous != null && previous[0] == modified && previous[1] == length) {
+                continue;
+            }
+            known.put(file.getName(), new long[] {modified, length});
+            if (!report) {
+                continue;
+            }
+            int event = previous == null && (mask & MOVED_TO) != 0 ? MOVED_TO : CLOSE_WRITE;
+            if ((mask & event) != 0) {
+                try {
+                    onEvent(event, file.getName());
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package android.os;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark stand-in for android.os.Handler; posts to the looper's thread
+ */
+public class Handler {
+
+    private final Looper looper;
+
+    public Handler(Looper looper) {
+        this.looper = looper;
+    }
+
+    public final boolean post(Runnable task) {
+        return postDelayed(task, 0);
+    }
+
+    public final boolean postDelayed(final Runnable task, long delayMillis) {
+        looper.queue.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    // Would crash the app on a device; the executor would swallow it
+                    System.err.println("Uncaught exception on " + Thread.currentThread().getName());
+                    e.printStackTrace();
+                }
+            }
+        }, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+        return true;
+    }
+}
@@ -0,0 +1,35 @@
+package android.os;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Benchmark stand-in for android.os.Looper
+ *
+ * Only the main looper exists: one daemon thread named "main" that runs
+ * posted messages in order.
+ */
+public final class Looper {
+
+    private static Looper mainLooper = null;
+
+    final ScheduledThreadPoolExecutor queue;
+
+    private Looper(final String threadName) {
+        queue = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public static synchronized Looper getMainLooper() {
+        if (mainLooper == null) {
+            mainLooper = new Looper("main");
+        }
+        return mainLooper;
+    }
+}
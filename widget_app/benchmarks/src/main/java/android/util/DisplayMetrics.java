@@ -0,0 +1,10 @@
+package android.util;
+
+/**
+ * Benchmark stand-in for android.util.DisplayMetrics: a 420 dpi phone
+ */
+public class DisplayMetrics {
+
+    public float density = 2.625f;
+    public int densityDpi = 420;
+}
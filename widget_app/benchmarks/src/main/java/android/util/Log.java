@@ -0,0 +1,26 @@
+package android.util;
+
+/**
+ * Benchmark stand-in for android.util.Log; logcat output is discarded
+ */
+public final class Log {
+
+    private Log() {
+    }
+
+    public static int i(String tag, String msg) {
+        return 0;
+    }
+
+    public static int w(String tag, String msg) {
+        return 0;
+    }
+
+    public static int e(String tag, String msg) {
+        return 0;
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return 0;
+    }
+}
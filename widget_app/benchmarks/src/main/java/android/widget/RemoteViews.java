@@ -0,0 +1,84 @@
+package android.widget;
+
+import android.app.PendingIntent;
+import android.graphics.Bitmap;
+
+/**
+ * Benchmark stand-in for android.widget.RemoteViews
+ *
+ * Records text actions so AppWidgetManager can apply them, and estimates
+ * the parcel size of the update (text as UTF-16, bitmaps as ARGB).
+ */
+public class RemoteViews {
+
+    private static final int ACTION_BYTES = 16;
+
+    private final String packageName;
+    private final int layoutId;
+    private int[] textViewIds = new int[8];
+    private CharSequence[] texts = new CharSequence[8];
+    private int textCount = 0;
+    private int actionCount = 0;
+    private long estimatedBytes = 0;
+
+    public RemoteViews(String packageName, int layoutId) {
+        this.packageName = packageName;
+        this.layoutId = layoutId;
+    }
+
+    public String getPackage() {
+        return packageName;
+    }
+
+    public int getLayoutId() {
+        return layoutId;
+    }
+
+    public void setTextViewText(int viewId, CharSequence text) {
+        if (textCount == textViewIds.length) {
+            textViewIds = java.util.Arrays.copyOf(textViewIds, textCount * 2);
+            texts = java.util.Arrays.copyOf(texts, textCount * 2);
+        }
+        textViewIds[textCount] = viewId;
+        texts[textCount] = text;
+        textCount++;
+        addAction(text != null ? text.length() * 2L : 0);
+    }
+
+    public void setImageViewBitmap(int viewId, Bitmap bitmap) {
+        addAction(bitmap != null ? bitmap.getAllocationByteCount() : 0);
+    }
+
+    public void setViewVisibility(int viewId, int visibility) {
+        addAction(4);
+    }
+
+    public void setOnClickPendingIntent(int viewId, PendingIntent pendingIntent) {
+        addAction(64);
+    }
+
+    public int getTextCount() {
+        return textCount;
+    }
+
+    public int getTextViewId(int index) {
+        return textViewIds[index];
+    }
+
+    public CharSequence getText(int index) {
+        return texts[index];
+    }
+
+    public int getActionCount() {
+        return actionCount;
+    }
+
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    private void addAction(long payloadBytes) {
+        actionCount++;
+        estimatedBytes += ACTION_BYTES + payloadBytes;
+    }
+}
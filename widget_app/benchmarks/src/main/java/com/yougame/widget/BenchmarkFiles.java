@@ -0,0 +1,94 @@
+package com.yougame.widget;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Test data for the benchmarks: temporary directories, widget data files
+ * and pre-filled log files of a given size
+ */
+final class BenchmarkFiles {
+
+    // Same layout as save_game_widget_exporter.gd writes
+    static final String WIDGET_DATA =
+        "timestamp=1737900000.123456\n"
+        + "day_count=12\n"
+        + "current_health=87.5\n"
+        + "torch_count=4\n"
+        + "position_x=-120.25\n"
+        + "position_z=64\n"
+        + "error_count=3\n"
+        + "total_log_count=42\n"
+        + "last_error=Sun lighting issue detected\n";
+
+    static final String LOG_FILE = "widget_errors.log";
+    static final String STATE_FILE = "widget_errors.state";
+
+    private static final String INFO_LINE = "[2025-01-26 14:00:00] [INFO] Widget update started\n";
+    private static final String ERROR_LINE = "[2025-01-26 13:59:59] [ERROR] Save data file not found\n";
+
+    private BenchmarkFiles() {
+    }
+
+    static File createTempDir(String prefix) throws IOException {
+        return Files.createTempDirectory(prefix).toFile();
+    }
+
+    /**
+     * Write widget_data.txt padded with unknown keys to about the given size.
+     * The real fields come last, so the parser has to walk the whole file.
+     */
+    static File writeWidgetData(File dir, int sizeBytes) throws IOException {
+        StringBuilder text = new StringBuilder(sizeBytes + WIDGET_DATA.length());
+        int padding = 0;
+        while (text.length() + WIDGET_DATA.length() < sizeBytes) {
+            text.append("padding_").append(padding++).append("=ignored by the widget\n");
+        }
+        text.append(WIDGET_DATA);
+
+        File file = new File(dir, "widget_data.txt");
+        Files.write(file.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /**
+     * Write a log file of about the given size: one error entry at the start
+     * followed by info entries, so finding the last error means reading all of it
+     */
+    static File writeLog(File file, long sizeBytes) throws IOException {
+        byte[] info = INFO_LINE.getBytes(StandardCharsets.UTF_8);
+        byte[] chunk = new byte[info.length * 256];
+        for (int i = 0; i < 256; i++) {
+            System.arraycopy(info, 0, chunk, i * info.length, info.length);
+        }
+
+        try (OutputStream out = new FileOutputStream(file)) {
+            byte[] error = ERROR_LINE.getBytes(StandardCharsets.UTF_8);
+            out.write(error);
+            long written = error.length;
+            while (written + chunk.length <= sizeBytes) {
+                out.write(chunk);
+                written += chunk.length;
+            }
+            while (written + info.length <= sizeBytes) {
+                out.write(info);
+                written += info.length;
+            }
+        }
+        return file;
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,96 @@
+package com.yougame.widget;
+
+import com.yougame.savegamewidget.WidgetDataEncoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The readSaveData path for widget_data.bin, for comparison with the text
+ * format. The file size only varies with the last error length.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BinaryDataBenchmark {
+
+    @Param({"0", "64", "1024"})
+    int lastErrorBytes;
+
+    private File dir;
+    private File dataFile;
+    private ByteBuffer encoded;
+    private final BinaryWidgetDataReader reader = new BinaryWidgetDataReader();
+    private final SaveDataCache cache = SaveDataCache.getInstance();
+    private final WidgetDataEncoder encoder = new WidgetDataEncoder();
+    private final SaveData decoded = new SaveData();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        StringBuilder lastError = new StringBuilder(lastErrorBytes);
+        while (lastError.length() < lastErrorBytes) {
+            lastError.append('e');
+        }
+
+        dir = BenchmarkFiles.createTempDir("widget-bin");
+        dataFile = new File(dir, BinaryWidgetDataReader.FILE_NAME);
+        encoder.writeTo(dataFile, 1, 1737900000123L, 12, 87.5f, 4, -120.25f, 64f, 3, 42,
+            lastError.toString());
+        // Copy, the encoder reuses its buffer
+        ByteBuffer snapshot = encoder.encode(1, 1737900000123L, 12, 87.5f, 4, -120.25f, 64f, 3, 42,
+            lastError.toString());
+        encoded = ByteBuffer.wrap(Arrays.copyOf(snapshot.array(), snapshot.limit()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cache.invalidate();
+        BenchmarkFiles.deleteRecursively(dir);
+    }
+
+    /**
+     * Changed file: read, validate and decode
+     */
+    @Benchmark
+    public SaveData readChanged() throws IOException {
+        cache.invalidate();
+        return cache.get(dataFile, reader);
+    }
+
+    /**
+     * Decoding only, with the snapshot already in memory
+     */
+    @Benchmark
+    public SaveData decodeOnly() {
+        return BinaryWidgetDataReader.decode(encoded, decoded);
+    }
+
+    /**
+     * Game side: encoding a snapshot
+     */
+    @Benchmark
+    public ByteBuffer encode() {
+        return encoder.encode(1, 1737900000123L, 12, 87.5f, 4, -120.25f, 64f, 3, 42,
+            "Sun lighting issue detected");
+    }
+}
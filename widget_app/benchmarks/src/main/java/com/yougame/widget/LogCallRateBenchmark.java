@@ -0,0 +1,91 @@
+package com.yougame.widget;
+
+import android.content.Context;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Caller-side latency of a log call at different call rates, with the
+ * synchronous and the asynchronous writer, with and without deduplication
+ * of the (always identical) message. Calls are paced to the given
+ * rate outside the measured region, so the async writer gets the idle
+ * time it would have in the app.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LogCallRateBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    int callsPerSecond;
+
+    @Param({"sync", "async"})
+    String writer;
+
+    // 0 writes every call; otherwise repeated messages are collapsed
+    @Param({"0", "60000"})
+    long dedupWindowMs;
+
+    private File dir;
+    private Context context;
+    private long intervalNanos;
+    private long nextCallAt;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = BenchmarkFiles.createTempDir("widget-rate");
+        context = new Context(dir);
+        WidgetErrorLogger.reset();
+        WidgetErrorLogger.configureDeduplication(dedupWindowMs);
+        if ("async".equals(writer)) {
+            WidgetErrorLogger.enableAsyncWriter(context);
+        }
+        intervalNanos = TimeUnit.SECONDS.toNanos(1) / callsPerSecond;
+        nextCallAt = System.nanoTime();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        WidgetErrorLogger.reset();
+        BenchmarkFiles.deleteRecursively(dir);
+    }
+
+    @Setup(Level.Invocation)
+    public void pace() {
+        long wait = nextCallAt - System.nanoTime();
+        if (wait > 0) {
+            LockSupport.parkNanos(wait);
+        }
+        nextCallAt = Math.max(nextCallAt + intervalNanos, System.nanoTime());
+    }
+
+    @Benchmark
+    public void logInfo() {
+        WidgetErrorLogger.logInfo(context, "Widget update started");
+    }
+
+    @Benchmark
+    public void logError() {
+        WidgetErrorLogger.logError(context, "Save data file not found", null);
+    }
+}
@@ -0,0 +1,135 @@
+package com.yougame.widget;
+
+import android.content.Context;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WidgetErrorLogger file operations against logs from 1KB to 10MB:
+ * synchronous writes, segment rotation (which replaced truncating the log
+ * file) and getLastError, both from the error record and by the one-time
+ * scan of logs written before the record existed
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogFileBenchmark {
+
+    @State(Scope.Thread)
+    public static class LogState {
+
+        @Param({"1024", "102400", "1048576", "10485760"})
+        int logBytes;
+
+        File dir;
+        File logFile;
+        Context context;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            dir = BenchmarkFiles.createTempDir("widget-log");
+            logFile = new File(dir, BenchmarkFiles.LOG_FILE);
+            context = new Context(dir);
+
+            // One segment of the benchmarked size, so the active log really has that size
+            WidgetErrorLogger.reset();
+            WidgetErrorLogger.configureRotation(logBytes, 1);
+            // Measure the write itself, not repeats being collapsed
+            WidgetErrorLogger.configureDeduplication(0);
+            BenchmarkFiles.writeLog(logFile, logBytes);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            WidgetErrorLogger.reset();
+            BenchmarkFiles.deleteRecursively(dir);
+        }
+    }
+
+    /**
+     * State for the legacy scan: every invocation starts without a sidecar
+     */
+    @State(Scope.Thread)
+    public static class LegacyScanState extends LogState {
+
+        @Setup(Level.Invocation)
+        public void forgetRecord() {
+            WidgetErrorLogger.reset();
+            WidgetErrorLogger.configureRotation(logBytes, 1);
+            new File(dir, BenchmarkFiles.STATE_FILE).delete();
+        }
+    }
+
+    /**
+     * State for rotation: every invocation starts with a full active segment
+     */
+    @State(Scope.Thread)
+    public static class RotationState extends LogState {
+
+        LogSegments segments;
+
+        @Setup(Level.Trial)
+        public void createSegments() {
+            segments = new LogSegments(logFile, logBytes, 4);
+        }
+
+        @Setup(Level.Invocation)
+        public void restoreActiveSegment() {
+            // Undo the previous rotation without rewriting the data
+            File rotated = segments.getSegment(1);
+            if (rotated.exists()) {
+                rotated.renameTo(logFile);
+            }
+        }
+    }
+
+    /**
+     * Synchronous logInfo: format, rotate when full, append
+     */
+    @Benchmark
+    public void logInfoSync(LogState state) {
+        WidgetErrorLogger.logInfo(state.context, "Widget update started");
+    }
+
+    /**
+     * Rotating a full segment
+     */
+    @Benchmark
+    public void rotate(RotationState state) {
+        state.segments.rotate();
+    }
+
+    /**
+     * getLastError served from the error record
+     */
+    @Benchmark
+    public String getLastError(LogState state) {
+        return WidgetErrorLogger.getLastError(state.context);
+    }
+
+    /**
+     * getLastError for a log without a sidecar: scans the whole log once
+     */
+    @Benchmark
+    public String getLastErrorLegacyScan(LegacyScanState state) {
+        return WidgetErrorLogger.getLastError(state.context);
+    }
+}
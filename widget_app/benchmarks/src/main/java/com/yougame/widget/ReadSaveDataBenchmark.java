@@ -0,0 +1,87 @@
+package com.yougame.widget;
+
+import android.content.Context;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The readSaveData path for widget_data.txt: read, checksum and parse on a
+ * changed file, and the cache hit on an unchanged one
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReadSaveDataBenchmark {
+
+    @Param({"256", "16384", "1048576"})
+    int fileBytes;
+
+    private File dir;
+    private File dataFile;
+    private TextWidgetDataLoader loader;
+    private final SaveDataCache cache = SaveDataCache.getInstance();
+    private final WidgetDataParser parser = new WidgetDataParser();
+    private final SaveData parsed = new SaveData();
+    private byte[] content;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = BenchmarkFiles.createTempDir("widget-data");
+        dataFile = BenchmarkFiles.writeWidgetData(dir, fileBytes);
+        content = java.nio.file.Files.readAllBytes(dataFile.toPath());
+        loader = TextWidgetDataLoader.getInstance(new Context(dir));
+        WidgetErrorLogger.reset();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cache.invalidate();
+        WidgetErrorLogger.reset();
+        BenchmarkFiles.deleteRecursively(dir);
+    }
+
+    /**
+     * Changed file: full read, checksum and parse
+     */
+    @Benchmark
+    public SaveData readChanged() throws IOException {
+        cache.invalidate();
+        return cache.get(dataFile, loader);
+    }
+
+    /**
+     * Unchanged file: served from the cache after a stat
+     */
+    @Benchmark
+    public SaveData readUnchanged() throws IOException {
+        return cache.get(dataFile, loader);
+    }
+
+    /**
+     * Parsing only, with the file already in memory
+     */
+    @Benchmark
+    public SaveData parseOnly() {
+        parser.parse(content, content.length, parsed);
+        return parsed;
+    }
+}
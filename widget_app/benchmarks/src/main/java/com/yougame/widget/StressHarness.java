@@ -0,0 +1,574 @@
+package com.yougame.widget;
+
+import android.appwidget.AppWidgetManager;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.RemoteViews;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Update-storm stress harness for both widget providers
+ *
+ * Drives the widget app's and the game plugin's SaveGameWidgetProvider on a
+ * plain JVM through the Android stand-ins: a launcher thread sends
+ * APPWIDGET_UPDATE broadcasts for the placed widgets at a fixed rate while a
+ * game thread keeps exporting saves (rewriting the data files, or the data
+ * store for the plugin). Broadcasts are delivered on a "main" looper thread
+ * and the providers do their work on their own threads, as on a device.
+ *
+ * Reported per provider, after a warmup:
+ * - refresh latency: broadcast sent until its PendingResult finished
+ * - data-to-screen latency: export started until a widget shows that save
+ * - allocation rate of the app threads, in total and per render
+ * - read/write syscalls of the app threads per render (Linux only)
+ * - torn reads the provider detected and retried, torn renders (a widget
+ *   showing fields of two different saves) and renders going back to an
+ *   older save
+ *
+ * Exits with status 1 if any render was torn or an update hit the update
+ * executor's timeout guard. Run from widget_app/benchmarks (gradle stress
+ * does), so the resource directories are found.
+ *
+ * Options, defaults in brackets:
+ *   --provider widget|plugin|both   which providers to run, one after the other [both]
+ *   --widgets N     placed widgets [50]
+ *   --rate N        update broadcasts per second [100]
+ *   --batch N       widget ids per broadcast, 0 = all of them [1]
+ *   --seconds N     measured duration [60]
+ *   --warmup N      seconds of storm before measuring [5]
+ *   --exports N     game exports per second [10]
+ *   --size WxH      widget size in dp, picks the layout template; unknown if not given
+ *   --in-place      widget app: rewrite the data files in place, not atomically
+ *   --log-fill F    widget app: fill the error log to this fraction of its size limit first [0.95]
+ */
+public final class StressHarness {
+
+    private static final String USAGE = "Usage: StressHarness [--provider widget|plugin|both] [--widgets N]"
+        + " [--rate N] [--batch N] [--seconds N] [--warmup N] [--exports N] [--size WxH] [--in-place] [--log-fill F]";
+
+    private static final File WIDGET_RES = new File("../app/src/main/res");
+    private static final File PLUGIN_RES = new File("../../android/plugins/savegame_widget/src/main/res");
+
+    // The app's default log rotation: 4 segments of 16 KB
+    private static final int LOG_SEGMENT_BYTES = 16 * 1024;
+    private static final int LOG_SEGMENTS = 4;
+
+    private static final long DRAIN_TIMEOUT_MS = 10_000;
+
+    /**
+     * Storm settings
+     */
+    static final class Options {
+        String provider = "both";
+        int widgets = 50;
+        int rate = 100;
+        int batch = 1;
+        int seconds = 60;
+        int warmupSeconds = 5;
+        int exportRate = 10;
+        int widthDp = 0;
+        int heightDp = 0;
+        boolean inPlaceWrites = false;
+        double logFill = 0.95;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--in-place")) {
+                    options.inPlaceWrites = true;
+                    continue;
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--provider":
+                        if (!value.equals("widget") && !value.equals("plugin") && !value.equals("both")) {
+                            throw new IllegalArgumentException("Unknown provider: " + value);
+                        }
+                        options.provider = value;
+                        break;
+                    case "--widgets":
+                        options.widgets = positive(arg, value);
+                        break;
+                    case "--rate":
+                        options.rate = positive(arg, value);
+                        break;
+                    case "--batch":
+                        options.batch = Integer.parseInt(value);
+                        break;
+                    case "--seconds":
+                        options.seconds = positive(arg, value);
+                        break;
+                    case "--warmup":
+                        options.warmupSeconds = Integer.parseInt(value);
+                        break;
+                    case "--exports":
+                        options.exportRate = positive(arg, value);
+                        break;
+                    case "--size":
+                        int separator = value.indexOf('x');
+                        if (separator < 0) {
+                            throw new IllegalArgumentException("--size must be WxH: " + value);
+                        }
+                        options.widthDp = positive(arg, value.substring(0, separator));
+                        options.heightDp = positive(arg, value.substring(separator + 1));
+                        break;
+                    case "--log-fill":
+                        options.logFill = Double.parseDouble(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            return options;
+        }
+
+        boolean runs(String name) {
+            return provider.equals("both") || provider.equals(name);
+        }
+
+        private static int positive(String option, String value) {
+            int number = Integer.parseInt(value);
+            if (number <= 0) {
+                throw new IllegalArgumentException(option + " must be positive: " + value);
+            }
+            return number;
+        }
+    }
+
+    /**
+     * Latency samples taken while recording, for percentiles
+     */
+    static final class LatencyRecorder {
+        private final long[] samples;
+        private int count = 0;
+        private long dropped = 0;
+        private boolean recording = false;
+        private long fromNanos = 0;
+
+        LatencyRecorder(int capacity) {
+            samples = new long[capacity];
+        }
+
+        /**
+         * Keep samples that started at or after fromNanos
+         */
+        synchronized void start(long fromNanos) {
+            this.fromNanos = fromNanos;
+            recording = true;
+        }
+
+        synchronized void stop() {
+            recording = false;
+        }
+
+        synchronized void record(long startNanos, long endNanos) {
+            if (!recording || startNanos < fromNanos) {
+                return;
+            }
+            if (count == samples.length) {
+                dropped++;
+                return;
+            }
+            samples[count++] = endNanos - startNanos;
+        }
+
+        synchronized String summary(String label) {
+            if (count == 0) {
+                return String.format(Locale.ROOT, "%-22s n=0", label);
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            return String.format(Locale.ROOT, "%-22s n=%-8d p50 %9.2f ms   p99 %9.2f ms   max %9.2f ms%s",
+                label, count, millis(percentile(sorted, 0.50)), millis(percentile(sorted, 0.99)),
+                millis(sorted[count - 1]), dropped > 0 ? "   (" + dropped + " not kept)" : "");
+        }
+
+        private static long percentile(long[] sorted, double fraction) {
+            return sorted[(int) Math.ceil(fraction * sorted.length) - 1];
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1e6;
+        }
+    }
+
+    private final Options options;
+    private final StressThreadUsage threadUsage;
+    private final StressTarget target;
+    private final LatencyRecorder refreshLatency;
+    private final LatencyRecorder dataLatency;
+    private final AtomicLongArray exportStarts;
+    private final AtomicInteger exported = new AtomicInteger();
+    private final AtomicLong updatesSent = new AtomicLong();
+    private final AtomicLong updatesFinished = new AtomicLong();
+    private final int[] shownDay;
+    private int nextWidget = 0;
+
+    // Guarded by this
+    private long tornRenders = 0;
+    private long backwardRenders = 0;
+
+    StressHarness(Options options, StressThreadUsage threadUsage, StressTarget target) {
+        this.options = options;
+        this.threadUsage = threadUsage;
+        this.target = target;
+        int totalSeconds = options.warmupSeconds + options.seconds + (int) (DRAIN_TIMEOUT_MS / 1000);
+        this.exportStarts = new AtomicLongArray(options.exportRate * totalSeconds + 16);
+        // Game exports also send broadcasts (plugin)
+        this.refreshLatency = new LatencyRecorder((options.rate + options.exportRate) * totalSeconds + 1024);
+        this.dataLatency = new LatencyRecorder(options.widgets * options.exportRate * totalSeconds + 1024);
+        this.shownDay = new int[options.widgets + 1];
+        Arrays.fill(shownDay, -1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        StressThreadUsage threadUsage = new StressThreadUsage();
+        File root = BenchmarkFiles.createTempDir("widget-stress");
+        boolean failed = false;
+        try {
+            if (options.runs("widget")) {
+                StressTarget widget = new StressTarget.WidgetApp(root, WIDGET_RES, options.inPlaceWrites);
+                failed |= new StressHarness(options, threadUsage, widget).run();
+            }
+            if (options.runs("plugin")) {
+                StressTarget plugin = new StressTarget.Plugin(root, PLUGIN_RES);
+                failed |= new StressHarness(options, threadUsage, plugin).run();
+            }
+        } finally {
+            BenchmarkFiles.deleteRecursively(root);
+        }
+        System.exit(failed ? 1 : 0);
+    }
+
+    /**
+     * Run one storm and print its report
+     *
+     * @return true if it failed (torn renders or timed out updates)
+     */
+    boolean run() throws Exception {
+        Context context = target.context;
+        Class<?> providerClass = target.provider.getClass();
+        AppWidgetManager manager = AppWidgetManager.getInstance(context);
+        final int[] ids = new int[options.widgets];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i + 1;
+        }
+        manager.setAppWidgetIds(providerClass, ids);
+        if (options.widthDp > 0) {
+            Bundle size = new Bundle();
+            size.putInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH, options.widthDp);
+            size.putInt(AppWidgetManager.OPTION_APPWIDGET_MAX_HEIGHT, options.heightDp);
+            for (int id : ids) {
+                manager.setAppWidgetOptions(id, size);
+            }
+        }
+        manager.setUpdateListener(this::onWidgetUpdated);
+        context.addReceiver(providerClass, target.provider);
+        context.setBroadcastListener(this::onBroadcastFinished);
+
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT,
+            "=== %s: %d widgets (%s), %d updates/s (%s per broadcast), %d exports/s, %s, %d s + %d s warmup ===",
+            target.name, options.widgets,
+            options.widthDp > 0 ? options.widthDp + "x" + options.heightDp + " dp" : "size unknown", options.rate, options.batch == 1 ? "1 id" : options.batch > 1 ? options.batch + " ids" : "all ids",
+            options.exportRate, target.describeWrites(), options.seconds, options.warmupSeconds));
+        if (target instanceof StressTarget.WidgetApp && options.logFill > 0) {
+            long logBytes = fillLog(context, options.logFill);
+            System.out.println(String.format(Locale.ROOT, "error log filled to %d of %d bytes",
+                logBytes, (long) LOG_SEGMENT_BYTES * LOG_SEGMENTS));
+        }
+
+        // A first save, then the first widget is placed
+        exportNext();
+        context.sendBroadcast(new Intent(context, providerClass).setAction(AppWidgetManager.ACTION_APPWIDGET_ENABLED));
+
+        ScheduledThreadPoolExecutor launcher = scheduler("StressLauncher");
+        ScheduledThreadPoolExecutor game = scheduler("StressGame");
+        launcher.scheduleAtFixedRate(guarded(() -> sendUpdate(context, providerClass, ids)),
+            0, TimeUnit.SECONDS.toNanos(1) / options.rate, TimeUnit.NANOSECONDS);
+        long exportPeriod = TimeUnit.SECONDS.toNanos(1) / options.exportRate;
+        game.scheduleAtFixedRate(guarded(this::exportNext), exportPeriod, exportPeriod, TimeUnit.NANOSECONDS);
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(options.warmupSeconds));
+        Map<String, StressThreadUsage.Usage> usageStart = threadUsage.snapshot();
+        String statsStart = target.getRenderStats();
+        long fullStart = manager.getFullUpdateCount();
+        long partialStart = manager.getPartialUpdateCount();
+        long ignoredStart = manager.getIgnoredUpdateCount();
+        long bytesStart = manager.getUpdateBytes();
+        long tornStart = target.getTornReads();
+        long staleStart = target.getStaleServed();
+        long replacedStart = target.getReplacedCount();
+        long timedOutStart = target.getTimedOutCount();
+        long start = System.nanoTime();
+        refreshLatency.start(start);
+        dataLatency.start(start);
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(options.seconds));
+        launcher.shutdownNow();
+        game.shutdownNow();
+        launcher.awaitTermination(1, TimeUnit.SECONDS);
+        game.awaitTermination(1, TimeUnit.SECONDS);
+        // Let queued broadcasts finish
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DRAIN_TIMEOUT_MS);
+        while (updatesFinished.get() < updatesSent.get() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        long elapsedNanos = System.nanoTime() - start;
+        refreshLatency.stop();
+        dataLatency.stop();
+        Map<String, StressThreadUsage.Usage> usage =
+            StressThreadUsage.difference(usageStart, threadUsage.snapshot());
+        String statsEnd = target.getRenderStats();
+        long renders = delta(statsStart, statsEnd, "renders");
+        long skipped = delta(statsStart, statsEnd, "skipped");
+        long full = manager.getFullUpdateCount() - fullStart;
+        long partial = manager.getPartialUpdateCount() - partialStart;
+        long ignored = manager.getIgnoredUpdateCount() - ignoredStart;
+        long updateBytes = manager.getUpdateBytes() - bytesStart;
+        long timedOut = target.getTimedOutCount() - timedOutStart;
+        long torn;
+        long backward;
+        synchronized (this) {
+            torn = tornRenders;
+            backward = backwardRenders;
+        }
+
+        // Last widget removed
+        context.sendBroadcast(new Intent(context, providerClass).setAction(AppWidgetManager.ACTION_APPWIDGET_DISABLED));
+        awaitMainLooper();
+        manager.setUpdateListener(null);
+        context.setBroadcastListener(null);
+
+        double seconds = elapsedNanos / 1e9;
+        System.out.println(refreshLatency.summary("refresh latency"));
+        System.out.println(dataLatency.summary("data-to-screen"));
+        System.out.println(String.format(Locale.ROOT,
+            "%-22s %d (%.0f/s): %d full, %d partial, %d skipped; %d partial updates ignored; %.1f KB sent",
+            "renders", renders, renders / seconds, full, partial, skipped, ignored, updateBytes / 1024.0));
+        printThreadUsage(usage, renders, seconds);
+        System.out.println(String.format(Locale.ROOT, "%-22s %s detected and retried, %s stale served, "
+            + "%d torn renders, %d renders of an older save",
+            "torn reads", count(tornStart, target.getTornReads()), count(staleStart, target.getStaleServed()),
+            torn, backward));
+        System.out.println(String.format(Locale.ROOT, "%-22s %d replaced by newer updates, %d timed out",
+            "update executor", target.getReplacedCount() - replacedStart, timedOut));
+
+        boolean failed = torn > 0 || timedOut > 0;
+        if (failed) {
+            System.out.println("FAILED: " + torn + " torn renders, " + timedOut + " timed out updates");
+        }
+        return failed;
+    }
+
+    private void printThreadUsage(Map<String, StressThreadUsage.Usage> usage, long renders, double seconds) {
+        long allocated = 0;
+        long calls = 0;
+        for (StressThreadUsage.Usage thread : usage.values()) {
+            allocated += thread.allocatedBytes;
+            calls += thread.readCalls + thread.writeCalls;
+        }
+        long perRender = Math.max(renders, 1);
+        if (threadUsage.hasAllocations()) {
+            System.out.println(String.format(Locale.ROOT, "%-22s %.2f MB/s on app threads, %d bytes per render",
+                "allocation", allocated / seconds / 1e6, allocated / perRender));
+        } else {
+            System.out.println(String.format(Locale.ROOT, "%-22s not supported by this JVM", "allocation"));
+        }
+        if (StressThreadUsage.hasFileCalls()) {
+            System.out.println(String.format(Locale.ROOT,
+                "%-22s %.2f read/write syscalls per render (%d total; open, stat and rename not counted)",
+                "file operations", calls / (double) perRender, calls));
+        } else {
+            System.out.println(String.format(Locale.ROOT, "%-22s needs /proc (Linux)", "file operations"));
+        }
+        for (Map.Entry<String, StressThreadUsage.Usage> entry : usage.entrySet()) {
+            StressThreadUsage.Usage thread = entry.getValue();
+            System.out.println(String.format(Locale.ROOT, "  %-20s %9.2f MB/s %9d reads %9d writes",
+                entry.getKey(), thread.allocatedBytes / seconds / 1e6, thread.readCalls, thread.writeCalls));
+        }
+    }
+
+    /**
+     * Export the next save, as the game would after saving
+     */
+    private void exportNext() {
+        int n = exported.get();
+        if (n >= exportStarts.length()) {
+            return;
+        }
+        exportStarts.set(n, System.nanoTime());
+        try {
+            target.export(n);
+        } catch (IOException e) {
+            System.err.println("Export " + n + " failed: " + e);
+        }
+        exported.set(n + 1);
+    }
+
+    /**
+     * Send one APPWIDGET_UPDATE for the next widget ids, round robin
+     */
+    private void sendUpdate(Context context, Class<?> providerClass, int[] ids) {
+        int batch = options.batch > 0 ? Math.min(options.batch, ids.length) : ids.length;
+        int[] batchIds = new int[batch];
+        for (int i = 0; i < batch; i++) {
+            batchIds[i] = ids[nextWidget];
+            nextWidget = (nextWidget + 1) % ids.length;
+        }
+        Intent intent = new Intent(context, providerClass)
+            .setAction(AppWidgetManager.ACTION_APPWIDGET_UPDATE)
+            .putExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS, batchIds);
+        updatesSent.incrementAndGet();
+        context.sendBroadcast(intent);
+    }
+
+    private void onBroadcastFinished(Intent intent, long sentNanos) {
+        refreshLatency.record(sentNanos, System.nanoTime());
+        if (AppWidgetManager.ACTION_APPWIDGET_UPDATE.equals(intent.getAction())) {
+            updatesFinished.incrementAndGet();
+        }
+    }
+
+    /**
+     * Check what a widget shows after each update: the day and the torch
+     * count come from the same save, so they must match
+     */
+    private void onWidgetUpdated(AppWidgetManager manager, int appWidgetId, RemoteViews views, boolean partial) {
+        long now = System.nanoTime();
+        int day = trailingNumber(manager.getText(appWidgetId, target.dayViewId));
+        int torches = trailingNumber(manager.getText(appWidgetId, target.torchesViewId));
+        if (day < 0 || appWidgetId >= shownDay.length) {
+            // No save shown yet
+            return;
+        }
+        synchronized (this) {
+            if (torches >= 0 && torches != day) {
+                tornRenders++;
+            }
+            int previous = shownDay[appWidgetId];
+            if (day < previous) {
+                backwardRenders++;
+            } else if (day > previous && day < exportStarts.length()) {
+                long exportStart = exportStarts.get(day);
+                if (exportStart > 0) {
+                    dataLatency.record(exportStart, now);
+                }
+            }
+            shownDay[appWidgetId] = day;
+        }
+    }
+
+    /**
+     * The number a text ends with ("Day: 12" is 12), -1 if it doesn't end with one
+     */
+    static int trailingNumber(CharSequence text) {
+        if (text == null) {
+            return -1;
+        }
+        int end = text.length();
+        int start = end;
+        while (start > 0 && Character.isDigit(text.charAt(start - 1))) {
+            start--;
+        }
+        if (start == end || end - start > 9) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + (text.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Write log entries until the error log is at the given fraction of its
+     * size limit, so the storm runs into rotation
+     *
+     * @return the log size reached
+     */
+    private static long fillLog(Context context, double fraction) {
+        WidgetErrorLogger.configureRotation(LOG_SEGMENT_BYTES, LOG_SEGMENTS);
+        long target = (long) (fraction * LOG_SEGMENT_BYTES * LOG_SEGMENTS);
+        long size = logSize(context);
+        for (int i = 0; i < 100_000 && size < target; i++) {
+            WidgetErrorLogger.logInfo(context, "Stress log fill entry " + i);
+            size = logSize(context);
+        }
+        return size;
+    }
+
+    private static long logSize(Context context) {
+        long size = 0;
+        for (File segment : WidgetErrorLogger.getLogSegmentFiles(context)) {
+            size += segment.length();
+        }
+        return size;
+    }
+
+    private static long delta(String before, String after, String key) {
+        return StressTarget.statValue(after, key) - StressTarget.statValue(before, key);
+    }
+
+    private static String count(long before, long after) {
+        return before < 0 || after < 0 ? "n/a" : Long.toString(after - before);
+    }
+
+    private static void awaitMainLooper() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        new Handler(Looper.getMainLooper()).post(done::countDown);
+        done.await(DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static Runnable guarded(Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // A scheduled task that throws is never run again
+                e.printStackTrace();
+            }
+        };
+    }
+
+    private static ScheduledThreadPoolExecutor scheduler(String name) {
+        return new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
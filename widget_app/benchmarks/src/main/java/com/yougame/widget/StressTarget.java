@@ -0,0 +1,297 @@
+package com.yougame.widget;
+
+import android.appwidget.AppWidgetProvider;
+import android.content.Context;
+
+import com.yougame.savegamewidget.MinimapTileEncoder;
+import com.yougame.savegamewidget.SaveHistoryWriter;
+import com.yougame.savegamewidget.WidgetDataEncoder;
+import com.yougame.savegamewidget.WidgetDataPublisher;
+import com.yougame.savegamewidget.WidgetDataStore;
+import com.yougame.savegamewidget.WidgetSnapshot;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One widget provider under stress, and the game side that feeds it
+ *
+ * Every export n shows day n and n torches, so a widget showing two
+ * different numbers in those views rendered a torn snapshot.
+ */
+abstract class StressTarget {
+
+    // Start of the exported save timestamps; exports are a minute apart
+    static final long BASE_TIME = 1_737_900_000_000L;
+
+    private static final Pattern STRING_RESOURCE = Pattern.compile("<string name=\"(\\w+)\">(.*?)</string>");
+
+    final String name;
+    final Context context;
+    final AppWidgetProvider provider;
+    final int dayViewId;
+    final int torchesViewId;
+
+    StressTarget(String name, Context context, AppWidgetProvider provider, int dayViewId, int torchesViewId) {
+        this.name = name;
+        this.context = context;
+        this.provider = provider;
+        this.dayViewId = dayViewId;
+        this.torchesViewId = torchesViewId;
+    }
+
+    /**
+     * Write save n the way the game does
+     */
+    abstract void export(int n) throws IOException;
+
+    /**
+     * The provider's getRenderStats(): renders so far, and how many were
+     * skipped because nothing changed
+     */
+    abstract String getRenderStats();
+
+    abstract long getReplacedCount();
+
+    abstract long getTimedOutCount();
+
+    /**
+     * Torn reads the provider detected (and retried), -1 if it can't tell
+     */
+    long getTornReads() {
+        return -1;
+    }
+
+    /**
+     * Reads answered with older data because the file stayed torn, -1 if not tracked
+     */
+    long getStaleServed() {
+        return -1;
+    }
+
+    /**
+     * What the game writes besides the save data, for the report
+     */
+    abstract String describeWrites();
+
+    static long timestamp(int n) {
+        return BASE_TIME + n * 60_000L;
+    }
+
+    static float health(int n) {
+        return 50 + n % 50;
+    }
+
+    /**
+     * A value out of "key=value" statistics, e.g. getRenderStats()
+     */
+    static long statValue(String stats, String key) {
+        Matcher matcher = Pattern.compile("\\b" + key + "=(\\d+)").matcher(stats);
+        return matcher.find() ? Long.parseLong(matcher.group(1)) : 0;
+    }
+
+    /**
+     * Register the string resources of values/strings.xml with the context,
+     * matched to the R.string ids by name
+     */
+    static void loadStrings(Context context, Class<?> stringIds, File resDir) throws IOException {
+        File strings = new File(resDir, "values/strings.xml");
+        if (!strings.isFile()) {
+            return;
+        }
+        String xml = new String(Files.readAllBytes(strings.toPath()), StandardCharsets.UTF_8);
+        Matcher matcher = STRING_RESOURCE.matcher(xml);
+        while (matcher.find()) {
+            try {
+                Field field = stringIds.getField(matcher.group(1));
+                context.putString(field.getInt(null), matcher.group(2)
+                    .replace("\\'", "'").replace("&amp;", "&").replace("&lt;", "<"));
+            } catch (NoSuchFieldException | IllegalAccessException e) {
+                // Not referenced from code
+            }
+        }
+    }
+
+    /**
+     * The standalone widget app, reading the files the game writes into its
+     * external files directory
+     */
+    static final class WidgetApp extends StressTarget {
+
+        private static final int MINIMAP_TILES = 32;
+        private static final int MINIMAP_EVERY = 10;
+
+        private final boolean inPlaceWrites;
+        private final File binaryFile;
+        private final File textFile;
+        private final File minimapFile;
+        private final WidgetDataEncoder encoder = new WidgetDataEncoder();
+        private final WidgetDataPublisher publisher = new WidgetDataPublisher();
+        private final MinimapTileEncoder minimapEncoder = new MinimapTileEncoder();
+        private final SaveHistoryWriter history;
+        private final byte[] tiles = new byte[MINIMAP_TILES * MINIMAP_TILES];
+
+        WidgetApp(File root, File resDir, boolean inPlaceWrites) throws IOException {
+            super("widget app", new Context(new File(root, "widget")), new SaveGameWidgetProvider(),
+                R.id.widget_day, R.id.widget_torches);
+            this.inPlaceWrites = inPlaceWrites;
+            File gameDir = new File(root, "game");
+            context.getFilesDir().mkdirs();
+            gameDir.mkdirs();
+            loadStrings(context, R.string.class, resDir);
+
+            binaryFile = new File(gameDir, WidgetDataEncoder.FILE_NAME);
+            textFile = new File(gameDir, "widget_data.txt");
+            minimapFile = new File(gameDir, MinimapTileEncoder.FILE_NAME);
+            history = new SaveHistoryWriter(new File(gameDir, SaveHistoryWriter.FILE_NAME));
+            SaveGameWidgetProvider.setGameDataDir(gameDir);
+
+            // Fresh process state for this run
+            SaveDataCache.getInstance().invalidate();
+            WidgetErrorLogger.reset();
+        }
+
+        @Override
+        void export(int n) throws IOException {
+            long timestamp = timestamp(n);
+            float health = health(n);
+            float x = n % 1000;
+            float z = -(n % 1000);
+
+            // Same order as save_game_widget_exporter.gd: minimap before the data files
+            if (n % MINIMAP_EVERY == 0) {
+                for (int i = 0; i < tiles.length; i++) {
+                    tiles[i] = (byte) ((i / MINIMAP_TILES + n / MINIMAP_EVERY) % 6);
+                }
+                ByteBuffer minimap = minimapEncoder.encode(n + 1, tiles, MINIMAP_TILES, MINIMAP_TILES,
+                    n % MINIMAP_TILES, (n / MINIMAP_TILES) % MINIMAP_TILES);
+                publisher.publish(minimapFile, minimap.array(), 0, minimap.limit());
+            }
+            history.append(timestamp, n, health, n, x, z);
+
+            String text = "timestamp=" + timestamp / 1000 + "." + timestamp % 1000 + "\n"
+                + "day_count=" + n + "\n"
+                + "current_health=" + health + "\n"
+                + "torch_count=" + n + "\n"
+                + "position_x=" + x + "\n"
+                + "position_z=" + z + "\n"
+                + "error_count=0\n"
+                + "total_log_count=" + n + "\n"
+                + "last_error=\n";
+            if (inPlaceWrites) {
+                // Like older game builds: truncate and rewrite, readers can see partial files
+                encoder.writeTo(binaryFile, n, timestamp, n, health, n, x, z, 0, n, "");
+                byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                try (FileOutputStream out = new FileOutputStream(textFile)) {
+                    out.write(bytes, 0, bytes.length / 2);
+                    out.flush();
+                    out.write(bytes, bytes.length / 2, bytes.length - bytes.length / 2);
+                }
+            } else {
+                ByteBuffer encoded = encoder.encode(n, timestamp, n, health, n, x, z, 0, n, "");
+                publisher.publish(binaryFile, encoded.array(), 0, encoded.limit());
+                publisher.publishText(textFile, text);
+            }
+        }
+
+        @Override
+        String getRenderStats() {
+            return SaveGameWidgetProvider.getRenderStats();
+        }
+
+        @Override
+        long getReplacedCount() {
+            return WidgetUpdateExecutor.getInstance().getReplacedCount();
+        }
+
+        @Override
+        long getTimedOutCount() {
+            return WidgetUpdateExecutor.getInstance().getTimedOutCount();
+        }
+
+        @Override
+        long getTornReads() {
+            return WidgetMetrics.TORN_READS.get();
+        }
+
+        @Override
+        long getStaleServed() {
+            return WidgetMetrics.STALE_SERVED.get();
+        }
+
+        @Override
+        String describeWrites() {
+            return inPlaceWrites ? "in-place writes" : "atomic writes";
+        }
+    }
+
+    /**
+     * The game plugin's provider, fed through the data store like
+     * SaveGameWidgetPlugin.exportSaveData
+     */
+    static final class Plugin extends StressTarget {
+
+        private final WidgetDataStore store;
+        private final SaveHistoryWriter history;
+        private final WidgetSnapshot snapshot = new WidgetSnapshot();
+
+        Plugin(File root, File resDir) throws IOException {
+            super("game plugin", new Context(new File(root, "plugin")),
+                new com.yougame.savegamewidget.SaveGameWidgetProvider(),
+                com.yougame.savegamewidget.R.id.widget_day_value,
+                com.yougame.savegamewidget.R.id.widget_torches_value);
+            context.getFilesDir().mkdirs();
+            loadStrings(context, com.yougame.savegamewidget.R.string.class, resDir);
+            store = WidgetDataStore.getInstance(context);
+            if (store == null) {
+                throw new IOException("Could not open the widget data store in " + context.getFilesDir());
+            }
+            history = new SaveHistoryWriter(new File(context.getFilesDir(), SaveHistoryWriter.FILE_NAME));
+        }
+
+        @Override
+        void export(int n) {
+            // The steps of SaveGameWidgetPlugin.exportSaveData
+            synchronized (this) {
+                store.read(snapshot);
+                snapshot.timestamp = timestamp(n);
+                snapshot.dayCount = n;
+                snapshot.currentHealth = health(n);
+                snapshot.torchCount = n;
+                snapshot.positionX = n % 1000;
+                snapshot.positionY = 0;
+                snapshot.positionZ = -(n % 1000);
+                store.write(snapshot);
+            }
+            history.append(timestamp(n), n, health(n), n, n % 1000, -(n % 1000));
+            com.yougame.savegamewidget.SaveGameWidgetProvider.requestWidgetUpdate(context);
+        }
+
+        @Override
+        String getRenderStats() {
+            return com.yougame.savegamewidget.SaveGameWidgetProvider.getRenderStats();
+        }
+
+        @Override
+        long getReplacedCount() {
+            return com.yougame.savegamewidget.WidgetUpdateExecutor.getInstance().getReplacedCount();
+        }
+
+        @Override
+        long getTimedOutCount() {
+            return com.yougame.savegamewidget.WidgetUpdateExecutor.getInstance().getTimedOutCount();
+        }
+
+        @Override
+        String describeWrites() {
+            return "data store writes";
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.yougame.widget;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Allocation and file I/O of the app's threads, summed by thread name
+ *
+ * App threads are the ones started after the harness was created, except
+ * the harness's own ("Stress*"), the stand-ins' ("StandIn*") and the game
+ * side's group commit thread (WidgetDataSync). Allocated
+ * bytes come from the JVM; read and write syscalls from
+ * /proc/self/task/<tid>/io, matched to Java threads by name, so they are
+ * only available on Linux. Open, stat and rename calls are not counted.
+ */
+final class StressThreadUsage {
+
+    // Linux keeps the first 15 bytes of a thread name
+    private static final int COMM_LENGTH = 15;
+    private static final File TASKS = new File("/proc/self/task");
+    private static final String GAME_SYNC_THREAD = "WidgetDataSync";
+
+    /**
+     * Totals for one thread name
+     */
+    static final class Usage {
+        long allocatedBytes;
+        long readCalls;
+        long writeCalls;
+    }
+
+    private final com.sun.management.ThreadMXBean threads;
+    private final Set<Long> jvmThreads = new HashSet<>();
+
+    StressThreadUsage() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            threads = (com.sun.management.ThreadMXBean) bean;
+            threads.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            threads = null;
+        }
+        for (long id : bean.getAllThreadIds()) {
+            jvmThreads.add(id);
+        }
+    }
+
+    boolean hasAllocations() {
+        return threads != null;
+    }
+
+    static boolean hasFileCalls() {
+        return TASKS.isDirectory();
+    }
+
+    /**
+     * Current totals by thread name
+     */
+    Map<String, Usage> snapshot() {
+        Map<String, Usage> usage = new TreeMap<>();
+        Map<String, String> names = new TreeMap<>();
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        long[] ids = bean.getAllThreadIds();
+        ThreadInfo[] infos = bean.getThreadInfo(ids);
+        long[] allocated = threads != null ? threads.getThreadAllocatedBytes(ids) : null;
+        for (int i = 0; i < ids.length; i++) {
+            if (infos[i] == null || jvmThreads.contains(ids[i]) || !isAppThread(infos[i].getThreadName())) {
+                continue;
+            }
+            String name = infos[i].getThreadName();
+            Usage total = usage.computeIfAbsent(name, key -> new Usage());
+            if (allocated != null && allocated[i] > 0) {
+                total.allocatedBytes += allocated[i];
+            }
+            names.put(name.length() > COMM_LENGTH ? name.substring(0, COMM_LENGTH) : name, name);
+        }
+
+        File[] tasks = TASKS.listFiles();
+        if (tasks != null) {
+            for (File task : tasks) {
+                try {
+                    String name = names.get(read(new File(task, "comm")).trim());
+                    if (name == null) {
+                        continue;
+                    }
+                    Usage total = usage.get(name);
+                    for (String line : read(new File(task, "io")).split("\n")) {
+                        if (line.startsWith("syscr:")) {
+                            total.readCalls += Long.parseLong(line.substring(6).trim());
+                        } else if (line.startsWith("syscw:")) {
+                            total.writeCalls += Long.parseLong(line.substring(6).trim());
+                        }
+                    }
+                } catch (IOException | NumberFormatException e) {
+                    // Thread exited while reading
+                }
+            }
+        }
+        return usage;
+    }
+
+    /**
+     * end - start by thread name; threads started in between count from zero
+     */
+    static Map<String, Usage> difference(Map<String, Usage> start, Map<String, Usage> end) {
+        Map<String, Usage> delta = new TreeMap<>();
+        for (Map.Entry<String, Usage> entry : end.entrySet()) {
+            Usage before = start.get(entry.getKey());
+            Usage after = entry.getValue();
+            Usage change = new Usage();
+            change.allocatedBytes = after.allocatedBytes - (before != null ? before.allocatedBytes : 0);
+            change.readCalls = after.readCalls - (before != null ? before.readCalls : 0);
+            change.writeCalls = after.writeCalls - (before != null ? before.writeCalls : 0);
+            delta.put(entry.getKey(), change);
+        }
+        return delta;
+    }
+
+    private static boolean isAppThread(String name) {
+        return !name.startsWith("Stress") && !name.startsWith("StandIn") && !name.equals(GAME_SYNC_THREAD);
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII);
+    }
+}